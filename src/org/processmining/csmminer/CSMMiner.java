@@ -2,26 +2,32 @@ package org.processmining.csmminer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.deckfour.xes.classification.XEventClassifier;
 import org.deckfour.xes.classification.XEventNameClassifier;
-import org.deckfour.xes.extension.std.XConceptExtension;
-import org.deckfour.xes.extension.std.XTimeExtension;
-import org.deckfour.xes.model.XEvent;
 import org.deckfour.xes.model.XLog;
-import org.deckfour.xes.model.XTrace;
+import org.processmining.csmminer.log.CompositeStateTable;
+import org.processmining.csmminer.log.EncodedModelLog;
+import org.processmining.csmminer.log.EncodedStateLog;
+import org.processmining.csmminer.log.LongDictionary;
+import org.processmining.csmminer.log.StateDictionary;
+import org.processmining.csmminer.log.TraceView;
 import org.processmining.csmminer.relations.StateCounts;
-import org.processmining.csmminer.relations.StateEntry;
 import org.processmining.csmminer.relations.StateMap;
 import org.processmining.csmminer.relations.TransitionMap;
 import org.processmining.csmminer.relations.TransitionsCooccurringStates;
+import org.processmining.csmminer.statistics.BinomialSignificance;
 import org.processmining.framework.plugin.PluginContext;
 import org.processmining.framework.util.Pair;
 import org.processmining.models.graphbased.AttributeMap;
@@ -35,11 +41,6 @@ import org.processmining.plugins.tsanalyzer.annotation.frequency.FrequencyStateA
 import org.processmining.plugins.tsanalyzer.annotation.frequency.FrequencyTransitionAnnotation;
 import org.processmining.plugins.tsanalyzer.annotation.time.TimeStateAnnotation;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Table;
-
 public class CSMMiner {
 	
 	public static final String processNameAttributeLabel = "process:name";
@@ -50,482 +51,425 @@ public class CSMMiner {
 	
 	public static final int maxStates = 10000;
 	
+	/**
+	 * Discovers the state models with the default settings, on an executor that is shut down afterwards.
+	 */
 	public static Map<String, TSMinerOutput> discoverStateModels(PluginContext context, Map<String, XLog> perspectiveSubLogs,
 			XLog compositeLog) {
+		CSMMinerSettings settings = new CSMMinerSettings();
+		ExecutorService executor = settings.createExecutor();
+		try {
+			return discoverStateModels(context, perspectiveSubLogs, compositeLog, null, null, settings, executor);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Discovers the state models concurrently on the given executor, every model is mined by its own SMMiner. The
+	 * encoded logs for the perspectives and the composite log are used where these are given (they may be null). The
+	 * log of every model is split into trace partitions, more of them for larger logs, and the partitions of all models
+	 * are submitted at once. The partitions of a model are merged in trace order once they are mined, which gives the
+	 * same transition system as mining the log sequentially. The settings and connections of the models are registered
+	 * afterwards on the calling thread in a fixed order, the composite model first, so the results do not depend on the
+	 * scheduling of the tasks. The partitions only read the logs, the attributes of the trace views are copied before
+	 * the partitions are submitted.
+	 */
+	public static Map<String, TSMinerOutput> discoverStateModels(PluginContext context, Map<String, XLog> perspectiveSubLogs,
+			XLog compositeLog, Map<String, EncodedModelLog> encodedPerspectiveLogs, EncodedModelLog encodedCompositeLog,
+			CSMMinerSettings settings, ExecutorService executor) {
+		return discoverStateModels(context, perspectiveSubLogs, compositeLog, encodedPerspectiveLogs, encodedCompositeLog,
+				settings, executor, null);
+	}
+	
+	/**
+	 * Discovers the state models, and if eventTransitions is not null puts the transitions of the events recorded by
+	 * the miner of every model in it.
+	 */
+	private static Map<String, TSMinerOutput> discoverStateModels(PluginContext context, Map<String, XLog> perspectiveSubLogs,
+			XLog compositeLog, Map<String, EncodedModelLog> encodedPerspectiveLogs, EncodedModelLog encodedCompositeLog,
+			CSMMinerSettings settings, ExecutorService executor, Map<String, Transition[][]> eventTransitions) {
 		Map<String,TSMinerOutput> tsMinerOutputs = new HashMap<>();
 		
 		List<XEventClassifier> classifiers = Arrays.asList(new XEventClassifier[] { new XEventNameClassifier() });
-		SMMiner miner = new SMMiner(context, false);
-		TSMinerInput input = new TSMinerInput(context, compositeLog, classifiers, new XEventNameClassifier());
-		input.setMaxStates(maxStates);
-		tsMinerOutputs.put(CSMLabel, miner.mine(input));
+		List<String> modelNames = new ArrayList<>();
+		modelNames.add(CSMLabel);
+		modelNames.addAll(perspectiveSubLogs.keySet());
 		
-		for (String perspectiveName : perspectiveSubLogs.keySet()) {
-			input = new TSMinerInput(context, perspectiveSubLogs.get(perspectiveName), classifiers, new XEventNameClassifier());
-			tsMinerOutputs.put(perspectiveName, miner.mine(input));
+		List<SMMiner> miners = new ArrayList<>();
+		List<TSMinerInput> inputs = new ArrayList<>();
+		List<EncodedModelLog> encodedLogs = new ArrayList<>();
+		List<List<Future<SMMiner.TracePartition>>> partitions = new ArrayList<>();
+		for (String modelName : modelNames) {
+			SMMiner miner = new SMMiner(context, false);
+			miner.setRecordEventTransitions(eventTransitions != null);
+			TSMinerInput input;
+			EncodedModelLog encodedLog;
+			if (modelName.equals(CSMLabel)) {
+				input = new TSMinerInput(context, compositeLog, classifiers, new XEventNameClassifier());
+				input.setMaxStates(maxStates);
+				encodedLog = encodedCompositeLog;
+			}
+			else {
+				input = new TSMinerInput(context, perspectiveSubLogs.get(modelName), classifiers, new XEventNameClassifier());
+				encodedLog = getEncodedLog(encodedPerspectiveLogs, modelName);
+			}
+			
+			miners.add(miner);
+			inputs.add(input);
+			encodedLogs.add(encodedLog);
+			TraceView.loadAttributes(input.getLog());
+			
+			List<Future<SMMiner.TracePartition>> modelPartitions = new ArrayList<>();
+			for (SMMiner.TracePartition partition : miner.createPartitions(input, encodedLog,
+					settings.getPartitionCount(input.getLog().size()))) {
+				modelPartitions.add(executor.submit(partition));
+			}
+			partitions.add(modelPartitions);
+		}
+		
+		// The partitions of a model are merged and converted on the executor as soon as all of them are mined
+		List<Future<TSMinerOutput>> outputs = new ArrayList<>();
+		for (int i = 0; i < modelNames.size(); i++) {
+			final List<SMMiner.TracePartition> modelPartitions = new ArrayList<>();
+			for (Future<SMMiner.TracePartition> partition : partitions.get(i)) {
+				modelPartitions.add(getResult(partition));
+			}
+			
+			final SMMiner miner = miners.get(i);
+			final TSMinerInput input = inputs.get(i);
+			final EncodedModelLog encodedLog = encodedLogs.get(i);
+			outputs.add(executor.submit(new Callable<TSMinerOutput>() {
+				public TSMinerOutput call() {
+					return miner.mineWithoutRegistration(input, encodedLog, modelPartitions);
+				}
+			}));
+		}
+		
+		for (int i = 0; i < modelNames.size(); i++) {
+			TSMinerOutput output = getResult(outputs.get(i));
+			miners.get(i).register(inputs.get(i), output);
+			miners.get(i).showTruncationMessage();
+			tsMinerOutputs.put(modelNames.get(i), output);
+			if (eventTransitions != null) {
+				eventTransitions.put(modelNames.get(i), miners.get(i).getEventTransitions());
+			}
 		}
 		
 		return tsMinerOutputs;
 	}
 	
+	private static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Annotates the state models with the default settings, on an executor that is shut down afterwards.
+	 */
 	public static HashMap<String, AnnotatedTransitionSystem> annotateStateModels(PluginContext context, Map<String, XLog> perspectiveSubLogs,
 			XLog compositeLog, Map<String, TSMinerOutput> tsMinerOutputs) {
+		CSMMinerSettings settings = new CSMMinerSettings();
+		ExecutorService executor = settings.createExecutor();
+		try {
+			return annotateStateModels(context, perspectiveSubLogs, compositeLog, null, null, tsMinerOutputs, settings,
+					executor);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Annotates the state models concurrently on the given executor. The log of every model is split into trace
+	 * partitions, more of them for larger logs, and the partitions of all models are submitted at once. The partial
+	 * statistics of a model are merged in trace order on the calling thread, which gives the same annotations as
+	 * annotating every model sequentially. As for the discovery, the partitions only read the logs.
+	 */
+	public static HashMap<String, AnnotatedTransitionSystem> annotateStateModels(PluginContext context, Map<String, XLog> perspectiveSubLogs,
+			XLog compositeLog, Map<String, EncodedModelLog> encodedPerspectiveLogs, EncodedModelLog encodedCompositeLog,
+			Map<String, TSMinerOutput> tsMinerOutputs, CSMMinerSettings settings, ExecutorService executor) {
+		return annotateStateModels(context, perspectiveSubLogs, compositeLog, encodedPerspectiveLogs, encodedCompositeLog,
+				tsMinerOutputs, settings, executor, null);
+	}
+	
+	/**
+	 * Annotates the state models, using the transitions of the events recorded by the miners for the models that have
+	 * these in eventTransitions (which may be null). The eventTransitions are only given for the models mined by
+	 * {@link #discoverStateModels}, in which case the transitions of the other events may be cached as well.
+	 */
+	private static HashMap<String, AnnotatedTransitionSystem> annotateStateModels(PluginContext context, Map<String, XLog> perspectiveSubLogs,
+			XLog compositeLog, Map<String, EncodedModelLog> encodedPerspectiveLogs, EncodedModelLog encodedCompositeLog,
+			Map<String, TSMinerOutput> tsMinerOutputs, CSMMinerSettings settings, ExecutorService executor,
+			Map<String, Transition[][]> eventTransitions) {
 		HashMap<String, AnnotatedTransitionSystem> annotatedTSMinerOutputs = new HashMap<>();
 		
-		for (String modelName : tsMinerOutputs.keySet()) {
+		List<String> modelNames = new ArrayList<>(tsMinerOutputs.keySet());
+		List<SMAnnotator> annotators = new ArrayList<>();
+		List<List<Future<SMAnnotator.TracePartition>>> partitions = new ArrayList<>();
+		for (String modelName : modelNames) {
 			XLog log;
+			EncodedModelLog encodedLog;
 			if (modelName.equals(CSMLabel)) {
 				log = compositeLog;
+				encodedLog = encodedCompositeLog;
 			}
 			else {
 				log = perspectiveSubLogs.get(modelName);
+				encodedLog = getEncodedLog(encodedPerspectiveLogs, modelName);
+			}
+			SMAnnotator annotator = new SMAnnotator(context, tsMinerOutputs.get(modelName).getTransitionSystem(), log,
+					encodedLog, eventTransitions == null ? null : eventTransitions.get(modelName), settings, false);
+			// Only the models just mined from the encoded logs are known to have states determined by the last event
+			annotator.setStatesDeterminedByLastEvent(eventTransitions != null);
+			annotators.add(annotator);
+			TraceView.loadAttributes(log);
+			
+			List<Future<SMAnnotator.TracePartition>> modelPartitions = new ArrayList<>();
+			for (SMAnnotator.TracePartition partition : annotator.createPartitions(settings.getPartitionCount(log.size()))) {
+				modelPartitions.add(executor.submit(partition));
 			}
-			SMAnnotator annotator = new SMAnnotator(context, tsMinerOutputs.get(modelName).getTransitionSystem(), log, false);
-			annotatedTSMinerOutputs.put(modelName, annotator.annotate());
+			partitions.add(modelPartitions);
+		}
+		
+		for (int i = 0; i < modelNames.size(); i++) {
+			List<SMAnnotator.TracePartition> modelPartitions = new ArrayList<>();
+			for (Future<SMAnnotator.TracePartition> partition : partitions.get(i)) {
+				modelPartitions.add(getResult(partition));
+			}
+			annotatedTSMinerOutputs.put(modelNames.get(i), annotators.get(i).annotate(modelPartitions));
 		}
 		
 		return annotatedTSMinerOutputs;
 	}
 	
+	/**
+	 * Discovers and annotates the state models with a single pass over the events of every log. The miners record the
+	 * transition of every event while building the transition systems, and the annotators collect the time and
+	 * frequency statistics from these transitions instead of computing them again from the payloads of the events.
+	 */
+	public static Pair<Map<String, TSMinerOutput>, HashMap<String, AnnotatedTransitionSystem>> discoverAndAnnotateStateModels(
+			PluginContext context, Map<String, XLog> perspectiveSubLogs, XLog compositeLog,
+			Map<String, EncodedModelLog> encodedPerspectiveLogs, EncodedModelLog encodedCompositeLog,
+			CSMMinerSettings settings, ExecutorService executor) {
+		Map<String,Transition[][]> eventTransitions = new HashMap<>();
+		Map<String,TSMinerOutput> tsMinerOutputs = discoverStateModels(context, perspectiveSubLogs, compositeLog,
+				encodedPerspectiveLogs, encodedCompositeLog, settings, executor, eventTransitions);
+		HashMap<String,AnnotatedTransitionSystem> annotatedTSMinerOutputs = annotateStateModels(context,
+				perspectiveSubLogs, compositeLog, encodedPerspectiveLogs, encodedCompositeLog, tsMinerOutputs, settings,
+				executor, eventTransitions);
+		
+		return new Pair<Map<String,TSMinerOutput>,HashMap<String,AnnotatedTransitionSystem>>(tsMinerOutputs,
+				annotatedTSMinerOutputs);
+	}
+	
+	private static EncodedModelLog getEncodedLog(Map<String, EncodedModelLog> encodedPerspectiveLogs, String perspectiveName) {
+		return encodedPerspectiveLogs == null ? null : encodedPerspectiveLogs.get(perspectiveName);
+	}
+	
 	// FIXME: why not use the composite log for this? Then skip j = 0 because this is not a transition but the initial state
 	public static TransitionsCooccurringStates computePerspectiveInteractions(XLog log, List<String> perspectiveNames) {
-		TransitionsCooccurringStates transitionsCooccurringStates = new TransitionsCooccurringStates();
-		Map<String,String> perspectiveStates = new HashMap<>();
+		return computePerspectiveInteractions(EncodedStateLog.encode(log, perspectiveNames), new CSMMinerSettings());
+	}
+	
+	/**
+	 * Computes the perspective interactions with an {@link InteractionEngine} over the encoded state log.
+	 */
+	public static TransitionsCooccurringStates computePerspectiveInteractions(EncodedStateLog stateLog,
+			CSMMinerSettings settings) {
+		InteractionEngine engine = new InteractionEngine(stateLog);
+		engine.run();
+		TransitionsCooccurringStates transitionsCooccurringStates = engine.getTransitionsCooccurringStates();
 		// FIXME: what about transitionsCooccurringTransitions?
 		
-		// FIXME: dirty hacks below
-		int traceCounter = 0;
-		int entryCounter = 0;
-		ListMultimap<String,StateEntry> perspectiveStateTimePerEntry = ArrayListMultimap.create();
-		ListMultimap<String,StateEntry> perspectiveStateTimePerTrace = ArrayListMultimap.create();
-		Map<String,StateEntry> perspectiveCurrentEntries = new HashMap<>();
-		Table<String,String,StateEntry> perspectiveStateTraceEntries = HashBasedTable.create();
-		Table<String,String,HashMap<StateEntry,Long>> cooccurringStatesTimePerEntry = HashBasedTable.create();
-		Table<String,String,HashMap<StateEntry,Long>> cooccurringStatesTimePerTrace = HashBasedTable.create();
-		ListMultimap<StateEntry,Pair<String,String>> cooccurringTransitionsPerEntry = ArrayListMultimap.create();
-		ListMultimap<StateEntry,Pair<String,String>> cooccurringTransitionsPerTrace = ArrayListMultimap.create();
-		// FIXME: end dirty hacks
-		for (XTrace trace : log) {
-			
-			for (String perspectiveName : perspectiveNames) {
-				String initialState = LogProcessor.getPerspectiveInitialState(trace, perspectiveName);
-				perspectiveStates.put(perspectiveName, initialState);
-			}
-			
-			for (int j = 0; j < trace.size(); j++) {
-				XEvent event = trace.get(j);
-				String eventPerspective = LogProcessor.getEventPerspective(event);
-				String eventName = XConceptExtension.instance().extractName(event);
-				String oldPerspectiveState = perspectiveStates.get(eventPerspective);
-				
-				StateCounts stateCounts = transitionsCooccurringStates.get(eventPerspective, oldPerspectiveState, eventName);
-				if (stateCounts == null) {
-					stateCounts = new StateCounts();
-					transitionsCooccurringStates.put(eventPerspective, oldPerspectiveState, eventName, stateCounts);
-				}
-
-				String compositeFromStateName = "|";
-				String compositeToStateName = "|";
-				List<String> compositeCooccurringPerspectives = new ArrayList<>();
-
-				for (String perspectiveName : perspectiveNames) {
-					// FIXME: skip if perspectiveName in set of eventPerspectives? what if perspectiveName == current eventPerspective?
-					// current eventPerspective count is used for total transition count
-					if (perspectiveName.equals(eventPerspective)) {
-						compositeToStateName += eventName + "|";
-					}
-					else {
-						compositeToStateName += perspectiveStates.get(perspectiveName) + "|";
-						compositeCooccurringPerspectives.add(perspectiveName);
-					}
-					
-					compositeFromStateName += perspectiveStates.get(perspectiveName) + "|";
-					String perspectiveState = perspectiveStates.get(perspectiveName);
-					stateCounts.increment(perspectiveName, perspectiveState);
-				}
-
-				stateCounts.increment(CSMLabel, compositeFromStateName);
-				
-				StateCounts compositeStateCounts = transitionsCooccurringStates.get(CSMLabel, compositeFromStateName, compositeToStateName);
-				if (compositeStateCounts == null) {
-					compositeStateCounts = new StateCounts();
-					transitionsCooccurringStates.put(CSMLabel, compositeFromStateName, compositeToStateName, compositeStateCounts);
-				}
-				
-				for (String perspectiveName : compositeCooccurringPerspectives) {
-					compositeStateCounts.increment(perspectiveName, perspectiveStates.get(perspectiveName));
-				}
-				
-				perspectiveStates.put(eventPerspective, eventName);
-				
-				
-				// FIXME: dirty hacks below
-				if (j < trace.size() -1) {
-					long eventStartTime = XTimeExtension.instance().extractTimestamp(event).getTime();
-					long eventEndTime = XTimeExtension.instance().extractTimestamp(trace.get(j+1)).getTime();
-					long eventDuration = eventEndTime - eventStartTime;
-					
-					for (String perspectiveName : perspectiveNames) {
-						StateEntry entry = perspectiveStateTraceEntries.get(perspectiveName, perspectiveStates.get(perspectiveName));
-						if (entry == null) {
-							entry = new StateEntry(traceCounter, 0);
-							perspectiveStateTraceEntries.put(perspectiveName, perspectiveStates.get(perspectiveName), entry);
-							traceCounter++;
-						}
-						entry.duration += eventDuration;
-						
-						if (perspectiveName.equals(eventPerspective)) {
-							// Put the perspectiveCurrentEntry if it exists in the perspectiveStateTimePerEntry 
-							entry = perspectiveCurrentEntries.get(perspectiveName);
-							if (entry != null) {
-								perspectiveStateTimePerEntry.put(perspectiveName + "~" + oldPerspectiveState, entry);
-							}
-							
-							entry = new StateEntry(entryCounter, eventDuration);
-							perspectiveCurrentEntries.put(perspectiveName, entry);
-							entryCounter++;
-						}
-						else {
-							entry = perspectiveCurrentEntries.get(perspectiveName);
-							if (entry == null) {
-								entry = new StateEntry(entryCounter, 0);
-								perspectiveCurrentEntries.put(perspectiveName, entry);
-								entryCounter++;
-							}
-							entry.duration += eventDuration;
-						}
-					}
-					
-					// Calculate co-occurrence
-					for (String perspectiveName : perspectiveNames) {
-						for (String otherPerspectiveName : perspectiveNames) {
-							if (perspectiveName.equals(otherPerspectiveName)) continue;
-							String stateName = perspectiveStates.get(perspectiveName);
-							String otherStateName = perspectiveStates.get(otherPerspectiveName);
-							
-							// Per trace
-							StateEntry entry = perspectiveStateTraceEntries.get(perspectiveName, stateName);
-							HashMap<StateEntry, Long> entries = cooccurringStatesTimePerTrace.get(perspectiveName + "~" + stateName,
-									otherPerspectiveName + "~" + otherStateName);
-							if (entries == null) {
-								entries = new HashMap<StateEntry, Long>();
-								cooccurringStatesTimePerTrace.put(perspectiveName + "~" + stateName,
-										otherPerspectiveName + "~" + otherStateName, entries);
-							}
-							Long previousDuration = entries.get(entry);
-							if (previousDuration == null) previousDuration = (long) 0;
-							entries.put(entry, previousDuration + eventDuration);
-							
-							// Per entry
-							entry = perspectiveCurrentEntries.get(perspectiveName);
-							entries = cooccurringStatesTimePerEntry.get(perspectiveName + "~" + stateName,
-									otherPerspectiveName + "~" + otherStateName);
-							if (entries == null) {
-								entries = new HashMap<StateEntry, Long>();
-								cooccurringStatesTimePerEntry.put(perspectiveName + "~" + stateName,
-										otherPerspectiveName + "~" + otherStateName, entries);
-							}
-							previousDuration = entries.get(entry);
-							if (previousDuration == null) previousDuration = (long) 0;
-							entries.put(entry, previousDuration + eventDuration);
-						}
-						
-						// Calculate transition co-occurrence
-						if ((eventPerspective + "~" + oldPerspectiveState).equals(eventPerspective + "~" + eventName)) continue;
-						if (perspectiveName.equals(eventPerspective)) continue;
-						StateEntry entry = perspectiveStateTraceEntries.get(perspectiveName, perspectiveStates.get(perspectiveName));
-						cooccurringTransitionsPerTrace.put(entry, new Pair<String, String>(eventPerspective + "~" + oldPerspectiveState,
-								eventPerspective + "~" + eventName));
-						entry = perspectiveCurrentEntries.get(perspectiveName);
-						cooccurringTransitionsPerEntry.put(entry, new Pair<String, String>(eventPerspective + "~" + oldPerspectiveState,
-								eventPerspective + "~" + eventName));
-					}
-				}
-				else {
-					// Update final time spent per state entries
-					for (String perspectiveName : perspectiveNames) {
-						StateEntry entry = perspectiveCurrentEntries.get(perspectiveName);
-						String perspectiveState = perspectiveStates.get(perspectiveName);
-						if (perspectiveName.equals(eventPerspective)) perspectiveState = oldPerspectiveState;
-						if (entry != null) perspectiveStateTimePerEntry.put(perspectiveName + "~" + perspectiveState, entry);
-						
-						// Calculate transition co-occurrence
-						if (perspectiveName.equals(eventPerspective)) continue;
-						entry = perspectiveStateTraceEntries.get(perspectiveName, perspectiveStates.get(perspectiveName));
-						cooccurringTransitionsPerTrace.put(entry, new Pair<String, String>(eventPerspective + "~" + oldPerspectiveState,
-								eventPerspective + "~" + eventName));
-						entry = perspectiveCurrentEntries.get(perspectiveName);
-						cooccurringTransitionsPerEntry.put(entry, new Pair<String, String>(eventPerspective + "~" + oldPerspectiveState,
-								eventPerspective + "~" + eventName));
-					}
-				}
-				// FIXME: end dirty hacks
-			}
-			
-			// FIXME: dirty hacks below
-			// Put all entries from perspectiveStateTraceEntries in perspectiveStateTimePerTrace
-			// clear perspectiveStateTraceEntries
-			for (String perspectiveName : perspectiveNames) {
-				Map<String,StateEntry> stateTraceEntries = perspectiveStateTraceEntries.row(perspectiveName);
-				for (String stateName : stateTraceEntries.keySet()) {
-					perspectiveStateTimePerTrace.put(perspectiveName + "~" + stateName, stateTraceEntries.get(stateName));
-				}
-			}
-			perspectiveCurrentEntries.clear();
-			perspectiveStateTraceEntries.clear();
-			// FIXME: end dirty hacks
-		}
-		
-		// FIXME: dirty hacks below
-		Map<String,DescriptiveStatistics> timePerEntryFast = new HashMap<>();
-		Map<String,DescriptiveStatistics> timePerEntrySlow = new HashMap<>();
-		ListMultimap<String,StateEntry> perspectiveStateTimePerEntryFast = ArrayListMultimap.create();
-		ListMultimap<String,StateEntry> perspectiveStateTimePerEntrySlow = ArrayListMultimap.create();
-		for (String state : perspectiveStateTimePerEntry.keySet()) {
-			List<StateEntry> entries = perspectiveStateTimePerEntry.get(state);
-			Collections.sort(entries, StateEntryComparator);
-			
-			int i = 0;
-			for (StateEntry entry : entries) {
-				if (i < (entries.size() / 2)) {
-					DescriptiveStatistics fastStatistics = timePerEntryFast.get(state);
-					if (fastStatistics == null) {
-						fastStatistics = new DescriptiveStatistics();
-						timePerEntryFast.put(state, fastStatistics);
-					}
-					fastStatistics.addValue(entry.duration);
-					
-					perspectiveStateTimePerEntryFast.put(state, entry);
-					i++;
-				}
-				else {
-					DescriptiveStatistics slowStatistics = timePerEntrySlow.get(state);
-					if (slowStatistics == null) {
-						slowStatistics = new DescriptiveStatistics();
-						timePerEntrySlow.put(state, slowStatistics);
-					}
-					slowStatistics.addValue(entry.duration);
-					
-					perspectiveStateTimePerEntrySlow.put(state, entry);
-				}
-			}
+		engine.computePerformanceSplit(transitionsCooccurringStates, settings.performanceQuantiles,
+				settings.getStatisticsBackend(engine.getEventCount()));
+		
+		return transitionsCooccurringStates;
+	}
+	
+	public static StateMap createStateMapping(List<String> perspectiveNames, Map<String, TSMinerOutput> tsMinerOutputs) {
+		return createStateMapping(perspectiveNames, tsMinerOutputs, null);
+	}
+	
+	/**
+	 * Creates the mapping between composite states and perspective states. The perspective states of a composite
+	 * state are read from the composite state table if it is given, instead of splitting the composite state label.
+	 * The perspective states are indexed by name, so each composite state is mapped with one lookup per perspective.
+	 */
+	public static StateMap createStateMapping(List<String> perspectiveNames, Map<String, TSMinerOutput> tsMinerOutputs,
+			CompositeStateTable compositeStates) {
+		StateMap stateMap = new StateMap();
+		TSMinerTransitionSystem compositeModel = tsMinerOutputs.get(CSMLabel).getTransitionSystem();
+		
+		List<Map<String,List<State>>> perspectiveStates = new ArrayList<>(perspectiveNames.size());
+		for (String perspectiveName : perspectiveNames) {
+			perspectiveStates.add(getStatesByName(tsMinerOutputs.get(perspectiveName).getTransitionSystem()));
 		}
-		Map<String,DescriptiveStatistics> timePerTraceFast = new HashMap<>();
-		Map<String,DescriptiveStatistics> timePerTraceSlow = new HashMap<>();
-		ListMultimap<String,StateEntry> perspectiveStateTimePerTraceFast = ArrayListMultimap.create();
-		ListMultimap<String,StateEntry> perspectiveStateTimePerTraceSlow = ArrayListMultimap.create();
-		for (String state : perspectiveStateTimePerTrace.keySet()) {
-			List<StateEntry> entries = perspectiveStateTimePerTrace.get(state);
-			Collections.sort(entries, StateEntryComparator);
+		
+		for (State compositeState : compositeModel.getNodes()) {
+			String[] compositeStateName = getCompositeStateNames(compositeState, perspectiveNames.size(), compositeStates);
+			if (compositeStateName == null) continue;
 			
-			int i = 0;
-			for (StateEntry entry : entries) {
-				if (i < (entries.size() / 2)) {
-					DescriptiveStatistics fastStatistics = timePerTraceFast.get(state);
-					if (fastStatistics == null) {
-						fastStatistics = new DescriptiveStatistics();
-						timePerTraceFast.put(state, fastStatistics);
-					}
-					fastStatistics.addValue(entry.duration);
-					
-					perspectiveStateTimePerTraceFast.put(state, entry);
-					i++;
+			int compositeStateId = StateDictionary.UNKNOWN;
+			for (int perspectiveIndex = 0; perspectiveIndex < perspectiveNames.size(); perspectiveIndex++) {
+				List<State> states = perspectiveStates.get(perspectiveIndex).get(compositeStateName[perspectiveIndex]);
+				if (states == null) continue;
+				
+				if (compositeStateId == StateDictionary.UNKNOWN) {
+					compositeStateId = stateMap.getOrAddStateId(CSMLabel, compositeState.getIdentifier());
 				}
-				else {
-					DescriptiveStatistics slowStatistics = timePerTraceSlow.get(state);
-					if (slowStatistics == null) {
-						slowStatistics = new DescriptiveStatistics();
-						timePerTraceSlow.put(state, slowStatistics);
-					}
-					slowStatistics.addValue(entry.duration);
-					
-					perspectiveStateTimePerTraceSlow.put(state, entry);
+				for (State state : states) {
+					int stateId = stateMap.getOrAddStateId(perspectiveNames.get(perspectiveIndex), state.getIdentifier());
+					stateMap.add(compositeStateId, stateId);
+					stateMap.add(stateId, compositeStateId);
 				}
 			}
 		}
 		
-		// Loop over co-occurring pairs, create slow and quick variants for entry and trace statistics
-		Table<String,String,DescriptiveStatistics> cooccurringStatesTimePerTraceFast = HashBasedTable.create();
-		Table<String,String,DescriptiveStatistics> cooccurringStatesTimePerTraceSlow = HashBasedTable.create();
-		for (String state : cooccurringStatesTimePerTrace.rowKeySet()) {
-			for (String otherState : cooccurringStatesTimePerTrace.row(state).keySet()) {
-				DescriptiveStatistics fastStatistics = new DescriptiveStatistics();
-				DescriptiveStatistics slowStatistics = new DescriptiveStatistics();
-				cooccurringStatesTimePerTraceFast.put(state, otherState, fastStatistics);
-				cooccurringStatesTimePerTraceSlow.put(state, otherState, slowStatistics);
-				HashMap<StateEntry, Long> entries = cooccurringStatesTimePerTrace.get(state, otherState);
-				for (StateEntry entry : entries.keySet()) {
-					if (perspectiveStateTimePerTraceFast.get(state).contains(entry)) {
-						fastStatistics.addValue(entries.get(entry));
-					}
-					else if (perspectiveStateTimePerTraceSlow.get(state).contains(entry)) {
-						slowStatistics.addValue(entries.get(entry));
-					}
-					else {
-						System.out.println("Erorr " + entry);
-					}
-				}
+		return stateMap;
+	}
+	
+	/**
+	 * Returns the states of a model by name, i.e. by identifier without the surrounding brackets. Names are not
+	 * necessarily unique, as identifiers may differ in more than their brackets, so every name has a list of states.
+	 */
+	private static Map<String,List<State>> getStatesByName(TSMinerTransitionSystem model) {
+		Map<String,List<State>> states = new HashMap<>();
+		for (State state : model.getNodes()) {
+			String stateIdentifier = state.getIdentifier().toString();
+			String stateName = stateIdentifier.substring(1, stateIdentifier.length()-1);
+			if (!states.containsKey(stateName)) {
+				states.put(stateName, new ArrayList<State>(1));
 			}
+			states.get(stateName).add(state);
 		}
 		
-		Table<String,String,DescriptiveStatistics> cooccurringStatesTimePerEntryFast = HashBasedTable.create();
-		Table<String,String,DescriptiveStatistics> cooccurringStatesTimePerEntrySlow = HashBasedTable.create();
-		for (String state : cooccurringStatesTimePerEntry.rowKeySet()) {
-			for (String otherState : cooccurringStatesTimePerEntry.row(state).keySet()) {
-				DescriptiveStatistics fastStatistics = new DescriptiveStatistics();
-				DescriptiveStatistics slowStatistics = new DescriptiveStatistics();
-				cooccurringStatesTimePerEntryFast.put(state, otherState, fastStatistics);
-				cooccurringStatesTimePerEntrySlow.put(state, otherState, slowStatistics);
-				HashMap<StateEntry, Long> entries = cooccurringStatesTimePerEntry.get(state, otherState);
-				for (StateEntry entry : entries.keySet()) {
-					if (perspectiveStateTimePerEntryFast.get(state).contains(entry)) {
-						fastStatistics.addValue(entries.get(entry));
-					}
-					else if (perspectiveStateTimePerEntrySlow.get(state).contains(entry)) {
-						slowStatistics.addValue(entries.get(entry));
-					}
-					else {
-						System.out.println("Erorr " + entry);
-					}
-				}
-			}
+		return states;
+	}
+	
+	public static TransitionMap createTransitionMapping(List<String> perspectiveNames, Map<String, TSMinerOutput> tsMinerOutputs) {
+		return createTransitionMapping(perspectiveNames, tsMinerOutputs, null);
+	}
+	
+	/**
+	 * Creates the mapping between composite transitions and perspective transitions. The perspective transitions are
+	 * indexed by (source name, target name), so each composite transition is mapped with one lookup per perspective
+	 * and both directions of the mapping are added in the same pass.
+	 */
+	public static TransitionMap createTransitionMapping(List<String> perspectiveNames, Map<String, TSMinerOutput> tsMinerOutputs,
+			CompositeStateTable compositeStates) {
+		TransitionMap transitionMap = new TransitionMap();
+		TSMinerTransitionSystem compositeModel = tsMinerOutputs.get(CSMLabel).getTransitionSystem();
+		Map<State,String[]> compositeStateNames = new HashMap<>();
+		for (State compositeState : compositeModel.getNodes()) {
+			compositeStateNames.put(compositeState, getCompositeStateNames(compositeState, perspectiveNames.size(),
+					compositeStates));
 		}
 		
-		Table<String,Pair<String,String>,Integer> cooccurringTransitionCountPerEntryFast = HashBasedTable.create();
-		for (String state : perspectiveStateTimePerEntryFast.keySet()) {
-			List<StateEntry> entries = perspectiveStateTimePerEntryFast.get(state);
-			
-			for (StateEntry entry : entries) {
-				List<Pair<String, String>> transitions = cooccurringTransitionsPerEntry.get(entry);
-				
-				for (Pair<String, String> transition : transitions) {
-					Integer count = cooccurringTransitionCountPerEntryFast.get(state, transition);
-					if (count == null) count = 0;
-					cooccurringTransitionCountPerEntryFast.put(state, transition, count+1);
-				}
-			}
-		}
-		Table<String,Pair<String,String>,Integer> cooccurringTransitionCountPerEntrySlow = HashBasedTable.create();
-		for (String state : perspectiveStateTimePerEntrySlow.keySet()) {
-			List<StateEntry> entries = perspectiveStateTimePerEntrySlow.get(state);
-			
-			for (StateEntry entry : entries) {
-				List<Pair<String, String>> transitions = cooccurringTransitionsPerEntry.get(entry);
-				
-				for (Pair<String, String> transition : transitions) {
-					Integer count = cooccurringTransitionCountPerEntrySlow.get(state, transition);
-					if (count == null) count = 0;
-					cooccurringTransitionCountPerEntrySlow.put(state, transition, count+1);
-				}
-			}
+		List<TransitionIndex> perspectiveTransitions = new ArrayList<>(perspectiveNames.size());
+		for (String perspectiveName : perspectiveNames) {
+			perspectiveTransitions.add(new TransitionIndex(tsMinerOutputs.get(perspectiveName).getTransitionSystem()));
 		}
-		Table<String,Pair<String,String>,Integer> cooccurringTransitionCountPerTraceFast = HashBasedTable.create();
-		for (String state : perspectiveStateTimePerTraceFast.keySet()) {
-			List<StateEntry> entries = perspectiveStateTimePerTraceFast.get(state);
+		
+		for (Transition compositeTransition : compositeModel.getEdges()) {
+			String[] compositeSourceName = compositeStateNames.get(compositeTransition.getSource());
+			if (compositeSourceName == null) continue;
+			String[] compositeTargetName = compositeStateNames.get(compositeTransition.getTarget());
+			if (compositeTargetName == null) continue;
 			
-			for (StateEntry entry : entries) {
-				List<Pair<String, String>> transitions = cooccurringTransitionsPerTrace.get(entry);
+			int compositeTransitionId = StateDictionary.UNKNOWN;
+			for (int perspectiveIndex = 0; perspectiveIndex < perspectiveNames.size(); perspectiveIndex++) {
+				List<Transition> transitions = perspectiveTransitions.get(perspectiveIndex).get(
+						compositeSourceName[perspectiveIndex], compositeTargetName[perspectiveIndex]);
+				if (transitions == null) continue;
 				
-				for (Pair<String, String> transition : transitions) {
-					Integer count = cooccurringTransitionCountPerTraceFast.get(state, transition);
-					if (count == null) count = 0;
-					cooccurringTransitionCountPerTraceFast.put(state, transition, count+1);
+				if (compositeTransitionId == StateDictionary.UNKNOWN) {
+					compositeTransitionId = transitionMap.getOrAddTransitionId(compositeTransition);
 				}
-			}
-		}
-		Table<String,Pair<String,String>,Integer> cooccurringTransitionCountPerTraceSlow = HashBasedTable.create();
-		for (String state : perspectiveStateTimePerTraceSlow.keySet()) {
-			List<StateEntry> entries = perspectiveStateTimePerTraceSlow.get(state);
-			
-			for (StateEntry entry : entries) {
-				List<Pair<String, String>> transitions = cooccurringTransitionsPerTrace.get(entry);
-				
-				for (Pair<String, String> transition : transitions) {
-					Integer count = cooccurringTransitionCountPerTraceSlow.get(state, transition);
-					if (count == null) count = 0;
-					cooccurringTransitionCountPerTraceSlow.put(state, transition, count+1);
+				for (Transition transition : transitions) {
+					int transitionId = transitionMap.getOrAddTransitionId(transition);
+					transitionMap.add(compositeTransitionId, perspectiveNames.get(perspectiveIndex), transitionId);
+					transitionMap.add(transitionId, CSMLabel, compositeTransitionId);
 				}
 			}
 		}
 		
-		transitionsCooccurringStates.timePerTraceFast = timePerTraceFast;
-		transitionsCooccurringStates.timePerTraceSlow = timePerTraceSlow;
-		transitionsCooccurringStates.timePerEntryFast = timePerEntryFast;
-		transitionsCooccurringStates.timePerEntrySlow = timePerEntrySlow;
-		transitionsCooccurringStates.cooccurringStatesTimePerTraceFast = cooccurringStatesTimePerTraceFast;
-		transitionsCooccurringStates.cooccurringStatesTimePerTraceSlow = cooccurringStatesTimePerTraceSlow;
-		transitionsCooccurringStates.cooccurringStatesTimePerEntryFast = cooccurringStatesTimePerEntryFast;
-		transitionsCooccurringStates.cooccurringStatesTimePerEntrySlow = cooccurringStatesTimePerEntrySlow;
-		transitionsCooccurringStates.cooccurringTransitionCountPerTraceFast = cooccurringTransitionCountPerTraceFast;
-		transitionsCooccurringStates.cooccurringTransitionCountPerTraceSlow = cooccurringTransitionCountPerTraceSlow;
-		transitionsCooccurringStates.cooccurringTransitionCountPerEntryFast = cooccurringTransitionCountPerEntryFast;
-		transitionsCooccurringStates.cooccurringTransitionCountPerEntrySlow = cooccurringTransitionCountPerEntrySlow;
-		System.out.println();
-		// FIXME: end dirty hacks
-		
-		return transitionsCooccurringStates;
+		return transitionMap;
 	}
 	
-	public static StateMap createStateMapping(List<String> perspectiveNames, Map<String, TSMinerOutput> tsMinerOutputs) {
-		StateMap stateMap = new StateMap();
-		TSMinerTransitionSystem compositeModel = tsMinerOutputs.get(CSMLabel).getTransitionSystem();
+	/**
+	 * The transitions of a model by the names of their source and target state.
+	 */
+	private static class TransitionIndex {
+		private final StateDictionary stateNames = new StateDictionary();
+		private final LongDictionary keys = new LongDictionary();
+		private final List<List<Transition>> transitions = new ArrayList<>();
 		
-		for (String perspectiveName : perspectiveNames) {
-			int perspectiveIndex = perspectiveNames.indexOf(perspectiveName);
-			TSMinerTransitionSystem stateModel = tsMinerOutputs.get(perspectiveName).getTransitionSystem();
-			
-			for (State compositeState : compositeModel.getNodes()) {
-				String[] compositeStateName = compositeState.getIdentifier().toString().split("\\|");
-				if (compositeStateName.length < perspectiveNames.size() + 2) continue;
+		public TransitionIndex(TSMinerTransitionSystem model) {
+			for (Transition transition : model.getEdges()) {
+				String sourceIdentifier = transition.getSource().getIdentifier().toString();
+				String targetIdentifier = transition.getTarget().getIdentifier().toString();
+				int source = stateNames.intern(sourceIdentifier.substring(1, sourceIdentifier.length()-1));
+				int target = stateNames.intern(targetIdentifier.substring(1, targetIdentifier.length()-1));
 				
-				for (State state : stateModel.getNodes()) {
-					String stateIdentifier = state.getIdentifier().toString();
-					String stateName = stateIdentifier.substring(1, stateIdentifier.length()-1);
-					
-					if (compositeStateName[perspectiveIndex + 1].equals(stateName)) {
-						stateMap.add(CSMLabel, compositeState.getIdentifier(), perspectiveName, state.getIdentifier());
-						stateMap.add(perspectiveName, state.getIdentifier(), CSMLabel, compositeState.getIdentifier());
-					}
+				int key = keys.intern(LongDictionary.pack(source, target));
+				if (key == transitions.size()) {
+					transitions.add(new ArrayList<Transition>(1));
 				}
+				transitions.get(key).add(transition);
 			}
 		}
 		
-		return stateMap;
+		public List<Transition> get(String sourceName, String targetName) {
+			int source = stateNames.getId(sourceName);
+			int target = stateNames.getId(targetName);
+			if (source == StateDictionary.UNKNOWN || target == StateDictionary.UNKNOWN) return null;
+			
+			int key = keys.getId(LongDictionary.pack(source, target));
+			return key == StateDictionary.UNKNOWN ? null : transitions.get(key);
+		}
 	}
 	
-	public static TransitionMap createTransitionMapping(List<String> perspectiveNames, Map<String, TSMinerOutput> tsMinerOutputs) {
-		TransitionMap transitionMap = new TransitionMap();
-		TSMinerTransitionSystem compositeModel = tsMinerOutputs.get(CSMLabel).getTransitionSystem();
+	/**
+	 * Returns the state of every perspective in a composite state, or null if the state is not a composite state of
+	 * all perspectives (such as the empty initial state). The names are taken from the composite state table if the
+	 * state is known there, otherwise the "[|state1|state2|...|]" identifier is split.
+	 */
+	private static String[] getCompositeStateNames(State compositeState, int perspectiveCount,
+			CompositeStateTable compositeStates) {
+		String compositeStateIdentifier = compositeState.getIdentifier().toString();
 		
-		for (String perspectiveName : perspectiveNames) {
-			int perspectiveIndex = perspectiveNames.indexOf(perspectiveName);
-			TSMinerTransitionSystem stateModel = tsMinerOutputs.get(perspectiveName).getTransitionSystem();
-			
-			for (Transition compositeTransition : compositeModel.getEdges()) {
-				String[] compositeSourceName = compositeTransition.getSource().getIdentifier().toString().split("\\|");
-				if (compositeSourceName.length < perspectiveNames.size() + 2) continue;
-				String[] compositeTargetName = compositeTransition.getTarget().getIdentifier().toString().split("\\|");
-				if (compositeTargetName.length < perspectiveNames.size() + 2) continue;
-				
-				for (Transition transition : stateModel.getEdges()) {
-					String sourceIdentifier = transition.getSource().getIdentifier().toString();
-					String targetIdentifier = transition.getTarget().getIdentifier().toString();
-					String sourceName = sourceIdentifier.substring(1, sourceIdentifier.length()-1);
-					String targetName = targetIdentifier.substring(1, targetIdentifier.length()-1);
-					
-					if (compositeSourceName[perspectiveIndex + 1].equals(sourceName) &&
-							compositeTargetName[perspectiveIndex + 1].equals(targetName)) {
-						transitionMap.add(compositeTransition, perspectiveName, transition);
-						transitionMap.add(transition, CSMLabel, compositeTransition);
-					}
+		if (compositeStates != null && compositeStates.getWidth() == perspectiveCount) {
+			int id = compositeStates.getId(compositeStateIdentifier.substring(1, compositeStateIdentifier.length()-1));
+			if (id != StateDictionary.UNKNOWN) {
+				String[] names = new String[perspectiveCount];
+				for (int p = 0; p < perspectiveCount; p++) {
+					names[p] = compositeStates.getStateName(id, p);
 				}
+				return names;
 			}
 		}
 		
-		return transitionMap;
+		String[] compositeStateName = compositeStateIdentifier.split("\\|");
+		if (compositeStateName.length < perspectiveCount + 2) return null;
+		return Arrays.copyOfRange(compositeStateName, 1, perspectiveCount + 1);
 	}
 
 	public static void calculateRelationStatistics(CSMMinerResults results) {
+		calculateRelationStatistics(results, new CSMMinerSettings());
+	}
+	
+	public static void calculateRelationStatistics(CSMMinerResults results, CSMMinerSettings settings) {
 		for (String modelName : results.tsMinerOutputs.keySet()) {
 			calculateTotalStatistics(results, modelName);
 			
@@ -545,37 +489,154 @@ public class CSMMiner {
 		
 		// FIXME: continue from here
 		
-		// Calculate interestingness metrics
-		for (String modelName1 : results.tsMinerOutputs.keySet()) {
-			if (modelName1.equals(CSMMiner.CSMLabel)) continue;
+		// Calculate interestingness metrics, only for the state pairs and the transition state pairs that were observed.
+		// The relations are added in state order, so their ids and the order of ties in top k queries are fixed.
+		List<String> perspectiveNames = getPerspectiveOrder(results);
+		final Map<State,Integer> stateOrder = getStateOrder(results, perspectiveNames);
+		
+		List<Pair<State,State>> statePairs = new ArrayList<>();
+		for (Pair<State,State> statePair : results.sharedStateSojourns.keySet()) {
+			if (stateOrder.containsKey(statePair.getFirst()) && stateOrder.containsKey(statePair.getSecond())) {
+				statePairs.add(statePair);
+			}
+		}
+		Collections.sort(statePairs, new Comparator<Pair<State,State>>() {
+			public int compare(Pair<State,State> pair1, Pair<State,State> pair2) {
+				int comparison = stateOrder.get(pair1.getFirst()).compareTo(stateOrder.get(pair2.getFirst()));
+				return comparison != 0 ? comparison :
+						stateOrder.get(pair1.getSecond()).compareTo(stateOrder.get(pair2.getSecond()));
+			}
+		});
+		
+		for (Pair<State,State> statePair : statePairs) {
+			State state1 = statePair.getFirst();
+			State state2 = statePair.getSecond();
+			if (results.stateSojourns.get(state1) == 0 || results.stateSojourns.get(state2) == 0) continue;
 			
-			for (String modelName2 : results.tsMinerOutputs.keySet()) {
-				if (modelName2.equals(CSMMiner.CSMLabel) || modelName2.equals(modelName1)) continue;
-				
-				TSMinerTransitionSystem model1 = results.tsMinerOutputs.get(modelName1).getTransitionSystem();
-				TSMinerTransitionSystem model2 = results.tsMinerOutputs.get(modelName2).getTransitionSystem();
+			//FIXME: try with epsilon
+			calculateStateInterestingnessMetrics(results, state1, state2);
+		}
+		
+		Map<String,Map<String,List<State>>> perspectiveStates = new HashMap<>();
+		for (String modelName : perspectiveNames) {
+			perspectiveStates.put(modelName, getStatesByName(results.tsMinerOutputs.get(modelName).getTransitionSystem()));
+		}
+		
+		BinomialSignificance significance = new BinomialSignificance(settings.maxExactBinomialTrials);
+		for (String modelName1 : perspectiveNames) {
+			TSMinerTransitionSystem model1 = results.tsMinerOutputs.get(modelName1).getTransitionSystem();
+			AnnotatedTransitionSystem annotatedModel1 = results.annotatedTSMinerOutputs.get(modelName1);
+			
+			for (State source : getSortedStates(model1.getNodes())) {
+				List<Transition> outEdges = new ArrayList<>(model1.getOutEdges(source));
+				Collections.sort(outEdges, new Comparator<Transition>() {
+					public int compare(Transition transition1, Transition transition2) {
+						int comparison = stateOrder.get(transition1.getTarget()).compareTo(
+								stateOrder.get(transition2.getTarget()));
+						return comparison != 0 ? comparison : transition1.getIdentifier().toString().compareTo(
+								transition2.getIdentifier().toString());
+					}
+				});
 				
-				for (State state1 : model1.getNodes()) {
-					for (State state2 : model2.getNodes()) {
-						if (results.sharedStateSojourns.get(new Pair<>(state1, state2)) == null) continue;
-						if (results.stateSojourns.get(state1) == 0 || results.stateSojourns.get(state2) == 0) continue;
-						
-						//FIXME: try with epsilon
-						calculateStateInterestingnessMetrics(results, state1, state2);
+				// Aggregate the outgoing transition counts of the source, in total and per co-occurring state
+				float outgoingTotalCount = 0.0f;
+				Map<State,Float> outgoingConditionalTotalCounts = new HashMap<>();
+				for (Transition transition : outEdges) {
+					outgoingTotalCount += annotatedModel1.getFrequency_TransitionAnnotation(transition).getObservations().getSum();
+					
+					StateCounts stateCounts = results.transitionsCooccurringStates.get(modelName1, transition);
+					if (stateCounts == null) continue;
+					
+					for (int index = 0; index < stateCounts.size(); index++) {
+						for (State state : getCooccurringStates(perspectiveStates, modelName1, stateCounts.getState(index))) {
+							Float outgoingConditionalTotalCount = outgoingConditionalTotalCounts.get(state);
+							outgoingConditionalTotalCounts.put(state, (outgoingConditionalTotalCount == null ? 0.0f :
+								outgoingConditionalTotalCount) + stateCounts.getCountAt(index));
+						}
 					}
 				}
 				
-				for (Transition transition : model1.getEdges()) {
-					for (State state : model2.getNodes()) {
-						if (!results.transitionsCooccurringStates.containsCount(modelName1, transition, modelName2, state)) continue;
-						if (results.stateSojourns.get(state) == 0) continue;
-						
-						calculateTransitionInterestingnessMetrics(results, modelName1, transition, modelName2, state);
-						calculateForwardInterestingnessMetrics(results, modelName1, transition, modelName2, state);
+				for (Transition transition : outEdges) {
+					StateCounts stateCounts = results.transitionsCooccurringStates.get(modelName1, transition);
+					if (stateCounts == null) continue;
+					
+					for (int index = 0; index < stateCounts.size(); index++) {
+						for (State state : getCooccurringStates(perspectiveStates, modelName1, stateCounts.getState(index))) {
+							if (results.stateSojourns.get(state) == 0) continue;
+							
+							String modelName2 = stateCounts.getState(index).getFirst();
+							int transitionCooccurringCount = stateCounts.getCountAt(index);
+							calculateTransitionInterestingnessMetrics(results, modelName1, transition, modelName2, state,
+									transitionCooccurringCount);
+							calculateForwardInterestingnessMetrics(results, modelName1, transition, modelName2, state,
+									transitionCooccurringCount, outgoingTotalCount, outgoingConditionalTotalCounts.get(state),
+									significance);
+						}
 					}
 				}
 			}
 		}
+		significance.computeAll(results.relations);
+	}
+	
+	/**
+	 * Returns the names of the perspective models in alphabetical order.
+	 */
+	private static List<String> getPerspectiveOrder(CSMMinerResults results) {
+		List<String> perspectiveNames = new ArrayList<>(results.tsMinerOutputs.keySet());
+		perspectiveNames.remove(CSMLabel);
+		Collections.sort(perspectiveNames);
+		
+		return perspectiveNames;
+	}
+	
+	/**
+	 * Numbers the states of the perspective models, by perspective in the given order and within a perspective by
+	 * identifier.
+	 */
+	private static Map<State,Integer> getStateOrder(CSMMinerResults results, List<String> perspectiveNames) {
+		Map<State,Integer> stateOrder = new HashMap<>();
+		for (String perspectiveName : perspectiveNames) {
+			for (State state : getSortedStates(results.tsMinerOutputs.get(perspectiveName).getTransitionSystem().getNodes())) {
+				stateOrder.put(state, stateOrder.size());
+			}
+		}
+		
+		return stateOrder;
+	}
+	
+	private static List<State> getSortedStates(Collection<State> states) {
+		List<State> sortedStates = new ArrayList<>(states);
+		Collections.sort(sortedStates, new Comparator<State>() {
+			public int compare(State state1, State state2) {
+				return state1.getIdentifier().toString().compareTo(state2.getIdentifier().toString());
+			}
+		});
+		
+		return sortedStates;
+	}
+	
+	/**
+	 * Returns the states of another perspective that co-occur with a transition of the given perspective, none if the
+	 * state is of the same perspective or not in the state models.
+	 */
+	private static List<State> getCooccurringStates(Map<String,Map<String,List<State>>> perspectiveStates,
+			String transitionPerspective, Pair<String,String> perspectiveState) {
+		String statePerspective = perspectiveState.getFirst();
+		if (statePerspective.equals(transitionPerspective) || !perspectiveStates.containsKey(statePerspective)) {
+			return Collections.emptyList();
+		}
+		
+		List<State> states = perspectiveStates.get(statePerspective).get(perspectiveState.getSecond());
+		return states == null ? Collections.<State>emptyList() : states;
+	}
+	
+	/**
+	 * Mines the sets of states of three or more perspectives that co-occur, from the composite states and their
+	 * sojourns. Requires the relation statistics.
+	 */
+	public static void mineStateSets(CSMMinerResults results, CSMMinerSettings settings) {
+		results.stateSets = new StateSetMiner(results, settings.minStateSetSupport, settings.maxStateSetSize).mine(3);
 	}
 	
 	public static void calculateTotalStatistics(CSMMinerResults results, String modelName) {
@@ -656,7 +717,7 @@ public class CSMMiner {
 	 * Phi: 0 = independence, higher is stronger relation, (-1,1) approximately
 	 */
 	public static void calculateStateInterestingnessMetrics(CSMMinerResults results, State state1, State state2) {
-		Pair<Object, Object> pair = new Pair<Object,Object>(state1, state2);
+		Pair<State, State> pair = new Pair<>(state1, state2);
 		float supportShared = results.sharedStateSojourns.get(pair) / results.totalStateSojourns.get(CSMMiner.CSMLabel);
 		float supportState1 = results.stateSojourns.get(state1) / results.totalStateSojourns.get(CSMMiner.CSMLabel);
 		float supportState2 = results.stateSojourns.get(state2) / results.totalStateSojourns.get(CSMMiner.CSMLabel);
@@ -669,23 +730,20 @@ public class CSMMiner {
 		float phi = (float) ((supportShared - supportState1 * supportState2) /
 				(Math.sqrt(supportState1 * supportState2 * (1 - supportState1) * (1 - supportState2))));
 		
-		results.support.put(pair, supportShared);
-		results.confidence.put(pair, confidence);
-		results.lift.put(pair, lift);
-		results.conviction.put(pair, conviction);
-		results.cosine.put(pair, cosine);
-		results.jaccard.put(pair, jaccard);
-		results.phi.put(pair, phi);
+		results.relations.put(state1, state2, supportShared, confidence, lift, conviction, cosine, jaccard, phi);
 	}
 	
 	public static void calculateTransitionInterestingnessMetrics(CSMMinerResults results, String transitionPerspective,
 			Transition transition, String statePerspective, State state) {
-		Pair<Object, Object> pair = new Pair<Object, Object>(transition, state);
+		calculateTransitionInterestingnessMetrics(results, transitionPerspective, transition, statePerspective, state,
+				results.transitionsCooccurringStates.getCount(transitionPerspective, transition, statePerspective, state));
+	}
+	
+	public static void calculateTransitionInterestingnessMetrics(CSMMinerResults results, String transitionPerspective,
+			Transition transition, String statePerspective, State state, int transitionCooccurringCount) {
 		FrequencyTransitionAnnotation annotation = results.annotatedTSMinerOutputs.get(transitionPerspective).
 				getFrequency_TransitionAnnotation(transition);
 		
-		int transitionCooccurringCount = results.transitionsCooccurringStates.getCount(
-				transitionPerspective, transition, statePerspective, state);
 		float confidence = transitionCooccurringCount / annotation.getObservations().getSum();
 		float supportTransition = annotation.getObservations().getSum() / results.totalTransitionCounts.get(transitionPerspective);
 		float supportState = results.stateSojourns.get(state) / results.totalStateSojourns.get(CSMMiner.CSMLabel);
@@ -698,20 +756,26 @@ public class CSMMiner {
 		float phi = (float) ((supportShared - supportTransition * supportState) /
 				(Math.sqrt(supportTransition * supportState * (1 - supportTransition) * (1 - supportState))));
 		
-		results.support.put(pair, supportShared);
-		results.confidence.put(pair, confidence);
-		results.lift.put(pair, lift);
-		results.conviction.put(pair, conviction);
-		results.cosine.put(pair, cosine);
-		results.jaccard.put(pair, jaccard);
-		results.phi.put(pair, phi);
+		results.relations.put(transition, state, supportShared, confidence, lift, conviction, cosine, jaccard, phi);
 	}
 	
+	/**
+	 * Calculates the forward metrics of a single relation, including its significance.
+	 */
 	public static void calculateForwardInterestingnessMetrics(CSMMinerResults results, String transitionPerspective,
 			Transition transition, String statePerspective, State state) {
-		Pair<Object, Object> pair = new Pair<Object, Object>(state, transition);
-		FrequencyTransitionAnnotation annotation = results.annotatedTSMinerOutputs.get(transitionPerspective).
-				getFrequency_TransitionAnnotation(transition);
+		BinomialSignificance significance = new BinomialSignificance(new CSMMinerSettings().maxExactBinomialTrials);
+		calculateForwardInterestingnessMetrics(results, transitionPerspective, transition, statePerspective, state,
+				significance);
+		significance.computeAll(results.relations);
+	}
+	
+	/**
+	 * Calculates the forward metrics of a single relation. The significance is added to the batch of the given
+	 * significance engine, it is stored once the caller computes the batch.
+	 */
+	public static void calculateForwardInterestingnessMetrics(CSMMinerResults results, String transitionPerspective,
+			Transition transition, String statePerspective, State state, BinomialSignificance significance) {
 		TSMinerTransitionSystem model = results.tsMinerOutputs.get(transitionPerspective).getTransitionSystem();
 		
 		float outgoingTotalCount = 0.0f;
@@ -725,8 +789,22 @@ public class CSMMiner {
 			}
 		}
 		
-		int transitionCooccurringCount = results.transitionsCooccurringStates.getCount(
-				transitionPerspective, transition, statePerspective, state);
+		calculateForwardInterestingnessMetrics(results, transitionPerspective, transition, statePerspective, state,
+				results.transitionsCooccurringStates.getCount(transitionPerspective, transition, statePerspective, state),
+				outgoingTotalCount, outgoingConditionalTotalCount, significance);
+	}
+	
+	/**
+	 * Calculates the forward metrics from the total count of the transitions leaving the source of the transition and
+	 * the total count of these transitions co-occurring with the state. The significance is added to the batch, it is
+	 * stored once the batch is computed.
+	 */
+	public static void calculateForwardInterestingnessMetrics(CSMMinerResults results, String transitionPerspective,
+			Transition transition, String statePerspective, State state, int transitionCooccurringCount,
+			float outgoingTotalCount, float outgoingConditionalTotalCount, BinomialSignificance significance) {
+		FrequencyTransitionAnnotation annotation = results.annotatedTSMinerOutputs.get(transitionPerspective).
+				getFrequency_TransitionAnnotation(transition);
+		
 		float confidence = transitionCooccurringCount / outgoingConditionalTotalCount;
 		float supportTransition = annotation.getObservations().getSum() / outgoingTotalCount;
 		float supportState = outgoingConditionalTotalCount / outgoingTotalCount;
@@ -739,33 +817,9 @@ public class CSMMiner {
 		float phi = (float) ((supportShared - supportTransition * supportState) /
 				(Math.sqrt(supportTransition * supportState * (1 - supportTransition) * (1 - supportState))));
 		
-//		BinomialDistribution distribution = new BinomialDistribution(null, (int) outgoingTotalCount, supportTransition * supportState);
-//		float significance = (float) distribution.cumulativeProbability(transitionCooccurringCount - 1);
-		
-		results.support.put(pair, supportShared);
-		results.confidence.put(pair, confidence);
-		results.lift.put(pair, lift);
-		results.conviction.put(pair, conviction);
-		results.cosine.put(pair, cosine);
-		results.jaccard.put(pair, jaccard);
-		results.phi.put(pair, phi);
-//		results.significance.put(pair, significance);
+		int relation = results.relations.put(state, transition, supportShared, confidence, lift, conviction, cosine, jaccard, phi);
+		significance.add(relation, (int) outgoingTotalCount, supportTransition * supportState, transitionCooccurringCount);
 	}
 	
-	private static Comparator<StateEntry> StateEntryComparator = new Comparator<StateEntry>() {
 
-		public int compare(StateEntry o1, StateEntry o2) {
-			if (o1.duration > o2.duration) {
-				return 1;
-			}
-			else if (o1.duration < o2.duration) {
-				return -1;
-			}
-			else { //if (o1.duration == o2.duration) {
-				return 0;
-			}
-		}
-		
-	};
-	
 }
\ No newline at end of file
@@ -1,11 +1,15 @@
 package org.processmining.csmminer;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.deckfour.xes.model.XLog;
+import org.processmining.csmminer.relations.RelationQuery;
+import org.processmining.csmminer.relations.RelationStore;
 import org.processmining.csmminer.relations.StateMap;
+import org.processmining.csmminer.relations.StateSet;
 import org.processmining.csmminer.relations.TransitionMap;
 import org.processmining.csmminer.relations.TransitionsCooccurringStates;
 import org.processmining.csmminer.visualisation.VisualisationConnections;
@@ -38,14 +42,8 @@ public class CSMMinerResults {
 	public Map<Pair<State,State>,Float> sharedStateSojourns = new HashMap<>();
 	public Map<Pair<State,State>,Integer> sharedStateFrequencies = new HashMap<>();
 	
-	public Map<Pair<Object,Object>,Float> support = new HashMap<>();
-	public Map<Pair<Object,Object>,Float> confidence = new HashMap<>();
-	public Map<Pair<Object,Object>,Float> lift = new HashMap<>();
-	public Map<Pair<Object,Object>,Float> conviction = new HashMap<>();
-	public Map<Pair<Object,Object>,Float> cosine = new HashMap<>();
-	public Map<Pair<Object,Object>,Float> jaccard = new HashMap<>();
-	public Map<Pair<Object,Object>,Float> phi = new HashMap<>();
-	public Map<Pair<Object,Object>,Float> significance = new HashMap<>();
+	public RelationStore relations = new RelationStore();
+	public List<StateSet> stateSets = new ArrayList<>();
 
 	public CSMMinerResults(Map<String, TSMinerOutput> tsMinerOutputs, HashMap<String, AnnotatedTransitionSystem> annotatedTSMinerOutputs,
 			TransitionsCooccurringStates transitionsCooccurringStates, StateMap stateMap, TransitionMap transitionMap, XLog log,
@@ -66,6 +64,20 @@ public class CSMMinerResults {
 		this.log = log;
 	}
 
+	/**
+	 * Returns the ids in the relation store of the k relations with the highest value of the given metric.
+	 */
+	public int[] getTopRelations(int metric, int k) {
+		return new RelationQuery().setTop(metric, k).run(relations);
+	}
+	
+	/**
+	 * Returns the ids in the relation store of the relations matching the query.
+	 */
+	public int[] getRelations(RelationQuery query) {
+		return query.run(relations);
+	}
+	
 	public void print() {
 		for (String modelName : tsMinerOutputs.keySet()) {
 			System.out.println(modelName + ": " + tsMinerOutputs.get(modelName));
@@ -0,0 +1,58 @@
+package org.processmining.csmminer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.processmining.csmminer.statistics.StatisticsBackend;
+
+/**
+ * Settings of a run of the CSM Miner. Every run is given its own settings object, so runs with different settings can
+ * be executed at the same time.
+ */
+public class CSMMinerSettings {
+	
+	// Number of threads used to discover and annotate the state models
+	public int threads = Runtime.getRuntime().availableProcessors();
+	// Minimum number of traces in a partition of a log that is mined or annotated concurrently
+	public int minTracesPerPartition = 250;
+	
+	// Statistics backend of the time annotations and the fast/slow split, exact statistics keep every value
+	public StatisticsBackend.Mode statisticsMode = StatisticsBackend.Mode.AUTOMATIC;
+	// Maximum number of events of a log for which the automatic mode uses exact statistics
+	public long maxExactStatisticsEvents = 1000000;
+	// Maximum relative error of the percentiles of the streaming statistics
+	public double statisticsRelativeAccuracy = 0.01;
+	// Quantiles at which the state entries and traces are split into performance buckets, the median gives a fast
+	// and a slow half
+	public double[] performanceQuantiles = { 0.5 };
+	// Minimum support of the sets of co-occurring states spanning three or more perspectives, and the maximum number of
+	// states in such a set (0 for no maximum)
+	public float minStateSetSupport = 0.05f;
+	public int maxStateSetSize = 0;
+	// Maximum number of trials for which the significance is computed with the exact binomial distribution, above it
+	// a normal or Poisson approximation is used
+	public int maxExactBinomialTrials = 1000;
+	
+	/**
+	 * Returns the statistics backend configured for a log with the given number of events.
+	 */
+	public StatisticsBackend getStatisticsBackend(long events) {
+		return StatisticsBackend.create(statisticsMode, events, maxExactStatisticsEvents, statisticsRelativeAccuracy);
+	}
+	
+	/**
+	 * Creates the executor of a run, using the configured number of threads. The caller shuts it down at the end of the
+	 * run.
+	 */
+	public ExecutorService createExecutor() {
+		return Executors.newFixedThreadPool(Math.max(1, threads));
+	}
+	
+	/**
+	 * Returns the number of trace partitions for mining or annotating a log, one per thread as long as every partition
+	 * gets at least minTracesPerPartition traces.
+	 */
+	public int getPartitionCount(int traces) {
+		return Math.max(1, Math.min(threads, traces / Math.max(1, minTracesPerPartition)));
+	}
+}
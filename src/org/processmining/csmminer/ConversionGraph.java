@@ -0,0 +1,409 @@
+package org.processmining.csmminer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.processmining.csmminer.log.LongDictionary;
+import org.processmining.csmminer.log.StateDictionary;
+import org.processmining.models.graphbased.directed.DirectedGraphElementWeights;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.plugins.transitionsystem.miner.TSMinerTransitionSystem;
+
+/**
+ * Working copy of a transition system on which the conversions of the {@link SMConverter} are applied in place. The
+ * states, transition labels and edges have dense int ids, the states in the order of the nodes of the original
+ * transition system. The outgoing edges are listed both per state and per (state, label), and an edge is found by its
+ * source, target and label in constant time. States and edges are removed by marking them, the adjacency lists are
+ * compacted when they are requested. Every change marks the states around it as touched, so the conversions only have
+ * to check these states again.
+ */
+public class ConversionGraph {
+	
+	// States by id and the ids by state identifier, with the weights, the removed states and the start and accept states
+	private final List<Object> states;
+	private final Map<Object,Integer> stateIds;
+	private final int[] stateWeights;
+	private final BitSet removedStates;
+	private final BitSet starts;
+	private final BitSet accepts;
+	
+	// Transition labels by id and the ids by transition identifier
+	private final List<Object> labels;
+	private final Map<Object,Integer> labelIds;
+	
+	// Edges by id: the packed (source, target) pairs and packed (pair, label) keys, the source, target, label and weight
+	// of every edge and the edges that are in the graph. A removed edge keeps its id if it is added again.
+	private final LongDictionary statePairs;
+	private final LongDictionary edgeKeys;
+	private int[] edgeSources;
+	private int[] edgeTargets;
+	private int[] edgeLabels;
+	private int[] edgeWeights;
+	private final BitSet liveEdges;
+	
+	// Outgoing and incoming edges per state, possibly including removed edges, and the edges in these lists
+	private final int[][] outEdges;
+	private final int[] outEdgeCounts;
+	private final BitSet listedOutEdges;
+	private final int[][] inEdges;
+	private final int[] inEdgeCounts;
+	private final BitSet listedInEdges;
+	
+	// Outgoing edges per (state, label) slot, keyed by packed (state, label) pairs, and the edges in these lists
+	private final LongDictionary stateLabels;
+	private int[][] labelledOutEdges;
+	private int[] labelledOutEdgeCounts;
+	private final BitSet listedLabelledOutEdges;
+	
+	// Packed (merged state, proxy state) pairs in the order in which the states were merged
+	private final List<Long> proxies;
+	
+	private final BitSet touchedStates;
+	private boolean changed;
+	
+	public ConversionGraph(TSMinerTransitionSystem ts, DirectedGraphElementWeights weights, Iterable<Object> starts,
+			Iterable<Object> accepts) {
+		states = new ArrayList<>();
+		stateIds = new HashMap<>();
+		for (State state : ts.getNodes()) {
+			stateIds.put(state.getIdentifier(), states.size());
+			states.add(state.getIdentifier());
+		}
+		
+		stateWeights = new int[states.size()];
+		for (int state = 0; state < states.size(); state++) {
+			stateWeights[state] = weights.get(states.get(state), 1);
+		}
+		removedStates = new BitSet();
+		this.starts = getStates(starts);
+		this.accepts = getStates(accepts);
+		
+		labels = new ArrayList<>();
+		labelIds = new HashMap<>();
+		
+		statePairs = new LongDictionary();
+		edgeKeys = new LongDictionary();
+		edgeSources = new int[16];
+		edgeTargets = new int[16];
+		edgeLabels = new int[16];
+		edgeWeights = new int[16];
+		liveEdges = new BitSet();
+		
+		outEdges = new int[states.size()][];
+		outEdgeCounts = new int[states.size()];
+		listedOutEdges = new BitSet();
+		inEdges = new int[states.size()][];
+		inEdgeCounts = new int[states.size()];
+		listedInEdges = new BitSet();
+		
+		stateLabels = new LongDictionary();
+		labelledOutEdges = new int[16][];
+		labelledOutEdgeCounts = new int[16];
+		listedLabelledOutEdges = new BitSet();
+		
+		proxies = new ArrayList<>();
+		touchedStates = new BitSet();
+		
+		for (Transition transition : ts.getEdges()) {
+			Object source = transition.getSource().getIdentifier();
+			Object target = transition.getTarget().getIdentifier();
+			addEdge(stateIds.get(source), stateIds.get(target), addLabel(transition.getIdentifier()),
+					weights.get(source, target, transition.getIdentifier(), 1));
+		}
+		
+		touchedStates.clear();
+		changed = false;
+	}
+	
+	private BitSet getStates(Iterable<Object> identifiers) {
+		BitSet stateSet = new BitSet();
+		for (Object identifier : identifiers) {
+			Integer state = stateIds.get(identifier);
+			if (state != null) {
+				stateSet.set(state);
+			}
+		}
+		return stateSet;
+	}
+	
+	/**
+	 * Returns the number of state ids, including those of the removed states.
+	 */
+	public int getStateCount() {
+		return states.size();
+	}
+	
+	public boolean isRemoved(int state) {
+		return removedStates.get(state);
+	}
+	
+	public Object getState(int state) {
+		return states.get(state);
+	}
+	
+	public int getStateWeight(int state) {
+		return stateWeights[state];
+	}
+	
+	public BitSet getStarts() {
+		return starts;
+	}
+	
+	public BitSet getAccepts() {
+		return accepts;
+	}
+	
+	public int addLabel(Object transitionIdentifier) {
+		Integer id = labelIds.get(transitionIdentifier);
+		if (id != null) return id;
+		
+		id = labels.size();
+		labels.add(transitionIdentifier);
+		labelIds.put(transitionIdentifier, id);
+		
+		return id;
+	}
+	
+	public Object getLabel(int label) {
+		return labels.get(label);
+	}
+	
+	/**
+	 * Returns the number of edge ids, including those of the removed edges.
+	 */
+	public int getEdgeCount() {
+		return edgeKeys.size();
+	}
+	
+	public boolean isLive(int edge) {
+		return liveEdges.get(edge);
+	}
+	
+	public int getSource(int edge) {
+		return edgeSources[edge];
+	}
+	
+	public int getTarget(int edge) {
+		return edgeTargets[edge];
+	}
+	
+	public int getEdgeLabel(int edge) {
+		return edgeLabels[edge];
+	}
+	
+	public int getEdgeWeight(int edge) {
+		return edgeWeights[edge];
+	}
+	
+	/**
+	 * Adds the weight to the edge from the source to the target with the given label, adding the edge if it is not in
+	 * the graph. Returns the id of the edge.
+	 */
+	public int addEdge(int source, int target, int label, int weight) {
+		int pair = statePairs.intern(LongDictionary.pack(source, target));
+		int edge = edgeKeys.intern(LongDictionary.pack(pair, label));
+		if (edge == edgeSources.length) {
+			edgeSources = Arrays.copyOf(edgeSources, 2 * edge);
+			edgeTargets = Arrays.copyOf(edgeTargets, 2 * edge);
+			edgeLabels = Arrays.copyOf(edgeLabels, 2 * edge);
+			edgeWeights = Arrays.copyOf(edgeWeights, 2 * edge);
+		}
+		edgeSources[edge] = source;
+		edgeTargets[edge] = target;
+		edgeLabels[edge] = label;
+		
+		if (!liveEdges.get(edge)) {
+			liveEdges.set(edge);
+			edgeWeights[edge] = 0;
+			if (!listedOutEdges.get(edge)) {
+				append(outEdges, outEdgeCounts, source, edge);
+				listedOutEdges.set(edge);
+			}
+			if (!listedInEdges.get(edge)) {
+				append(inEdges, inEdgeCounts, target, edge);
+				listedInEdges.set(edge);
+			}
+			if (!listedLabelledOutEdges.get(edge)) {
+				int slot = stateLabels.intern(LongDictionary.pack(source, label));
+				if (slot == labelledOutEdges.length) {
+					labelledOutEdges = Arrays.copyOf(labelledOutEdges, 2 * slot);
+					labelledOutEdgeCounts = Arrays.copyOf(labelledOutEdgeCounts, 2 * slot);
+				}
+				append(labelledOutEdges, labelledOutEdgeCounts, slot, edge);
+				listedLabelledOutEdges.set(edge);
+			}
+			touch(source, target);
+		}
+		edgeWeights[edge] += weight;
+		
+		return edge;
+	}
+	
+	/**
+	 * Returns the id of the edge from the source to the target with the given label, or
+	 * {@link StateDictionary#UNKNOWN} if it is not in the graph.
+	 */
+	public int getEdge(int source, int target, int label) {
+		int pair = statePairs.getId(LongDictionary.pack(source, target));
+		if (pair == StateDictionary.UNKNOWN) return StateDictionary.UNKNOWN;
+		
+		int edge = edgeKeys.getId(LongDictionary.pack(pair, label));
+		return edge != StateDictionary.UNKNOWN && liveEdges.get(edge) ? edge : StateDictionary.UNKNOWN;
+	}
+	
+	public void removeEdge(int edge) {
+		liveEdges.clear(edge);
+		touch(edgeSources[edge], edgeTargets[edge]);
+	}
+	
+	/**
+	 * Removes a state without edges. The start and accept states are not changed.
+	 */
+	public void removeState(int state) {
+		removedStates.set(state);
+		touch(state, state);
+	}
+	
+	/**
+	 * Merges the state into the proxy state: its edges are moved to the proxy, adding up the weights of edges that
+	 * coincide, and the proxy takes over its weight and its being a start or accept state.
+	 */
+	public void merge(int state, int proxy) {
+		int[] edges = Arrays.copyOf(getOutEdges(state), getOutEdgeCount(state));
+		for (int edge : edges) {
+			removeEdge(edge);
+			int target = edgeTargets[edge] == state ? proxy : edgeTargets[edge];
+			addEdge(proxy, target, edgeLabels[edge], edgeWeights[edge]);
+		}
+		edges = Arrays.copyOf(getInEdges(state), getInEdgeCount(state));
+		for (int edge : edges) {
+			removeEdge(edge);
+			addEdge(edgeSources[edge], proxy, edgeLabels[edge], edgeWeights[edge]);
+		}
+		
+		stateWeights[proxy] += stateWeights[state];
+		if (starts.get(state)) {
+			starts.clear(state);
+			starts.set(proxy);
+		}
+		if (accepts.get(state)) {
+			accepts.clear(state);
+			accepts.set(proxy);
+		}
+		
+		removedStates.set(state);
+		proxies.add(LongDictionary.pack(state, proxy));
+		touch(state, proxy);
+	}
+	
+	/**
+	 * Returns the number of outgoing edges of the state, after which the first that many entries of
+	 * {@link #getOutEdges(int)} are these edges.
+	 */
+	public int getOutEdgeCount(int state) {
+		compact(outEdges, outEdgeCounts, listedOutEdges, state);
+		return outEdgeCounts[state];
+	}
+	
+	public int[] getOutEdges(int state) {
+		return outEdges[state] == null ? new int[0] : outEdges[state];
+	}
+	
+	/**
+	 * Returns the number of outgoing edges of the state with the given label, after which the first that many entries
+	 * of {@link #getOutEdges(int, int)} are these edges.
+	 */
+	public int getOutEdgeCount(int state, int label) {
+		int slot = stateLabels.getId(LongDictionary.pack(state, label));
+		if (slot == StateDictionary.UNKNOWN) return 0;
+		
+		compact(labelledOutEdges, labelledOutEdgeCounts, listedLabelledOutEdges, slot);
+		return labelledOutEdgeCounts[slot];
+	}
+	
+	public int[] getOutEdges(int state, int label) {
+		int slot = stateLabels.getId(LongDictionary.pack(state, label));
+		return slot == StateDictionary.UNKNOWN ? new int[0] : labelledOutEdges[slot];
+	}
+	
+	/**
+	 * Returns the number of incoming edges of the state, after which the first that many entries of
+	 * {@link #getInEdges(int)} are these edges.
+	 */
+	public int getInEdgeCount(int state) {
+		compact(inEdges, inEdgeCounts, listedInEdges, state);
+		return inEdgeCounts[state];
+	}
+	
+	public int[] getInEdges(int state) {
+		return inEdges[state] == null ? new int[0] : inEdges[state];
+	}
+	
+	/**
+	 * Returns the merged states with their proxies as packed (state, proxy) pairs, in the order of merging.
+	 */
+	public List<Long> getProxies() {
+		return proxies;
+	}
+	
+	/**
+	 * Returns the states touched by the changes since the last call, and clears them.
+	 */
+	public BitSet takeTouchedStates() {
+		BitSet touched = (BitSet) touchedStates.clone();
+		touchedStates.clear();
+		return touched;
+	}
+	
+	public boolean isChanged() {
+		return changed;
+	}
+	
+	/**
+	 * Returns whether states were removed or merged into other states.
+	 */
+	public boolean hasRemovedStates() {
+		return !removedStates.isEmpty();
+	}
+	
+	private void touch(int source, int target) {
+		touchedStates.set(source);
+		touchedStates.set(target);
+		changed = true;
+	}
+	
+	private static void append(int[][] lists, int[] counts, int list, int edge) {
+		int[] edges = lists[list];
+		if (edges == null) {
+			edges = new int[4];
+			lists[list] = edges;
+		}
+		else if (counts[list] == edges.length) {
+			edges = Arrays.copyOf(edges, 2 * edges.length);
+			lists[list] = edges;
+		}
+		edges[counts[list]++] = edge;
+	}
+	
+	/**
+	 * Drops the removed edges from the list of a state or slot, these are no longer listed.
+	 */
+	private void compact(int[][] lists, int[] counts, BitSet listed, int list) {
+		int[] edges = lists[list];
+		int count = 0;
+		for (int i = 0; i < counts[list]; i++) {
+			if (liveEdges.get(edges[i])) {
+				edges[count++] = edges[i];
+			}
+			else {
+				listed.clear(edges[i]);
+			}
+		}
+		counts[list] = count;
+	}
+}
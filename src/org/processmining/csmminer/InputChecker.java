@@ -26,10 +26,7 @@ public class InputChecker {
 	private static boolean initialStateInformation;
 	
 	public synchronized static int checkStateLog(UIPluginContext context, XLog log) {
-		perspectives = new HashSet<>();
-		firstTrace = true;
-		firstEvent = true;
-		initialStateInformation = true;
+		initialise();
 		
 		for (XTrace trace : log) {
 			if (!checkTrace(trace)) return INVALID;
@@ -42,6 +39,16 @@ public class InputChecker {
 		
 		return VALID;
 	}
+	
+	/**
+	 * Resets the state of the checker, needs to be called before checking the traces and events of a new log.
+	 */
+	public static void initialise() {
+		perspectives = new HashSet<>();
+		firstTrace = true;
+		firstEvent = true;
+		initialStateInformation = true;
+	}
 
 	public static boolean checkTrace(XTrace trace) {
 		XAttributeMap attributes = trace.getAttributes();
@@ -0,0 +1,399 @@
+package org.processmining.csmminer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import org.processmining.csmminer.log.CompositeStateTable;
+import org.processmining.csmminer.log.EncodedStateLog;
+import org.processmining.csmminer.log.EncodedTrace;
+import org.processmining.csmminer.log.LongDictionary;
+import org.processmining.csmminer.log.StateDictionary;
+import org.processmining.csmminer.relations.PerformanceBuckets;
+import org.processmining.csmminer.relations.StateCounts;
+import org.processmining.csmminer.relations.TransitionsCooccurringStates;
+import org.processmining.csmminer.statistics.StatisticsAccumulator;
+import org.processmining.csmminer.statistics.StatisticsBackend;
+import org.processmining.framework.util.Pair;
+
+
+/**
+ * Computes the perspective interactions of an encoded state log on dense int-indexed arrays. A perspective state, a
+ * state of a given perspective, is identified by perspective * (number of state names) + state id. State entries,
+ * transitions and co-occurrences are interned to dense ids, and the state names are only looked up when the results
+ * are converted to the string-keyed relations.
+ * 
+ * An engine is not thread-safe and processes the traces on the calling thread. The composite states are interned in
+ * the composite state table of the state log, which is shared with the composite log, under the lock of that table.
+ */
+public class InteractionEngine {
+	private final EncodedStateLog stateLog;
+	private final List<String> perspectiveNames;
+	private final StateDictionary stateNames;
+	private final CompositeStateTable compositeStates;
+	private final int perspectives;
+	private final int states;
+	
+	// Transitions of the perspectives keyed by (perspective state before, state after), composite transitions keyed by
+	// (composite state before, composite state after)
+	private final LongDictionary perspectiveTransitions;
+	private final LongDictionary compositeTransitions;
+	// Counts of the states co-occurring with the transitions, keyed by (transition, perspective state), the composite
+	// states co-occurring with a perspective transition have perspective state (number of perspective states) + id
+	private final Cells perspectiveTransitionStates;
+	private final Cells compositeTransitionStates;
+	
+	// The time spent per state in each trace and the time spent per entry of a state
+	private final Entries traceEntries;
+	private final Entries visitEntries;
+	// The time other perspective states co-occur with an entry, keyed by (entry, other perspective state)
+	private final Cells traceCooccurrences;
+	private final Cells visitCooccurrences;
+	// The number of times a perspective transition co-occurs with an entry, keyed by (entry, transition)
+	private final Cells traceTransitions;
+	private final Cells visitTransitions;
+	
+	// The names of the perspective states, created when needed
+	private final String[] perspectiveStateNames;
+	private long events;
+	
+	public InteractionEngine(EncodedStateLog stateLog) {
+		this.stateLog = stateLog;
+		this.perspectiveNames = stateLog.getPerspectiveNames();
+		this.stateNames = stateLog.getStateNames();
+		this.compositeStates = stateLog.getCompositeStates();
+		this.perspectives = perspectiveNames.size();
+		this.states = stateNames.size();
+		
+		perspectiveTransitions = new LongDictionary();
+		compositeTransitions = new LongDictionary();
+		perspectiveTransitionStates = new Cells();
+		compositeTransitionStates = new Cells();
+		
+		traceEntries = new Entries();
+		visitEntries = new Entries();
+		traceCooccurrences = new Cells();
+		visitCooccurrences = new Cells();
+		traceTransitions = new Cells();
+		visitTransitions = new Cells();
+		
+		perspectiveStateNames = new String[perspectives * states];
+	}
+	
+	/**
+	 * Processes all traces of the state log, holding the lock of the composite state table.
+	 */
+	public void run() {
+		synchronized (compositeStates) {
+			processTraces();
+		}
+	}
+	
+	private void processTraces() {
+		int[] perspectiveStateIds = new int[perspectives];
+		int[] traceEntryIds = new int[perspectives * states];
+		int[] visitEntryIds = new int[perspectives];
+		int[] touchedStates = new int[perspectives * states];
+		Arrays.fill(traceEntryIds, -1);
+		
+		for (EncodedTrace trace : stateLog.getTraces()) {
+			System.arraycopy(trace.initialStates, 0, perspectiveStateIds, 0, perspectives);
+			events += trace.size();
+			Arrays.fill(visitEntryIds, -1);
+			int touched = 0;
+			int compositeToState = trace.size() > 0 ? compositeStates.intern(perspectiveStateIds) : StateDictionary.UNKNOWN;
+			
+			for (int j = 0; j < trace.size(); j++) {
+				int eventPerspective = trace.perspectives[j];
+				int eventState = trace.states[j];
+				int oldState = perspectiveStateIds[eventPerspective];
+				
+				// Count the states co-occurring with the perspective transition and the composite transition
+				int transition = perspectiveTransitions.intern(LongDictionary.pack(getPerspectiveState(eventPerspective, oldState),
+						eventState));
+				for (int p = 0; p < perspectives; p++) {
+					perspectiveTransitionStates.add(LongDictionary.pack(transition, getPerspectiveState(p, perspectiveStateIds[p])), 1);
+				}
+				
+				int compositeFromState = compositeToState;
+				perspectiveStateIds[eventPerspective] = eventState;
+				compositeToState = compositeStates.intern(perspectiveStateIds);
+				perspectiveTransitionStates.add(LongDictionary.pack(transition, perspectives * states + compositeFromState), 1);
+				
+				int compositeTransition = compositeTransitions.intern(LongDictionary.pack(compositeFromState, compositeToState));
+				for (int p = 0; p < perspectives; p++) {
+					if (p != eventPerspective) {
+						compositeTransitionStates.add(LongDictionary.pack(compositeTransition,
+								getPerspectiveState(p, perspectiveStateIds[p])), 1);
+					}
+				}
+				
+				if (j < trace.size() - 1) {
+					long eventDuration = trace.timestamps[j+1] - trace.timestamps[j];
+					
+					// Add the duration to the trace entries and the current entries of the states
+					for (int p = 0; p < perspectives; p++) {
+						int perspectiveState = getPerspectiveState(p, perspectiveStateIds[p]);
+						int traceEntry = traceEntryIds[perspectiveState];
+						if (traceEntry == -1) {
+							traceEntry = traceEntries.add(perspectiveState, 0);
+							traceEntryIds[perspectiveState] = traceEntry;
+							touchedStates[touched++] = perspectiveState;
+						}
+						traceEntries.durations[traceEntry] += eventDuration;
+						
+						if (p == eventPerspective) {
+							visitEntryIds[p] = visitEntries.add(perspectiveState, eventDuration);
+						}
+						else {
+							if (visitEntryIds[p] == -1) {
+								visitEntryIds[p] = visitEntries.add(perspectiveState, 0);
+							}
+							visitEntries.durations[visitEntryIds[p]] += eventDuration;
+						}
+					}
+					
+					// Calculate co-occurrence
+					for (int p = 0; p < perspectives; p++) {
+						int traceEntry = traceEntryIds[getPerspectiveState(p, perspectiveStateIds[p])];
+						int visitEntry = visitEntryIds[p];
+						
+						for (int o = 0; o < perspectives; o++) {
+							if (p == o) continue;
+							int otherPerspectiveState = getPerspectiveState(o, perspectiveStateIds[o]);
+							traceCooccurrences.add(LongDictionary.pack(traceEntry, otherPerspectiveState), eventDuration);
+							visitCooccurrences.add(LongDictionary.pack(visitEntry, otherPerspectiveState), eventDuration);
+						}
+						
+						// Calculate transition co-occurrence
+						if (oldState == eventState) continue;
+						if (p == eventPerspective) continue;
+						traceTransitions.add(LongDictionary.pack(traceEntry, transition), 1);
+						visitTransitions.add(LongDictionary.pack(visitEntry, transition), 1);
+					}
+				}
+				else {
+					// Calculate transition co-occurrence for the entries that end with the trace
+					for (int p = 0; p < perspectives; p++) {
+						if (p == eventPerspective) continue;
+						int traceEntry = traceEntryIds[getPerspectiveState(p, perspectiveStateIds[p])];
+						if (traceEntry != -1) traceTransitions.add(LongDictionary.pack(traceEntry, transition), 1);
+						if (visitEntryIds[p] != -1) visitTransitions.add(LongDictionary.pack(visitEntryIds[p], transition), 1);
+					}
+				}
+			}
+			
+			for (int i = 0; i < touched; i++) {
+				traceEntryIds[touchedStates[i]] = -1;
+			}
+		}
+	}
+	
+	private int getPerspectiveState(int perspective, int state) {
+		return perspective * states + state;
+	}
+	
+	private String getPerspectiveStateName(int perspectiveState) {
+		if (perspectiveStateNames[perspectiveState] == null) {
+			perspectiveStateNames[perspectiveState] = perspectiveNames.get(perspectiveState / states) + "~"
+					+ stateNames.getName(perspectiveState % states);
+		}
+		return perspectiveStateNames[perspectiveState];
+	}
+	
+	/**
+	 * Returns the states co-occurring with every perspective transition and composite transition.
+	 */
+	public TransitionsCooccurringStates getTransitionsCooccurringStates() {
+		TransitionsCooccurringStates transitionsCooccurringStates = new TransitionsCooccurringStates();
+		
+		StateCounts[] perspectiveStateCounts = new StateCounts[perspectiveTransitions.size()];
+		for (int t = 0; t < perspectiveTransitions.size(); t++) {
+			long key = perspectiveTransitions.getKey(t);
+			int fromState = LongDictionary.getHigh(key);
+			perspectiveStateCounts[t] = new StateCounts(transitionsCooccurringStates.getStateKeys());
+			transitionsCooccurringStates.put(perspectiveNames.get(fromState / states), stateNames.getName(fromState % states),
+					stateNames.getName(LongDictionary.getLow(key)), perspectiveStateCounts[t]);
+		}
+		for (int c = 0; c < perspectiveTransitionStates.size(); c++) {
+			long key = perspectiveTransitionStates.getKey(c);
+			int perspectiveState = LongDictionary.getLow(key);
+			if (perspectiveState < perspectives * states) {
+				perspectiveStateCounts[LongDictionary.getHigh(key)].add(perspectiveNames.get(perspectiveState / states),
+						stateNames.getName(perspectiveState % states), (int) perspectiveTransitionStates.values[c]);
+			}
+			else {
+				perspectiveStateCounts[LongDictionary.getHigh(key)].add(CSMMiner.CSMLabel,
+						compositeStates.getName(perspectiveState - perspectives * states), (int) perspectiveTransitionStates.values[c]);
+			}
+		}
+		
+		StateCounts[] compositeStateCounts = new StateCounts[compositeTransitions.size()];
+		for (int t = 0; t < compositeTransitions.size(); t++) {
+			long key = compositeTransitions.getKey(t);
+			compositeStateCounts[t] = new StateCounts(transitionsCooccurringStates.getStateKeys());
+			transitionsCooccurringStates.put(CSMMiner.CSMLabel, compositeStates.getName(LongDictionary.getHigh(key)),
+					compositeStates.getName(LongDictionary.getLow(key)), compositeStateCounts[t]);
+		}
+		for (int c = 0; c < compositeTransitionStates.size(); c++) {
+			long key = compositeTransitionStates.getKey(c);
+			int perspectiveState = LongDictionary.getLow(key);
+			compositeStateCounts[LongDictionary.getHigh(key)].add(perspectiveNames.get(perspectiveState / states),
+					stateNames.getName(perspectiveState % states), (int) compositeTransitionStates.values[c]);
+		}
+		
+		return transitionsCooccurringStates;
+	}
+	
+	/**
+	 * Splits the entries of every perspective state into buckets at the given quantiles of their durations, and fills
+	 * the performance buckets per trace and per state entry.
+	 */
+	public void computePerformanceSplit(TransitionsCooccurringStates transitionsCooccurringStates, double[] quantiles,
+			StatisticsBackend statisticsBackend) {
+		PerformanceBuckets tracePerformance = new PerformanceBuckets(quantiles);
+		PerformanceBuckets entryPerformance = new PerformanceBuckets(quantiles);
+		
+		fillPerformanceBuckets(tracePerformance, traceEntries, traceCooccurrences, traceTransitions, statisticsBackend);
+		fillPerformanceBuckets(entryPerformance, visitEntries, visitCooccurrences, visitTransitions, statisticsBackend);
+		transitionsCooccurringStates.setPerformance(tracePerformance, entryPerformance);
+	}
+	
+	public long getEventCount() {
+		return events;
+	}
+	
+	/**
+	 * Assigns every entry to a bucket once, after which the buckets are used for the co-occurrence times and the
+	 * transition counts of all buckets in a single pass over the co-occurrences.
+	 */
+	private void fillPerformanceBuckets(PerformanceBuckets buckets, final Entries entries, Cells cooccurrences,
+			Cells transitions, StatisticsBackend statisticsBackend) {
+		// Sort the entries by perspective state and duration, equal entries stay in the order in which they ended
+		Integer[] order = new Integer[entries.size];
+		for (int e = 0; e < entries.size; e++) {
+			order[e] = e;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer e1, Integer e2) {
+				if (entries.states[e1] != entries.states[e2]) {
+					return entries.states[e1] < entries.states[e2] ? -1 : 1;
+				}
+				else if (entries.durations[e1] != entries.durations[e2]) {
+					return entries.durations[e1] < entries.durations[e2] ? -1 : 1;
+				}
+				return 0;
+			}
+		});
+		
+		// Every entry goes to the first bucket whose limit is above its rank among the entries of its state
+		int[] entryBuckets = new int[entries.size];
+		for (int from = 0, to; from < order.length; from = to) {
+			int perspectiveState = entries.states[order[from]];
+			for (to = from; to < order.length && entries.states[order[to]] == perspectiveState; to++);
+			
+			String stateName = getPerspectiveStateName(perspectiveState);
+			int[] limits = buckets.getBucketLimits(to - from);
+			int bucket = 0;
+			for (int i = from; i < to; i++) {
+				while (i - from >= limits[bucket]) bucket++;
+				entryBuckets[order[i]] = bucket;
+				
+				StatisticsAccumulator statistics = buckets.getTime(bucket, stateName);
+				if (statistics == null) {
+					statistics = statisticsBackend.createAccumulator();
+					buckets.getTimes(bucket).put(stateName, statistics);
+				}
+				statistics.addValue(entries.durations[order[i]]);
+			}
+		}
+		
+		// Co-occurrence times per pair of perspective states, every bucket is created for every pair
+		LongDictionary statePairs = new LongDictionary();
+		List<StatisticsAccumulator[]> pairStatistics = new ArrayList<>();
+		for (int c = 0; c < cooccurrences.size(); c++) {
+			long key = cooccurrences.getKey(c);
+			int entry = LongDictionary.getHigh(key);
+			int statePair = statePairs.intern(LongDictionary.pack(entries.states[entry], LongDictionary.getLow(key)));
+			if (statePair == pairStatistics.size()) {
+				String stateName = getPerspectiveStateName(entries.states[entry]);
+				String otherStateName = getPerspectiveStateName(LongDictionary.getLow(key));
+				StatisticsAccumulator[] statistics = new StatisticsAccumulator[buckets.getBucketCount()];
+				for (int b = 0; b < statistics.length; b++) {
+					statistics[b] = statisticsBackend.createAccumulator();
+					buckets.getCooccurringStatesTimes(b).put(stateName, otherStateName, statistics[b]);
+				}
+				pairStatistics.add(statistics);
+			}
+			pairStatistics.get(statePair)[entryBuckets[entry]].addValue(cooccurrences.values[c]);
+		}
+		
+		// Co-occurring transition counts per perspective state
+		for (int c = 0; c < transitions.size(); c++) {
+			long key = transitions.getKey(c);
+			int entry = LongDictionary.getHigh(key);
+			String stateName = getPerspectiveStateName(entries.states[entry]);
+			Pair<String,String> transition = getTransitionNames(LongDictionary.getLow(key));
+			
+			Integer count = buckets.getCooccurringTransitionCount(entryBuckets[entry], stateName, transition);
+			if (count == null) count = 0;
+			buckets.getCooccurringTransitionCounts(entryBuckets[entry]).put(stateName, transition,
+					count + (int) transitions.values[c]);
+		}
+	}
+	
+	/**
+	 * Returns the names of the perspective states before and after a perspective transition.
+	 */
+	private Pair<String,String> getTransitionNames(int transition) {
+		long transitionKey = perspectiveTransitions.getKey(transition);
+		int fromState = LongDictionary.getHigh(transitionKey);
+		return new Pair<String,String>(getPerspectiveStateName(fromState),
+				getPerspectiveStateName(fromState - fromState % states + LongDictionary.getLow(transitionKey)));
+	}
+	
+	/**
+	 * State entries of perspective states with the time spent in them, identified by their index.
+	 */
+	private static class Entries {
+		int[] states = new int[16];
+		long[] durations = new long[16];
+		int size = 0;
+		
+		int add(int perspectiveState, long duration) {
+			if (size == states.length) {
+				states = Arrays.copyOf(states, 2 * size);
+				durations = Arrays.copyOf(durations, 2 * size);
+			}
+			states[size] = perspectiveState;
+			durations[size] = duration;
+			return size++;
+		}
+	}
+	
+	/**
+	 * Sums of values by packed key, in order of first occurrence of the keys.
+	 */
+	private static class Cells {
+		final LongDictionary keys = new LongDictionary();
+		long[] values = new long[16];
+		
+		void add(long key, long value) {
+			int cell = keys.intern(key);
+			if (cell == values.length) {
+				values = Arrays.copyOf(values, 2 * cell);
+			}
+			values[cell] += value;
+		}
+		
+		long getKey(int cell) {
+			return keys.getKey(cell);
+		}
+		
+		int size() {
+			return keys.size();
+		}
+	}
+}
@@ -5,7 +5,6 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.deckfour.xes.extension.std.XConceptExtension;
@@ -16,6 +15,13 @@ import org.deckfour.xes.model.XAttributeMap;
 import org.deckfour.xes.model.XEvent;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
+import org.deckfour.xes.model.impl.XEventImpl;
+import org.deckfour.xes.model.impl.XLogImpl;
+import org.processmining.contexts.uitopia.UIPluginContext;
+import org.processmining.csmminer.log.EncodedModelLog;
+import org.processmining.csmminer.log.EncodedStateLog;
+import org.processmining.csmminer.log.EncodedTrace;
+import org.processmining.csmminer.log.TraceView;
 import org.processmining.models.graphbased.AttributeMap;
 import org.processmining.models.graphbased.directed.transitionsystem.State;
 import org.processmining.xeslite.external.XFactoryExternalStore;
@@ -24,134 +30,128 @@ public class LogProcessor {
 	
 	static XFactory factory = new XFactoryExternalStore.MapDBDiskImpl();
 
-	public static List<String> computePerspectiveNames(XLog log) {
-		Set<String> perspectiveNames = new HashSet<>();
-		
-		for (XTrace trace : log) {
-			for (XEvent event : trace) {
-				perspectiveNames.add(getEventPerspective(event));
-			}
-		}
+	/**
+	 * Checks the input, computes the perspective names and encodes the state log in a single pass over the state log.
+	 * The perspective sub logs and the composite log are derived afterwards from the encoded log, because these depend
+	 * on the full set of perspectives. The sub logs are views on the state log, the composite log is built in a second
+	 * pass over the state log that only copies the events that are kept in the composite traces.
+	 */
+	public static PreprocessedLog preprocessLog(UIPluginContext context, XLog log, boolean removeRepeatStates) {
+		long startTime = System.currentTimeMillis();
 		
-		return new ArrayList<>(perspectiveNames);
-	}
-	
-	public static Map<String, XLog> createPerspectiveSubLogs(XLog log, List<String> perspectiveNames) {
-		Map<String,XLog> perspectiveSubLogs = new HashMap<>();
+		Set<String> perspectiveNames = new HashSet<>();
+		EncodedStateLog stateLog = new EncodedStateLog();
 		
-		for (String perspectiveName : perspectiveNames) {
-			XLog perspectiveSubLog = factory.createLog((XAttributeMap) log.getAttributes().clone());
-			perspectiveSubLog.getClassifiers().addAll(log.getClassifiers());
-			perspectiveSubLog.getGlobalTraceAttributes().addAll(log.getGlobalTraceAttributes());
+		// The input checker keeps the state of the check in static fields
+		synchronized (InputChecker.class) {
+			InputChecker.initialise();
 			
 			for (int i = 0; i < log.size(); i++) {
-				XTrace trace = factory.createTrace((XAttributeMap) log.get(i).getAttributes().clone());
-				
-				XEvent firstTraceEvent = log.get(i).get(0);
-				String firstTraceEventPerspectiveName = getEventPerspective(firstTraceEvent);
-				String initialState = getPerspectiveInitialState(trace, perspectiveName);
+				XTrace trace = log.get(i);
+				if (!InputChecker.checkTrace(trace)) return new PreprocessedLog(InputChecker.INVALID);
 				
-				// FIXME: if perspectives do match then don't create artificial if initial state is not known?
-				if (!firstTraceEventPerspectiveName.equals(perspectiveName) ||
-						!initialState.equals(XConceptExtension.instance().extractName(firstTraceEvent))) {
-					// Create initial state with timestamp equal to first change if this perspective has not started as first,
-					// or create initial state without timestamp if initial state attribute is mismatched from first event
-					XEvent initialEvent = factory.createEvent();
-					XConceptExtension.instance().assignName(initialEvent, initialState);
+				EncodedTrace encodedTrace = stateLog.addTrace(trace);
+				for (int j = 0; j < trace.size(); j++) {
+					XEvent event = trace.get(j);
+					int result = InputChecker.checkEvent(context, log, event, trace);
+					if (result != InputChecker.VALID) return new PreprocessedLog(result);
 					
-					if (!firstTraceEventPerspectiveName.equals(perspectiveName)) {
-						Date initialTime = XTimeExtension.instance().extractTimestamp(firstTraceEvent);
-						if (initialTime != null) {
-							XTimeExtension.instance().assignTimestamp(initialEvent, initialTime);
-						}
-					}
-					
-					trace.add(initialEvent);
-				}
-				
-				String previousEventName = null;
-				for (XEvent event : log.get(i)) {
 					String eventPerspectiveName = getEventPerspective(event);
+					perspectiveNames.add(eventPerspectiveName);
 					
-					if (perspectiveName.equals(eventPerspectiveName)) {
-						String eventName = XConceptExtension.instance().extractName(event);
-						if (!eventName.equals(previousEventName)) {
-							trace.add((XEvent) event.clone());
-							previousEventName = eventName;
-						}
-					}
+					stateLog.setEvent(encodedTrace, j, eventPerspectiveName, XConceptExtension.instance().extractName(event),
+							XTimeExtension.instance().extractTimestamp(event));
 				}
-				
-				// FIXME: add artificial end events?
-				
-				perspectiveSubLog.add(trace);
 			}
-			
-			perspectiveSubLogs.put(perspectiveName, perspectiveSubLog);
 		}
 		
-		return perspectiveSubLogs;
+		PreprocessedLog result = new PreprocessedLog(InputChecker.VALID);
+		result.perspectiveNames = new ArrayList<>(perspectiveNames);
+		result.scanTime = System.currentTimeMillis() - startTime;
+		
+		startTime = System.currentTimeMillis();
+		stateLog.finish(result.perspectiveNames);
+		result.stateLog = stateLog;
+		result.encodedPerspectiveLogs = new HashMap<>();
+		result.perspectiveSubLogs = new HashMap<>();
+		for (String perspectiveName : result.perspectiveNames) {
+			EncodedModelLog encodedPerspectiveLog = stateLog.createPerspectiveLog(stateLog.getPerspectiveId(perspectiveName));
+			result.encodedPerspectiveLogs.put(perspectiveName, encodedPerspectiveLog);
+			result.perspectiveSubLogs.put(perspectiveName, createPerspectiveSubLog(log, encodedPerspectiveLog));
+		}
+		result.encodedCompositeLog = stateLog.createCompositeLog(removeRepeatStates);
+		
+		result.compositeLog = createEmptyLog(log);
+		for (int i = 0; i < log.size(); i++) {
+			result.compositeLog.add(createCompositeTrace(log.get(i), result.encodedCompositeLog, i));
+		}
+		result.compositeTime = System.currentTimeMillis() - startTime;
+		
+		return result;
 	}
 	
-	public static XLog createCompositeLog(XLog log, List<String> perspectiveNames, boolean removeRepeatStates) {
-		XLog compositeLog = factory.createLog((XAttributeMap) log.getAttributes().clone());
-		compositeLog.getClassifiers().addAll(log.getClassifiers());
-		compositeLog.getGlobalTraceAttributes().addAll(log.getGlobalTraceAttributes());
-		Map<String,String> perspectiveStates = new HashMap<>();
+	/**
+	 * Creates a perspective sub log as an in-memory log of views on the traces of the state log, so that the events
+	 * are not copied. Only the artificial initial events are created.
+	 */
+	private static XLog createPerspectiveSubLog(XLog log, EncodedModelLog encodedPerspectiveLog) {
+		XLog perspectiveSubLog = new XLogImpl((XAttributeMap) log.getAttributes().clone());
+		perspectiveSubLog.getClassifiers().addAll(log.getClassifiers());
+		perspectiveSubLog.getGlobalTraceAttributes().addAll(log.getGlobalTraceAttributes());
 		
 		for (int i = 0; i < log.size(); i++) {
-			XTrace trace = log.get(i);
-			XTrace compositeTrace = factory.createTrace((XAttributeMap) log.get(i).getAttributes().clone());
+			int[] sourceIndices = encodedPerspectiveLog.sourceIndices[i];
 			
-			boolean initialStateMatches = false;
-			String firstEventName = XConceptExtension.instance().extractName(log.get(i).get(0));
-			String compositeStateName = "|";
-			for (String perspectiveName : perspectiveNames) {
-				String initialState = getPerspectiveInitialState(trace, perspectiveName);
-				perspectiveStates.put(perspectiveName, initialState);
-				compositeStateName += initialState + "|";
+			XEvent initialEvent = null;
+			if (sourceIndices.length > 0 && sourceIndices[0] == EncodedStateLog.INITIAL_EVENT) {
+				// Initial state with timestamp equal to first change if this perspective has not started as first,
+				// or without timestamp if initial state attribute is mismatched from first event
+				initialEvent = new XEventImpl();
+				XConceptExtension.instance().assignName(initialEvent, encodedPerspectiveLog.getStateName(i, 0));
 				
-				// FIXME: all perspectives to which the first event (state change) is assigned need to have a matching initial state
-				// Otherway around: if firstEvent assigned to perspectiveName && initialState not equals firstEventName => create artificial 
-				if (initialState.equals(firstEventName)) {
-					// FIXME: only if first event assigned to same perspective! perspectiveName in getEventPerspectives(firstEvent)
-					initialStateMatches = true;
+				long initialTime = encodedPerspectiveLog.timestamps[i][0];
+				if (initialTime != EncodedStateLog.NO_TIMESTAMP) {
+					XTimeExtension.instance().assignTimestamp(initialEvent, new Date(initialTime));
 				}
 			}
 			
-			// FIXME: see above, but! if no initial states are known then don't create artificial event? Linked to FIXME in sublogcreation
-			if (!initialStateMatches) {
-				XEvent initialEvent = factory.createEvent();
-				XConceptExtension.instance().assignName(initialEvent, compositeStateName);
-				compositeTrace.add(initialEvent);
-			}
+			// FIXME: add artificial end events?
 			
-			String previousName = null;
-			for (int j = 0; j < trace.size(); j++) {
-				XEvent event = trace.get(j);
-				String eventPerspectiveName = getEventPerspective(event);
-				String eventPerspectiveState = XConceptExtension.instance().extractName(event);
-				perspectiveStates.put(eventPerspectiveName, eventPerspectiveState);
-				
-				XEvent compositeState = (XEvent) event.clone();
-				compositeStateName = "|";
-				
-				for (String perspectiveName : perspectiveNames) {
-					compositeStateName += perspectiveStates.get(perspectiveName) + "|";
-				}
-				
-				XConceptExtension.instance().assignName(compositeState, compositeStateName);
-				
-				if (!compositeStateName.equals(previousName) || !removeRepeatStates) {
-					compositeTrace.add(compositeState);
-					previousName = compositeStateName;
-				}
+			perspectiveSubLog.add(new TraceView(log.get(i), sourceIndices, initialEvent));
+		}
+		
+		return perspectiveSubLog;
+	}
+	
+	/**
+	 * Creates the XES composite trace from a state log trace, the composite states and the events that are kept are
+	 * taken from the encoded composite log. Only the kept events are copied.
+	 */
+	private static XTrace createCompositeTrace(XTrace trace, EncodedModelLog compositeLog, int traceIndex) {
+		XTrace compositeTrace = factory.createTrace((XAttributeMap) trace.getAttributes().clone());
+		int[] sourceIndices = compositeLog.sourceIndices[traceIndex];
+		
+		for (int j = 0; j < sourceIndices.length; j++) {
+			XEvent compositeState;
+			if (sourceIndices[j] == EncodedStateLog.INITIAL_EVENT) {
+				compositeState = factory.createEvent();
+			}
+			else {
+				compositeState = (XEvent) trace.get(sourceIndices[j]).clone();
 			}
 			
-			compositeLog.add(compositeTrace);
+			XConceptExtension.instance().assignName(compositeState, compositeLog.getStateName(traceIndex, j));
+			compositeTrace.add(compositeState);
 		}
 		
-		return compositeLog;
+		return compositeTrace;
+	}
+	
+	private static XLog createEmptyLog(XLog log) {
+		XLog newLog = factory.createLog((XAttributeMap) log.getAttributes().clone());
+		newLog.getClassifiers().addAll(log.getClassifiers());
+		newLog.getGlobalTraceAttributes().addAll(log.getGlobalTraceAttributes());
+		return newLog;
 	}
 	
 	public static XLog transformLog(XLog log, String processName, Set<State> removedStates, List<Set<State>> groupedStates) {
@@ -0,0 +1,36 @@
+package org.processmining.csmminer;
+
+import java.util.List;
+import java.util.Map;
+
+import org.deckfour.xes.model.XLog;
+import org.processmining.csmminer.log.EncodedModelLog;
+import org.processmining.csmminer.log.EncodedStateLog;
+
+/**
+ * Result of preprocessing a state log: the input check outcome, the perspectives found in the log, the perspective sub
+ * logs and the composite log, together with the time spent in the scan of the state log and in the second pass that
+ * builds the composite log. The encoded logs line up with the XES logs trace by trace and event by event.
+ */
+public class PreprocessedLog {
+	public int input;
+	public List<String> perspectiveNames;
+	public Map<String, XLog> perspectiveSubLogs;
+	public XLog compositeLog;
+	public EncodedStateLog stateLog;
+	public Map<String, EncodedModelLog> encodedPerspectiveLogs;
+	public EncodedModelLog encodedCompositeLog;
+
+	// Time spent scanning the state log and time spent deriving the sub logs and building the composite log
+	public long scanTime;
+	public long compositeTime;
+
+	public PreprocessedLog(int input) {
+		this.input = input;
+	}
+
+	public String getTimingReport() {
+		return "Scanning state log (input check, perspectives, encoding): " + scanTime + "ms, " +
+				"Deriving sub logs and building composite log (second pass): " + compositeTime + "ms";
+	}
+}
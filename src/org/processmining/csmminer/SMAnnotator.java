@@ -1,14 +1,23 @@
 package org.processmining.csmminer;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.deckfour.xes.extension.std.XExtendedEvent;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
+import org.processmining.csmminer.log.EncodedModelLog;
+import org.processmining.csmminer.log.EncodedStateLog;
+import org.processmining.csmminer.log.StateDictionary;
+import org.processmining.csmminer.statistics.SparseFrequency;
+import org.processmining.csmminer.statistics.SparseStatistics;
+import org.processmining.csmminer.statistics.StatisticsAccumulator;
+import org.processmining.csmminer.statistics.StatisticsBackend;
 import org.processmining.framework.plugin.PluginContext;
 import org.processmining.models.graphbased.directed.transitionsystem.State;
 import org.processmining.models.graphbased.directed.transitionsystem.Transition;
@@ -17,18 +26,17 @@ import org.processmining.plugins.transitionsystem.miner.util.TSEventCache;
 import org.processmining.plugins.tsanalyzer.AnnotatedTransitionSystem;
 import org.processmining.plugins.tsanalyzer.StatisticsAnnotationProperty;
 import org.processmining.plugins.tsanalyzer.TSAnalyzer;
-import org.processmining.plugins.tsanalyzer.annotation.Statistics;
 import org.processmining.plugins.tsanalyzer.annotation.frequency.FrequencyStateAnnotation;
-import org.processmining.plugins.tsanalyzer.annotation.frequency.FrequencyStateStatistics;
-import org.processmining.plugins.tsanalyzer.annotation.frequency.FrequencyStatistics;
 import org.processmining.plugins.tsanalyzer.annotation.frequency.FrequencyTransitionAnnotation;
-import org.processmining.plugins.tsanalyzer.annotation.frequency.FrequencyTransitionStatistics;
 import org.processmining.plugins.tsanalyzer.annotation.time.TimeStateAnnotation;
-import org.processmining.plugins.tsanalyzer.annotation.time.TimeStateStatistics;
-import org.processmining.plugins.tsanalyzer.annotation.time.TimeStatistics;
 import org.processmining.plugins.tsanalyzer.annotation.time.TimeTransitionAnnotation;
-import org.processmining.plugins.tsanalyzer.annotation.time.TimeTransitionStatistics;
 
+/**
+ * Annotates a state model with the time and frequency statistics of its log. With an encoded log the transitions of
+ * the events are cached per pair of previous and current state, which is only correct if the states are determined by
+ * the last event, as for the models mined by the CSM Miner. Callers have to confirm this with
+ * {@link #setStatesDeterminedByLastEvent(boolean)}, otherwise the transitions are computed from the event payloads.
+ */
 public class SMAnnotator extends TSAnalyzer {
 
 	// The context of this miner.
@@ -40,11 +48,14 @@ public class SMAnnotator extends TSAnalyzer {
 	// the transition system to annotate
 	private final EventPayloadTransitionSystem transitionSystem;
 
-	// eventCache is used for efficient access to events in XTrace
-	private final TSEventCache eventCache;
-
-	// statistics is a hashmap that stores the different annotations to be performed, represented by a string
-	private final Map<SMAnnotator.annotations,Statistics> statistics;
+	// the backend creating the accumulators of the time statistics
+	private final StatisticsBackend statisticsBackend;
+	
+	// time statistics of the states and transitions, used for the time annotations
+	private final TimeValues times;
+	
+	// sparse frequencies of the states and transitions, used for the frequency annotations
+	private final SparseFrequencies frequencies;
 
 	// the log to be used to annotate the transition system
 	private final XLog log;
@@ -52,26 +63,67 @@ public class SMAnnotator extends TSAnalyzer {
 	// annotated transition system (result)
 	private final AnnotatedTransitionSystem ats;
 	
+	// the encoded version of the log, used for the timestamps and transitions of the events if it is given
+	private final EncodedModelLog encodedLog;
+	
+	// the transitions of the events recorded by the miner of the transition system, by trace and event index, or null
+	private final Transition[][] eventTransitions;
+	
+	// whether the states of the transition system are determined by the last event, as with a horizon of one
+	private boolean statesDeterminedByLastEvent;
+	
 	private boolean useProgressCounter;
 	
 	public SMAnnotator(PluginContext context, EventPayloadTransitionSystem ts, XLog log, boolean useProgressCounter) {
+		this(context, ts, log, null, useProgressCounter);
+	}
+	
+	public SMAnnotator(PluginContext context, EventPayloadTransitionSystem ts, XLog log, EncodedModelLog encodedLog,
+			boolean useProgressCounter) {
+		this(context, ts, log, encodedLog, null, useProgressCounter);
+	}
+	
+	/**
+	 * Creates an annotator that takes the transitions of the events from those recorded while mining the transition
+	 * system (see {@link SMMiner#getEventTransitions()}), so they are not computed again from the payloads of the
+	 * events. The recorded transitions may be null.
+	 */
+	public SMAnnotator(PluginContext context, EventPayloadTransitionSystem ts, XLog log, EncodedModelLog encodedLog,
+			Transition[][] eventTransitions, boolean useProgressCounter) {
+		this(context, ts, log, encodedLog, eventTransitions, new CSMMinerSettings(), useProgressCounter);
+	}
+	
+	/**
+	 * Creates an annotator that uses the statistics backend configured in the settings of the run.
+	 */
+	public SMAnnotator(PluginContext context, EventPayloadTransitionSystem ts, XLog log, EncodedModelLog encodedLog,
+			Transition[][] eventTransitions, CSMMinerSettings settings, boolean useProgressCounter) {
 		super(context, ts, log);
 		this.context = context;
 		this.transitionSystem = ts;
 		this.log = log;
-		this.eventCache = new TSEventCache();
-		
-		this.statistics = new HashMap<SMAnnotator.annotations,Statistics>();
-		
-		this.statistics.put(annotations.Time, new TimeStatistics());
-		this.statistics.put(annotations.Frequency,new FrequencyStatistics());
 		
 		this.useProgressCounter = useProgressCounter;
+		this.encodedLog = encodedLog;
+		this.eventTransitions = eventTransitions;
+		
+		this.statisticsBackend = settings.getStatisticsBackend(countEvents());
+		this.times = new TimeValues(statisticsBackend);
+		this.frequencies = new SparseFrequencies();
 		
 		ats = new AnnotatedTransitionSystem(ts);
 	}
 	
 	
+	/**
+	 * Sets whether the states of the transition system are determined by the last event only, so that the transitions
+	 * can be cached by the states of the encoded log. Only set this if the abstraction of the miner has a horizon of
+	 * one, as for the models mined from the same encoded log.
+	 */
+	public void setStatesDeterminedByLastEvent(boolean statesDeterminedByLastEvent) {
+		this.statesDeterminedByLastEvent = statesDeterminedByLastEvent;
+	}
+	
 	/**
 	 * Annotates the transition system according to the settings
 	 */
@@ -87,17 +139,9 @@ public class SMAnnotator extends TSAnalyzer {
 		}
 
 		// now the real thing
-		for (XTrace pi : log) {
-		
-			long startTime = getStartTime(pi);
-			long endTime = getEndTime(pi);
-
-			if ((startTime != -1) && (endTime != -1)) 
-				for (int i = 0; i < pi.size(); i++)
-					
-					processTimeEvent(pi, i, startTime, endTime);
-					
-			processFrequencyEvent(pi);
+		TracePartition partition = new TracePartition(0, log.size(), times, frequencies);
+		for (int t = 0; t < log.size(); t++) {
+			partition.processTrace(t);
 			
 			if (useProgressCounter) {
 				context.getProgress().inc(); // increase the progress bar
@@ -111,164 +155,47 @@ public class SMAnnotator extends TSAnalyzer {
 	}
 	
 	/**
-	 * This method processes one event from a trace by collecting all necessary
-	 * statistical time (i.e., elapsed, remaining, etc. times) data.
-	 * 
-	 * @param pi
-	 *            the trace to which the event belongs
-	 * @param i
-	 *            the index of the event to be processed
-	 * @param startTime
-	 *            the starting time of this trace
-	 * @param endTime
-	 *            the ending time of this trace
+	 * Splits the traces of the log into at most the given number of consecutive partitions, each collecting its own
+	 * statistics. The partitions can be run concurrently, after which {@link #annotate(List)} merges them.
 	 */
-	private void processTimeEvent(final XTrace pi, final int i, final long startTime, final long endTime) {
-		/**
-		 * Get the timestamp of the event we are processing
-		 */
-		Date currentTimestamp = XExtendedEvent.wrap(eventCache.get(pi, i)).getTimestamp();
-		if (currentTimestamp != null) {
-
-			long currentTime = currentTimestamp.getTime();
-
-			/**
-			 * Get the transition that corresponds to this event. Also get the
-			 * source and the target for this transition.
-			 */
-			Transition transition = transitionSystem.getTransition(pi, i);
-			if (transition != null) {
-				State source = transition.getSource();
-				State target = transition.getTarget();
-
-				/**
-				 * create statistics for the transition, source and target
-				 */
-				TimeTransitionStatistics transitionStatistics = (TimeTransitionStatistics) statistics.get(annotations.Time).getStatistics(transition);
-				TimeStateStatistics sourceStatistics = (TimeStateStatistics) statistics.get(annotations.Time).getStatistics(source);
-				TimeStateStatistics targetStatistics = (TimeStateStatistics) statistics.get(annotations.Time).getStatistics(target);
-
-				/**
-				 * annotate the source only for the first event in the trace
-				 */
-				if (i == 0) {
-					sourceStatistics.getRemaining().addValue(endTime - currentTime);
-					sourceStatistics.getElapsed().addValue(0);
-					sourceStatistics.getSoujourn().addValue(0);
-				}
-
-				/**
-				 * annotate target with elapsed and remaining time
-				 */
-				targetStatistics.getElapsed().addValue(currentTime - startTime);
-				targetStatistics.getRemaining().addValue(endTime - currentTime);
-
-				/**
-				 * process soujourn time
-				 */
-				if ((i != pi.size() - 1)) {
-					Date nextTimestamp = getExtendedEvent(pi, i + 1).getTimestamp();
-					if (nextTimestamp != null) {
-						double soujourn = nextTimestamp.getTime() - currentTime;
-						targetStatistics.getSoujourn().addValue(soujourn);
-					}
-				} else {
-					targetStatistics.getSoujourn().addValue(0);
-				}
-
-				/**
-				 * annotate the transition with the duration time
-				 */
-				if (i == 0) {
-					transitionStatistics.getDuration().addValue(0.0);
-				} else {
-					Date previousTimestamp = getExtendedEvent(pi, i - 1).getTimestamp();
-					if (previousTimestamp != null) {
-						transitionStatistics.getDuration().addValue(currentTime - previousTimestamp.getTime());
-					}
-				}
-			}
+	public List<TracePartition> createPartitions(int partitions) {
+		partitions = Math.max(1, Math.min(partitions, log.size()));
+		List<TracePartition> tracePartitions = new ArrayList<>(partitions);
+		
+		for (int p = 0; p < partitions; p++) {
+			tracePartitions.add(new TracePartition(p * log.size() / partitions, (p + 1) * log.size() / partitions,
+					new TimeValues(statisticsBackend), new SparseFrequencies()));
 		}
+		
+		return tracePartitions;
 	}
 	
 	/**
-	 * This method processes one event from a trace by collecting all necessary
-	 * statistical frequencies data.
-	 * 
-	 * @param pi
-	 *            the trace to which the event belongs
-	 * 	 
-	 **/
-	private void processFrequencyEvent(final XTrace pi) {
-		
-		Map<State,Integer> stateObservations = new HashMap<State,Integer>();
-		Map<Transition,Integer> transitionObservations = new HashMap<Transition,Integer>();
-		
-		//initialize with 0s
-		
-		for(State s : transitionSystem.getNodes())
-			stateObservations.put(s, 0);
-		
-		for(Transition t : transitionSystem.getEdges())
-			transitionObservations.put(t, 0);
-		
-		for(int i = 0 ; i < pi.size() ; i++)
-		{
-			Transition transition = transitionSystem.getTransition(pi, i);
-			if (transition != null) 
-			{
-				State source = transition.getSource();
-				State target = transition.getTarget();
-				
-				if(i == 0) //annotate the source only for the first event, this avoids double-counting states
-				{
-					if(stateObservations.containsKey(source))
-						stateObservations.put(source, (stateObservations.get(source) + 1)); //adds 1 to the observations of the source state
-					else
-						stateObservations.put(source, 1);
-				}
-				//annotate target states
-				if(stateObservations.containsKey(target))
-					stateObservations.put(target, (stateObservations.get(target) + 1)); //adds 1 to the observations of the target state
-				else
-					stateObservations.put(target, 1);
-				
-				//annotate transitions
-				if(transitionObservations.containsKey(transition))
-					transitionObservations.put(transition, (transitionObservations.get(transition) + 1)); //adds 1 to the observations of the transition
-				else
-					transitionObservations.put(transition, 1);
-			}
+	 * Annotates the transition system from processed partitions. The partial statistics are merged in the order of the
+	 * partitions, so every statistic receives its values in trace order and the annotations are the same as those of
+	 * {@link #annotate()} (up to rounding for streaming statistics).
+	 */
+	public AnnotatedTransitionSystem annotate(List<TracePartition> partitions) {
+		for (TracePartition partition : partitions) {
+			times.addAll(partition.times);
+			frequencies.addAll(partition.frequencies);
 		}
 		
-		int observations;
-		FrequencyStateStatistics stateStatistics;		
-		for(State state : stateObservations.keySet()) //for each state annotate the number of observations in that trace and if the state was observed in the trace (1) or not (0)
-		{
-			stateStatistics = (FrequencyStateStatistics) statistics.get(annotations.Frequency).getStatistics(state);
-			observations = stateObservations.get(state);
-			
-			stateStatistics.getObservations().addValue(observations);
-			
-			if(observations > 0)
-				stateStatistics.getTraces().addValue(1);
-			else
-				stateStatistics.getTraces().addValue(0);
-		}
+		createTimeAnnotationsFromStatistics();
+		createFrequencyAnnotationsFromStatistics();
 		
-		FrequencyTransitionStatistics transitionStatistics;
-		for(Transition transition : transitionObservations.keySet()) //same for transitions
-		{
-			transitionStatistics = (FrequencyTransitionStatistics) statistics.get(annotations.Frequency).getStatistics(transition);
-			observations = transitionObservations.get(transition);
-			
-			transitionStatistics.getObservations().addValue(observations);
-			
-			if(observations > 0)
-				transitionStatistics.getTraces().addValue(1);
-			else
-				transitionStatistics.getTraces().addValue(0);
-		}			 
+		return ats;
+	}
+	
+	/**
+	 * Counts the events of the log, which determines the statistics backend of the time annotations.
+	 */
+	private long countEvents() {
+		long events = 0;
+		for (int t = 0; t < log.size(); t++) {
+			events += encodedLog != null ? encodedLog.traceLength(t) : log.get(t).size();
+		}
+		return events;
 	}
 	
 	/**
@@ -281,14 +208,14 @@ public class SMAnnotator extends TSAnalyzer {
 		/**
 		 * create annotation for each state
 		 */
-		for (Entry<State, TimeStateStatistics> entry : ((TimeStatistics)statistics.get(annotations.Time)).getStates()) {
+		for (Entry<State, StateTimes> entry : times.states.entrySet()) {
 			TimeStateAnnotation stateAnnotation = ats.getTime_StateAnnotation(entry.getKey());
 			annotateTimeState(stateAnnotation, entry.getValue());
 		}
 		/**
 		 * create annotation for each transition
 		 */
-		for (Entry<Transition, TimeTransitionStatistics> entry : ((TimeStatistics)statistics.get(annotations.Time)).getTransitions()) {
+		for (Entry<Transition, StatisticsAccumulator> entry : times.transitions.entrySet()) {
 			TimeTransitionAnnotation transitionAnnotation = ats.getTime_TransitionAnnotation(entry.getKey());
 			annotateTimeTransition(transitionAnnotation, entry.getValue());
 		}
@@ -301,45 +228,46 @@ public class SMAnnotator extends TSAnalyzer {
 	 * @return the annotation of the transition system
 	 */
 	private void createFrequencyAnnotationsFromStatistics() {
+		if (frequencies.traces == 0) return;
+		
 		/**
-		 * create annotation for each state
+		 * create annotation for each state, including the states that are never observed
 		 */
-		for (Entry<State, FrequencyStateStatistics> entry : ((FrequencyStatistics)statistics.get(annotations.Frequency)).getStates()) {
-			FrequencyStateAnnotation stateAnnotation = ats.getFrequency_StateAnnotation(entry.getKey());
-			annotateFrequencyState(stateAnnotation, entry.getValue());
+		for (State state : transitionSystem.getNodes()) {
+			FrequencyStateAnnotation stateAnnotation = ats.getFrequency_StateAnnotation(state);
+			annotateFrequencyState(stateAnnotation, frequencies.getFrequency(frequencies.states, state));
 		}
 		/**
-		 * create annotation for each transition
+		 * create annotation for each transition, including the transitions that are never observed
 		 */
-		for (Entry<Transition, FrequencyTransitionStatistics> entry : ((FrequencyStatistics)statistics.get(annotations.Frequency)).getTransitions()) {
-			FrequencyTransitionAnnotation transitionAnnotation = ats.getFrequency_TransitionAnnotation(entry.getKey());
-			annotateFrequencyTransition(transitionAnnotation, entry.getValue());
+		for (Transition transition : transitionSystem.getEdges()) {
+			FrequencyTransitionAnnotation transitionAnnotation = ats.getFrequency_TransitionAnnotation(transition);
+			annotateFrequencyTransition(transitionAnnotation, frequencies.getFrequency(frequencies.transitions, transition));
 		}
 	}
 	
 	/**
 	 * Time annotations for states and transitions
 	 */
-	private void annotateTimeState(TimeStateAnnotation stateAnnotation, TimeStateStatistics statistics) {
-		annotateStatisticsProperty(stateAnnotation.getSoujourn(), statistics.getSoujourn());
-		annotateStatisticsProperty(stateAnnotation.getRemaining(), statistics.getRemaining());
-		annotateStatisticsProperty(stateAnnotation.getElapsed(), statistics.getElapsed());
+	private void annotateTimeState(TimeStateAnnotation stateAnnotation, StateTimes statistics) {
+		annotateStatisticsProperty(stateAnnotation.getSoujourn(), statistics.soujourn);
+		annotateStatisticsProperty(stateAnnotation.getRemaining(), statistics.remaining);
+		annotateStatisticsProperty(stateAnnotation.getElapsed(), statistics.elapsed);
 	}	
-	private void annotateTimeTransition(TimeTransitionAnnotation transitionAnnotation,
-			TimeTransitionStatistics statistics) {
-		annotateStatisticsProperty(transitionAnnotation.getDuration(), statistics.getDuration());
+	private void annotateTimeTransition(TimeTransitionAnnotation transitionAnnotation, StatisticsAccumulator duration) {
+		annotateStatisticsProperty(transitionAnnotation.getDuration(), duration);
 	}
 	
 	/**
 	 * Frequency annotations for states and transitions
 	 */
-	private void annotateFrequencyState(FrequencyStateAnnotation stateAnnotation, FrequencyStateStatistics statistics) {
-		annotateStatisticsProperty(stateAnnotation.getObservations(), statistics.getObservations());
-		annotateStatisticsProperty(stateAnnotation.getTraces(), statistics.getTraces());
+	private void annotateFrequencyState(FrequencyStateAnnotation stateAnnotation, SparseFrequency frequency) {
+		annotateStatisticsProperty(stateAnnotation.getObservations(), frequency.getObservations(frequencies.traces));
+		annotateStatisticsProperty(stateAnnotation.getTraces(), frequency.getTraces(frequencies.traces));
 	}	
-	private void annotateFrequencyTransition(FrequencyTransitionAnnotation transitionAnnotation,FrequencyTransitionStatistics statistics) {
-		annotateStatisticsProperty(transitionAnnotation.getObservations(), statistics.getObservations());
-		annotateStatisticsProperty(transitionAnnotation.getTraces(), statistics.getTraces());
+	private void annotateFrequencyTransition(FrequencyTransitionAnnotation transitionAnnotation, SparseFrequency frequency) {
+		annotateStatisticsProperty(transitionAnnotation.getObservations(), frequency.getObservations(frequencies.traces));
+		annotateStatisticsProperty(transitionAnnotation.getTraces(), frequency.getTraces(frequencies.traces));
 	}
 
 	/**
@@ -351,7 +279,19 @@ public class SMAnnotator extends TSAnalyzer {
 	 * @param stat
 	 *            statistics with time values
 	 */
-	private void annotateStatisticsProperty(StatisticsAnnotationProperty prop, DescriptiveStatistics stat) {
+	private void annotateStatisticsProperty(StatisticsAnnotationProperty prop, StatisticsAccumulator stat) {
+		prop.setValue((float) stat.getMean());
+		prop.setAverage((float) stat.getMean());
+		prop.setStandardDeviation((float) stat.getStandardDeviation());
+		prop.setMin((float) stat.getMin());
+		prop.setMax((float) stat.getMax());
+		prop.setSum((float) stat.getSum());
+		prop.setVariance((float) stat.getVariance());
+		prop.setFrequency((float) stat.getN());
+		prop.setMedian((float) stat.getPercentile(50));
+	}
+	
+	private void annotateStatisticsProperty(StatisticsAnnotationProperty prop, SparseStatistics stat) {
 		prop.setValue((float) stat.getMean());
 		prop.setAverage((float) stat.getMean());
 		prop.setStandardDeviation((float) stat.getStandardDeviation());
@@ -364,54 +304,373 @@ public class SMAnnotator extends TSAnalyzer {
 	}
 	
 	/**
-	 * Gets the time stamp of the first event in a trace.
-	 * 
-	 * @param pi
-	 *            the trace
-	 * @return the timestamp of the first event in the trace
+	 * The sojourn, remaining and elapsed times of a state.
 	 */
-	private long getStartTime(XTrace pi) {
-		try {
-			for (int i = 0; i < pi.size(); i++) {
-				Date timestamp = getExtendedEvent(pi, i).getTimestamp();
-				if (timestamp != null) {
-					return timestamp.getTime();
-				}
+	private static class StateTimes {
+		final StatisticsAccumulator soujourn;
+		final StatisticsAccumulator remaining;
+		final StatisticsAccumulator elapsed;
+		
+		StateTimes(StatisticsBackend statisticsBackend) {
+			soujourn = statisticsBackend.createAccumulator();
+			remaining = statisticsBackend.createAccumulator();
+			elapsed = statisticsBackend.createAccumulator();
+		}
+	}
+	
+	/**
+	 * The time statistics of the states and the durations of the transitions.
+	 */
+	private static class TimeValues {
+		final StatisticsBackend statisticsBackend;
+		final Map<State,StateTimes> states = new HashMap<>();
+		final Map<Transition,StatisticsAccumulator> transitions = new HashMap<>();
+		
+		TimeValues(StatisticsBackend statisticsBackend) {
+			this.statisticsBackend = statisticsBackend;
+		}
+		
+		StateTimes getStateTimes(State state) {
+			StateTimes stateTimes = states.get(state);
+			if (stateTimes == null) {
+				stateTimes = new StateTimes(statisticsBackend);
+				states.put(state, stateTimes);
+			}
+			return stateTimes;
+		}
+		
+		StatisticsAccumulator getDuration(Transition transition) {
+			StatisticsAccumulator duration = transitions.get(transition);
+			if (duration == null) {
+				duration = statisticsBackend.createAccumulator();
+				transitions.put(transition, duration);
+			}
+			return duration;
+		}
+		
+		/**
+		 * Appends the values of partial statistics, exact statistics receive the values in the order of the partitions.
+		 */
+		void addAll(TimeValues partialTimes) {
+			for (Entry<State,StateTimes> entry : partialTimes.states.entrySet()) {
+				StateTimes stateTimes = getStateTimes(entry.getKey());
+				stateTimes.soujourn.addAll(entry.getValue().soujourn);
+				stateTimes.remaining.addAll(entry.getValue().remaining);
+				stateTimes.elapsed.addAll(entry.getValue().elapsed);
+			}
+			for (Entry<Transition,StatisticsAccumulator> entry : partialTimes.transitions.entrySet()) {
+				getDuration(entry.getKey()).addAll(entry.getValue());
 			}
-		} catch (Exception ce) {
 		}
-		return -1;
 	}
-
+	
 	/**
-	 * Gets the time stamp of the last event in a trace.
-	 * 
-	 * @param pi
-	 *            the trace
-	 * @return the timestamp of the last event in the trace
+	 * The observation counts of the states and transitions in the traces in which they are observed, together with the
+	 * total number of traces.
 	 */
-	private long getEndTime(XTrace pi) {
-		try {
-			for (int i = 0; i < pi.size(); i++) {
-				Date timestamp = getExtendedEvent(pi, pi.size() - i - 1).getTimestamp();
-				if (timestamp != null) {
-					return timestamp.getTime();
-				}
+	private static class SparseFrequencies {
+		final Map<State,SparseFrequency> states = new HashMap<>();
+		final Map<Transition,SparseFrequency> transitions = new HashMap<>();
+		int traces = 0;
+		
+		<T> SparseFrequency getFrequency(Map<T,SparseFrequency> frequencies, T element) {
+			SparseFrequency frequency = frequencies.get(element);
+			if (frequency == null) {
+				frequency = new SparseFrequency();
+				frequencies.put(element, frequency);
 			}
-		} catch (Exception ce) {
+			return frequency;
+		}
+		
+		void addAll(SparseFrequencies partialFrequencies) {
+			for (Entry<State,SparseFrequency> entry : partialFrequencies.states.entrySet()) {
+				getFrequency(states, entry.getKey()).addAll(entry.getValue());
+			}
+			for (Entry<Transition,SparseFrequency> entry : partialFrequencies.transitions.entrySet()) {
+				getFrequency(transitions, entry.getKey()).addAll(entry.getValue());
+			}
+			traces += partialFrequencies.traces;
 		}
-		return -1;
 	}
 	
 	/**
-	 * Converts the i-the element of a trace into XExtendedEvent.
-	 * 
-	 * @param pi
-	 *            the trace
-	 * @return it-th element of the trace as XExtendedEvent
+	 * Collects the time and frequency statistics of a consecutive range of traces of the log. Every partition has its
+	 * own statistics and event cache and only reads the transition system and the logs, so partitions can be processed
+	 * concurrently and merged afterwards in trace order.
 	 */
-	private XExtendedEvent getExtendedEvent(XTrace trace, int index) {
-		return XExtendedEvent.wrap(eventCache.get(trace, index));
+	public class TracePartition implements Callable<TracePartition> {
+		
+		// the range of traces of this partition
+		private final int fromTrace;
+		private final int toTrace;
+		
+		// the statistics collected for the traces of this partition
+		private final TimeValues times;
+		private final SparseFrequencies frequencies;
+		
+		// eventCache is used for efficient access to events in XTrace
+		private final TSEventCache eventCache;
+		
+		// transitions by pair of encoded previous and current state, including the pairs without a transition
+		private final Map<Long,Transition> encodedTransitions;
+		
+		private TracePartition(int fromTrace, int toTrace, TimeValues times, SparseFrequencies frequencies) {
+			this.fromTrace = fromTrace;
+			this.toTrace = toTrace;
+			this.times = times;
+			this.frequencies = frequencies;
+			this.eventCache = new TSEventCache();
+			this.encodedTransitions = new HashMap<>();
+		}
+		
+		public TracePartition call() {
+			for (int t = fromTrace; t < toTrace; t++) {
+				processTrace(t);
+			}
+			
+			return this;
+		}
+		
+		private void processTrace(int t) {
+			XTrace pi = log.get(t);
+			
+			long startTime = getStartTime(pi, t);
+			long endTime = getEndTime(pi, t);
+
+			if ((startTime != -1) && (endTime != -1)) 
+				for (int i = 0; i < pi.size(); i++)
+					
+					processTimeEvent(pi, t, i, startTime, endTime);
+					
+			processFrequencyEvent(pi, t);
+		}
+		
+		/**
+		 * This method processes one event from a trace by collecting all necessary
+		 * statistical time (i.e., elapsed, remaining, etc. times) data.
+		 * 
+		 * @param pi
+		 *            the trace to which the event belongs
+		 * @param t
+		 *            the index of the trace in the log
+		 * @param i
+		 *            the index of the event to be processed
+		 * @param startTime
+		 *            the starting time of this trace
+		 * @param endTime
+		 *            the ending time of this trace
+		 */
+		private void processTimeEvent(final XTrace pi, final int t, final int i, final long startTime, final long endTime) {
+			/**
+			 * Get the timestamp of the event we are processing
+			 */
+			long currentTime = getTimestamp(pi, t, i);
+			if (currentTime != EncodedStateLog.NO_TIMESTAMP) {
+
+				/**
+				 * Get the transition that corresponds to this event. Also get the
+				 * source and the target for this transition.
+				 */
+				Transition transition = getTransition(pi, t, i);
+				if (transition != null) {
+					State source = transition.getSource();
+					State target = transition.getTarget();
+
+					/**
+					 * create statistics for the transition, source and target
+					 */
+					StatisticsAccumulator transitionDuration = times.getDuration(transition);
+					StateTimes sourceTimes = times.getStateTimes(source);
+					StateTimes targetTimes = times.getStateTimes(target);
+
+					/**
+					 * annotate the source only for the first event in the trace
+					 */
+					if (i == 0) {
+						sourceTimes.remaining.addValue(endTime - currentTime);
+						sourceTimes.elapsed.addValue(0);
+						sourceTimes.soujourn.addValue(0);
+					}
+
+					/**
+					 * annotate target with elapsed and remaining time
+					 */
+					targetTimes.elapsed.addValue(currentTime - startTime);
+					targetTimes.remaining.addValue(endTime - currentTime);
+
+					/**
+					 * process soujourn time
+					 */
+					if ((i != pi.size() - 1)) {
+						long nextTime = getTimestamp(pi, t, i + 1);
+						if (nextTime != EncodedStateLog.NO_TIMESTAMP) {
+							double soujourn = nextTime - currentTime;
+							targetTimes.soujourn.addValue(soujourn);
+						}
+					} else {
+						targetTimes.soujourn.addValue(0);
+					}
+
+					/**
+					 * annotate the transition with the duration time
+					 */
+					if (i == 0) {
+						transitionDuration.addValue(0.0);
+					} else {
+						long previousTime = getTimestamp(pi, t, i - 1);
+						if (previousTime != EncodedStateLog.NO_TIMESTAMP) {
+							transitionDuration.addValue(currentTime - previousTime);
+						}
+					}
+				}
+			}
+		}
+	
+		/**
+		 * This method processes one event from a trace by collecting all necessary
+		 * statistical frequencies data.
+		 * 
+		 * @param pi
+		 *            the trace to which the event belongs
+		 * @param traceIndex
+		 *            the index of the trace in the log
+		 * 	 
+		 **/
+		private void processFrequencyEvent(final XTrace pi, final int traceIndex) {
+			
+			// only the states and transitions observed in this trace are counted, the others are implicit zeros
+			Map<State,Integer> stateObservations = new HashMap<State,Integer>();
+			Map<Transition,Integer> transitionObservations = new HashMap<Transition,Integer>();
+			
+			for(int i = 0 ; i < pi.size() ; i++)
+			{
+				Transition transition = getTransition(pi, traceIndex, i);
+				if (transition != null) 
+				{
+					State source = transition.getSource();
+					State target = transition.getTarget();
+					
+					if(i == 0) //annotate the source only for the first event, this avoids double-counting states
+					{
+						if(stateObservations.containsKey(source))
+							stateObservations.put(source, (stateObservations.get(source) + 1)); //adds 1 to the observations of the source state
+						else
+							stateObservations.put(source, 1);
+					}
+					//annotate target states
+					if(stateObservations.containsKey(target))
+						stateObservations.put(target, (stateObservations.get(target) + 1)); //adds 1 to the observations of the target state
+					else
+						stateObservations.put(target, 1);
+					
+					//annotate transitions
+					if(transitionObservations.containsKey(transition))
+						transitionObservations.put(transition, (transitionObservations.get(transition) + 1)); //adds 1 to the observations of the transition
+					else
+						transitionObservations.put(transition, 1);
+				}
+			}
+			
+			for(Entry<State,Integer> entry : stateObservations.entrySet()) //for each observed state add the number of observations in that trace
+				frequencies.getFrequency(frequencies.states, entry.getKey()).add(entry.getValue());
+			
+			for(Entry<Transition,Integer> entry : transitionObservations.entrySet()) //same for transitions
+				frequencies.getFrequency(frequencies.transitions, entry.getKey()).add(entry.getValue());
+			
+			frequencies.traces++;
+		}
+		
+		/**
+		 * Gets the time stamp of the first event in a trace.
+		 * 
+		 * @param pi
+		 *            the trace
+		 * @param t
+		 *            the index of the trace in the log
+		 * @return the timestamp of the first event in the trace
+		 */
+		private long getStartTime(XTrace pi, int t) {
+			try {
+				for (int i = 0; i < pi.size(); i++) {
+					long timestamp = getTimestamp(pi, t, i);
+					if (timestamp != EncodedStateLog.NO_TIMESTAMP) {
+						return timestamp;
+					}
+				}
+			} catch (Exception ce) {
+			}
+			return -1;
+		}
+
+		/**
+		 * Gets the time stamp of the last event in a trace.
+		 * 
+		 * @param pi
+		 *            the trace
+		 * @param t
+		 *            the index of the trace in the log
+		 * @return the timestamp of the last event in the trace
+		 */
+		private long getEndTime(XTrace pi, int t) {
+			try {
+				for (int i = 0; i < pi.size(); i++) {
+					long timestamp = getTimestamp(pi, t, pi.size() - i - 1);
+					if (timestamp != EncodedStateLog.NO_TIMESTAMP) {
+						return timestamp;
+					}
+				}
+			} catch (Exception ce) {
+			}
+			return -1;
+		}
+	
+		/**
+		 * Gets the time stamp of the i-th event in a trace, from the encoded log if it is available.
+		 * 
+		 * @return the timestamp in milliseconds, or NO_TIMESTAMP if the event has none
+		 */
+		private long getTimestamp(XTrace pi, int t, int i) {
+			if (encodedLog != null) {
+				return encodedLog.timestamps[t][i];
+			}
+		
+			Date timestamp = getExtendedEvent(pi, i).getTimestamp();
+			return timestamp == null ? EncodedStateLog.NO_TIMESTAMP : timestamp.getTime();
+		}
+	
+		/**
+		 * Gets the transition of the i-th event in a trace, from the transitions recorded by the miner if these are
+		 * given. With an encoded log and states determined by the last event, the transition is otherwise looked up once
+		 * per pair of previous and current state.
+		 */
+		private Transition getTransition(XTrace pi, int t, int i) {
+			if (eventTransitions != null) {
+				return eventTransitions[t][i];
+			}
+			
+			if (encodedLog == null || !statesDeterminedByLastEvent) {
+				return transitionSystem.getTransition(pi, i);
+			}
+		
+			int previousState = i == 0 ? StateDictionary.UNKNOWN : encodedLog.states[t][i - 1];
+			long key = ((long) previousState << 32) | (encodedLog.states[t][i] & 0xFFFFFFFFL);
+			if (!encodedTransitions.containsKey(key)) {
+				encodedTransitions.put(key, transitionSystem.getTransition(pi, i));
+			}
+		
+			return encodedTransitions.get(key);
+		}
+	
+		/**
+		 * Converts the i-the element of a trace into XExtendedEvent.
+		 * 
+		 * @param pi
+		 *            the trace
+		 * @return it-th element of the trace as XExtendedEvent
+		 */
+		private XExtendedEvent getExtendedEvent(XTrace trace, int index) {
+			return XExtendedEvent.wrap(eventCache.get(trace, index));
+		}
 	}
 
 }
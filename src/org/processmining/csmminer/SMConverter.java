@@ -1,19 +1,20 @@
 package org.processmining.csmminer;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.List;
+import java.util.Map;
 
+import org.processmining.csmminer.log.LongDictionary;
+import org.processmining.csmminer.log.StateDictionary;
 import org.processmining.framework.plugin.PluginContext;
 import org.processmining.models.connections.transitionsystem.TransitionSystemConnection;
 import org.processmining.models.graphbased.AttributeMap;
 import org.processmining.models.graphbased.directed.DirectedGraphElementWeights;
 import org.processmining.models.graphbased.directed.transitionsystem.AcceptStateSet;
 import org.processmining.models.graphbased.directed.transitionsystem.StartStateSet;
-import org.processmining.models.graphbased.directed.transitionsystem.State;
-import org.processmining.models.graphbased.directed.transitionsystem.Transition;
-import org.processmining.models.graphbased.directed.transitionsystem.payload.event.EventPayloadTransitionSystem;
 import org.processmining.plugins.transitionsystem.converter.TSConverterInput;
 import org.processmining.plugins.transitionsystem.converter.TSConverterOutput;
 import org.processmining.plugins.transitionsystem.converter.util.TSConversions;
@@ -38,7 +39,10 @@ public class SMConverter {
 	}
 
 	/**
-	 * Converts a transition system according to the given settings.
+	 * Converts a transition system according to the given settings. The conversions are applied in place on a
+	 * {@link ConversionGraph}, every conversion with a worklist of the states around which the transition system
+	 * changed since it last ran. The converted transition system is only created at the end, and only if a conversion
+	 * changed anything.
 	 * 
 	 * @param settings
 	 *            The given settings, which includes the transition system.
@@ -46,72 +50,70 @@ public class SMConverter {
 	 *         system.
 	 */
 	public TSConverterOutput convert(final TSConverterInput settings, boolean createConnection) {
-		EventPayloadTransitionSystem ts = settings.getTransitionSystem();
+		boolean[] use = new boolean[] { settings.getUse(TSConversions.KILLSELFLOOPS),
+				settings.getUse(TSConversions.EXTEND), settings.getUse(TSConversions.MERGEBYOUTPUT),
+				settings.getUse(TSConversions.MERGEBYINPUT) };
 
-		int oldSize;
-		boolean done = false;
+		if (use[0] || use[1] || use[2] || use[3]) {
+			ConversionGraph graph = new ConversionGraph(settings.getTransitionSystem(), settings.getWeights(),
+					settings.getStarts(), settings.getAccepts());
 
-		/**
-		 * Repeat converting the transition system until no conversion yields
-		 * results any more.
-		 */
-		while (!done) {
-			done = true;
 			/**
-			 * If applicable, remove self loops. Reduces number of edges on
-			 * actual removal.
+			 * Initially every conversion checks all states.
 			 */
-			if (settings.getUse(TSConversions.KILLSELFLOOPS)) {
-				oldSize = ts.getEdges().size();
-				ts = killSelfLoops(context, settings);
-				if (oldSize != ts.getEdges().size()) {
-					/**
-					 * Some edges got removed.
-					 */
-					done = false;
+			BitSet[] worklists = new BitSet[use.length];
+			for (int conversion = 0; conversion < use.length; conversion++) {
+				worklists[conversion] = new BitSet();
+				if (use[conversion]) {
+					worklists[conversion].set(0, graph.getStateCount());
 				}
 			}
+			MergeIndex outputIndex = new MergeIndex(graph.getStateCount(), true);
+			MergeIndex inputIndex = new MergeIndex(graph.getStateCount(), false);
+			
 			/**
-			 * If applicable, improve the diamond structure. Increases number of
-			 * edges on actual improvement.
+			 * Repeat converting the transition system until no conversion has
+			 * states left to check.
 			 */
-			if (settings.getUse(TSConversions.EXTEND)) {
-				oldSize = ts.getEdges().size();
-				ts = improveDiamondStructure(context, settings);
-				if (oldSize != ts.getEdges().size()) {
-					/**
-					 * Some edges got added.
-					 */
-					done = false;
+			boolean done = false;
+			while (!done) {
+				/**
+				 * If applicable, remove self loops.
+				 */
+				if (!worklists[0].isEmpty()) {
+					killSelfLoops(graph, worklists[0]);
+					addTouchedStates(graph, worklists, use);
 				}
-			}
-			/**
-			 * If applicable, merge states if outputs are identical. Reduces
-			 * number of states on actual merge.
-			 */
-			if (settings.getUse(TSConversions.MERGEBYOUTPUT)) {
-				oldSize = ts.getNodes().size();
-				ts = merge(settings, true);
-				if (oldSize != ts.getNodes().size()) {
-					/**
-					 * Some states got merged.
-					 */
-					done = false;
+				/**
+				 * If applicable, improve the diamond structure.
+				 */
+				if (!worklists[1].isEmpty()) {
+					improveDiamondStructure(graph, worklists[1]);
+					addTouchedStates(graph, worklists, use);
 				}
-			}
-			/**
-			 * If applicable, merge states if inputs are identical. Reduces
-			 * number of states on actual merge.
-			 */
-			if (settings.getUse(TSConversions.MERGEBYINPUT)) {
-				oldSize = ts.getNodes().size();
-				ts = merge(settings, false);
-				if (oldSize != ts.getNodes().size()) {
-					/**
-					 * Some states got merged.
-					 */
-					done = false;
+				/**
+				 * If applicable, merge states if outputs are identical.
+				 */
+				if (!worklists[2].isEmpty()) {
+					merge(graph, worklists[2], outputIndex);
+					addTouchedStates(graph, worklists, use);
 				}
+				/**
+				 * If applicable, merge states if inputs are identical.
+				 */
+				if (!worklists[3].isEmpty()) {
+					merge(graph, worklists[3], inputIndex);
+					addTouchedStates(graph, worklists, use);
+				}
+				
+				done = true;
+				for (BitSet worklist : worklists) {
+					done &= worklist.isEmpty();
+				}
+			}
+			
+			if (graph.isChanged()) {
+				createTransitionSystem(graph, settings);
 			}
 		}
 
@@ -123,62 +125,51 @@ public class SMConverter {
 		return new TSConverterOutput(settings);
 	}
 
+	/**
+	 * Adds the states touched by the last conversion to the worklists of the conversions that are used.
+	 */
+	private static void addTouchedStates(ConversionGraph graph, BitSet[] worklists, boolean[] use) {
+		BitSet touched = graph.takeTouchedStates();
+		for (int conversion = 0; conversion < worklists.length; conversion++) {
+			if (use[conversion]) {
+				worklists[conversion].or(touched);
+			}
+		}
+	}
+	
 	public TSConverterOutput convert(final TSConverterInput settings) {
 		return convert(settings, true);
 	}
 
 	/**
-	 * Returns a copy of the given transition system that does not contain self
-	 * loops.
+	 * Removes the self loops of the states in the worklist, and the states that are left without edges.
 	 * 
-	 * @param ts
-	 *            The given transition system.
-	 * @return The resulting transition system.
+	 * @param graph
+	 *            The transition system being converted.
+	 * @param worklist
+	 *            The states to check, which is cleared.
 	 */
-	private static TSMinerTransitionSystem killSelfLoops(PluginContext context, TSConverterInput settings) {
-		TSMinerTransitionSystem ts = settings.getTransitionSystem();
-		TSMinerTransitionSystem newTs = new TSMinerTransitionSystem(ts.getLabel(),
-				(TSMinerPayloadHandler) ts.getPayloadHanlder());
-		newTs.addProxyMap(ts);
-		DirectedGraphElementWeights weights = settings.getWeights();
-		DirectedGraphElementWeights newWeights = new DirectedGraphElementWeights();
+	private static void killSelfLoops(ConversionGraph graph, BitSet worklist) {
+		for (int state = worklist.nextSetBit(0); state >= 0; state = worklist.nextSetBit(state + 1)) {
+			if (graph.isRemoved(state)) continue;
+
+			int count = graph.getOutEdgeCount(state);
+			int[] edges = graph.getOutEdges(state);
+			for (int i = 0; i < count; i++) {
+				if (graph.getTarget(edges[i]) == state) {
+					graph.removeEdge(edges[i]);
+				}
+			}
 
-		/**
-		 * Copy all edges together with their states.
-		 */
-		for (Transition transition : ts.getEdges()) {
-			State fromState = transition.getSource();
-			State toState = transition.getTarget();
 			/**
-			 * Check whether self loop.
+			 * A state without edges is removed, it is then no longer a start
+			 * or accept state of the converted transition system.
 			 */
-			if (fromState != toState) {
-				/**
-				 * No self loop. Copy.
-				 */
-				if (newTs.addState(fromState.getIdentifier())) {
-					newWeights.add(fromState.getIdentifier(), weights.get(fromState.getIdentifier(), 1));
-					copyAttributes(newTs, ts, fromState.getIdentifier());
-				}
-				if (newTs.addState(toState.getIdentifier())) {
-					newWeights.add(toState.getIdentifier(), weights.get(toState.getIdentifier(), 1));
-					copyAttributes(newTs, ts, toState.getIdentifier());
-				}
-				if (newTs.addTransition(fromState.getIdentifier(), toState.getIdentifier(), transition.getIdentifier())) {
-					newWeights.add(fromState.getIdentifier(), toState.getIdentifier(), transition.getIdentifier(),
-							weights.get(fromState.getIdentifier(), toState.getIdentifier(), transition.getIdentifier(),
-									1));
-				}
+			if (graph.getOutEdgeCount(state) == 0 && graph.getInEdgeCount(state) == 0) {
+				graph.removeState(state);
 			}
 		}
-
-		/**
-		 * Replace the old with the new. Note that start and accept payloads are
-		 * not affected by this conversion.
-		 */
-		settings.setTransitionSystem(newTs);
-		settings.setWeights(newWeights);
-		return newTs;
+		worklist.clear();
 	}
 
 	/**
@@ -222,201 +213,160 @@ public class SMConverter {
 	}
 
 	/**
-	 * Returns a copy of the given transition system with improved diamond
-	 * structure.
+	 * Improves the diamond structure around the states in the worklist by adding edges. The diamonds are found by
+	 * joining the edges of the north and west states on their labels.
 	 * 
-	 * @param ts
-	 *            The given transition system.
-	 * @return The resulting transition system.
+	 * @param graph
+	 *            The transition system being converted.
+	 * @param worklist
+	 *            The states to check, which is cleared.
 	 */
-	private static TSMinerTransitionSystem improveDiamondStructure(PluginContext context, TSConverterInput settings) {
-		TSMinerTransitionSystem ts = settings.getTransitionSystem();
-		TSMinerTransitionSystem newTs = new TSMinerTransitionSystem(ts.getLabel(),
-				(TSMinerPayloadHandler) ts.getPayloadHanlder());
-		newTs.addProxyMap(ts);
-		DirectedGraphElementWeights weights = settings.getWeights();
-		DirectedGraphElementWeights newWeights = new DirectedGraphElementWeights();
-
+	private static void improveDiamondStructure(ConversionGraph graph, BitSet worklist) {
 		/**
-		 * First, copy all states and edges.
+		 * A diamond depends on the outgoing edges of its north, east and west
+		 * states, so only diamonds of which the north state is in the
+		 * worklist or has an edge to a state in the worklist can change.
 		 */
-		for (Transition transition : ts.getEdges()) {
-			State fromState = transition.getSource();
-			State toState = transition.getTarget();
-			if (newTs.addState(fromState.getIdentifier())) {
-				newWeights.add(fromState.getIdentifier(), weights.get(fromState.getIdentifier(), 1));
-				copyAttributes(newTs, ts, fromState.getIdentifier());
-			}
-			if (newTs.addState(toState.getIdentifier())) {
-				newWeights.put(toState.getIdentifier(), weights.get(toState.getIdentifier(), 1));
-				copyAttributes(newTs, ts, toState.getIdentifier());
-			}
-			if (newTs.addTransition(fromState.getIdentifier(), toState.getIdentifier(), transition.getIdentifier())) {
-				newWeights.add(fromState.getIdentifier(), toState.getIdentifier(), transition.getIdentifier(),
-						weights.get(fromState.getIdentifier(), toState.getIdentifier(), transition.getIdentifier(), 1));
+		BitSet northStates = (BitSet) worklist.clone();
+		for (int state = worklist.nextSetBit(0); state >= 0; state = worklist.nextSetBit(state + 1)) {
+			if (graph.isRemoved(state)) continue;
+			
+			int count = graph.getInEdgeCount(state);
+			int[] edges = graph.getInEdges(state);
+			for (int i = 0; i < count; i++) {
+				northStates.set(graph.getSource(edges[i]));
 			}
 		}
+		worklist.clear();
+
 		/**
-		 * Second, check whether we can improve the diamond structure by adding
-		 * edges.
+		 * Collect the missing edges first, as (east, south, label) triples.
+		 * An edge missing from several diamonds gets the weight of all these.
 		 */
-		for (Transition northEastTransition : ts.getEdges()) {
-			State northState = northEastTransition.getSource();
-			State eastState = northEastTransition.getTarget();
-			if (eastState == northState) {
-				continue;
-			}
-			/**
-			 * northState: state from which we can do actions A and B (A might
-			 * be identical to B). eastState: state we reach after doing B in
-			 * northState. westState: state we reach after doing A in
-			 * northState. southState: state we reach after doing B in
-			 * westState. If we cannot reach southState from eastState by doing
-			 * an A, an A edge will be added from eastState to southState.
-			 */
-			for (Transition northWestTransition : ts.getOutEdges(northState)) {
-				State westState = northWestTransition.getTarget();
-				if ((westState == northState) || (westState == eastState)) {
+		List<int[]> missingEdges = new ArrayList<>();
+		for (int northState = northStates.nextSetBit(0); northState >= 0; northState = northStates.nextSetBit(northState + 1)) {
+			if (graph.isRemoved(northState)) continue;
+			
+			int northCount = graph.getOutEdgeCount(northState);
+			int[] northEdges = graph.getOutEdges(northState);
+			for (int northEast = 0; northEast < northCount; northEast++) {
+				int eastState = graph.getTarget(northEdges[northEast]);
+				if (eastState == northState) {
 					continue;
 				}
-				for (Transition southWestTransition : ts.getOutEdges(westState)) {
-					if (!northEastTransition.getIdentifier().equals(southWestTransition.getIdentifier())) {
-						continue;
-					}
-					State southState = southWestTransition.getTarget();
-					if ((southState == northState) || (southState == eastState) || (southState == westState)) {
+				/**
+				 * northState: state from which we can do actions A and B (A might
+				 * be identical to B). eastState: state we reach after doing B in
+				 * northState. westState: state we reach after doing A in
+				 * northState. southState: state we reach after doing B in
+				 * westState. If we cannot reach southState from eastState by doing
+				 * an A, an A edge will be added from eastState to southState.
+				 */
+				int eastLabel = graph.getEdgeLabel(northEdges[northEast]);
+				for (int northWest = 0; northWest < northCount; northWest++) {
+					int westState = graph.getTarget(northEdges[northWest]);
+					if ((westState == northState) || (westState == eastState)) {
 						continue;
 					}
-					boolean found = false;
-					for (Transition southEastTransition : ts.getOutEdges(eastState)) {
-						if (southEastTransition.getTarget() == southState) {
-							if (southEastTransition.getIdentifier().equals(northWestTransition.getIdentifier())) {
-								found = true;
-							}
+					/**
+					 * Only the B edges of westState can lead to a southState,
+					 * and whether the A edge from eastState to southState
+					 * exists is a single lookup.
+					 */
+					int westLabel = graph.getEdgeLabel(northEdges[northWest]);
+					int westCount = graph.getOutEdgeCount(westState, eastLabel);
+					int[] westEdges = graph.getOutEdges(westState, eastLabel);
+					for (int southWest = 0; southWest < westCount; southWest++) {
+						int southState = graph.getTarget(westEdges[southWest]);
+						if ((southState == northState) || (southState == eastState) || (southState == westState)) {
+							continue;
+						}
+						if (graph.getEdge(eastState, southState, westLabel) == StateDictionary.UNKNOWN) {
+							missingEdges.add(new int[] { eastState, southState, westLabel });
 						}
-					}
-					if (!found) {
-						newTs.addTransition(eastState.getIdentifier(), southState.getIdentifier(),
-								northWestTransition.getIdentifier());
-						newWeights.add(eastState.getIdentifier(), southState.getIdentifier(),
-								northWestTransition.getIdentifier(), 1);
 					}
 				}
 			}
 		}
 
-		/**
-		 * Replace the old with the new. Note that start and accept payloads are
-		 * not affected by this conversion.
-		 */
-		settings.setTransitionSystem(newTs);
-		settings.setWeights(newWeights);
-		return newTs;
+		for (int[] edge : missingEdges) {
+			graph.addEdge(edge[0], edge[1], edge[2], 1);
+		}
 	}
 
 	/**
-	 * Returns a copy of the given transition system with all states with
-	 * identical outputs (inputs) merged.
+	 * Merges the states in the worklist with the states with identical outputs (inputs). The states are grouped by a
+	 * hashed signature of the labels of their outgoing (incoming) edges, the state with the lowest id of a group
+	 * serves as the proxy for the other states.
 	 * 
-	 * @param ts
-	 *            The given transition system.
-	 * @param output
-	 *            Whether to merge by output (true) or by input (false).
-	 * @return The resulting transition system.
+	 * @param graph
+	 *            The transition system being converted.
+	 * @param worklist
+	 *            The states to check, which is cleared.
+	 * @param index
+	 *            The signatures of the states and the proxy per signature, kept between the rounds.
+	 */
+	private static void merge(ConversionGraph graph, BitSet worklist, MergeIndex index) {
+		/**
+		 * First update the signatures of all states in the worklist, merging
+		 * does not change the signatures of the remaining states.
+		 */
+		for (int state = worklist.nextSetBit(0); state >= 0; state = worklist.nextSetBit(state + 1)) {
+			if (graph.isRemoved(state)) continue;
+			index.update(graph, state);
+		}
+		
+		for (int state = worklist.nextSetBit(0); state >= 0; state = worklist.nextSetBit(state + 1)) {
+			if (graph.isRemoved(state)) continue;
+			
+			Signature signature = index.signatures[state];
+			Integer proxy = index.proxies.get(signature);
+			if (proxy == null || proxy == state || graph.isRemoved(proxy) || !signature.equals(index.signatures[proxy])) {
+				index.proxies.put(signature, state);
+			}
+			else if (proxy < state) {
+				graph.merge(state, proxy);
+			}
+			else {
+				graph.merge(proxy, state);
+				index.proxies.put(signature, state);
+			}
+		}
+		worklist.clear();
+	}
+	
+	/**
+	 * Creates the converted transition system from the graph, with the attributes of the states of the original
+	 * transition system and its proxies, and replaces the transition system and weights in the settings. If states
+	 * were removed or merged, the start and accept states are replaced by those of the states that are left, merged
+	 * states having passed these on to their proxies.
 	 */
-	private static TSMinerTransitionSystem merge(TSConverterInput settings, boolean output) {
+	private static void createTransitionSystem(ConversionGraph graph, TSConverterInput settings) {
 		TSMinerTransitionSystem ts = settings.getTransitionSystem();
 		TSMinerTransitionSystem newTs = new TSMinerTransitionSystem(ts.getLabel(),
 				(TSMinerPayloadHandler) ts.getPayloadHanlder());
 		newTs.addProxyMap(ts);
-		DirectedGraphElementWeights weights = settings.getWeights();
 		DirectedGraphElementWeights newWeights = new DirectedGraphElementWeights();
-		StartStateSet starts = new StartStateSet();
-		AcceptStateSet accepts = new AcceptStateSet();
-		/**
-		 * Maps every combination of outputs (represented by a string) to the
-		 * identifier that will serve as a proxy for all identifier which share
-		 * the same set of outgoing edges.
-		 */
-		TreeMap<String, Object> outputMap = new TreeMap<String, Object>();
-		/**
-		 * Maps every identifier onto the identifier that will serve as its
-		 * proxy.
-		 */
-		HashMap<Object, Object> proxyMap = new HashMap<Object, Object>();
-		/**
-		 * Iterate over all states and identifiers, and create the output and
-		 * proxy maps.
-		 */
 
-		for (State state : ts.getNodes()) {
-			/**
-			 * Construct the string from the outgoing edges.
-			 */
-			TreeSet<String> key = new TreeSet<String>();
-			Collection<Transition> transitions = output ? ts.getOutEdges(state) : ts.getInEdges(state);
-			for (Transition transition : transitions) {
-				key.add(transition.getIdentifier().toString());
-			}
-			Object id = state.getIdentifier();
-			Object proxyId;
-			if (outputMap.containsKey(key.toString())) {
-				/**
-				 * Known combination of outputs. Get the proxy.
-				 */
-				proxyId = outputMap.get(key.toString());
-				newWeights.add(proxyId, weights.get(id, 1));
-			} else {
-				/**
-				 * New combination. Add the payload, which will act as a proxy
-				 * for this output.
-				 */
-				newTs.addState(id);
-				copyAttributes(newTs, ts, id);
-				outputMap.put(key.toString(), id);
-				proxyId = id;
-				newWeights.add(id, weights.get(id, 1));
-			}
-			/**
-			 * Add the proxy state as proxy for this state.
-			 */
-			proxyMap.put(id, proxyId);
-			if (id != proxyId) {
-				newTs.putProxy(id, proxyId);
-			}
-			/**
-			 * If the identifier is a start identifier, then so should its proxy
-			 * be.
-			 */
-			if (settings.getStarts().contains(id)) {
-				starts.add(proxyId);
-			}
-			/**
-			 * If the identifier is an accept identifier, then so should its
-			 * proxy be.
-			 */
-			if (settings.getAccepts().contains(id)) {
-				accepts.add(proxyId);
-			}
+		for (int state = 0; state < graph.getStateCount(); state++) {
+			if (graph.isRemoved(state)) continue;
+			
+			Object id = graph.getState(state);
+			newTs.addState(id);
+			copyAttributes(newTs, ts, id);
+			newWeights.add(id, graph.getStateWeight(state));
 		}
-		/**
-		 * Now, iterate over all transitions, and add a transition from the
-		 * proxy of its source to the proxy of its target.
-		 */
-		for (Transition transition : ts.getEdges()) {
-			State fromState = transition.getSource();
-			State toState = transition.getTarget();
-			/**
-			 * Get both proxies.
-			 */
-			Object fromId = proxyMap.get(fromState.getIdentifier());
-			Object toId = proxyMap.get(toState.getIdentifier());
-			/**
-			 * Add the transition.
-			 */
-			newTs.addTransition(fromId, toId, transition.getIdentifier());
-			newWeights.add(fromId, toId, transition.getIdentifier(),
-					weights.get(fromId, toId, transition.getIdentifier(), 1));
+		for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+			if (!graph.isLive(edge)) continue;
+			
+			Object fromId = graph.getState(graph.getSource(edge));
+			Object toId = graph.getState(graph.getTarget(edge));
+			Object transitionId = graph.getLabel(graph.getEdgeLabel(edge));
+			newTs.addTransition(fromId, toId, transitionId);
+			newWeights.add(fromId, toId, transitionId, graph.getEdgeWeight(edge));
+		}
+		for (long proxy : graph.getProxies()) {
+			newTs.putProxy(graph.getState(LongDictionary.getHigh(proxy)), graph.getState(LongDictionary.getLow(proxy)));
 		}
 
 		/**
@@ -424,8 +374,103 @@ public class SMConverter {
 		 */
 		settings.setTransitionSystem(newTs);
 		settings.setWeights(newWeights);
-		settings.setStarts(starts);
-		settings.setAccepts(accepts);
-		return newTs;
+		if (graph.hasRemovedStates()) {
+			StartStateSet starts = new StartStateSet();
+			for (int state = graph.getStarts().nextSetBit(0); state >= 0; state = graph.getStarts().nextSetBit(state + 1)) {
+				if (!graph.isRemoved(state)) starts.add(graph.getState(state));
+			}
+			AcceptStateSet accepts = new AcceptStateSet();
+			for (int state = graph.getAccepts().nextSetBit(0); state >= 0; state = graph.getAccepts().nextSetBit(state + 1)) {
+				if (!graph.isRemoved(state)) accepts.add(graph.getState(state));
+			}
+			settings.setStarts(starts);
+			settings.setAccepts(accepts);
+		}
+	}
+
+	/**
+	 * The sorted distinct label names of the outgoing or incoming edges of a state, with a precomputed hash.
+	 */
+	private static class Signature {
+		final int[] labels;
+		final int hash;
+		
+		Signature(int[] labels) {
+			this.labels = labels;
+			this.hash = Arrays.hashCode(labels);
+		}
+		
+		public int hashCode() {
+			return hash;
+		}
+		
+		public boolean equals(Object other) {
+			return other instanceof Signature && hash == ((Signature) other).hash
+					&& Arrays.equals(labels, ((Signature) other).labels);
+		}
+	}
+	
+	/**
+	 * The signatures of the states by outputs or inputs, and the proxy state per signature. As in the TS Miner, the
+	 * labels are compared by the string of their transition identifier, so every label id is mapped to the id of its
+	 * name.
+	 */
+	private static class MergeIndex {
+		final boolean output;
+		final Signature[] signatures;
+		final Map<Signature,Integer> proxies;
+		final Map<String,Integer> nameIds;
+		int[] labelNames;
+		
+		MergeIndex(int states, boolean output) {
+			this.output = output;
+			this.signatures = new Signature[states];
+			this.proxies = new HashMap<>();
+			this.nameIds = new HashMap<>();
+			this.labelNames = new int[0];
+		}
+		
+		int getName(ConversionGraph graph, int label) {
+			if (label >= labelNames.length) {
+				int length = labelNames.length;
+				labelNames = Arrays.copyOf(labelNames, Math.max(2 * length, label + 1));
+				Arrays.fill(labelNames, length, labelNames.length, StateDictionary.UNKNOWN);
+			}
+			if (labelNames[label] == StateDictionary.UNKNOWN) {
+				String name = graph.getLabel(label).toString();
+				Integer id = nameIds.get(name);
+				if (id == null) {
+					id = nameIds.size();
+					nameIds.put(name, id);
+				}
+				labelNames[label] = id;
+			}
+			return labelNames[label];
+		}
+		
+		void update(ConversionGraph graph, int state) {
+			int count = output ? graph.getOutEdgeCount(state) : graph.getInEdgeCount(state);
+			int[] edges = output ? graph.getOutEdges(state) : graph.getInEdges(state);
+			int[] labels = new int[count];
+			for (int i = 0; i < count; i++) {
+				labels[i] = getName(graph, graph.getEdgeLabel(edges[i]));
+			}
+			Arrays.sort(labels);
+			int distinct = 0;
+			for (int i = 0; i < count; i++) {
+				if (distinct == 0 || labels[i] != labels[distinct - 1]) {
+					labels[distinct++] = labels[i];
+				}
+			}
+			
+			Signature signature = new Signature(Arrays.copyOf(labels, distinct));
+			if (signatures[state] != null && !signatures[state].equals(signature)) {
+				Integer proxy = proxies.get(signatures[state]);
+				if (proxy != null && proxy == state) {
+					proxies.remove(signatures[state]);
+				}
+			}
+			signatures[state] = signature;
+		}
 	}
 }
@@ -1,17 +1,22 @@
 package org.processmining.csmminer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import org.deckfour.xes.model.XEvent;
-import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
 import org.processmining.contexts.uitopia.UIPluginContext;
+import org.processmining.csmminer.log.EncodedModelLog;
+import org.processmining.csmminer.log.StateDictionary;
 import org.processmining.framework.plugin.PluginContext;
 import org.processmining.models.connections.transitionsystem.TransitionSystemConnection;
-import org.processmining.models.graphbased.AttributeMap;
-import org.processmining.models.graphbased.directed.DirectedGraphElementWeights;
-import org.processmining.models.graphbased.directed.transitionsystem.AcceptStateSet;
-import org.processmining.models.graphbased.directed.transitionsystem.StartStateSet;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
 import org.processmining.plugins.transitionsystem.converter.TSConverterInput;
 import org.processmining.plugins.transitionsystem.converter.util.TSConversions;
 import org.processmining.plugins.transitionsystem.miner.TSMiner;
@@ -27,12 +32,58 @@ public class SMMiner extends TSMiner {
 	private PluginContext context;
 	private boolean useProgressCounter;
 	
+	// Whether the transition of every event is recorded while mining, and the recorded transitions by trace and event
+	private boolean recordEventTransitions;
+	private Transition[][] eventTransitions;
+	
+	// Whether the last mined transition system was truncated at the maximum number of states
+	private boolean truncated;
+	
 	public SMMiner(PluginContext context, boolean useProgressCounter) {
 		super(context);
 		this.context = context;
 		this.useProgressCounter = useProgressCounter;
 	}
 	
+	/**
+	 * Records the transition of every event while mining, so that the log can be annotated without computing the
+	 * transitions of the events again, see {@link #getEventTransitions()}.
+	 */
+	public void setRecordEventTransitions(boolean recordEventTransitions) {
+		this.recordEventTransitions = recordEventTransitions;
+	}
+	
+	/**
+	 * Returns the transitions of the events of the last mined log by trace and event index, null for the events
+	 * without a transition. Returns null if the transitions were not recorded, or if the converter replaced the mined
+	 * transition system so that the recorded transitions are not part of the result.
+	 */
+	public Transition[][] getEventTransitions() {
+		return eventTransitions;
+	}
+	
+	/**
+	 * Returns whether the last mined transition system was truncated because it has too many states.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+	
+	/**
+	 * Tells the user that the last mined transition system was truncated, if it was. The mining itself can run on any
+	 * thread, so the message is shown later on the event dispatch thread.
+	 */
+	public void showTruncationMessage() {
+		if (truncated && context instanceof UIPluginContext) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					JOptionPane.showMessageDialog(null,
+							"This transition system contains too many states, and will be truncated.");
+				}
+			});
+		}
+	}
+	
 	/**
 	 * Mines a transition system according to the given settings.
 	 * 
@@ -42,28 +93,38 @@ public class SMMiner extends TSMiner {
 	 */
 	@Override
 	public TSMinerOutput mine(final TSMinerInput settings) {
-		TSMinerPayloadHandler payloadHandler = new TSMinerPayloadHandler(settings);
-		/**
-		 * All results from the mining stage are stored in the input for the
-		 * conversion stage.
-		 */
-		TSConverterInput converterSettings = settings.getConverterSettings();
-		TSMinerTransitionSystem ts = new TSMinerTransitionSystem("", payloadHandler);
-		converterSettings.setTransitionSystem(ts);
-		DirectedGraphElementWeights weights = converterSettings.getWeights();
-		StartStateSet starts = converterSettings.getStarts();
-		AcceptStateSet accepts = converterSettings.getAccepts();
-
-		int stateCtr = 0;
-		int traceCounter = 0;
-		int percCounter = 0;
-
-		boolean truncated = false;
+		return mine(settings, null);
+	}
+	
+	/**
+	 * Mines a transition system according to the given settings, using the encoded version of the log if it is given.
+	 * The state payloads and transition identifiers are then computed once per state instead of once per event, which
+	 * relies on the states of the CSM Miner being determined by the last event only.
+	 * 
+	 * @param settings
+	 *            The given settings, which includes the log to mine.
+	 * @param encodedLog
+	 *            The encoded log lining up with the log in the settings, or null.
+	 * @return The mining result, which includes the mined transition system.
+	 */
+	public TSMinerOutput mine(final TSMinerInput settings, EncodedModelLog encodedLog) {
+		TSMinerOutput output = mineWithoutRegistration(settings, encodedLog);
+		register(settings, output);
+		showTruncationMessage();
+		
+		return output;
+	}
+	
+	/**
+	 * Mines a transition system without registering the settings and the connection in the context, so that it can
+	 * run concurrently with other miners. Use {@link #register(TSMinerInput, TSMinerOutput)} on the result afterwards,
+	 * and {@link #showTruncationMessage()} to tell the user if it was truncated.
+	 */
+	public TSMinerOutput mineWithoutRegistration(final TSMinerInput settings, EncodedModelLog encodedLog) {
 		/**
 		 * Mining stage.
 		 */
-		XLog log = settings.getLog();
-		int nofTraces = TSMinerLog.getTraces(log).size();
+		List<XTrace> traces = TSMinerLog.getTraces(settings.getLog());
 		
 		if (useProgressCounter) {
 			context.getProgress().setMinimum(0);
@@ -71,108 +132,121 @@ public class SMMiner extends TSMiner {
 			 * For every trace a tick on the progress bar, and an extra tick for the
 			 * modification phase.
 			 */
-			context.getProgress().setMaximum(nofTraces + 1);
+			context.getProgress().setMaximum(traces.size() + 1);
 			context.log("Constructing initial transition system");
 			context.getProgress().setIndeterminate(false);
 		}
 		
-		for (XTrace trace : TSMinerLog.getTraces(log)) {
-
-			// Cache all events in this trace. This prevents reading the same events over and over again.
-			//eventCache = new XEvent[trace.size()];
-			//for (int i = 0; i < trace.size(); i++) {
-			//	eventCache[i] = trace.get(i);
-			//}
-
-			for (int i = 0; i < trace.size(); i++) {
-
-				/**
-				 * An Xevent corresponds to a transition in the transition
-				 * system. First, construct the payload of the state preceding
-				 * the transition.
-				 */
-				TSMinerPayload fromPayload = (TSMinerPayload) payloadHandler.getSourceStateIdentifier(trace, i);
-
-				/**
-				 * Second, in a similar way, create the payload of the state
-				 * succeeding the transition.
-				 */
-				TSMinerPayload toPayload = (TSMinerPayload) payloadHandler.getTargetStateIdentifier(trace, i);
-
-				if (stateCtr > settings.getMaxStates()) {
-					if (ts.getNode(fromPayload) == null) {
-						if (!truncated) {
-							truncated = true;
-							if (context instanceof UIPluginContext) {
-								JOptionPane.showMessageDialog(null,
-										"This transition system contains too many states, and will be truncated.");
-							}
-						}
-						continue;
-					}
-					if (ts.getNode(toPayload) == null) {
-						if (!truncated) {
-							truncated = true;
-							JOptionPane.showMessageDialog(null,
-									"This transition system contains too many states, and will be truncated.");
+		TracePartition partition = new TracePartition(settings, encodedLog, traces, 0, traces.size(),
+				settings.getMaxStates(), null, useProgressCounter);
+		partition.call();
+		truncated = partition.truncated;
+		
+		return createOutput(settings, traces, partition.builder, partition.eventTransitionIds);
+	}
+	
+	/**
+	 * Splits the traces of the log into at most the given number of consecutive partitions, each mined into its own
+	 * builder. The partitions can be run concurrently, after which
+	 * {@link #mineWithoutRegistration(TSMinerInput, EncodedModelLog, List)} merges them. A single partition is mined
+	 * like the whole log, truncated at the maximum number of states. Several partitions are not truncated, but all of
+	 * them stop as soon as one has more states than the maximum allows, as the log is then mined sequentially.
+	 */
+	public List<TracePartition> createPartitions(final TSMinerInput settings, EncodedModelLog encodedLog, int partitions) {
+		List<XTrace> traces = TSMinerLog.getTraces(settings.getLog());
+		partitions = Math.max(1, Math.min(partitions, traces.size()));
+		List<TracePartition> tracePartitions = new ArrayList<>(partitions);
+		
+		AtomicBoolean exceeded = partitions > 1 ? new AtomicBoolean(false) : null;
+		for (int p = 0; p < partitions; p++) {
+			tracePartitions.add(new TracePartition(settings, encodedLog, traces, p * traces.size() / partitions,
+					(p + 1) * traces.size() / partitions, settings.getMaxStates(), exceeded, false));
+		}
+		
+		return tracePartitions;
+	}
+	
+	/**
+	 * Mines a transition system from mined partitions, without registering it. The partitions are merged in trace
+	 * order, so the states and transitions are added in the order of their first occurrence in the log and the result
+	 * is the same as that of {@link #mineWithoutRegistration(TSMinerInput, EncodedModelLog)}, including the labels of
+	 * the states. Several partitions are mined without a maximum number of states, if one of them stopped because it
+	 * exceeded the maximum or the merged transition system could have been truncated, the log is mined sequentially
+	 * instead, as the truncation depends on the order of all events.
+	 */
+	public TSMinerOutput mineWithoutRegistration(final TSMinerInput settings, EncodedModelLog encodedLog,
+			List<TracePartition> partitions) {
+		if (partitions.get(0).exceeded != null && partitions.get(0).exceeded.get()) {
+			return mineWithoutRegistration(settings, encodedLog);
+		}
+		
+		List<XTrace> traces = TSMinerLog.getTraces(settings.getLog());
+		
+		TransitionSystemBuilder builder = partitions.get(0).builder;
+		int[][] eventTransitionIds = recordEventTransitions ? new int[traces.size()][] : null;
+		if (recordEventTransitions) {
+			System.arraycopy(partitions.get(0).eventTransitionIds, 0, eventTransitionIds, 0,
+					partitions.get(0).eventTransitionIds.length);
+		}
+		
+		truncated = partitions.get(0).truncated;
+		if (partitions.size() > 1) {
+			builder = new TransitionSystemBuilder();
+			for (TracePartition partition : partitions) {
+				int[] transitionIds = builder.addAll(partition.builder);
+				
+				if (recordEventTransitions) {
+					for (int t = partition.fromTrace; t < partition.toTrace; t++) {
+						int[] traceTransitionIds = partition.eventTransitionIds[t - partition.fromTrace];
+						for (int i = 0; i < traceTransitionIds.length; i++) {
+							traceTransitionIds[i] = transitionIds[traceTransitionIds[i]];
 						}
-						continue;
+						eventTransitionIds[t] = traceTransitionIds;
 					}
 				}
-
-				/**
-				 * Create both states with the constructed payloads.
-				 */
-				if (ts.addState(fromPayload)) {
-					stateCtr++;
-					ts.getNode(fromPayload).getAttributeMap().put(AttributeMap.LABEL, String.valueOf(stateCtr));
-					ts.getNode(fromPayload).getAttributeMap().put(AttributeMap.TOOLTIP, fromPayload.toString());
-				}
-				weights.add(fromPayload, 1);
-				if (ts.addState(toPayload)) {
-					stateCtr++;
-					ts.getNode(toPayload).getAttributeMap().put(AttributeMap.LABEL, String.valueOf(stateCtr));
-					ts.getNode(toPayload).getAttributeMap().put(AttributeMap.TOOLTIP, toPayload.toString());
-				}
-				weights.add(toPayload, 1);
-
-				/**
-				 * Create the transition. Add label if not filtered out.
-				 */
-				XEvent event = payloadHandler.getSequenceElement(trace, i);
-				Object transitionIdentifier = payloadHandler.getTransitionIdentifier(event);
-
-				/**
-				 * Note: if the transition already exists, a new one will not be
-				 * added.
-				 */
-				ts.addTransition(fromPayload, toPayload, transitionIdentifier);
-				weights.add(fromPayload, toPayload, transitionIdentifier, 1);
-
-				/**
-				 * Update start payloads and/or accept payloads if necessary.
-				 */
-				if (i == 0) {
-					starts.add(fromPayload);
-				}
-				if (i == trace.size() - 1) {
-					accepts.add(toPayload);
-				}
 			}
-			
-			if (useProgressCounter) {
-				//context.getProgress().inc();
-				traceCounter++;
-				if ((100 * traceCounter / (nofTraces + 1)) > percCounter) {
-					context.getProgress().setValue(traceCounter);
-					percCounter++;
+		}
+		
+		// Subtracting from the state count rather than adding to the maximum does not overflow for Integer.MAX_VALUE
+		if (partitions.size() > 1 && builder.getStateCount() - 1 > settings.getMaxStates()) {
+			return mineWithoutRegistration(settings, encodedLog);
+		}
+		
+		return createOutput(settings, traces, builder, eventTransitionIds);
+	}
+	
+	/**
+	 * Creates the ProM transition system with its weights and start and accept states from the builder, and converts
+	 * it according to the settings.
+	 */
+	private TSMinerOutput createOutput(final TSMinerInput settings, List<XTrace> traces, TransitionSystemBuilder builder,
+			int[][] eventTransitionIds) {
+		/**
+		 * All results from the mining stage are stored in the input for the
+		 * conversion stage.
+		 */
+		TSConverterInput converterSettings = settings.getConverterSettings();
+		TSMinerTransitionSystem ts = new TSMinerTransitionSystem("", new TSMinerPayloadHandler(settings));
+		converterSettings.setTransitionSystem(ts);
+		builder.materialise(ts, converterSettings.getWeights(), converterSettings.getStarts(),
+				converterSettings.getAccepts());
+		
+		eventTransitions = null;
+		if (recordEventTransitions) {
+			eventTransitions = new Transition[traces.size()][];
+			for (int t = 0; t < traces.size(); t++) {
+				eventTransitions[t] = new Transition[eventTransitionIds[t].length];
+				for (int i = 0; i < eventTransitionIds[t].length; i++) {
+					// A skipped event has a transition if another trace added it later on
+					eventTransitions[t][i] = eventTransitionIds[t][i] == StateDictionary.UNKNOWN
+							? ts.getTransition(traces.get(t), i) : builder.getTransition(eventTransitionIds[t][i]);
 				}
 			}
 		}
-
+		
 		if (useProgressCounter) {
 //			context.log("Weights after mining: " + converterSettings.getWeights().toString());
-
+			
 			context.log("Converting transition system");
 		}
 		
@@ -181,16 +255,28 @@ public class SMMiner extends TSMiner {
 		 */
 		SMConverter converter = new SMConverter(context);
 		TSMinerOutput output = converter.convert(converterSettings, false);
+		if (output.getTransitionSystem() != ts) {
+			eventTransitions = null;
+		}
 		
 		if (useProgressCounter) {
-			context.getProgress().setValue(nofTraces + 1); // We're done.
-			
+			context.getProgress().setValue(traces.size() + 1); // We're done.
+
 //			context.log("Weights after converting: " + output.getWeights().toString());
 			context.log("Done!");
 		}
-
+		
+		return output;
+	}
+	
+	/**
+	 * Registers the settings and the transition system connection of a mining result in the context.
+	 */
+	public void register(final TSMinerInput settings, TSMinerOutput output) {
+		TSConverterInput converterSettings = settings.getConverterSettings();
+		
 		boolean useSettings = true;
-		if (ts != output.getTransitionSystem()) {
+		if (converterSettings.getTransitionSystem() != output.getTransitionSystem()) {
 			/*
 			 * Reduction rules have been applied. This may affect states and/or
 			 * transitions.
@@ -214,20 +300,233 @@ public class SMMiner extends TSMiner {
 				//useSettings = false;
 			}
 		}
-
+		
 		if (useSettings) {
 			//			System.out.println("Creating provided object for settings");
 			context.getProvidedObjectManager().createProvidedObject("TS Miner settings", settings, TSMinerInput.class,
 					context);
 			//			System.out.println("Created provided object for settings");
 		}
-
+		
 		//		System.out.println("Creating connection");
 		context.addConnection(new TransitionSystemConnection(output.getTransitionSystem(), output.getWeights(),
 				output.getStarts(), output.getAccepts(), useSettings ? settings : null));
 		//		System.out.println("Created connection");
+	}
+	
+	
+	/**
+	 * Mines a consecutive range of traces of the log into its own {@link TransitionSystemBuilder}. Every partition has
+	 * its own payload handler and only reads the log, so partitions can be mined concurrently and merged afterwards in
+	 * trace order. The log must not be modified while the partitions run, and the attributes of trace views have to be
+	 * loaded beforehand with TraceView.loadAttributes. A partition only records that it was truncated, the miner
+	 * reports it to the user afterwards.
+	 */
+	public class TracePartition implements Callable<TracePartition> {
+		
+		private final EncodedModelLog encodedLog;
+		private final List<XTrace> traces;
+		private final TSMinerPayloadHandler payloadHandler;
+		
+		// the range of traces of this partition, and the maximum number of states after which it is truncated
+		private final int fromTrace;
+		private final int toTrace;
+		private final int maxStates;
+		private final boolean useProgressCounter;
+		
+		// Shared by the partitions of a log that are mined concurrently, set once one of them has more states than the
+		// maximum allows so that all of them stop. Null for a partition that is truncated instead.
+		private final AtomicBoolean exceeded;
+		
+		// the states and transitions mined from the traces of this partition
+		private final TransitionSystemBuilder builder;
+		
+		// Payloads, builder state ids and builder label ids by encoded state id, and the payload and builder state id
+		// of the empty initial state
+		private TSMinerPayload[] statePayloads;
+		private int[] stateIds;
+		private int[] labelIds;
+		private TSMinerPayload initialPayload;
+		private int initialStateId;
+		
+		// The builder transition ids of the events of the traces of this partition if they are recorded, unknown for
+		// the events that are skipped because of the maximum number of states
+		private final int[][] eventTransitionIds;
+		
+		private boolean truncated;
+		
+		private TracePartition(final TSMinerInput settings, EncodedModelLog encodedLog, List<XTrace> traces,
+				int fromTrace, int toTrace, int maxStates, AtomicBoolean exceeded, boolean useProgressCounter) {
+			this.encodedLog = encodedLog;
+			this.traces = traces;
+			this.payloadHandler = new TSMinerPayloadHandler(settings);
+			this.fromTrace = fromTrace;
+			this.toTrace = toTrace;
+			this.maxStates = maxStates;
+			this.exceeded = exceeded;
+			this.useProgressCounter = useProgressCounter;
+			this.builder = new TransitionSystemBuilder();
+			
+			initialStateId = StateDictionary.UNKNOWN;
+			if (encodedLog != null) {
+				statePayloads = new TSMinerPayload[encodedLog.stateNames.size()];
+				stateIds = new int[encodedLog.stateNames.size()];
+				Arrays.fill(stateIds, StateDictionary.UNKNOWN);
+				labelIds = new int[encodedLog.stateNames.size()];
+			}
+		
+			eventTransitionIds = recordEventTransitions ? new int[toTrace - fromTrace][] : null;
+			truncated = false;
+		}
+		
+		public TracePartition call() {
+			int traceCounter = 0;
+			int percCounter = 0;
+		
+			for (int t = fromTrace; t < toTrace; t++) {
+				if (exceeded != null && exceeded.get()) break;
+				
+				processTrace(t);
+				
+				if (exceeded != null && builder.getStateCount() - 1 > maxStates) {
+					exceeded.set(true);
+					break;
+				}
+				
+				if (useProgressCounter) {
+					//context.getProgress().inc();
+					traceCounter++;
+					if ((100 * traceCounter / (traces.size() + 1)) > percCounter) {
+						context.getProgress().setValue(traceCounter);
+						percCounter++;
+					}
+				}
+			}
+			
+			return this;
+		}
+		
+		private void processTrace(int t) {
+			XTrace trace = traces.get(t);
+			
+			int[] traceTransitionIds = null;
+			if (eventTransitionIds != null) {
+				traceTransitionIds = new int[trace.size()];
+				eventTransitionIds[t - fromTrace] = traceTransitionIds;
+			}
 
-		return output;
+			// Cache all events in this trace. This prevents reading the same events over and over again.
+			//eventCache = new XEvent[trace.size()];
+			//for (int i = 0; i < trace.size(); i++) {
+			//	eventCache[i] = trace.get(i);
+			//}
+
+			for (int i = 0; i < trace.size(); i++) {
+
+				/**
+				 * An Xevent corresponds to a transition in the transition
+				 * system. First, construct the payload of the state preceding
+				 * the transition.
+				 */
+				TSMinerPayload fromPayload;
+				int fromState;
+
+				/**
+				 * Second, in a similar way, create the payload of the state
+				 * succeeding the transition.
+				 */
+				TSMinerPayload toPayload;
+				int toState;
+				int label;
+				
+				if (encodedLog != null) {
+					int state = encodedLog.states[t][i];
+					if (statePayloads[state] == null) {
+						statePayloads[state] = (TSMinerPayload) payloadHandler.getTargetStateIdentifier(trace, i);
+						labelIds[state] = builder.addLabel(payloadHandler.getTransitionIdentifier(
+								payloadHandler.getSequenceElement(trace, i)));
+					}
+					
+					if (i == 0) {
+						if (initialPayload == null) {
+							initialPayload = (TSMinerPayload) payloadHandler.getSourceStateIdentifier(trace, i);
+						}
+						fromPayload = initialPayload;
+						fromState = initialStateId;
+					}
+					else {
+						fromPayload = statePayloads[encodedLog.states[t][i - 1]];
+						fromState = stateIds[encodedLog.states[t][i - 1]];
+					}
+					toPayload = statePayloads[state];
+					toState = stateIds[state];
+					label = labelIds[state];
+				}
+				else {
+					fromPayload = (TSMinerPayload) payloadHandler.getSourceStateIdentifier(trace, i);
+					toPayload = (TSMinerPayload) payloadHandler.getTargetStateIdentifier(trace, i);
+					fromState = StateDictionary.UNKNOWN;
+					toState = StateDictionary.UNKNOWN;
+					
+					XEvent event = payloadHandler.getSequenceElement(trace, i);
+					label = builder.addLabel(payloadHandler.getTransitionIdentifier(event));
+				}
+				if (fromState == StateDictionary.UNKNOWN) {
+					fromState = builder.getStateId(fromPayload);
+				}
+				if (toState == StateDictionary.UNKNOWN) {
+					toState = builder.getStateId(toPayload);
+				}
+
+				if (exceeded == null && builder.getStateCount() > maxStates) {
+					if (fromState == StateDictionary.UNKNOWN || toState == StateDictionary.UNKNOWN) {
+						truncated = true;
+						if (traceTransitionIds != null) traceTransitionIds[i] = StateDictionary.UNKNOWN;
+						continue;
+					}
+				}
+
+				/**
+				 * Create both states with the constructed payloads, the states are labelled in order of creation.
+				 */
+				if (fromState == StateDictionary.UNKNOWN) {
+					fromState = builder.addState(fromPayload);
+				}
+				if (toState == StateDictionary.UNKNOWN) {
+					toState = builder.addState(toPayload);
+				}
+				if (encodedLog != null) {
+					if (i == 0) {
+						initialStateId = fromState;
+					}
+					else {
+						stateIds[encodedLog.states[t][i - 1]] = fromState;
+					}
+					stateIds[encodedLog.states[t][i]] = toState;
+				}
+
+				/**
+				 * Create the transition, which also adds the weights of the states and the transition.
+				 */
+
+				/**
+				 * Note: if the transition already exists, a new one will not be
+				 * added.
+				 */
+				int transition = builder.addEvent(fromState, toState, label);
+				if (traceTransitionIds != null) traceTransitionIds[i] = transition;
+				
+				/**
+				 * Update start payloads and/or accept payloads if necessary.
+				 */
+				if (i == 0) {
+					builder.addStart(fromState);
+				}
+				if (i == trace.size() - 1) {
+					builder.addAccept(toState);
+				}
+			}
+		}
 	}
 
 }
@@ -0,0 +1,215 @@
+package org.processmining.csmminer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.processmining.csmminer.relations.StateMap;
+import org.processmining.csmminer.relations.StateSet;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+
+/**
+ * Mines sets of co-occurring states that span several perspectives, e.g. A in s1 while B in s2 while C in s3. The
+ * support of a set is the time spent in the composite states that contain all its states, relative to the total time
+ * spent in the composite states. Since adding a state to a set can only lower its support, the sets are mined level by
+ * level as in Apriori: a set of k states is only considered if all its subsets of k - 1 states are frequent. Every
+ * state has a bit set of the composite states it is part of, the composite states of a set are the intersection of
+ * these bit sets.
+ */
+public class StateSetMiner {
+	private final CSMMinerResults results;
+	private final float minSupport;
+	private final int maxSize;
+	
+	// The perspective states, ordered by perspective, with the composite states they are part of
+	private final List<State> states = new ArrayList<>();
+	private final List<String> statePerspectives = new ArrayList<>();
+	private final List<Integer> statePerspectiveIndices = new ArrayList<>();
+	private final List<BitSet> stateCompositeStates = new ArrayList<>();
+	// The time spent in every composite state and in all of them
+	private float[] compositeSojourns;
+	private float totalSojourn;
+	
+	/**
+	 * @param maxSize
+	 *            the maximum number of states in a set, 0 for no maximum
+	 */
+	public StateSetMiner(CSMMinerResults results, float minSupport, int maxSize) {
+		this.results = results;
+		this.minSupport = minSupport;
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Returns the frequent sets with at least the given number of states, ordered by size.
+	 */
+	public List<StateSet> mine(int minSize) {
+		indexStates();
+		List<StateSet> stateSets = new ArrayList<>();
+		if (totalSojourn <= 0) return stateSets;
+		
+		// Frequent sets of one state, each set is a list of state indices ordered by perspective
+		List<int[]> level = new ArrayList<>();
+		List<BitSet> levelCompositeStates = new ArrayList<>();
+		for (int s = 0; s < states.size(); s++) {
+			if (getSupport(stateCompositeStates.get(s)) >= minSupport) {
+				level.add(new int[] { s });
+				levelCompositeStates.add(stateCompositeStates.get(s));
+			}
+		}
+		
+		for (int size = 1; !level.isEmpty(); size++) {
+			if (size >= minSize) {
+				for (int i = 0; i < level.size(); i++) {
+					stateSets.add(createStateSet(level.get(i), levelCompositeStates.get(i)));
+				}
+			}
+			if (maxSize > 0 && size == maxSize) break;
+			
+			Set<List<Integer>> frequent = new HashSet<>();
+			for (int[] set : level) {
+				frequent.add(asList(set));
+			}
+			
+			// Join the sets that only differ in their last state, this state is of a later perspective in the second set
+			List<int[]> nextLevel = new ArrayList<>();
+			List<BitSet> nextLevelCompositeStates = new ArrayList<>();
+			for (int i = 0; i < level.size(); i++) {
+				int[] set1 = level.get(i);
+				for (int j = i + 1; j < level.size(); j++) {
+					int[] set2 = level.get(j);
+					if (!samePrefix(set1, set2)) break;
+					
+					int last1 = set1[size - 1];
+					int last2 = set2[size - 1];
+					if (statePerspectiveIndices.get(last1) >= statePerspectiveIndices.get(last2)) continue;
+					
+					int[] candidate = Arrays.copyOf(set1, size + 1);
+					candidate[size] = last2;
+					if (!allSubsetsFrequent(candidate, frequent)) continue;
+					
+					BitSet compositeStates = (BitSet) levelCompositeStates.get(i).clone();
+					compositeStates.and(stateCompositeStates.get(last2));
+					if (getSupport(compositeStates) < minSupport) continue;
+					
+					nextLevel.add(candidate);
+					nextLevelCompositeStates.add(compositeStates);
+				}
+			}
+			
+			level = nextLevel;
+			levelCompositeStates = nextLevelCompositeStates;
+		}
+		
+		return stateSets;
+	}
+	
+	/**
+	 * Gives every composite state and every perspective state it maps to an index, and sets the bit of each composite
+	 * state in the bit sets of its perspective states.
+	 */
+	private void indexStates() {
+		StateMap stateMap = results.stateMap;
+		List<State> compositeStates = new ArrayList<>();
+		for (State compositeState : results.tsMinerOutputs.get(CSMMiner.CSMLabel).getTransitionSystem().getNodes()) {
+			if (stateMap.getMappedStates(CSMMiner.CSMLabel, compositeState.getIdentifier()) != null &&
+					results.stateSojourns.containsKey(compositeState)) {
+				compositeStates.add(compositeState);
+			}
+		}
+		
+		compositeSojourns = new float[compositeStates.size()];
+		totalSojourn = results.totalStateSojourns.get(CSMMiner.CSMLabel);
+		
+		List<List<State>> perspectiveStates = new ArrayList<>();
+		List<List<BitSet>> perspectiveCompositeStates = new ArrayList<>();
+		for (int p = 0; p < results.perspectiveNames.size(); p++) {
+			perspectiveStates.add(new ArrayList<State>());
+			perspectiveCompositeStates.add(new ArrayList<BitSet>());
+		}
+		int[] stateIndices = new int[stateMap.getStateCount()];
+		Arrays.fill(stateIndices, -1);
+		
+		for (int c = 0; c < compositeStates.size(); c++) {
+			State compositeState = compositeStates.get(c);
+			compositeSojourns[c] = results.stateSojourns.get(compositeState);
+			
+			int compositeStateId = stateMap.getStateId(CSMMiner.CSMLabel, compositeState.getIdentifier());
+			int[] mappedStates = stateMap.getMappedStateIds(compositeStateId);
+			for (int m = 0; m < stateMap.getMappedStateCount(compositeStateId); m++) {
+				int stateId = mappedStates[m];
+				int p = results.perspectiveNames.indexOf(stateMap.getProcessName(stateId));
+				if (p < 0) continue;
+				
+				if (stateIndices[stateId] < 0) {
+					stateIndices[stateId] = perspectiveStates.get(p).size();
+					perspectiveStates.get(p).add(results.tsMinerOutputs.get(stateMap.getProcessName(stateId)).getTransitionSystem().
+							getNode(stateMap.getIdentifier(stateId)));
+					perspectiveCompositeStates.get(p).add(new BitSet(compositeStates.size()));
+				}
+				perspectiveCompositeStates.get(p).get(stateIndices[stateId]).set(c);
+			}
+		}
+		
+		for (int p = 0; p < results.perspectiveNames.size(); p++) {
+			for (int s = 0; s < perspectiveStates.get(p).size(); s++) {
+				states.add(perspectiveStates.get(p).get(s));
+				statePerspectives.add(results.perspectiveNames.get(p));
+				statePerspectiveIndices.add(p);
+				stateCompositeStates.add(perspectiveCompositeStates.get(p).get(s));
+			}
+		}
+	}
+	
+	private float getSupport(BitSet compositeStates) {
+		float sojourn = 0;
+		for (int c = compositeStates.nextSetBit(0); c >= 0; c = compositeStates.nextSetBit(c + 1)) {
+			sojourn += compositeSojourns[c];
+		}
+		return sojourn / totalSojourn;
+	}
+	
+	private StateSet createStateSet(int[] set, BitSet compositeStates) {
+		List<String> perspectiveNames = new ArrayList<>(set.length);
+		List<State> setStates = new ArrayList<>(set.length);
+		float support = getSupport(compositeStates);
+		float expectedSupport = 1;
+		for (int s : set) {
+			perspectiveNames.add(statePerspectives.get(s));
+			setStates.add(states.get(s));
+			expectedSupport *= getSupport(stateCompositeStates.get(s));
+		}
+		
+		return new StateSet(perspectiveNames, setStates, support, support / expectedSupport);
+	}
+	
+	private static boolean samePrefix(int[] set1, int[] set2) {
+		for (int i = 0; i < set1.length - 1; i++) {
+			if (set1[i] != set2[i]) return false;
+		}
+		return true;
+	}
+	
+	private static boolean allSubsetsFrequent(int[] candidate, Set<List<Integer>> frequent) {
+		// The subsets without one of the last two states are the joined sets
+		for (int skip = 0; skip < candidate.length - 2; skip++) {
+			List<Integer> subset = new ArrayList<>(candidate.length - 1);
+			for (int i = 0; i < candidate.length; i++) {
+				if (i != skip) subset.add(candidate[i]);
+			}
+			if (!frequent.contains(subset)) return false;
+		}
+		return true;
+	}
+	
+	private static List<Integer> asList(int[] set) {
+		List<Integer> list = new ArrayList<>(set.length);
+		for (int s : set) {
+			list.add(s);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,250 @@
+package org.processmining.csmminer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.processmining.csmminer.log.LongDictionary;
+import org.processmining.csmminer.log.StateDictionary;
+import org.processmining.models.graphbased.AttributeMap;
+import org.processmining.models.graphbased.directed.DirectedGraphElementWeights;
+import org.processmining.models.graphbased.directed.transitionsystem.AcceptStateSet;
+import org.processmining.models.graphbased.directed.transitionsystem.StartStateSet;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.plugins.transitionsystem.miner.TSMinerTransitionSystem;
+
+/**
+ * Builds a transition system from the events of a log with dense int ids for the states, transition labels and
+ * transitions, and primitive arrays for their weights. The states get ids in order of first occurrence, which are also
+ * the labels of the states (starting at 1) in the mined transition system. The ProM transition system, its weights and
+ * its start and accept states are only created by {@link #materialise(TSMinerTransitionSystem,
+ * DirectedGraphElementWeights, StartStateSet, AcceptStateSet)}.
+ */
+public class TransitionSystemBuilder {
+	
+	// States by id and the ids by state payload, with the number of events from or to each state
+	private final Map<Object,Integer> stateIds;
+	private final List<Object> states;
+	private int[] stateWeights;
+	
+	// Transition labels by id and the ids by transition identifier
+	private final Map<Object,Integer> labelIds;
+	private final List<Object> labels;
+	
+	// Packed (source state, target state) pairs, and the transitions as packed (pair, label) keys with their weights
+	private final LongDictionary statePairs;
+	private final LongDictionary transitionKeys;
+	private int[] transitionWeights;
+	
+	private final BitSet starts;
+	private final BitSet accepts;
+	
+	// The transitions of the materialised transition system by transition id, created when they are requested
+	private TSMinerTransitionSystem transitionSystem;
+	private Transition[] transitions;
+	
+	public TransitionSystemBuilder() {
+		stateIds = new HashMap<>();
+		states = new ArrayList<>();
+		stateWeights = new int[16];
+		
+		labelIds = new HashMap<>();
+		labels = new ArrayList<>();
+		
+		statePairs = new LongDictionary();
+		transitionKeys = new LongDictionary();
+		transitionWeights = new int[16];
+		
+		starts = new BitSet();
+		accepts = new BitSet();
+	}
+	
+	/**
+	 * Returns the id of the state with the given payload, or {@link StateDictionary#UNKNOWN} if it was not added.
+	 */
+	public int getStateId(Object payload) {
+		Integer id = stateIds.get(payload);
+		return id == null ? StateDictionary.UNKNOWN : id;
+	}
+	
+	public int addState(Object payload) {
+		Integer id = stateIds.get(payload);
+		if (id != null) return id;
+		
+		if (states.size() == stateWeights.length) {
+			stateWeights = Arrays.copyOf(stateWeights, 2 * states.size());
+		}
+		
+		id = states.size();
+		states.add(payload);
+		stateIds.put(payload, id);
+		
+		return id;
+	}
+	
+	public int getStateCount() {
+		return states.size();
+	}
+	
+	public Object getState(int stateId) {
+		return states.get(stateId);
+	}
+	
+	public int getStateWeight(int stateId) {
+		return stateWeights[stateId];
+	}
+	
+	public int addLabel(Object transitionIdentifier) {
+		Integer id = labelIds.get(transitionIdentifier);
+		if (id != null) return id;
+		
+		id = labels.size();
+		labels.add(transitionIdentifier);
+		labelIds.put(transitionIdentifier, id);
+		
+		return id;
+	}
+	
+	/**
+	 * Adds an event from the source to the target state with the given label, which adds the transition if it is not
+	 * in the transition system yet. Returns the id of the transition.
+	 */
+	public int addEvent(int sourceStateId, int targetStateId, int labelId) {
+		stateWeights[sourceStateId]++;
+		stateWeights[targetStateId]++;
+		
+		int transitionId = addTransition(sourceStateId, targetStateId, labelId);
+		transitionWeights[transitionId]++;
+		
+		return transitionId;
+	}
+	
+	private int addTransition(int sourceStateId, int targetStateId, int labelId) {
+		int pair = statePairs.intern(LongDictionary.pack(sourceStateId, targetStateId));
+		int transitionId = transitionKeys.intern(LongDictionary.pack(pair, labelId));
+		if (transitionId == transitionWeights.length) {
+			transitionWeights = Arrays.copyOf(transitionWeights, 2 * transitionId);
+		}
+		
+		return transitionId;
+	}
+	
+	/**
+	 * Adds the states, transitions, weights and start and accept states of another builder, as if its events were added
+	 * after those of this builder. The new states and transitions get ids in the order of their ids in the other
+	 * builder, which is the order in which they first occur in its events. Returns the ids in this builder of the
+	 * transitions of the other builder.
+	 */
+	public int[] addAll(TransitionSystemBuilder other) {
+		int[] otherStateIds = new int[other.getStateCount()];
+		for (int stateId = 0; stateId < other.getStateCount(); stateId++) {
+			otherStateIds[stateId] = addState(other.getState(stateId));
+			stateWeights[otherStateIds[stateId]] += other.stateWeights[stateId];
+		}
+		
+		int[] otherTransitionIds = new int[other.getTransitionCount()];
+		for (int transitionId = 0; transitionId < other.getTransitionCount(); transitionId++) {
+			otherTransitionIds[transitionId] = addTransition(otherStateIds[other.getSource(transitionId)],
+					otherStateIds[other.getTarget(transitionId)], addLabel(other.getLabel(transitionId)));
+			transitionWeights[otherTransitionIds[transitionId]] += other.transitionWeights[transitionId];
+		}
+		
+		for (int stateId = other.starts.nextSetBit(0); stateId >= 0; stateId = other.starts.nextSetBit(stateId + 1)) {
+			starts.set(otherStateIds[stateId]);
+		}
+		for (int stateId = other.accepts.nextSetBit(0); stateId >= 0; stateId = other.accepts.nextSetBit(stateId + 1)) {
+			accepts.set(otherStateIds[stateId]);
+		}
+		
+		return otherTransitionIds;
+	}
+	
+	public void addStart(int stateId) {
+		starts.set(stateId);
+	}
+	
+	public void addAccept(int stateId) {
+		accepts.set(stateId);
+	}
+	
+	public BitSet getStarts() {
+		return starts;
+	}
+	
+	public BitSet getAccepts() {
+		return accepts;
+	}
+	
+	public int getTransitionCount() {
+		return transitionKeys.size();
+	}
+	
+	public int getSource(int transitionId) {
+		return LongDictionary.getHigh(statePairs.getKey(LongDictionary.getHigh(transitionKeys.getKey(transitionId))));
+	}
+	
+	public int getTarget(int transitionId) {
+		return LongDictionary.getLow(statePairs.getKey(LongDictionary.getHigh(transitionKeys.getKey(transitionId))));
+	}
+	
+	public Object getLabel(int transitionId) {
+		return labels.get(LongDictionary.getLow(transitionKeys.getKey(transitionId)));
+	}
+	
+	public int getTransitionWeight(int transitionId) {
+		return transitionWeights[transitionId];
+	}
+	
+	/**
+	 * Adds the states and transitions to the transition system in the order of their ids, labels the states by their
+	 * ids and adds the weights and the start and accept states.
+	 */
+	public void materialise(TSMinerTransitionSystem ts, DirectedGraphElementWeights weights, StartStateSet starts,
+			AcceptStateSet accepts) {
+		for (int stateId = 0; stateId < states.size(); stateId++) {
+			Object payload = states.get(stateId);
+			ts.addState(payload);
+			State state = ts.getNode(payload);
+			state.getAttributeMap().put(AttributeMap.LABEL, String.valueOf(stateId + 1));
+			state.getAttributeMap().put(AttributeMap.TOOLTIP, payload.toString());
+			weights.add(payload, stateWeights[stateId]);
+		}
+		
+		for (int transitionId = 0; transitionId < transitionKeys.size(); transitionId++) {
+			Object source = states.get(getSource(transitionId));
+			Object target = states.get(getTarget(transitionId));
+			ts.addTransition(source, target, getLabel(transitionId));
+			weights.add(source, target, getLabel(transitionId), transitionWeights[transitionId]);
+		}
+		
+		for (int stateId = this.starts.nextSetBit(0); stateId >= 0; stateId = this.starts.nextSetBit(stateId + 1)) {
+			starts.add(states.get(stateId));
+		}
+		for (int stateId = this.accepts.nextSetBit(0); stateId >= 0; stateId = this.accepts.nextSetBit(stateId + 1)) {
+			accepts.add(states.get(stateId));
+		}
+		
+		transitionSystem = ts;
+		transitions = null;
+	}
+	
+	/**
+	 * Returns the transition with the given id in the materialised transition system.
+	 */
+	public Transition getTransition(int transitionId) {
+		if (transitions == null) {
+			transitions = new Transition[transitionKeys.size()];
+		}
+		
+		if (transitions[transitionId] == null) {
+			transitions[transitionId] = transitionSystem.findTransition(states.get(getSource(transitionId)),
+					states.get(getTarget(transitionId)), getLabel(transitionId));
+		}
+		
+		return transitions[transitionId];
+	}
+}
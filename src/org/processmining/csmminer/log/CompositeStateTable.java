@@ -0,0 +1,157 @@
+package org.processmining.csmminer.log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns composite states, fixed-width tuples holding the state id of every perspective, to dense integer ids. The
+ * tuples are stored in a single int array and looked up through an open addressing hash table, so interning a tuple
+ * does not allocate. The "|state1|state2|...|" label of a composite state is only rendered when it is asked for, and
+ * is cached afterwards.
+ * 
+ * The table is not thread-safe. Code that interns tuples holds the lock of the table while doing so, and the table is
+ * only read by several threads at once when no tuples are interned, as while the state models are mined.
+ */
+public class CompositeStateTable implements StateLabels {
+	private final StateDictionary stateNames;
+	private final int width;
+	
+	private int size;
+	private int[] tuples;
+	private int[] hashes;
+	// Ids + 1 of the tuples by hash slot, 0 for an empty slot
+	private int[] slots;
+	private String[] labels;
+	private Map<String,Integer> labelIds;
+	private int labelIdsSize;
+	
+	public CompositeStateTable(StateDictionary stateNames, int width) {
+		this.stateNames = stateNames;
+		this.width = width;
+		
+		size = 0;
+		tuples = new int[16 * width];
+		hashes = new int[16];
+		slots = new int[32];
+		labels = new String[16];
+		labelIds = new HashMap<>();
+		labelIdsSize = 0;
+	}
+	
+	/**
+	 * Returns the id of the given tuple, adding the tuple to the table if it is new. The array is copied if needed, so
+	 * it can be reused by the caller.
+	 */
+	public int intern(int[] tuple) {
+		int hash = hash(tuple);
+		int slot = findSlot(tuple, hash);
+		if (slots[slot] != 0) {
+			return slots[slot] - 1;
+		}
+		
+		if (size == hashes.length) {
+			tuples = Arrays.copyOf(tuples, 2 * size * width);
+			hashes = Arrays.copyOf(hashes, 2 * size);
+			labels = Arrays.copyOf(labels, 2 * size);
+		}
+		
+		int id = size++;
+		System.arraycopy(tuple, 0, tuples, id * width, width);
+		hashes[id] = hash;
+		slots[slot] = id + 1;
+		
+		if (2 * size > slots.length) {
+			rehash();
+		}
+		
+		return id;
+	}
+	
+	public int getId(int[] tuple) {
+		int slot = findSlot(tuple, hash(tuple));
+		return slots[slot] - 1;
+	}
+	
+	/**
+	 * Returns the id of the composite state with the given label, or {@link StateDictionary#UNKNOWN}.
+	 */
+	public int getId(String label) {
+		for (; labelIdsSize < size; labelIdsSize++) {
+			labelIds.put(getName(labelIdsSize), labelIdsSize);
+		}
+		
+		Integer id = labelIds.get(label);
+		return id == null ? StateDictionary.UNKNOWN : id;
+	}
+	
+	public int getState(int id, int perspective) {
+		return tuples[id * width + perspective];
+	}
+	
+	public String getStateName(int id, int perspective) {
+		return stateNames.getName(getState(id, perspective));
+	}
+	
+	public String getName(int id) {
+		if (labels[id] == null) {
+			StringBuilder label = new StringBuilder("|");
+			for (int p = 0; p < width; p++) {
+				label.append(getStateName(id, p)).append('|');
+			}
+			labels[id] = label.toString();
+		}
+		
+		return labels[id];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	private int hash(int[] tuple) {
+		int hash = 1;
+		for (int p = 0; p < width; p++) {
+			hash = 31 * hash + tuple[p];
+		}
+		return hash ^ (hash >>> 16);
+	}
+	
+	private int findSlot(int[] tuple, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		
+		while (slots[slot] != 0 && !matches(slots[slot] - 1, tuple, hash)) {
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private boolean matches(int id, int[] tuple, int hash) {
+		if (hashes[id] != hash) return false;
+		
+		int offset = id * width;
+		for (int p = 0; p < width; p++) {
+			if (tuples[offset + p] != tuple[p]) return false;
+		}
+		return true;
+	}
+	
+	private void rehash() {
+		slots = new int[2 * slots.length];
+		int mask = slots.length - 1;
+		
+		for (int id = 0; id < size; id++) {
+			int slot = hashes[id] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+}
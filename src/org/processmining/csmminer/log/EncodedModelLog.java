@@ -0,0 +1,33 @@
+package org.processmining.csmminer.log;
+
+/**
+ * The log of a single state model (a perspective sub log or the composite log) stored as primitive columns per trace.
+ * For every event of a model trace this holds the state id, the timestamp and the index of the originating event in
+ * the state log trace, or {@link EncodedStateLog#INITIAL_EVENT} for an artificial initial state. The traces and event
+ * positions line up with the corresponding XLog, so that the columns can be used in place of the XES events.
+ */
+public class EncodedModelLog {
+	public final StateLabels stateNames;
+	public final int[][] states;
+	public final long[][] timestamps;
+	public final int[][] sourceIndices;
+	
+	public EncodedModelLog(StateLabels stateNames, int size) {
+		this.stateNames = stateNames;
+		states = new int[size][];
+		timestamps = new long[size][];
+		sourceIndices = new int[size][];
+	}
+	
+	public int size() {
+		return states.length;
+	}
+	
+	public int traceLength(int trace) {
+		return states[trace].length;
+	}
+	
+	public String getStateName(int trace, int index) {
+		return stateNames.getName(states[trace][index]);
+	}
+}
@@ -0,0 +1,248 @@
+package org.processmining.csmminer.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.deckfour.xes.extension.std.XConceptExtension;
+import org.deckfour.xes.extension.std.XTimeExtension;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.processmining.csmminer.CSMMiner;
+import org.processmining.csmminer.LogProcessor;
+
+/**
+ * Dictionary-encoded representation of a state log. Perspectives and state names are interned once, after which every
+ * trace is a set of primitive columns (see {@link EncodedTrace}). The perspective sub logs and the composite log are
+ * derived from these columns without touching the XES attributes again, composite states are interned as tuples of
+ * perspective state ids in a {@link CompositeStateTable}.
+ * 
+ * The log is filled trace by trace while scanning the XLog, perspective ids are handed out in order of discovery
+ * during this scan. Calling {@link #finish(List)} renumbers the perspectives to the order of the perspective names
+ * used by the miner and resolves the initial state of every perspective in every trace.
+ */
+public class EncodedStateLog {
+	public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+	public static final int INITIAL_EVENT = -1;
+	
+	private StateDictionary perspectives;
+	private final StateDictionary stateNames;
+	private final List<EncodedTrace> traces;
+	private CompositeStateTable compositeStates;
+	
+	public EncodedStateLog() {
+		perspectives = new StateDictionary();
+		stateNames = new StateDictionary();
+		traces = new ArrayList<>();
+	}
+	
+	/**
+	 * Encodes a complete log in a separate pass, for callers that do not go through the fused preprocessing pass.
+	 */
+	public static EncodedStateLog encode(XLog log, List<String> perspectiveNames) {
+		EncodedStateLog encodedLog = new EncodedStateLog();
+		
+		for (XTrace trace : log) {
+			EncodedTrace encodedTrace = encodedLog.addTrace(trace);
+			for (int j = 0; j < trace.size(); j++) {
+				XEvent event = trace.get(j);
+				encodedLog.setEvent(encodedTrace, j, LogProcessor.getEventPerspective(event),
+						XConceptExtension.instance().extractName(event), XTimeExtension.instance().extractTimestamp(event));
+			}
+		}
+		
+		encodedLog.finish(perspectiveNames);
+		return encodedLog;
+	}
+	
+	public EncodedTrace addTrace(XTrace trace) {
+		EncodedTrace encodedTrace = new EncodedTrace(trace.size());
+		
+		for (Map.Entry<String,XAttribute> attribute : trace.getAttributes().entrySet()) {
+			if (attribute.getKey().startsWith(CSMMiner.processInitialStateAttributeLabel)) {
+				encodedTrace.initialStateAttributes.put(
+						attribute.getKey().substring(CSMMiner.processInitialStateAttributeLabel.length()),
+						attribute.getValue().toString());
+			}
+		}
+		
+		traces.add(encodedTrace);
+		return encodedTrace;
+	}
+	
+	public void setEvent(EncodedTrace trace, int index, String perspectiveName, String stateName, Date timestamp) {
+		trace.perspectives[index] = perspectives.intern(perspectiveName);
+		trace.states[index] = stateNames.intern(stateName);
+		trace.timestamps[index] = timestamp == null ? NO_TIMESTAMP : timestamp.getTime();
+	}
+	
+	/**
+	 * Renumbers the perspectives to the given order and resolves the initial states of all traces.
+	 */
+	public void finish(List<String> perspectiveNames) {
+		StateDictionary orderedPerspectives = new StateDictionary();
+		for (String perspectiveName : perspectiveNames) {
+			orderedPerspectives.intern(perspectiveName);
+		}
+		
+		int[] renumbering = new int[perspectives.size()];
+		for (int p = 0; p < perspectives.size(); p++) {
+			renumbering[p] = orderedPerspectives.getId(perspectives.getName(p));
+		}
+		perspectives = orderedPerspectives;
+		
+		for (EncodedTrace trace : traces) {
+			for (int j = 0; j < trace.size(); j++) {
+				trace.perspectives[j] = renumbering[trace.perspectives[j]];
+			}
+			
+			trace.initialStates = new int[perspectives.size()];
+			for (int p = 0; p < perspectives.size(); p++) {
+				String perspectiveName = perspectives.getName(p);
+				String initialState = trace.initialStateAttributes.get(perspectiveName);
+				if (initialState == null) {
+					initialState = perspectiveName + "NotStarted";
+				}
+				trace.initialStates[p] = stateNames.intern(initialState);
+			}
+			trace.initialStateAttributes = null;
+		}
+		
+		compositeStates = new CompositeStateTable(stateNames, perspectives.size());
+	}
+	
+	/**
+	 * Derives the sub log of a perspective, following the same rules as the XES perspective sub logs: an artificial
+	 * initial state unless the trace starts in the known initial state of this perspective, and no repeated states.
+	 */
+	public EncodedModelLog createPerspectiveLog(int perspective) {
+		EncodedModelLog modelLog = new EncodedModelLog(stateNames, traces.size());
+		
+		for (int t = 0; t < traces.size(); t++) {
+			EncodedTrace trace = traces.get(t);
+			int[] states = new int[trace.size() + 1];
+			long[] timestamps = new long[trace.size() + 1];
+			int[] sourceIndices = new int[trace.size() + 1];
+			int length = 0;
+			
+			int initialState = trace.initialStates[perspective];
+			if (trace.perspectives[0] != perspective || initialState != trace.states[0]) {
+				states[length] = initialState;
+				timestamps[length] = trace.perspectives[0] != perspective ? trace.timestamps[0] : NO_TIMESTAMP;
+				sourceIndices[length] = INITIAL_EVENT;
+				length++;
+			}
+			
+			int previousState = StateDictionary.UNKNOWN;
+			for (int j = 0; j < trace.size(); j++) {
+				if (trace.perspectives[j] == perspective && trace.states[j] != previousState) {
+					states[length] = trace.states[j];
+					timestamps[length] = trace.timestamps[j];
+					sourceIndices[length] = j;
+					length++;
+					previousState = trace.states[j];
+				}
+			}
+			
+			modelLog.states[t] = Arrays.copyOf(states, length);
+			modelLog.timestamps[t] = Arrays.copyOf(timestamps, length);
+			modelLog.sourceIndices[t] = Arrays.copyOf(sourceIndices, length);
+		}
+		
+		return modelLog;
+	}
+	
+	/**
+	 * Derives the composite log, following the same rules as the XES composite log. The composite states are interned
+	 * in the composite state table of this log, holding the lock of the table.
+	 */
+	public EncodedModelLog createCompositeLog(boolean removeRepeatStates) {
+		synchronized (compositeStates) {
+			return deriveCompositeLog(removeRepeatStates);
+		}
+	}
+	
+	private EncodedModelLog deriveCompositeLog(boolean removeRepeatStates) {
+		EncodedModelLog modelLog = new EncodedModelLog(compositeStates, traces.size());
+		
+		for (int t = 0; t < traces.size(); t++) {
+			EncodedTrace trace = traces.get(t);
+			int[] states = new int[trace.size() + 1];
+			long[] timestamps = new long[trace.size() + 1];
+			int[] sourceIndices = new int[trace.size() + 1];
+			int length = 0;
+			
+			int[] perspectiveStates = trace.initialStates.clone();
+			boolean initialStateMatches = false;
+			for (int p = 0; p < perspectiveStates.length; p++) {
+				// FIXME: same as the XES composite log, the first event does not need to belong to this perspective
+				if (perspectiveStates[p] == trace.states[0]) {
+					initialStateMatches = true;
+				}
+			}
+			
+			if (!initialStateMatches) {
+				states[length] = compositeStates.intern(perspectiveStates);
+				timestamps[length] = NO_TIMESTAMP;
+				sourceIndices[length] = INITIAL_EVENT;
+				length++;
+			}
+			
+			int previousState = StateDictionary.UNKNOWN;
+			for (int j = 0; j < trace.size(); j++) {
+				perspectiveStates[trace.perspectives[j]] = trace.states[j];
+				int compositeState = compositeStates.intern(perspectiveStates);
+				
+				if (compositeState != previousState || !removeRepeatStates) {
+					states[length] = compositeState;
+					timestamps[length] = trace.timestamps[j];
+					sourceIndices[length] = j;
+					length++;
+					previousState = compositeState;
+				}
+			}
+			
+			modelLog.states[t] = Arrays.copyOf(states, length);
+			modelLog.timestamps[t] = Arrays.copyOf(timestamps, length);
+			modelLog.sourceIndices[t] = Arrays.copyOf(sourceIndices, length);
+		}
+		
+		return modelLog;
+	}
+	
+	/**
+	 * The table of composite states, shared by the composite log and the perspective interactions so that both use the
+	 * same ids. Only available after {@link #finish(List)}.
+	 */
+	public CompositeStateTable getCompositeStates() {
+		return compositeStates;
+	}
+	
+	public List<String> getPerspectiveNames() {
+		return perspectives.getNames();
+	}
+	
+	public int getPerspectiveId(String perspectiveName) {
+		return perspectives.getId(perspectiveName);
+	}
+	
+	public StateDictionary getStateNames() {
+		return stateNames;
+	}
+	
+	public EncodedTrace getTrace(int index) {
+		return traces.get(index);
+	}
+	
+	public List<EncodedTrace> getTraces() {
+		return traces;
+	}
+	
+	public int size() {
+		return traces.size();
+	}
+}
@@ -0,0 +1,29 @@
+package org.processmining.csmminer.log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A trace of the state log stored as primitive columns: per event the perspective id, the state id and the timestamp,
+ * and per perspective the id of its initial state.
+ */
+public class EncodedTrace {
+	public final int[] perspectives;
+	public final int[] states;
+	public final long[] timestamps;
+	public int[] initialStates;
+	
+	// Initial state attributes by perspective name, resolved into initialStates once all perspectives are known
+	Map<String,String> initialStateAttributes;
+	
+	public EncodedTrace(int size) {
+		perspectives = new int[size];
+		states = new int[size];
+		timestamps = new long[size];
+		initialStateAttributes = new HashMap<>();
+	}
+	
+	public int size() {
+		return states.length;
+	}
+}
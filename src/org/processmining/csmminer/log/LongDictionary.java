@@ -0,0 +1,98 @@
+package org.processmining.csmminer.log;
+
+import java.util.Arrays;
+
+/**
+ * Interns long keys, such as two ids packed into one long, to dense integer ids starting at 0 in order of first
+ * occurrence. The keys are stored in an open addressing hash table of primitives, so interning a key does not
+ * allocate.
+ */
+public class LongDictionary {
+	private int size;
+	private long[] keys;
+	// Ids + 1 of the keys by hash slot, 0 for an empty slot
+	private int[] slots;
+	
+	public LongDictionary() {
+		size = 0;
+		keys = new long[16];
+		slots = new int[32];
+	}
+	
+	public int intern(long key) {
+		int slot = findSlot(key);
+		if (slots[slot] != 0) {
+			return slots[slot] - 1;
+		}
+		
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, 2 * size);
+		}
+		
+		int id = size++;
+		keys[id] = key;
+		slots[slot] = id + 1;
+		
+		if (2 * size > slots.length) {
+			rehash();
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Returns the id of the given key, or {@link StateDictionary#UNKNOWN}.
+	 */
+	public int getId(long key) {
+		return slots[findSlot(key)] - 1;
+	}
+	
+	public long getKey(int id) {
+		return keys[id];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Packs two non-negative ints into one key.
+	 */
+	public static long pack(int high, int low) {
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+	
+	public static int getHigh(long key) {
+		return (int) (key >>> 32);
+	}
+	
+	public static int getLow(long key) {
+		return (int) key;
+	}
+	
+	private int findSlot(long key) {
+		int mask = slots.length - 1;
+		int slot = hash(key) & mask;
+		while (slots[slot] != 0 && keys[slots[slot] - 1] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void rehash() {
+		slots = new int[2 * slots.length];
+		int mask = slots.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = hash(keys[id]) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+	
+	private static int hash(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+}
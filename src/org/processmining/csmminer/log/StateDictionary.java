@@ -0,0 +1,49 @@
+package org.processmining.csmminer.log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns names to dense integer ids, starting at 0 in order of first occurrence.
+ */
+public class StateDictionary implements StateLabels {
+	public static final int UNKNOWN = -1;
+	
+	private final Map<String,Integer> ids;
+	private final List<String> names;
+	
+	public StateDictionary() {
+		ids = new HashMap<>();
+		names = new ArrayList<>();
+	}
+	
+	public int intern(String name) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		
+		return id;
+	}
+	
+	public int getId(String name) {
+		Integer id = ids.get(name);
+		return id == null ? UNKNOWN : id;
+	}
+	
+	public String getName(int id) {
+		return names.get(id);
+	}
+	
+	public List<String> getNames() {
+		return names;
+	}
+	
+	public int size() {
+		return names.size();
+	}
+}
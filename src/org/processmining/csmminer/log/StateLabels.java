@@ -0,0 +1,10 @@
+package org.processmining.csmminer.log;
+
+/**
+ * Maps the dense integer ids of the states of a model to their display labels.
+ */
+public interface StateLabels {
+	public int size();
+	
+	public String getName(int id);
+}
@@ -0,0 +1,154 @@
+package org.processmining.csmminer.log;
+
+import java.util.AbstractList;
+import java.util.Set;
+
+import org.deckfour.xes.extension.XExtension;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.deckfour.xes.model.XVisitor;
+import org.deckfour.xes.model.impl.XTraceImpl;
+import org.deckfour.xes.util.XAttributeUtils;
+
+/**
+ * A trace of a derived log (such as a perspective sub log) presented as a view on a trace of the state log. The events
+ * are looked up through an index array into the source trace, an artificial initial event only exists in memory. The
+ * trace attributes are copied on first access, or by {@link #loadAttributes(XLog)} before the views are read from
+ * several threads.
+ * 
+ * The events are shared with the state log, so they have to be cloned before they are modified, as done by
+ * {@link #clone()}. Any structural modification materialises the view into a regular trace with cloned events, so
+ * that traces which are never modified never copy their events.
+ */
+public class TraceView extends AbstractList<XEvent> implements XTrace {
+	private final XTrace source;
+	private final int[] sourceIndices;
+	private final XEvent initialEvent;
+	private XAttributeMap attributes;
+	private XTrace materialisedTrace;
+	
+	public TraceView(XTrace source, int[] sourceIndices, XEvent initialEvent) {
+		this.source = source;
+		this.sourceIndices = sourceIndices;
+		this.initialEvent = initialEvent;
+	}
+	
+	/**
+	 * Copies the trace attributes of the views in the log that were not accessed yet. The copy is otherwise made on
+	 * first access, which is not safe when a view is read from several threads at the same time.
+	 */
+	public static void loadAttributes(XLog log) {
+		for (XTrace trace : log) {
+			if (trace instanceof TraceView) {
+				trace.getAttributes();
+			}
+		}
+	}
+	
+	public boolean isMaterialised() {
+		return materialisedTrace != null;
+	}
+	
+	private XTrace materialise() {
+		if (materialisedTrace == null) {
+			XTrace trace = new XTraceImpl(getAttributes());
+			for (int i = 0; i < sourceIndices.length; i++) {
+				trace.add((XEvent) get(i).clone());
+			}
+			materialisedTrace = trace;
+		}
+		
+		return materialisedTrace;
+	}
+	
+	@Override
+	public XEvent get(int index) {
+		if (materialisedTrace != null) {
+			return materialisedTrace.get(index);
+		}
+		
+		int sourceIndex = sourceIndices[index];
+		return sourceIndex == EncodedStateLog.INITIAL_EVENT ? initialEvent : source.get(sourceIndex);
+	}
+	
+	@Override
+	public int size() {
+		return materialisedTrace != null ? materialisedTrace.size() : sourceIndices.length;
+	}
+	
+	@Override
+	public XEvent set(int index, XEvent event) {
+		return materialise().set(index, event);
+	}
+	
+	@Override
+	public void add(int index, XEvent event) {
+		materialise().add(index, event);
+		modCount++;
+	}
+	
+	@Override
+	public XEvent remove(int index) {
+		XEvent event = materialise().remove(index);
+		modCount++;
+		return event;
+	}
+	
+	public int insertOrdered(XEvent event) {
+		int index = materialise().insertOrdered(event);
+		modCount++;
+		return index;
+	}
+	
+	public XAttributeMap getAttributes() {
+		if (materialisedTrace != null) {
+			return materialisedTrace.getAttributes();
+		}
+		
+		if (attributes == null) {
+			attributes = (XAttributeMap) source.getAttributes().clone();
+		}
+		return attributes;
+	}
+	
+	public void setAttributes(XAttributeMap attributes) {
+		if (materialisedTrace != null) {
+			materialisedTrace.setAttributes(attributes);
+		}
+		else {
+			this.attributes = attributes;
+		}
+	}
+	
+	public boolean hasAttributes() {
+		return !getAttributes().isEmpty();
+	}
+	
+	public Set<XExtension> getExtensions() {
+		return XAttributeUtils.extractExtensions(getAttributes());
+	}
+	
+	public void accept(XVisitor visitor, XLog log) {
+		visitor.visitTracePre(this, log);
+		for (XAttribute attribute : getAttributes().values()) {
+			attribute.accept(visitor, this);
+		}
+		for (XEvent event : this) {
+			event.accept(visitor, this);
+		}
+		visitor.visitTracePost(this, log);
+	}
+	
+	@Override
+	public Object clone() {
+		XTrace trace = new XTraceImpl((XAttributeMap) getAttributes().clone());
+		for (XEvent event : this) {
+			trace.add((XEvent) event.clone());
+		}
+		
+		return trace;
+	}
+}
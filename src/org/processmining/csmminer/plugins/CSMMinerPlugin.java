@@ -6,6 +6,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.deckfour.xes.extension.std.XConceptExtension;
 import org.deckfour.xes.model.XLog;
@@ -13,8 +14,12 @@ import org.processmining.contexts.uitopia.UIPluginContext;
 import org.processmining.contexts.uitopia.annotations.UITopiaVariant;
 import org.processmining.csmminer.CSMMiner;
 import org.processmining.csmminer.CSMMinerResults;
+import org.processmining.csmminer.CSMMinerSettings;
 import org.processmining.csmminer.InputChecker;
 import org.processmining.csmminer.LogProcessor;
+import org.processmining.csmminer.PreprocessedLog;
+import org.processmining.csmminer.log.CompositeStateTable;
+import org.processmining.csmminer.log.EncodedStateLog;
 import org.processmining.csmminer.relations.StateMap;
 import org.processmining.csmminer.relations.TransitionMap;
 import org.processmining.csmminer.relations.TransitionsCooccurringStates;
@@ -23,6 +28,7 @@ import org.processmining.framework.plugin.annotations.Plugin;
 import org.processmining.framework.plugin.annotations.PluginCategory;
 import org.processmining.framework.plugin.annotations.PluginLevel;
 import org.processmining.framework.plugin.annotations.PluginVariant;
+import org.processmining.framework.util.Pair;
 import org.processmining.models.graphbased.directed.DirectedGraphElementWeights;
 import org.processmining.models.graphbased.directed.transitionsystem.AcceptStateSet;
 import org.processmining.models.graphbased.directed.transitionsystem.StartStateSet;
@@ -76,14 +82,15 @@ public class CSMMinerPlugin {
 	@PluginVariant(variantLabel = "Mine a Composite State Machine and Perspective State Machines", requiredParameterLabels = { 0 })
 	public Object[] mineCompositeStateMachine(final UIPluginContext context, XLog log) {
 		context.getProgress().setMinimum(0);
-		context.getProgress().setMaximum(8);
+		context.getProgress().setMaximum(6);
 		context.getProgress().setIndeterminate(false);
 		
-		// Check input
+		// Check input, compute perspective names and encode the state log in one pass, then create the perspective sub
+		// logs and the synchronous product log from the encoded log
 		long startTime = System.currentTimeMillis();
 		long computationStart = startTime;
-		int input = InputChecker.checkStateLog(context, log);
-		startTime = outputProgress(context, "Checking input: " + (System.currentTimeMillis() - startTime) + "ms");
+		PreprocessedLog preprocessedLog = LogProcessor.preprocessLog(context, log, true);
+		int input = preprocessedLog.input;
 		
 		if (input == InputChecker.INVALID) {
 			System.out.println("Invalid input");
@@ -110,19 +117,13 @@ public class CSMMinerPlugin {
 			return new Object[] { new CSMMinerResults(stateLog), null, null, null, null, null };
 		}
 		
-		// Compute perspective names
-		List<String> perspectiveNames = LogProcessor.computePerspectiveNames(log);
-		startTime = outputProgress(context, "Computing perspective names: " + (System.currentTimeMillis() - startTime) + "ms");
+		List<String> perspectiveNames = preprocessedLog.perspectiveNames;
+		Map<String,XLog> perspectiveSubLogs = preprocessedLog.perspectiveSubLogs;
+		XLog compositeLog = preprocessedLog.compositeLog;
+		outputProgress(context, "Preprocessing state log: " + (System.currentTimeMillis() - startTime) + "ms ("
+				+ preprocessedLog.getTimingReport() + ")");
 		
-		// Create perspective sub logs
-		Map<String,XLog> perspectiveSubLogs = LogProcessor.createPerspectiveSubLogs(log, perspectiveNames);
-		startTime = outputProgress(context, "Creating perspective sub logs: " + (System.currentTimeMillis() - startTime) + "ms");
-		
-		// Create synchronous product log
-		XLog compositeLog = LogProcessor.createCompositeLog(log, perspectiveNames, true);
-		outputProgress(context, "Creating composite log: " + (System.currentTimeMillis() - startTime) + "ms");
-		
-		CSMMinerResults results = mineCSMWithoutLogProcessing(context, log, perspectiveNames, compositeLog, perspectiveSubLogs,
+		CSMMinerResults results = mineCSMWithoutLogProcessing(context, log, preprocessedLog, new CSMMinerSettings(),
 				computationStart);
 		
 		// TODO: Create proper return choice
@@ -148,31 +149,74 @@ public class CSMMinerPlugin {
 	
 	public static CSMMinerResults mineCSMWithoutLogProcessing(PluginContext context, XLog log, List<String> perspectiveNames,
 			XLog compositeLog,	Map<String, XLog> perspectiveSubLogs, long computationStart) {
-		// Run the TSMiner to discover state models
+		PreprocessedLog preprocessedLog = new PreprocessedLog(InputChecker.VALID);
+		preprocessedLog.perspectiveNames = perspectiveNames;
+		preprocessedLog.compositeLog = compositeLog;
+		preprocessedLog.perspectiveSubLogs = perspectiveSubLogs;
+		
+		return mineCSMWithoutLogProcessing(context, log, preprocessedLog, computationStart);
+	}
+	
+	/**
+	 * Mines the CSM from a preprocessed log with the default settings.
+	 */
+	public static CSMMinerResults mineCSMWithoutLogProcessing(PluginContext context, XLog log, PreprocessedLog preprocessedLog,
+			long computationStart) {
+		return mineCSMWithoutLogProcessing(context, log, preprocessedLog, new CSMMinerSettings(), computationStart);
+	}
+	
+	/**
+	 * Mines the CSM from a preprocessed log, the encoded logs are used where these are available. The state models are
+	 * discovered and annotated on one executor for the whole run, which is shut down at the end.
+	 */
+	public static CSMMinerResults mineCSMWithoutLogProcessing(PluginContext context, XLog log, PreprocessedLog preprocessedLog,
+			CSMMinerSettings settings, long computationStart) {
+		List<String> perspectiveNames = preprocessedLog.perspectiveNames;
+		XLog compositeLog = preprocessedLog.compositeLog;
+		Map<String,XLog> perspectiveSubLogs = preprocessedLog.perspectiveSubLogs;
+		
+		// Run the TSMiner to discover state models and create annotated state models
 		long startTime = System.currentTimeMillis();
-		Map<String,TSMinerOutput> tsMinerOutputs = CSMMiner.discoverStateModels(context, perspectiveSubLogs, compositeLog);
-		startTime = outputProgress(context, "Discovering state models: " + (System.currentTimeMillis() - startTime) + "ms");
-
-		// Create annotated state models
-		HashMap<String, AnnotatedTransitionSystem> annotatedTSMinerOutputs = CSMMiner.annotateStateModels(context, perspectiveSubLogs,
-				compositeLog, tsMinerOutputs);
-		startTime = outputProgress(context, "Annotating state models: " + (System.currentTimeMillis() - startTime) + "ms");
+		Pair<Map<String,TSMinerOutput>,HashMap<String,AnnotatedTransitionSystem>> stateModels;
+		ExecutorService executor = settings.createExecutor();
+		try {
+			stateModels = CSMMiner.discoverAndAnnotateStateModels(context, perspectiveSubLogs, compositeLog,
+					preprocessedLog.encodedPerspectiveLogs, preprocessedLog.encodedCompositeLog, settings, executor);
+		}
+		finally {
+			executor.shutdown();
+		}
+		Map<String,TSMinerOutput> tsMinerOutputs = stateModels.getFirst();
+		HashMap<String, AnnotatedTransitionSystem> annotatedTSMinerOutputs = stateModels.getSecond();
+		startTime = outputProgress(context, "Discovering and annotating state models: " + (System.currentTimeMillis() - startTime) + "ms");
 
 		// Compute the perspective interactions
-		TransitionsCooccurringStates transitionsCooccurringStates = CSMMiner.computePerspectiveInteractions(log, perspectiveNames);
+		TransitionsCooccurringStates transitionsCooccurringStates;
+		if (preprocessedLog.stateLog != null) {
+			transitionsCooccurringStates = CSMMiner.computePerspectiveInteractions(preprocessedLog.stateLog, settings);
+		}
+		else {
+			transitionsCooccurringStates = CSMMiner.computePerspectiveInteractions(
+					EncodedStateLog.encode(log, perspectiveNames), settings);
+		}
 		startTime = outputProgress(context, "Computing perspective interactions: " + (System.currentTimeMillis() - startTime) + "ms");
 
 		// Create mapping between states and transitions in different models
-		StateMap stateMap = CSMMiner.createStateMapping(perspectiveNames, tsMinerOutputs);
-		TransitionMap transitionMap = CSMMiner.createTransitionMapping(perspectiveNames, tsMinerOutputs);
+		CompositeStateTable compositeStates = preprocessedLog.stateLog != null ? preprocessedLog.stateLog.getCompositeStates() : null;
+		StateMap stateMap = CSMMiner.createStateMapping(perspectiveNames, tsMinerOutputs, compositeStates);
+		TransitionMap transitionMap = CSMMiner.createTransitionMapping(perspectiveNames, tsMinerOutputs, compositeStates);
 		outputProgress(context, "Creating mappings: " + (System.currentTimeMillis() - startTime) + "ms");
 
 		CSMMinerResults results = new CSMMinerResults(tsMinerOutputs, annotatedTSMinerOutputs, transitionsCooccurringStates, stateMap,
 				transitionMap, log, compositeLog, perspectiveSubLogs, System.currentTimeMillis() - computationStart, perspectiveNames);
 		
 		// Calculate relation statistics
-		CSMMiner.calculateRelationStatistics(results);
+		CSMMiner.calculateRelationStatistics(results, settings);
 		startTime = outputProgress(context, "Calculating relation statistics: " + (System.currentTimeMillis() - startTime) + "ms");
+		
+		// Mine sets of co-occurring states spanning three or more perspectives
+		CSMMiner.mineStateSets(results, settings);
+		startTime = outputProgress(context, "Mining co-occurring state sets: " + (System.currentTimeMillis() - startTime) + "ms");
 
 		return results;
 	}
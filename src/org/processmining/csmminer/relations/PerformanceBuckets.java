@@ -0,0 +1,109 @@
+package org.processmining.csmminer.relations;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.processmining.csmminer.statistics.StatisticsAccumulator;
+import org.processmining.framework.util.Pair;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+/**
+ * Performance split of the entries of every perspective state into buckets by the time spent in the state. The bucket
+ * boundaries are quantiles of the entries of a state, the first bucket holds the fastest entries and the last bucket
+ * the slowest. For every bucket the time spent in the states, the time the states of other perspectives co-occur with
+ * them and the number of co-occurring transitions of other perspectives are kept. States are named
+ * "perspective~state" and transitions are pairs of these names.
+ */
+public class PerformanceBuckets {
+	private final double[] quantiles;
+	private final List<Map<String,StatisticsAccumulator>> times;
+	private final List<Table<String,String,StatisticsAccumulator>> cooccurringStatesTimes;
+	private final List<Table<String,Pair<String,String>,Integer>> cooccurringTransitionCounts;
+	
+	/**
+	 * @param quantiles
+	 *            the bucket boundaries, ascending and between 0 and 1, e.g. { 0.5 } for a fast and a slow half or
+	 *            { 0.9, 0.99 } to look at the tail
+	 */
+	public PerformanceBuckets(double[] quantiles) {
+		for (int b = 0; b < quantiles.length; b++) {
+			if (quantiles[b] <= 0 || quantiles[b] >= 1 || (b > 0 && quantiles[b] <= quantiles[b-1])) {
+				throw new IllegalArgumentException("The bucket quantiles should be ascending and between 0 and 1");
+			}
+		}
+		
+		this.quantiles = quantiles.clone();
+		times = new ArrayList<>();
+		cooccurringStatesTimes = new ArrayList<>();
+		cooccurringTransitionCounts = new ArrayList<>();
+		for (int b = 0; b <= quantiles.length; b++) {
+			times.add(new HashMap<String,StatisticsAccumulator>());
+			cooccurringStatesTimes.add(HashBasedTable.<String,String,StatisticsAccumulator>create());
+			cooccurringTransitionCounts.add(HashBasedTable.<String,Pair<String,String>,Integer>create());
+		}
+	}
+	
+	public int getBucketCount() {
+		return quantiles.length + 1;
+	}
+	
+	public double[] getQuantiles() {
+		return quantiles.clone();
+	}
+	
+	/**
+	 * Returns for every bucket the number of entries, out of the given number of entries of a state, that are in this
+	 * bucket or a faster one.
+	 */
+	public int[] getBucketLimits(int entries) {
+		int[] limits = new int[getBucketCount()];
+		for (int b = 0; b < quantiles.length; b++) {
+			limits[b] = (int) Math.floor(quantiles[b] * entries);
+		}
+		limits[quantiles.length] = entries;
+		return limits;
+	}
+	
+	/**
+	 * Returns "Fast" and "Slow" for a split at the median, otherwise the percentile range of the bucket.
+	 */
+	public String getBucketLabel(int bucket) {
+		if (quantiles.length == 1 && quantiles[0] == 0.5) {
+			return bucket == 0 ? "Fast" : "Slow";
+		}
+		
+		DecimalFormat df = new DecimalFormat("#.##");
+		double lower = bucket == 0 ? 0 : quantiles[bucket-1];
+		double upper = bucket == quantiles.length ? 1 : quantiles[bucket];
+		return "p" + df.format(lower * 100) + "-" + df.format(upper * 100);
+	}
+	
+	public Map<String,StatisticsAccumulator> getTimes(int bucket) {
+		return times.get(bucket);
+	}
+	
+	public Table<String,String,StatisticsAccumulator> getCooccurringStatesTimes(int bucket) {
+		return cooccurringStatesTimes.get(bucket);
+	}
+	
+	public Table<String,Pair<String,String>,Integer> getCooccurringTransitionCounts(int bucket) {
+		return cooccurringTransitionCounts.get(bucket);
+	}
+	
+	public StatisticsAccumulator getTime(int bucket, String state) {
+		return times.get(bucket).get(state);
+	}
+	
+	public StatisticsAccumulator getCooccurringStatesTime(int bucket, String state, String otherState) {
+		return cooccurringStatesTimes.get(bucket).get(state, otherState);
+	}
+	
+	public Integer getCooccurringTransitionCount(int bucket, String state, Pair<String,String> transition) {
+		return cooccurringTransitionCounts.get(bucket).get(state, transition);
+	}
+}
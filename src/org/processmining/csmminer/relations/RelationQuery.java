@@ -0,0 +1,201 @@
+package org.processmining.csmminer.relations;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+
+/**
+ * Query on a {@link RelationStore} for all relations with metrics above minimum values, or for the k relations with
+ * the highest value of one metric among these. The query reads the metric columns directly and only keeps the ids of
+ * the best k relations, so no rows are created for relations that are not returned.
+ *
+ * Relations are rejected as early as possible: the support and confidence thresholds are checked first, and since the
+ * cosine of a relation is at most the square root of its confidence and the jaccard at most its confidence, the
+ * confidence also bounds the cosine and jaccard thresholds and the top k cut-off for these metrics. The bounds only
+ * hold for state and forward relations, the support of a transition relation is a count of transitions while its
+ * confidence is a share of time, so transition relations are never rejected on these bounds. Relations with a
+ * NaN value for a metric that is queried are never returned. An optional {@link Filter} is checked last, before the
+ * top k cut-off, so that the top k is taken among the relations that pass it.
+ */
+public class RelationQuery {
+	public static final int ALL_TYPES = -1;
+	public static final int STATE_RELATIONS = 0;
+	public static final int TRANSITION_RELATIONS = 1;
+	public static final int FORWARD_RELATIONS = 2;
+
+	// Slack on the confidence bounds for the rounding of the float metrics
+	private static final float BOUND_SLACK = 1e-5f;
+
+	private int type;
+	private int rankMetric;
+	private int k;
+	private final float[] minValues;
+	private Filter filter;
+
+	/**
+	 * Additional condition on the relations returned by a query, for example on the names of the states.
+	 */
+	public interface Filter {
+		public boolean include(RelationStore store, int id);
+	}
+
+	public RelationQuery() {
+		type = ALL_TYPES;
+		rankMetric = -1;
+		k = Integer.MAX_VALUE;
+		minValues = new float[RelationStore.METRIC_COUNT];
+		Arrays.fill(minValues, Float.NEGATIVE_INFINITY);
+	}
+
+	/**
+	 * Only returns relations of the given type, {@link #STATE_RELATIONS} between two states,
+	 * {@link #TRANSITION_RELATIONS} from a transition to a state or {@link #FORWARD_RELATIONS} from a state to a
+	 * transition.
+	 */
+	public RelationQuery setType(int type) {
+		this.type = type;
+		return this;
+	}
+
+	public RelationQuery setMinValue(int metric, float minValue) {
+		minValues[metric] = minValue;
+		return this;
+	}
+
+	/**
+	 * Only returns the relations accepted by the filter, or all relations if the filter is null.
+	 */
+	public RelationQuery setFilter(Filter filter) {
+		this.filter = filter;
+		return this;
+	}
+
+	/**
+	 * Only returns the k relations with the highest value of the given metric, ties are broken by the order in which
+	 * the relations were added to the store.
+	 */
+	public RelationQuery setTop(int metric, int k) {
+		this.rankMetric = metric;
+		this.k = k;
+		return this;
+	}
+
+	public static int getType(RelationStore store, int id) {
+		if (store.getCondition(id) instanceof Transition) return TRANSITION_RELATIONS;
+		if (store.getConsequence(id) instanceof Transition) return FORWARD_RELATIONS;
+		return STATE_RELATIONS;
+	}
+
+	/**
+	 * Returns the ids of the matching relations, ordered from the highest to the lowest value of the ranking metric if
+	 * a top k is set and by id otherwise.
+	 */
+	public int[] run(final RelationStore store) {
+		if (k <= 0) return new int[0];
+
+		if (rankMetric < 0) {
+			int[] ids = new int[store.size()];
+			int count = 0;
+			for (int id = 0; id < store.size(); id++) {
+				if (matches(store, id)) {
+					ids[count++] = id;
+				}
+			}
+			return Arrays.copyOf(ids, count);
+		}
+
+		// Min-heap of the best k relations so far, the worst of these on top
+		final Comparator<Integer> order = new Comparator<Integer>() {
+			public int compare(Integer id1, Integer id2) {
+				int comparison = Float.compare(store.get(id1, rankMetric), store.get(id2, rankMetric));
+				return comparison != 0 ? comparison : Integer.compare(id2, id1);
+			}
+		};
+		PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(k, 1024), order);
+
+		for (int id = 0; id < store.size(); id++) {
+			if (best.size() == k) {
+				float cutOff = store.get(best.peek(), rankMetric);
+				if (getUpperBound(store, id, rankMetric) < cutOff) continue;
+				if (store.get(id, rankMetric) <= cutOff) continue;
+			}
+			if (Float.isNaN(store.get(id, rankMetric)) || !store.isComputed(id, rankMetric)) continue;
+			if (!matches(store, id)) continue;
+
+			best.add(id);
+			if (best.size() > k) {
+				best.poll();
+			}
+		}
+
+		int[] ids = new int[best.size()];
+		for (int i = ids.length - 1; i >= 0; i--) {
+			ids[i] = best.poll();
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns whether the relation would be returned without the top k cut-off, that is whether it passes the type,
+	 * minimum value and filter conditions and has a value for the ranking metric.
+	 */
+	public boolean accepts(RelationStore store, int id) {
+		if (rankMetric >= 0 && (Float.isNaN(store.get(id, rankMetric)) || !store.isComputed(id, rankMetric))) {
+			return false;
+		}
+		return matches(store, id);
+	}
+
+	/**
+	 * Returns whether the first relation comes before the second one in the results of this query.
+	 */
+	public boolean ranksBefore(RelationStore store, int id1, int id2) {
+		if (rankMetric < 0) return id1 < id2;
+
+		int comparison = Float.compare(store.get(id1, rankMetric), store.get(id2, rankMetric));
+		return comparison != 0 ? comparison > 0 : id1 < id2;
+	}
+
+	private boolean matches(RelationStore store, int id) {
+		if (!meetsMinValue(store, id, RelationStore.SUPPORT) || !meetsMinValue(store, id, RelationStore.CONFIDENCE)) {
+			return false;
+		}
+		if (getUpperBound(store, id, RelationStore.COSINE) < minValues[RelationStore.COSINE] ||
+				getUpperBound(store, id, RelationStore.JACCARD) < minValues[RelationStore.JACCARD]) {
+			return false;
+		}
+		if (type != ALL_TYPES && getType(store, id) != type) return false;
+
+		for (int metric = 0; metric < RelationStore.METRIC_COUNT; metric++) {
+			if (!meetsMinValue(store, id, metric)) return false;
+		}
+		return filter == null || filter.include(store, id);
+	}
+
+	private boolean meetsMinValue(RelationStore store, int id, int metric) {
+		if (minValues[metric] == Float.NEGATIVE_INFINITY) return true;
+		return store.isComputed(id, metric) && store.get(id, metric) >= minValues[metric];
+	}
+
+	/**
+	 * Returns an upper bound on the metric of the relation that follows from its confidence, or infinity.
+	 */
+	private static float getUpperBound(RelationStore store, int id, int metric) {
+		if (!store.isComputed(id, RelationStore.CONFIDENCE)) return Float.POSITIVE_INFINITY;
+		if (getType(store, id) == TRANSITION_RELATIONS) return Float.POSITIVE_INFINITY;
+
+		float confidence = store.get(id, RelationStore.CONFIDENCE);
+		if (Float.isNaN(confidence)) return Float.POSITIVE_INFINITY;
+
+		switch (metric) {
+			case RelationStore.COSINE:
+				return (float) Math.sqrt(confidence) * (1 + BOUND_SLACK);
+			case RelationStore.JACCARD:
+				return confidence * (1 + BOUND_SLACK);
+			default:
+				return Float.POSITIVE_INFINITY;
+		}
+	}
+}
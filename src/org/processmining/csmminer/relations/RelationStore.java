@@ -0,0 +1,142 @@
+package org.processmining.csmminer.relations;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.processmining.csmminer.log.StateDictionary;
+import org.processmining.framework.util.Pair;
+
+/**
+ * Stores the interestingness metrics of the relations between states and transitions. Every (condition, consequence)
+ * relation gets a dense int id in a single key index, the metrics are stored in one float column per metric, together
+ * with a bit set per metric of the relations for which the metric was computed.
+ */
+public class RelationStore {
+	public static final int SUPPORT = 0;
+	public static final int CONFIDENCE = 1;
+	public static final int LIFT = 2;
+	public static final int CONVICTION = 3;
+	public static final int COSINE = 4;
+	public static final int JACCARD = 5;
+	public static final int PHI = 6;
+	public static final int SIGNIFICANCE = 7;
+	public static final int METRIC_COUNT = 8;
+	
+	private final Map<Pair<Object,Object>,Integer> ids;
+	private int size;
+	private Object[] conditions;
+	private Object[] consequences;
+	private float[][] columns;
+	private BitSet[] computed;
+	
+	public RelationStore() {
+		ids = new HashMap<>();
+		size = 0;
+		conditions = new Object[16];
+		consequences = new Object[16];
+		columns = new float[METRIC_COUNT][16];
+		computed = new BitSet[METRIC_COUNT];
+		for (int metric = 0; metric < METRIC_COUNT; metric++) {
+			computed[metric] = new BitSet();
+		}
+	}
+	
+	/**
+	 * Returns the id of the relation, adding it without any computed metrics if it is not in the store yet.
+	 */
+	public int add(Object condition, Object consequence) {
+		Pair<Object,Object> relation = new Pair<>(condition, consequence);
+		Integer id = ids.get(relation);
+		if (id != null) return id;
+		
+		if (size == conditions.length) {
+			conditions = Arrays.copyOf(conditions, 2 * size);
+			consequences = Arrays.copyOf(consequences, 2 * size);
+			for (int metric = 0; metric < METRIC_COUNT; metric++) {
+				columns[metric] = Arrays.copyOf(columns[metric], 2 * size);
+			}
+		}
+		
+		id = size++;
+		conditions[id] = condition;
+		consequences[id] = consequence;
+		ids.put(relation, id);
+		
+		return id;
+	}
+	
+	public int put(Object condition, Object consequence, float support, float confidence, float lift, float conviction,
+			float cosine, float jaccard, float phi) {
+		int id = add(condition, consequence);
+		set(id, SUPPORT, support);
+		set(id, CONFIDENCE, confidence);
+		set(id, LIFT, lift);
+		set(id, CONVICTION, conviction);
+		set(id, COSINE, cosine);
+		set(id, JACCARD, jaccard);
+		set(id, PHI, phi);
+		
+		return id;
+	}
+	
+	public void set(int id, int metric, float value) {
+		columns[metric][id] = value;
+		computed[metric].set(id);
+	}
+	
+	public boolean isComputed(int id, int metric) {
+		return computed[metric].get(id);
+	}
+	
+	/**
+	 * Returns the id of the relation, or {@link StateDictionary#UNKNOWN} if the relation is not in the store.
+	 */
+	public int getId(Object condition, Object consequence) {
+		Integer id = ids.get(new Pair<>(condition, consequence));
+		return id == null ? StateDictionary.UNKNOWN : id;
+	}
+	
+	public boolean contains(Object condition, Object consequence) {
+		return ids.containsKey(new Pair<>(condition, consequence));
+	}
+	
+	public float get(int id, int metric) {
+		return columns[metric][id];
+	}
+	
+	/**
+	 * Returns the metric of the relation, or null if the relation is not in the store or the metric was not computed.
+	 */
+	public Float get(Object condition, Object consequence, int metric) {
+		int id = getId(condition, consequence);
+		if (id == StateDictionary.UNKNOWN || !computed[metric].get(id)) return null;
+		
+		return columns[metric][id];
+	}
+	
+	/**
+	 * Returns all metrics of the relation in column order, with null for the metrics that were not computed.
+	 */
+	public Float[] getMetrics(int id) {
+		Float[] metrics = new Float[METRIC_COUNT];
+		for (int metric = 0; metric < METRIC_COUNT; metric++) {
+			metrics[metric] = computed[metric].get(id) ? columns[metric][id] : null;
+		}
+		
+		return metrics;
+	}
+	
+	public Object getCondition(int id) {
+		return conditions[id];
+	}
+	
+	public Object getConsequence(int id) {
+		return consequences[id];
+	}
+	
+	public int size() {
+		return size;
+	}
+}
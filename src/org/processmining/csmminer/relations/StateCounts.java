@@ -1,54 +1,104 @@
 package org.processmining.csmminer.relations;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Set;
 
+import org.processmining.csmminer.log.LongDictionary;
+import org.processmining.csmminer.log.StateDictionary;
 import org.processmining.framework.util.Pair;
 import org.processmining.models.graphbased.directed.transitionsystem.State;
 
+/**
+ * Counts per perspective state. The states are interned in {@link StateKeys} that can be shared between the state
+ * counts of all transitions, the counts are stored by the index of the state in these counts.
+ */
 public class StateCounts {
-	private Map<Pair<String,String>,Integer> counts;
+	private final StateKeys keys;
+	// Indices in the counts by state id
+	private final LongDictionary indices;
+	private int[] counts;
 	
 	public StateCounts() {
-		counts = new HashMap<>();
+		this(new StateKeys());
+	}
+	
+	public StateCounts(StateKeys keys) {
+		this.keys = keys;
+		indices = new LongDictionary();
+		counts = new int[4];
 	}
 	
 	public void increment(String perspectiveName, String stateName) {
-		Pair<String,String> perspectiveState = new Pair<>(perspectiveName, stateName);
-		
-		if (counts.containsKey(perspectiveState)) {
-			counts.put(perspectiveState, counts.get(perspectiveState)+1);
-		}
-		else {
-			counts.put(perspectiveState, 1);
+		add(perspectiveName, stateName, 1);
+	}
+	
+	public void add(String perspectiveName, String stateName, int count) {
+		int index = indices.intern(keys.intern(perspectiveName, stateName));
+		if (index == counts.length) {
+			counts = Arrays.copyOf(counts, 2 * counts.length);
 		}
+		counts[index] += count;
 	}
 	
 	public Integer getCount(Pair<String, String> perspectiveState) {
-		return counts.get(perspectiveState);
+		return getCountById(keys.getId(perspectiveState));
 	}
 	
 	public Integer getCount(String perspectiveName, State state) {
-		return getCount(perspectiveState(perspectiveName, state));
+		return getCountById(keys.getId(perspectiveName, state));
 	}
 	
 	public boolean containsCount(String perspectiveName, State state) {
-		Pair<String,String> perspectiveState = perspectiveState(perspectiveName, state);
-		return counts.containsKey(perspectiveState);
+		return getIndex(keys.getId(perspectiveName, state)) != StateDictionary.UNKNOWN;
+	}
+	
+	/**
+	 * Returns the number of states with a count.
+	 */
+	public int size() {
+		return indices.size();
 	}
 	
+	/**
+	 * Returns the (perspective name, state name) of the state at the given index, the indices run from 0 to
+	 * {@link #size()}.
+	 */
+	public Pair<String, String> getState(int index) {
+		return keys.getKey((int) indices.getKey(index));
+	}
+	
+	public int getCountAt(int index) {
+		return counts[index];
+	}
+	
+	/**
+	 * Returns a new set of the (perspective name, state name) of all states with a count.
+	 */
 	public Set<Pair<String, String>> getStates() {
-		return counts.keySet();
+		Set<Pair<String,String>> states = new HashSet<>();
+		for (int index = 0; index < size(); index++) {
+			states.add(getState(index));
+		}
+		return states;
 	}
 
 	public String toString() {
-		return "StateCounts [counts=" + counts + "]";
+		StringBuilder builder = new StringBuilder("StateCounts [counts={");
+		for (int index = 0; index < size(); index++) {
+			if (index > 0) builder.append(", ");
+			builder.append(getState(index)).append('=').append(counts[index]);
+		}
+		return builder.append("}]").toString();
+	}
+	
+	private int getIndex(int stateId) {
+		if (stateId == StateDictionary.UNKNOWN) return StateDictionary.UNKNOWN;
+		return indices.getId(stateId);
 	}
 	
-	private Pair<String,String> perspectiveState(String perspectiveName, State state) {
-		String stateIdentifier = state.getIdentifier().toString();
-		String stateName = stateIdentifier.substring(1, stateIdentifier.length()-1);
-		return new Pair<>(perspectiveName, stateName);
+	private Integer getCountById(int stateId) {
+		int index = getIndex(stateId);
+		return index == StateDictionary.UNKNOWN ? null : counts[index];
 	}
-}
\ No newline at end of file
+}
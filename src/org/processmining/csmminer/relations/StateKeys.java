@@ -0,0 +1,78 @@
+package org.processmining.csmminer.relations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.processmining.csmminer.log.StateDictionary;
+import org.processmining.framework.util.Pair;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+
+/**
+ * Interns (perspective name, state name) keys to dense integer ids. The ids of State objects are cached by identity,
+ * so looking up a state of a state model only takes its identifier apart the first time.
+ */
+public class StateKeys {
+	private final Map<Pair<String,String>,Integer> ids;
+	private final List<Pair<String,String>> keys;
+	private final Map<String,IdentityHashMap<State,Integer>> stateIds;
+	
+	public StateKeys() {
+		ids = new HashMap<>();
+		keys = new ArrayList<>();
+		stateIds = new HashMap<>();
+	}
+	
+	public int intern(String perspectiveName, String stateName) {
+		Pair<String,String> key = new Pair<>(perspectiveName, stateName);
+		Integer id = ids.get(key);
+		if (id == null) {
+			id = keys.size();
+			ids.put(key, id);
+			keys.add(key);
+			
+			// States that were not found before may be found now
+			stateIds.clear();
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Returns the id of the key, or {@link StateDictionary#UNKNOWN}.
+	 */
+	public int getId(Pair<String,String> key) {
+		Integer id = ids.get(key);
+		return id == null ? StateDictionary.UNKNOWN : id;
+	}
+	
+	/**
+	 * Returns the id of the state of the given perspective, or {@link StateDictionary#UNKNOWN}.
+	 */
+	public int getId(String perspectiveName, State state) {
+		IdentityHashMap<State,Integer> perspectiveStateIds = stateIds.get(perspectiveName);
+		if (perspectiveStateIds == null) {
+			perspectiveStateIds = new IdentityHashMap<>();
+			stateIds.put(perspectiveName, perspectiveStateIds);
+		}
+		
+		Integer id = perspectiveStateIds.get(state);
+		if (id == null) {
+			String stateIdentifier = state.getIdentifier().toString();
+			id = getId(new Pair<>(perspectiveName, stateIdentifier.substring(1, stateIdentifier.length()-1)));
+			perspectiveStateIds.put(state, id);
+		}
+		
+		return id;
+	}
+	
+	public Pair<String,String> getKey(int id) {
+		return keys.get(id);
+	}
+	
+	public int size() {
+		return keys.size();
+	}
+}
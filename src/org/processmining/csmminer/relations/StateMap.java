@@ -1,51 +1,167 @@
 package org.processmining.csmminer.relations;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.processmining.csmminer.log.LongDictionary;
+import org.processmining.csmminer.log.StateDictionary;
 import org.processmining.framework.util.Pair;
 
+/**
+ * Maps states between models. Every (model, state) pair gets a dense int id when it is first added, the mapping itself
+ * is stored as int adjacency arrays of these ids. The sets of mapped states are only created when they are requested.
+ */
 public class StateMap {
-	public Map<Pair<String,Object>,Set<Pair<String,Object>>> map;
-	public Map<Pair<String,String>,Object> stateIdentifiers;
+	private final StateDictionary models;
+	// Per model: the state ids by state identifier and by state name (the identifier without the brackets)
+	private final List<Map<Object,Integer>> idsByIdentifier;
+	private final List<Map<String,Integer>> idsByName;
+	
+	// Per state id: the model, the identifier and the ids of the mapped states
+	private int size;
+	private int[] stateModels;
+	private Object[] identifiers;
+	private int[][] mappedStates;
+	private int[] mappedStateCounts;
+	// Packed (state id, mapped state id) pairs, to add each mapping once
+	private final LongDictionary mappings;
+	
+	private Set<Pair<String,Object>>[] mappedStateSets;
 	
 	public StateMap() {
-		map = new HashMap<>();
-		stateIdentifiers = new HashMap<>();
+		models = new StateDictionary();
+		idsByIdentifier = new ArrayList<>();
+		idsByName = new ArrayList<>();
+		
+		size = 0;
+		stateModels = new int[16];
+		identifiers = new Object[16];
+		mappedStates = new int[16][];
+		mappedStateCounts = new int[16];
+		mappings = new LongDictionary();
 	}
 	
 	public void add(String processName, Object stateIdentifier, String otherProcessName, Object otherStateIdentifier) {
-		Pair<String,Object> processStateIdentifier = new Pair<>(processName, stateIdentifier);
+		add(getOrAddStateId(processName, stateIdentifier), getOrAddStateId(otherProcessName, otherStateIdentifier));
+	}
+	
+	/**
+	 * Maps the state with the given id to the other state, the ids are those returned by
+	 * {@link #getOrAddStateId(String, Object)}.
+	 */
+	public void add(int stateId, int otherStateId) {
+		int count = mappings.size();
+		mappings.intern(LongDictionary.pack(stateId, otherStateId));
+		if (mappings.size() == count) return;
 		
-		Set<Pair<String,Object>> set;
-		if (map.containsKey(processStateIdentifier)) {
-			set = map.get(processStateIdentifier);
+		int[] mapped = mappedStates[stateId];
+		if (mapped == null) {
+			mapped = new int[4];
+			mappedStates[stateId] = mapped;
 		}
-		else {
-			set = new HashSet<>();
-			map.put(processStateIdentifier, set);
+		else if (mappedStateCounts[stateId] == mapped.length) {
+			mapped = Arrays.copyOf(mapped, 2 * mapped.length);
+			mappedStates[stateId] = mapped;
+		}
+		mapped[mappedStateCounts[stateId]++] = otherStateId;
+		mappedStateSets = null;
+	}
+	
+	public int getOrAddStateId(String processName, Object stateIdentifier) {
+		int model = models.intern(processName);
+		if (model == idsByIdentifier.size()) {
+			idsByIdentifier.add(new HashMap<Object,Integer>());
+			idsByName.add(new HashMap<String,Integer>());
 		}
 		
-		set.add(new Pair<>(otherProcessName, otherStateIdentifier));
+		Integer id = idsByIdentifier.get(model).get(stateIdentifier);
+		if (id != null) return id;
+		
+		if (size == stateModels.length) {
+			stateModels = Arrays.copyOf(stateModels, 2 * size);
+			identifiers = Arrays.copyOf(identifiers, 2 * size);
+			mappedStates = Arrays.copyOf(mappedStates, 2 * size);
+			mappedStateCounts = Arrays.copyOf(mappedStateCounts, 2 * size);
+		}
 		
-		// Also store the stateIdentifiers
+		id = size++;
+		stateModels[id] = model;
+		identifiers[id] = stateIdentifier;
+		idsByIdentifier.get(model).put(stateIdentifier, id);
 		String stateName = stateIdentifier.toString();
-		String otherStateName = otherStateIdentifier.toString();
-		Pair<String,String> processStateName = new Pair<>(processName, stateName.substring(1,stateName.length()-1));
-		Pair<String,String> otherProcessStateName = new Pair<>(otherProcessName, otherStateName.substring(1, otherStateName.length()-1));
-		stateIdentifiers.put(processStateName, stateIdentifier);
-		stateIdentifiers.put(otherProcessStateName, otherStateIdentifier);
+		idsByName.get(model).put(stateName.substring(1, stateName.length()-1), id);
+		mappedStateSets = null;
+		
+		return id;
 	}
 	
+	/**
+	 * Returns the id of the state, or {@link StateDictionary#UNKNOWN} if the state is not in the map.
+	 */
+	public int getStateId(String processName, Object stateIdentifier) {
+		int model = models.getId(processName);
+		if (model == StateDictionary.UNKNOWN) return StateDictionary.UNKNOWN;
+		
+		Integer id = idsByIdentifier.get(model).get(stateIdentifier);
+		return id == null ? StateDictionary.UNKNOWN : id;
+	}
+	
+	public int getStateCount() {
+		return size;
+	}
+	
+	public String getProcessName(int stateId) {
+		return models.getName(stateModels[stateId]);
+	}
+	
+	public Object getIdentifier(int stateId) {
+		return identifiers[stateId];
+	}
+	
+	public int getMappedStateCount(int stateId) {
+		return mappedStateCounts[stateId];
+	}
+	
+	/**
+	 * Returns the ids of the states mapped to the given state, only the first {@link #getMappedStateCount(int)}
+	 * entries are used.
+	 */
+	public int[] getMappedStateIds(int stateId) {
+		return mappedStates[stateId];
+	}
+	
+	@SuppressWarnings("unchecked")
 	public Set<Pair<String, Object>> getMappedStates(String processName, Object stateIdentifier) {
-		Pair<String,Object> processStateIdentifier = new Pair<>(processName, stateIdentifier);
+		int stateId = getStateId(processName, stateIdentifier);
+		if (stateId == StateDictionary.UNKNOWN || mappedStateCounts[stateId] == 0) return null;
+		
+		if (mappedStateSets == null) {
+			mappedStateSets = new Set[size];
+		}
 		
-		return map.get(processStateIdentifier);
+		Set<Pair<String,Object>> set = mappedStateSets[stateId];
+		if (set == null) {
+			set = new HashSet<>();
+			int[] mapped = mappedStates[stateId];
+			for (int i = 0; i < mappedStateCounts[stateId]; i++) {
+				set.add(new Pair<>(getProcessName(mapped[i]), identifiers[mapped[i]]));
+			}
+			mappedStateSets[stateId] = set;
+		}
+		
+		return set;
 	}
 	
 	public Object getIdentifier(String processName, String stateName) {
-		return stateIdentifiers.get(new Pair<>(processName, stateName));
+		int model = models.getId(processName);
+		if (model == StateDictionary.UNKNOWN) return null;
+		
+		Integer id = idsByName.get(model).get(stateName);
+		return id == null ? null : identifiers[id];
 	}
 }
@@ -0,0 +1,33 @@
+package org.processmining.csmminer.relations;
+
+import java.util.List;
+
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+
+/**
+ * A set of states of different perspectives that co-occur, with the fraction of the time spent in the composite
+ * states in which all of them co-occur and the lift of this support over the support expected if the states were
+ * independent.
+ */
+public class StateSet {
+	public List<String> perspectiveNames;
+	public List<State> states;
+	public float support;
+	public float lift;
+	
+	public StateSet(List<String> perspectiveNames, List<State> states, float support, float lift) {
+		this.perspectiveNames = perspectiveNames;
+		this.states = states;
+		this.support = support;
+		this.lift = lift;
+	}
+	
+	public int size() {
+		return states.size();
+	}
+
+	public String toString() {
+		return "StateSet [perspectiveNames=" + perspectiveNames + ", states=" + states + ", support=" + support + ", lift="
+				+ lift + "]";
+	}
+}
@@ -1,34 +1,147 @@
 package org.processmining.csmminer.relations;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import org.processmining.csmminer.log.LongDictionary;
+import org.processmining.csmminer.log.StateDictionary;
 import org.processmining.framework.util.Pair;
 import org.processmining.models.graphbased.directed.transitionsystem.Transition;
 
+/**
+ * Maps transitions between models. Every transition gets a dense int id when it is first added, the mapping itself is
+ * stored as int adjacency arrays of these ids together with the model of each mapped transition. Each transition is
+ * assumed to belong to a single model. The sets of mapped transitions are only created when they are requested.
+ */
 public class TransitionMap {
-	public Map<Transition,Set<Pair<String,Transition>>> map;
+	private final StateDictionary models;
+	private final Map<Transition,Integer> ids;
+	
+	// Per transition id: the transition, the ids of the mapped transitions and the models of these transitions
+	private int size;
+	private Transition[] transitions;
+	private int[][] mappedTransitions;
+	private int[][] mappedTransitionModels;
+	private int[] mappedTransitionCounts;
+	// Packed (transition id, mapped transition id) pairs, to add each mapping once
+	private final LongDictionary mappings;
+	
+	private Set<Pair<String,Transition>>[] mappedTransitionSets;
 	
 	public TransitionMap() {
-		map = new HashMap<>();
+		models = new StateDictionary();
+		ids = new HashMap<>();
+		
+		size = 0;
+		transitions = new Transition[16];
+		mappedTransitions = new int[16][];
+		mappedTransitionModels = new int[16][];
+		mappedTransitionCounts = new int[16];
+		mappings = new LongDictionary();
 	}
 	
 	public void add(Transition transition, String processName, Transition otherTransition) {
-		Set<Pair<String,Transition>> set;
-		if (map.containsKey(transition)) {
-			set = map.get(transition);
+		add(getOrAddTransitionId(transition), processName, getOrAddTransitionId(otherTransition));
+	}
+	
+	/**
+	 * Maps the transition with the given id to the other transition of the given process, the ids are those returned
+	 * by {@link #getOrAddTransitionId(Transition)}.
+	 */
+	public void add(int transitionId, String processName, int otherTransitionId) {
+		int count = mappings.size();
+		mappings.intern(LongDictionary.pack(transitionId, otherTransitionId));
+		if (mappings.size() == count) return;
+		
+		int[] mapped = mappedTransitions[transitionId];
+		int[] mappedModels = mappedTransitionModels[transitionId];
+		if (mapped == null) {
+			mapped = new int[4];
+			mappedModels = new int[4];
 		}
-		else {
-			set = new HashSet<>();
-			map.put(transition, set);
+		else if (mappedTransitionCounts[transitionId] == mapped.length) {
+			mapped = Arrays.copyOf(mapped, 2 * mapped.length);
+			mappedModels = Arrays.copyOf(mappedModels, 2 * mappedModels.length);
 		}
+		mappedTransitions[transitionId] = mapped;
+		mappedTransitionModels[transitionId] = mappedModels;
 		
-		set.add(new Pair<>(processName, otherTransition));
+		mapped[mappedTransitionCounts[transitionId]] = otherTransitionId;
+		mappedModels[mappedTransitionCounts[transitionId]] = models.intern(processName);
+		mappedTransitionCounts[transitionId]++;
+		mappedTransitionSets = null;
+	}
+	
+	public int getOrAddTransitionId(Transition transition) {
+		Integer id = ids.get(transition);
+		if (id != null) return id;
+		
+		if (size == transitions.length) {
+			transitions = Arrays.copyOf(transitions, 2 * size);
+			mappedTransitions = Arrays.copyOf(mappedTransitions, 2 * size);
+			mappedTransitionModels = Arrays.copyOf(mappedTransitionModels, 2 * size);
+			mappedTransitionCounts = Arrays.copyOf(mappedTransitionCounts, 2 * size);
+		}
+		
+		id = size++;
+		transitions[id] = transition;
+		ids.put(transition, id);
+		mappedTransitionSets = null;
+		
+		return id;
+	}
+	
+	/**
+	 * Returns the id of the transition, or {@link StateDictionary#UNKNOWN} if the transition is not in the map.
+	 */
+	public int getTransitionId(Transition transition) {
+		Integer id = ids.get(transition);
+		return id == null ? StateDictionary.UNKNOWN : id;
 	}
 	
+	public int getTransitionCount() {
+		return size;
+	}
+	
+	public Transition getTransition(int transitionId) {
+		return transitions[transitionId];
+	}
+	
+	public int getMappedTransitionCount(int transitionId) {
+		return mappedTransitionCounts[transitionId];
+	}
+	
+	/**
+	 * Returns the ids of the transitions mapped to the given transition, only the first
+	 * {@link #getMappedTransitionCount(int)} entries are used.
+	 */
+	public int[] getMappedTransitionIds(int transitionId) {
+		return mappedTransitions[transitionId];
+	}
+	
+	@SuppressWarnings("unchecked")
 	public Set<Pair<String, Transition>> getMappedTransitions(Transition transition) {
-		return map.get(transition);
+		int transitionId = getTransitionId(transition);
+		if (transitionId == StateDictionary.UNKNOWN || mappedTransitionCounts[transitionId] == 0) return null;
+		
+		if (mappedTransitionSets == null) {
+			mappedTransitionSets = new Set[size];
+		}
+		
+		Set<Pair<String,Transition>> set = mappedTransitionSets[transitionId];
+		if (set == null) {
+			set = new HashSet<>();
+			int[] mapped = mappedTransitions[transitionId];
+			int[] mappedModels = mappedTransitionModels[transitionId];
+			for (int i = 0; i < mappedTransitionCounts[transitionId]; i++) {
+				set.add(new Pair<>(models.getName(mappedModels[i]), transitions[mapped[i]]));
+			}
+			mappedTransitionSets[transitionId] = set;
+		}
+		
+		return set;
 	}
 }
@@ -1,33 +1,64 @@
 package org.processmining.csmminer.relations;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-import org.processmining.framework.util.Pair;
+import org.processmining.csmminer.log.StateDictionary;
 import org.processmining.models.graphbased.directed.transitionsystem.State;
 import org.processmining.models.graphbased.directed.transitionsystem.Transition;
 
-import com.google.common.collect.Table;
-
 public class TransitionsCooccurringStates {
-	private Map<PerspectiveTransition,StateCounts> transitionsCooccurringStates;
+	private Map<PerspectiveTransition,Integer> transitionIds;
+	private List<StateCounts> transitionsCooccurringStates;
+	// Ids of the Transition objects of the state models per perspective, cached by identity
+	private Map<String,IdentityHashMap<Transition,Integer>> transitionObjectIds;
+	private StateKeys stateKeys;
+	// Performance split of the time spent in the perspective states per trace and per state entry
+	private PerformanceBuckets tracePerformance;
+	private PerformanceBuckets entryPerformance;
 	
 	public TransitionsCooccurringStates() {
-		transitionsCooccurringStates = new HashMap<>();
+		transitionIds = new HashMap<>();
+		transitionsCooccurringStates = new ArrayList<>();
+		transitionObjectIds = new HashMap<>();
+		stateKeys = new StateKeys();
+	}
+
+	/**
+	 * Returns the state keys to create the state counts with, so that all state counts share one state index.
+	 */
+	public StateKeys getStateKeys() {
+		return stateKeys;
 	}
 
 	public StateCounts get(String perspectiveName, String fromState, String toState) {
-		return transitionsCooccurringStates.get(new PerspectiveTransition(perspectiveName, fromState, toState));
+		Integer id = transitionIds.get(new PerspectiveTransition(perspectiveName, fromState, toState));
+		return id == null ? null : transitionsCooccurringStates.get(id);
 	}
 	
 	public StateCounts get(String perspectiveName, Transition transition) {
-		String source = transition.getSource().getIdentifier().toString();
-		String target = transition.getTarget().getIdentifier().toString();
-		PerspectiveTransition perspectiveTransition = new PerspectiveTransition(perspectiveName,
-				source.substring(1, source.length()-1),	target.substring(1, target.length()-1));
+		IdentityHashMap<Transition,Integer> perspectiveTransitionIds = transitionObjectIds.get(perspectiveName);
+		if (perspectiveTransitionIds == null) {
+			perspectiveTransitionIds = new IdentityHashMap<>();
+			transitionObjectIds.put(perspectiveName, perspectiveTransitionIds);
+		}
 		
-		return transitionsCooccurringStates.get(perspectiveTransition);
+		Integer id = perspectiveTransitionIds.get(transition);
+		if (id == null) {
+			String source = transition.getSource().getIdentifier().toString();
+			String target = transition.getTarget().getIdentifier().toString();
+			id = transitionIds.get(new PerspectiveTransition(perspectiveName,
+					source.substring(1, source.length()-1),	target.substring(1, target.length()-1)));
+			if (id == null) {
+				id = StateDictionary.UNKNOWN;
+			}
+			perspectiveTransitionIds.put(transition, id);
+		}
+		
+		return id == StateDictionary.UNKNOWN ? null : transitionsCooccurringStates.get(id);
 	}
 	
 	public Integer getCount(String transitionPerspective, Transition transition, String statePerspective, State state) {
@@ -38,7 +69,17 @@ public class TransitionsCooccurringStates {
 	}
 	
 	public StateCounts put(String perspectiveName, String fromState, String toState, StateCounts stateCounts) {
-		return transitionsCooccurringStates.put(new PerspectiveTransition(perspectiveName, fromState, toState), stateCounts);
+		PerspectiveTransition perspectiveTransition = new PerspectiveTransition(perspectiveName, fromState, toState);
+		Integer id = transitionIds.get(perspectiveTransition);
+		if (id != null) {
+			return transitionsCooccurringStates.set(id, stateCounts);
+		}
+		
+		transitionIds.put(perspectiveTransition, transitionsCooccurringStates.size());
+		transitionsCooccurringStates.add(stateCounts);
+		// Transitions that were not found before may be found now
+		transitionObjectIds.clear();
+		return null;
 	}
 
 	public boolean containsCount(String transitionPerspective, Transition transition, String statePerspective, State state) {
@@ -48,18 +89,16 @@ public class TransitionsCooccurringStates {
 		return stateCounts.containsCount(statePerspective, state);
 	}
 	
+	public PerformanceBuckets getTracePerformance() {
+		return tracePerformance;
+	}
+	
+	public PerformanceBuckets getEntryPerformance() {
+		return entryPerformance;
+	}
 	
-	// FIXME: dirty hacks below
-	public Map<String, DescriptiveStatistics> timePerTraceFast;
-	public Map<String, DescriptiveStatistics> timePerTraceSlow;
-	public Map<String, DescriptiveStatistics> timePerEntryFast;
-	public Map<String, DescriptiveStatistics> timePerEntrySlow;
-	public Table<String, String, DescriptiveStatistics> cooccurringStatesTimePerTraceFast;
-	public Table<String, String, DescriptiveStatistics> cooccurringStatesTimePerTraceSlow;
-	public Table<String, String, DescriptiveStatistics> cooccurringStatesTimePerEntryFast;
-	public Table<String, String, DescriptiveStatistics> cooccurringStatesTimePerEntrySlow;
-	public Table<String, Pair<String, String>, Integer> cooccurringTransitionCountPerTraceFast;
-	public Table<String, Pair<String, String>, Integer> cooccurringTransitionCountPerTraceSlow;
-	public Table<String, Pair<String, String>, Integer> cooccurringTransitionCountPerEntryFast;
-	public Table<String, Pair<String, String>, Integer> cooccurringTransitionCountPerEntrySlow;
+	public void setPerformance(PerformanceBuckets tracePerformance, PerformanceBuckets entryPerformance) {
+		this.tracePerformance = tracePerformance;
+		this.entryPerformance = entryPerformance;
+	}
 }
@@ -0,0 +1,249 @@
+package org.processmining.csmminer.statistics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.processmining.csmminer.relations.RelationStore;
+
+/**
+ * Computes the significance of relations with a binomial test, P(X < count) for X ~ Binomial(trials, probability).
+ * The requests are collected and computed in one batch: the requests with the same (trials, probability) are grouped
+ * and their cumulative probabilities are computed in a single pass over the counts of the group, so nothing is cached
+ * between groups. Above a maximum number of trials the normal approximation is used, or the Poisson approximation if
+ * the variance is small. For probabilities above one half the Poisson approximation is applied to the complement
+ * trials - X ~ Binomial(trials, 1 - probability), which then has the small mean.
+ */
+public class BinomialSignificance {
+	// Minimum variance trials * p * (1 - p) for the normal approximation
+	private static final double minNormalVariance = 9;
+	
+	private final int maxExactTrials;
+	private NormalDistribution standardNormal;
+	
+	// Requests of the current batch
+	private int size;
+	private int[] relations;
+	private int[] trials;
+	private float[] probabilities;
+	private int[] counts;
+	
+	public BinomialSignificance(int maxExactTrials) {
+		this.maxExactTrials = maxExactTrials;
+		
+		size = 0;
+		relations = new int[16];
+		trials = new int[16];
+		probabilities = new float[16];
+		counts = new int[16];
+	}
+	
+	/**
+	 * Adds the significance of the relation with the given id in a relation store to the batch.
+	 */
+	public void add(int relation, int trials, float probability, int count) {
+		if (size == relations.length) {
+			relations = Arrays.copyOf(relations, 2 * size);
+			this.trials = Arrays.copyOf(this.trials, 2 * size);
+			probabilities = Arrays.copyOf(probabilities, 2 * size);
+			counts = Arrays.copyOf(counts, 2 * size);
+		}
+		
+		relations[size] = relation;
+		this.trials[size] = trials;
+		probabilities[size] = probability;
+		counts[size] = count;
+		size++;
+	}
+	
+	/**
+	 * Computes the significance of all relations in the batch, stores it in the relation store and empties the batch.
+	 */
+	public void computeAll(RelationStore store) {
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				int comparison = Integer.compare(trials[i1], trials[i2]);
+				if (comparison == 0) {
+					comparison = Float.compare(probabilities[i1], probabilities[i2]);
+				}
+				return comparison != 0 ? comparison : Integer.compare(counts[i1], counts[i2]);
+			}
+		});
+		
+		int start = 0;
+		while (start < size) {
+			int end = start + 1;
+			while (end < size && trials[order[end]] == trials[order[start]] &&
+					Float.compare(probabilities[order[end]], probabilities[order[start]]) == 0) {
+				end++;
+			}
+			computeGroup(store, order, start, end);
+			start = end;
+		}
+		size = 0;
+	}
+	
+	/**
+	 * Computes the significance of the requests order[start], ..., order[end - 1], which have the same trials and
+	 * probability and are ordered by count.
+	 */
+	private void computeGroup(RelationStore store, Integer[] order, int start, int end) {
+		int groupTrials = trials[order[start]];
+		float probability = probabilities[order[start]];
+		
+		CumulativeDistribution distribution = null;
+		if (groupTrials > 0 && probability >= 0 && probability <= 1 && !useNormal(groupTrials, probability)) {
+			distribution = createDistribution(groupTrials, probability);
+		}
+		
+		// The complement is evaluated at trials - count, so its counts are visited in descending order
+		boolean descending = distribution != null && distribution.complement;
+		for (int i = start; i < end; i++) {
+			int request = order[descending ? start + end - 1 - i : i];
+			double significance = distribution == null ? getSignificance(groupTrials, probability, counts[request]) :
+				cumulativeProbability(distribution, groupTrials, counts[request] - 1);
+			store.set(relations[request], RelationStore.SIGNIFICANCE, (float) significance);
+		}
+	}
+	
+	/**
+	 * Returns P(X < count) for X ~ Binomial(trials, probability), or NaN if there are no trials or the probability is
+	 * not a probability.
+	 */
+	public double getSignificance(int trials, float probability, int count) {
+		if (trials <= 0 || !(probability >= 0 && probability <= 1)) return Double.NaN;
+		return cumulativeProbability(trials, probability, count - 1);
+	}
+	
+	/**
+	 * Returns P(X <= k) for X ~ Binomial(trials, probability).
+	 */
+	public double cumulativeProbability(int trials, float probability, int k) {
+		if (k < 0) return 0;
+		if (k >= trials) return 1;
+		
+		if (useNormal(trials, probability)) {
+			double mean = trials * (double) probability;
+			if (standardNormal == null) {
+				standardNormal = new NormalDistribution(null, 0, 1);
+			}
+			// Continuity correction
+			return standardNormal.cumulativeProbability((k + 0.5 - mean) / Math.sqrt(mean * (1 - probability)));
+		}
+		
+		return cumulativeProbability(createDistribution(trials, probability), trials, k);
+	}
+	
+	private boolean useNormal(int trials, float probability) {
+		return trials > maxExactTrials && trials * (double) probability * (1 - probability) >= minNormalVariance;
+	}
+	
+	/**
+	 * Returns the exact binomial distribution up to the maximum number of trials, and the Poisson approximation of
+	 * the distribution or of its complement above it.
+	 */
+	private CumulativeDistribution createDistribution(int trials, float probability) {
+		if (trials <= maxExactTrials) {
+			return new CumulativeDistribution(trials, probability, false);
+		}
+		if (probability > 0.5) {
+			return new CumulativeDistribution(-1, trials * (1 - (double) probability), true);
+		}
+		return new CumulativeDistribution(-1, trials * (double) probability, false);
+	}
+	
+	/**
+	 * Returns P(X <= k) for X ~ Binomial(trials, probability) from its distribution, using P(X <= k) =
+	 * 1 - P(trials - X <= trials - k - 1) if the distribution is of the complement.
+	 */
+	private static double cumulativeProbability(CumulativeDistribution distribution, int trials, int k) {
+		if (k < 0) return 0;
+		if (k >= trials) return 1;
+		
+		if (distribution.complement) {
+			return Math.max(0, 1 - distribution.cumulativeProbability(trials - k - 1));
+		}
+		return distribution.cumulativeProbability(k);
+	}
+	
+	/**
+	 * Binomial or Poisson distribution of which the cumulative probabilities P(X <= k) are computed by summing the
+	 * probabilities P(X = i) up to k. The sum is kept between calls, so calls with increasing k take a single pass.
+	 * The probabilities are computed in log space from the recurrence between P(X = i) and P(X = i + 1), so they do
+	 * not underflow for large numbers of trials.
+	 */
+	private static class CumulativeDistribution {
+		// Probability P(X = k) above the mean, relative to the sum, below which the rest of the tail is ignored
+		private static final double tailEpsilon = 1e-17;
+		
+		// Number of trials of a binomial distribution, or -1 for a Poisson distribution
+		private final int trials;
+		private final double probability;
+		private final double mean;
+		// True if the distribution is of trials - X instead of X
+		private final boolean complement;
+		
+		private int k;
+		private double logProbability;
+		private double sum;
+		
+		/**
+		 * Creates a binomial distribution with the given number of trials and probability, or a Poisson distribution
+		 * with the given mean if trials is -1.
+		 */
+		public CumulativeDistribution(int trials, double parameter, boolean complement) {
+			this.trials = trials;
+			this.probability = trials < 0 ? Double.NaN : parameter;
+			this.mean = trials < 0 ? parameter : trials * parameter;
+			this.complement = complement;
+			reset();
+		}
+		
+		private void reset() {
+			k = 0;
+			if (trials < 0) {
+				logProbability = -mean;
+			}
+			else {
+				logProbability = probability == 1 ? Double.NEGATIVE_INFINITY : trials * Math.log1p(-probability);
+			}
+			sum = Math.exp(logProbability);
+		}
+		
+		public double cumulativeProbability(int k) {
+			if (k < this.k) {
+				reset();
+			}
+			
+			while (this.k < k) {
+				if (this.k > mean && Math.exp(logProbability) <= tailEpsilon * sum) {
+					// The remaining probabilities are decreasing geometrically and do not change the sum
+					return Math.min(1, sum);
+				}
+				advance();
+			}
+			return Math.min(1, sum);
+		}
+		
+		private void advance() {
+			if (trials < 0) {
+				logProbability += Math.log(mean) - Math.log(k + 1);
+			}
+			else if (probability == 0) {
+				logProbability = Double.NEGATIVE_INFINITY;
+			}
+			else if (probability == 1) {
+				logProbability = k + 1 == trials ? 0 : Double.NEGATIVE_INFINITY;
+			}
+			else {
+				logProbability += Math.log(trials - k) - Math.log(k + 1) + Math.log(probability) - Math.log1p(-probability);
+			}
+			k++;
+			sum += Math.exp(logProbability);
+		}
+	}
+}
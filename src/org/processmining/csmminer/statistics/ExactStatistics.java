@@ -0,0 +1,60 @@
+package org.processmining.csmminer.statistics;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+
+/**
+ * Statistics that keep every value, so the percentiles are exact. The memory use grows with the number of values.
+ */
+public class ExactStatistics implements StatisticsAccumulator {
+	private final DescriptiveStatistics statistics;
+	
+	public ExactStatistics() {
+		statistics = new DescriptiveStatistics();
+	}
+	
+	public void addValue(double value) {
+		statistics.addValue(value);
+	}
+	
+	public void addAll(StatisticsAccumulator statistics) {
+		if (!(statistics instanceof ExactStatistics)) {
+			throw new IllegalArgumentException("Exact statistics can only be merged with exact statistics");
+		}
+		
+		for (double value : ((ExactStatistics) statistics).statistics.getValues()) {
+			this.statistics.addValue(value);
+		}
+	}
+	
+	public long getN() {
+		return statistics.getN();
+	}
+	
+	public double getSum() {
+		return statistics.getSum();
+	}
+	
+	public double getMean() {
+		return statistics.getMean();
+	}
+	
+	public double getVariance() {
+		return statistics.getVariance();
+	}
+	
+	public double getStandardDeviation() {
+		return statistics.getStandardDeviation();
+	}
+	
+	public double getMin() {
+		return statistics.getMin();
+	}
+	
+	public double getMax() {
+		return statistics.getMax();
+	}
+	
+	public double getPercentile(double p) {
+		return statistics.getPercentile(p);
+	}
+}
@@ -0,0 +1,155 @@
+package org.processmining.csmminer.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with logarithmic buckets, as in DDSketch (Masson et al.). Every value is counted in the
+ * bucket [gamma^(i-1), gamma^i) of its magnitude, so the value returned for a rank has a relative error of at most the
+ * configured accuracy. The number of buckets grows with the logarithm of the range of the values, not with their
+ * number.
+ */
+public class QuantileSketch {
+	
+	// Magnitudes below this value are counted as zero
+	private static final double minIndexableValue = 1e-9;
+	
+	private final double relativeAccuracy;
+	private final double gamma;
+	private final double logGamma;
+	
+	private final BucketStore positiveValues;
+	private final BucketStore negativeValues;
+	private long zeroCount;
+	
+	/**
+	 * @param relativeAccuracy
+	 *            the maximum relative error of the returned values, between 0 and 1
+	 */
+	public QuantileSketch(double relativeAccuracy) {
+		if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+			throw new IllegalArgumentException("The relative accuracy should be between 0 and 1");
+		}
+		
+		this.relativeAccuracy = relativeAccuracy;
+		this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+		this.logGamma = Math.log(gamma);
+		this.positiveValues = new BucketStore();
+		this.negativeValues = new BucketStore();
+	}
+	
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+	
+	public long getCount() {
+		return negativeValues.total + zeroCount + positiveValues.total;
+	}
+	
+	public void add(double value) {
+		if (value > minIndexableValue) {
+			positiveValues.add(getIndex(value), 1);
+		}
+		else if (value < -minIndexableValue) {
+			negativeValues.add(getIndex(-value), 1);
+		}
+		else {
+			zeroCount++;
+		}
+	}
+	
+	/**
+	 * Adds the counts of another sketch with the same relative accuracy.
+	 */
+	public void addAll(QuantileSketch sketch) {
+		if (sketch.relativeAccuracy != relativeAccuracy) {
+			throw new IllegalArgumentException("Only sketches with the same relative accuracy can be merged");
+		}
+		
+		positiveValues.addAll(sketch.positiveValues);
+		negativeValues.addAll(sketch.negativeValues);
+		zeroCount += sketch.zeroCount;
+	}
+	
+	/**
+	 * Returns the approximate value at the given rank (starting at 0) of all values in ascending order.
+	 */
+	public double getValue(long rank) {
+		if (rank < 0 || rank >= getCount()) {
+			throw new IndexOutOfBoundsException("Rank " + rank + " of " + getCount() + " values");
+		}
+		
+		if (rank < negativeValues.total) {
+			return -getBucketValue(negativeValues.getIndex(negativeValues.total - 1 - rank));
+		}
+		rank -= negativeValues.total;
+		
+		if (rank < zeroCount) return 0;
+		rank -= zeroCount;
+		
+		return getBucketValue(positiveValues.getIndex(rank));
+	}
+	
+	private int getIndex(double magnitude) {
+		return (int) Math.ceil(Math.log(magnitude) / logGamma);
+	}
+	
+	/**
+	 * Returns the value of a bucket that is within the relative accuracy of every value in the bucket.
+	 */
+	private double getBucketValue(int index) {
+		return 2 * Math.pow(gamma, index) / (gamma + 1);
+	}
+	
+	/**
+	 * Counts per bucket index, stored in an array covering the range of indices seen so far.
+	 */
+	private static class BucketStore {
+		long[] counts;
+		int offset;
+		long total;
+		
+		void add(int index, long count) {
+			ensureIndex(index);
+			counts[index - offset] += count;
+			total += count;
+		}
+		
+		void addAll(BucketStore store) {
+			if (store.counts == null) return;
+			
+			for (int i = 0; i < store.counts.length; i++) {
+				if (store.counts[i] > 0) add(store.offset + i, store.counts[i]);
+			}
+		}
+		
+		/**
+		 * Returns the index of the bucket holding the value at the given rank in ascending order of the indices.
+		 */
+		int getIndex(long rank) {
+			long cumulativeCount = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulativeCount += counts[i];
+				if (cumulativeCount > rank) return offset + i;
+			}
+			return offset + counts.length - 1;
+		}
+		
+		private void ensureIndex(int index) {
+			if (counts == null) {
+				counts = new long[16];
+				offset = index - 8;
+			}
+			else if (index < offset) {
+				int length = Math.max(counts.length * 2, counts.length + offset - index);
+				long[] newCounts = new long[length];
+				int shift = length - counts.length;
+				System.arraycopy(counts, 0, newCounts, shift, counts.length);
+				counts = newCounts;
+				offset -= shift;
+			}
+			else if (index >= offset + counts.length) {
+				counts = Arrays.copyOf(counts, Math.max(counts.length * 2, index - offset + 1));
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package org.processmining.csmminer.statistics;
+
+import java.util.Arrays;
+
+/**
+ * The number of times a state or transition is observed in each trace, storing only the traces in which it was
+ * observed. All other traces count as implicit zeros, so the statistics over all traces are the same as when one value
+ * is stored for every trace.
+ */
+public class SparseFrequency {
+	private int[] counts;
+	private int size;
+	
+	public SparseFrequency() {
+		counts = new int[4];
+		size = 0;
+	}
+	
+	/**
+	 * Adds the number of observations in the next trace in which this element is observed, should be positive.
+	 */
+	public void add(int count) {
+		if (size == counts.length) {
+			counts = Arrays.copyOf(counts, 2 * size);
+		}
+		counts[size++] = count;
+	}
+	
+	/**
+	 * Adds the observations of the traces following the traces of this frequency.
+	 */
+	public void addAll(SparseFrequency frequency) {
+		if (size + frequency.size > counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(2 * counts.length, size + frequency.size));
+		}
+		System.arraycopy(frequency.counts, 0, counts, size, frequency.size);
+		size += frequency.size;
+	}
+	
+	/**
+	 * The number of traces in which this element is observed.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Statistics of the number of observations per trace, over the given total number of traces.
+	 */
+	public SparseStatistics getObservations(int traces) {
+		return new SparseStatistics(counts, size, traces, false);
+	}
+	
+	/**
+	 * Statistics of whether this element is observed in a trace (1) or not (0), over the given total number of traces.
+	 */
+	public SparseStatistics getTraces(int traces) {
+		return new SparseStatistics(counts, size, traces, true);
+	}
+}
@@ -0,0 +1,131 @@
+package org.processmining.csmminer.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Descriptive statistics over a set of values of which only the non-zero values are stored, the remaining values are
+ * implicit zeros. The computations follow those of commons-math DescriptiveStatistics (bias-corrected variance, legacy
+ * percentile estimation), so the results match those of storing every value.
+ */
+public class SparseStatistics {
+	private final int[] values;
+	private final int size;
+	private final int n;
+	private final boolean indicator;
+	private int[] sortedValues;
+	
+	/**
+	 * @param values
+	 *            the non-zero values, only the first size entries are used
+	 * @param n
+	 *            the total number of values, including the zeros
+	 * @param indicator
+	 *            if true every non-zero value is taken to be 1
+	 */
+	public SparseStatistics(int[] values, int size, int n, boolean indicator) {
+		this.values = values;
+		this.size = size;
+		this.n = n;
+		this.indicator = indicator;
+	}
+	
+	private int getValue(int index) {
+		return indicator ? 1 : values[index];
+	}
+	
+	public long getN() {
+		return n;
+	}
+	
+	public double getSum() {
+		if (n == 0) return Double.NaN;
+		
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += getValue(i);
+		}
+		return sum;
+	}
+	
+	public double getMean() {
+		if (n == 0) return Double.NaN;
+		
+		double mean = getSum() / n;
+		double correction = (n - size) * -mean;
+		for (int i = 0; i < size; i++) {
+			correction += getValue(i) - mean;
+		}
+		return mean + correction / n;
+	}
+	
+	public double getVariance() {
+		if (n == 0) return Double.NaN;
+		if (n == 1) return 0.0;
+		
+		double mean = getMean();
+		double accum = (n - size) * mean * mean;
+		double accum2 = (n - size) * -mean;
+		for (int i = 0; i < size; i++) {
+			double deviation = getValue(i) - mean;
+			accum += deviation * deviation;
+			accum2 += deviation;
+		}
+		return (accum - (accum2 * accum2 / n)) / (n - 1.0);
+	}
+	
+	public double getStandardDeviation() {
+		if (n == 0) return Double.NaN;
+		if (n == 1) return 0.0;
+		
+		return Math.sqrt(getVariance());
+	}
+	
+	public double getMin() {
+		if (n == 0) return Double.NaN;
+		if (size < n) return 0;
+		
+		return getSortedValue(0);
+	}
+	
+	public double getMax() {
+		if (n == 0) return Double.NaN;
+		if (size == 0) return 0;
+		
+		return getSortedValue(n - 1);
+	}
+	
+	/**
+	 * Returns the p-th percentile using the legacy estimation of commons-math.
+	 */
+	public double getPercentile(double p) {
+		if (n == 0) return Double.NaN;
+		if (n == 1) return getSortedValue(0);
+		
+		double position = p * (n + 1) / 100;
+		double floorPosition = Math.floor(position);
+		int intPosition = (int) floorPosition;
+		double difference = position - floorPosition;
+		
+		if (position < 1) return getSortedValue(0);
+		if (position >= n) return getSortedValue(n - 1);
+		
+		double lower = getSortedValue(intPosition - 1);
+		double upper = getSortedValue(intPosition);
+		return lower + difference * (upper - lower);
+	}
+	
+	/**
+	 * Returns the value at the given index of all n values in ascending order, the implicit zeros come first.
+	 */
+	private int getSortedValue(int index) {
+		int zeros = n - size;
+		if (index < zeros) return 0;
+		if (indicator) return 1;
+		
+		if (sortedValues == null) {
+			sortedValues = Arrays.copyOf(values, size);
+			Arrays.sort(sortedValues);
+		}
+		return sortedValues[index - zeros];
+	}
+}
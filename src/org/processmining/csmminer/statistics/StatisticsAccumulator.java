@@ -0,0 +1,34 @@
+package org.processmining.csmminer.statistics;
+
+/**
+ * Descriptive statistics over a stream of values. Accumulators of the same kind can be merged, so statistics collected
+ * for separate parts of a log can be combined afterwards.
+ */
+public interface StatisticsAccumulator {
+	
+	public void addValue(double value);
+	
+	/**
+	 * Adds all values of another accumulator created by the same backend.
+	 */
+	public void addAll(StatisticsAccumulator statistics);
+	
+	public long getN();
+	
+	public double getSum();
+	
+	public double getMean();
+	
+	public double getVariance();
+	
+	public double getStandardDeviation();
+	
+	public double getMin();
+	
+	public double getMax();
+	
+	/**
+	 * Returns the p-th percentile, with 0 < p <= 100, using the legacy estimation of commons-math.
+	 */
+	public double getPercentile(double p);
+}
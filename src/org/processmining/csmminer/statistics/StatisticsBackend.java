@@ -0,0 +1,44 @@
+package org.processmining.csmminer.statistics;
+
+/**
+ * Creates the accumulators of the time statistics, either exact statistics keeping every value or streaming statistics
+ * with a bounded memory use.
+ */
+public class StatisticsBackend {
+	
+	public enum Mode {
+		// Keep every value, the percentiles are exact
+		EXACT,
+		// Use streaming moments and a quantile sketch, the percentiles are approximate
+		STREAMING,
+		// Use exact statistics for small logs and streaming statistics for large logs
+		AUTOMATIC
+	};
+	
+	private final boolean exact;
+	private final double relativeAccuracy;
+	
+	public StatisticsBackend(boolean exact, double relativeAccuracy) {
+		this.exact = exact;
+		this.relativeAccuracy = relativeAccuracy;
+	}
+	
+	/**
+	 * Returns the backend for the given mode and number of values, in automatic mode exact statistics are used if there
+	 * are at most maxExactValues values.
+	 */
+	public static StatisticsBackend create(Mode mode, long values, long maxExactValues, double relativeAccuracy) {
+		boolean exact = mode == Mode.EXACT || (mode == Mode.AUTOMATIC && values <= maxExactValues);
+		return new StatisticsBackend(exact, relativeAccuracy);
+	}
+	
+	public boolean isExact() {
+		return exact;
+	}
+	
+	public StatisticsAccumulator createAccumulator() {
+		if (exact) return new ExactStatistics();
+		
+		return new StreamingStatistics(relativeAccuracy);
+	}
+}
@@ -0,0 +1,137 @@
+package org.processmining.csmminer.statistics;
+
+/**
+ * Statistics that use a fixed amount of memory for the moments and a quantile sketch for the percentiles. The count,
+ * sum, mean, variance, min and max are exact up to rounding, the percentiles have a bounded relative error.
+ */
+public class StreamingStatistics implements StatisticsAccumulator {
+	private long n;
+	private double sum;
+	private double mean;
+	private double m2;
+	private double min;
+	private double max;
+	private final QuantileSketch sketch;
+	
+	/**
+	 * @param relativeAccuracy
+	 *            the maximum relative error of the percentiles, between 0 and 1
+	 */
+	public StreamingStatistics(double relativeAccuracy) {
+		sketch = new QuantileSketch(relativeAccuracy);
+		min = Double.NaN;
+		max = Double.NaN;
+	}
+	
+	public void addValue(double value) {
+		n++;
+		sum += value;
+		double delta = value - mean;
+		mean += delta / n;
+		m2 += delta * (value - mean);
+		
+		if (n == 1 || value < min) min = value;
+		if (n == 1 || value > max) max = value;
+		
+		sketch.add(value);
+	}
+	
+	/**
+	 * Merges the moments with the pairwise update of Chan et al. and adds the buckets of the other sketch.
+	 */
+	public void addAll(StatisticsAccumulator statistics) {
+		if (!(statistics instanceof StreamingStatistics)) {
+			throw new IllegalArgumentException("Streaming statistics can only be merged with streaming statistics");
+		}
+		
+		StreamingStatistics other = (StreamingStatistics) statistics;
+		if (other.n == 0) return;
+		
+		if (n == 0) {
+			n = other.n;
+			sum = other.sum;
+			mean = other.mean;
+			m2 = other.m2;
+			min = other.min;
+			max = other.max;
+		}
+		else {
+			long total = n + other.n;
+			double delta = other.mean - mean;
+			mean += delta * other.n / total;
+			m2 += other.m2 + delta * delta * ((double) n * other.n / total);
+			sum += other.sum;
+			n = total;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+		
+		sketch.addAll(other.sketch);
+	}
+	
+	public long getN() {
+		return n;
+	}
+	
+	public double getSum() {
+		if (n == 0) return Double.NaN;
+		
+		return sum;
+	}
+	
+	public double getMean() {
+		if (n == 0) return Double.NaN;
+		
+		return mean;
+	}
+	
+	public double getVariance() {
+		if (n == 0) return Double.NaN;
+		if (n == 1) return 0.0;
+		
+		return m2 / (n - 1.0);
+	}
+	
+	public double getStandardDeviation() {
+		if (n == 0) return Double.NaN;
+		if (n == 1) return 0.0;
+		
+		return Math.sqrt(getVariance());
+	}
+	
+	public double getMin() {
+		return min;
+	}
+	
+	public double getMax() {
+		return max;
+	}
+	
+	/**
+	 * Returns the p-th percentile using the legacy estimation of commons-math, with the values at the two neighbouring
+	 * ranks taken from the sketch.
+	 */
+	public double getPercentile(double p) {
+		if (p <= 0 || p > 100) {
+			throw new IllegalArgumentException("Percentile " + p + " is not in (0,100]");
+		}
+		if (n == 0) return Double.NaN;
+		if (n == 1) return min;
+		
+		double position = p * (n + 1) / 100;
+		double floorPosition = Math.floor(position);
+		long longPosition = (long) floorPosition;
+		double difference = position - floorPosition;
+		
+		if (position < 1) return min;
+		if (position >= n) return max;
+		
+		double lower = getValue(longPosition - 1);
+		double upper = getValue(longPosition);
+		return lower + difference * (upper - lower);
+	}
+	
+	private double getValue(long rank) {
+		return Math.max(min, Math.min(max, sketch.getValue(rank)));
+	}
+}
@@ -25,6 +25,7 @@ import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.RowFilter;
 import javax.swing.RowFilter.ComparisonType;
+import javax.swing.Timer;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
@@ -36,7 +37,10 @@ import javax.swing.table.TableRowSorter;
 
 import org.processmining.csmminer.CSMMiner;
 import org.processmining.csmminer.CSMMinerResults;
+import org.processmining.csmminer.log.StateDictionary;
 import org.processmining.csmminer.relations.PerspectiveTransition;
+import org.processmining.csmminer.relations.RelationQuery;
+import org.processmining.csmminer.relations.RelationStore;
 import org.processmining.csmminer.relations.StateCounts;
 import org.processmining.framework.util.Pair;
 import org.processmining.framework.util.ui.widgets.ProMTable;
@@ -74,6 +78,11 @@ public class MetricsPanel extends JSplitPane {
 	private String[] relationTypes = { "State co-occurrences", "State co-occurrences (Hide symmetric half)", "Transition co-occurrences",
 			"Forward-looking co-occurrences" };
 	private JComboBox switchRelationTypeBox = SlickerFactory.instance().createComboBox(relationTypes);
+	private String[] rankings = { "All relations", "Top k by Support", "Top k by Confidence", "Top k by Lift",
+			"Top k by Conviction", "Top k by Cosine", "Top k by Jaccard", "Top k by Phi", "Top k by Significance" };
+	private JComboBox rankingBox = SlickerFactory.instance().createComboBox(rankings);
+	private ProMTextField topK = new ProMTextField("Top k");
+	private int defaultTopK = 100;
 	private JCheckBox toggleProcessNameBox = SlickerFactory.instance().createCheckBox("Show process names", false);
 	private ProMTextField nameFilter = new ProMTextField("Filter by name");
 	private ProMTextField minSupport = new ProMTextField("Minimum Support");
@@ -83,7 +92,10 @@ public class MetricsPanel extends JSplitPane {
 	private ProMTextField minCosine = new ProMTextField("Minimum Cosine");
 	private ProMTextField minJaccard = new ProMTextField("Minimum Jaccard");
 	private ProMTextField minPhi = new ProMTextField("Minimum Phi");
-//	private ProMTextField minSignificance = new ProMTextField("Minimum Significance");
+	private ProMTextField minSignificance = new ProMTextField("Minimum Significance");
+	// Delay in milliseconds after the last edit of a text field before the top k relations are queried again
+	private int reloadDelay = 300;
+	private Timer reloadTimer;
 	
 	@SuppressWarnings("serial")
 	public MetricsPanel(DefaultTableModel metricsTableModel, CSMMinerResults results, VisualisationConnections connections, int width) {
@@ -108,6 +120,8 @@ public class MetricsPanel extends JSplitPane {
 		doubleSize = new Dimension((width - 40) * 2 / (columnCount + 4),23);
 		tripleSize = new Dimension((width - 120) * 3 / (columnCount + 4),23);
 		switchRelationTypeBox.setMinimumSize(doubleSize);
+		rankingBox.setMinimumSize(singleSize);
+		topK.setMinimumSize(singleSize);
 		toggleProcessNameBox.setMinimumSize(singleSize);
 		nameFilter.setMinimumSize(tripleSize);
 		minSupport.setMinimumSize(singleSize);
@@ -117,13 +131,15 @@ public class MetricsPanel extends JSplitPane {
 		minCosine.setMinimumSize(singleSize);
 		minJaccard.setMinimumSize(singleSize);
 		minPhi.setMinimumSize(singleSize);
-//		minSignificance.setMinimumSize(singleSize);
+		minSignificance.setMinimumSize(singleSize);
 		
 		constraints.weightx = 2;
 		constraints.gridwidth = 2;
 		panel.add(switchRelationTypeBox, constraints);
 		constraints.weightx = 1;
 		constraints.gridwidth = 1;
+		panel.add(rankingBox, constraints);
+		panel.add(topK, constraints);
 		panel.add(toggleProcessNameBox, constraints);
 		constraints.weightx = 3;
 		constraints.gridwidth = 3;
@@ -137,7 +153,7 @@ public class MetricsPanel extends JSplitPane {
 		panel.add(minCosine, constraints);
 		panel.add(minJaccard, constraints);
 		panel.add(minPhi, constraints);
-//		panel.add(minSignificance, constraints);
+		panel.add(minSignificance, constraints);
 		
 		panel.setPreferredSize(new Dimension(width, 23));
 		panel.setMinimumSize(new Dimension(width, 23));
@@ -162,7 +178,7 @@ public class MetricsPanel extends JSplitPane {
 		metricsTableModel.addColumn("Cosine");
 		metricsTableModel.addColumn("Jaccard");
 		metricsTableModel.addColumn("Phi");
-//		metricsTableModel.addColumn("Significance");
+		metricsTableModel.addColumn("Significance");
 		
 		Enumeration<TableColumn> columns = table.getColumnModel().getColumns();
 		while (columns.hasMoreElements()) {
@@ -187,7 +203,16 @@ public class MetricsPanel extends JSplitPane {
 		addRelations();
 		sorter.setRowFilter(createCombinedFilter());
 		
+		reloadTimer = new Timer(reloadDelay, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				reloadRelations();
+			}
+		});
+		reloadTimer.setRepeats(false);
+		
 		switchRelationTypeBox.addActionListener(new SwitchRelationTypeActionListener());
+		rankingBox.addActionListener(new RankingActionListener());
+		topK.getDocument().addDocumentListener(new TopKDocumentListener());
 		toggleProcessNameBox.addActionListener(new ToggleProcessNameActionListener());
 		nameFilter.getDocument().addDocumentListener(new NameFilterDocumentListener());
 		minSupport.getDocument().addDocumentListener(new MinMetricDocumentListener(minSupport, 2));
@@ -197,10 +222,15 @@ public class MetricsPanel extends JSplitPane {
 		minCosine.getDocument().addDocumentListener(new MinMetricDocumentListener(minCosine, 6));
 		minJaccard.getDocument().addDocumentListener(new MinMetricDocumentListener(minJaccard, 7));
 		minPhi.getDocument().addDocumentListener(new MinMetricDocumentListener(minPhi, 8));
-//		minSignificance.getDocument().addDocumentListener(new MinMetricDocumentListener(minSignificance, 9));
+		minSignificance.getDocument().addDocumentListener(new MinMetricDocumentListener(minSignificance, 9));
 	}
 	
 	private void addRelations() {
+		if (rankingBox.getSelectedIndex() > 0) {
+			addTopRelations();
+			return;
+		}
+		
 		for (String processName1 : results.tsMinerOutputs.keySet()) {
 			if (processName1.equals(CSMMiner.CSMLabel)) continue;
 			
@@ -210,77 +240,25 @@ public class MetricsPanel extends JSplitPane {
 				TSMinerTransitionSystem model1 = results.tsMinerOutputs.get(processName1).getTransitionSystem();
 				TSMinerTransitionSystem model2 = results.tsMinerOutputs.get(processName2).getTransitionSystem();
 				
-				// FIXME: use a special attribute for state names
 				for (State state1 : model1.getNodes()) {
-					String state1Name = (String) state1.getAttributeMap().get(AttributeMap.TOOLTIP);
-//					String state1Name = ((String) state1.getAttributeMap().get(AttributeMap.TOOLTIP)).substring(1,
-//							((String) state1.getAttributeMap().get(AttributeMap.TOOLTIP)).length()-1);
 					for (State state2 : model2.getNodes()) {
-						String state2Name = (String) state2.getAttributeMap().get(AttributeMap.TOOLTIP);
-//						String state2Name = ((String) state2.getAttributeMap().get(AttributeMap.TOOLTIP)).substring(1,
-//								((String) state2.getAttributeMap().get(AttributeMap.TOOLTIP)).length()-1);
-						Pair<State, State> pair = new Pair<>(state1, state2);
-						if (results.support.containsKey(pair)) {
-							processNamesPerRowCondition.add(processName1);
-							processNamesPerRowConsequence.add(processName2);
-							conditionNamesPerRow.add(state1Name);
-							consequenceNamesPerRow.add(state2Name);
-							graphElementsPerRowCondition.add(state1);
-							graphElementsPerRowConsequence.add(state2);
-							tableModel.addRow(new Object[] { state1Name, state2Name, results.support.get(pair),
-									results.confidence.get(pair), results.lift.get(pair), results.conviction.get(pair),
-									results.cosine.get(pair), results.jaccard.get(pair), results.phi.get(pair),
-									results.significance.get(pair)});
-							if (!symmetricElements.contains(new Pair<>(state2Name, state1Name))) {
-								symmetricElements.add(new Pair<String, String>(state1Name, state2Name));
-								relationTypePerRow.add(1);
-							}
-							else {
-								relationTypePerRow.add(0);
-							}
+						int relation = results.relations.getId(state1, state2);
+						if (relation != StateDictionary.UNKNOWN) {
+							addRow(processName1, state1, processName2, state2, RelationQuery.STATE_RELATIONS, relation);
 						}
 					}
 				}
 				
 				for (Transition transition : model1.getEdges()) {
-					String transitionName = ((String) transition.getSource().getAttributeMap().get(AttributeMap.TOOLTIP))
-							+ " ==> " + ((String) transition.getTarget().getAttributeMap().get(AttributeMap.TOOLTIP));
-//					String transitionName = ((String) transition.getSource().getAttributeMap().get(AttributeMap.TOOLTIP)).substring(1,
-//							((String) transition.getSource().getAttributeMap().get(AttributeMap.TOOLTIP)).length()-1)
-//							+ " ==> " + ((String) transition.getTarget().getAttributeMap().get(AttributeMap.TOOLTIP)).substring(1,
-//									((String) transition.getTarget().getAttributeMap().get(AttributeMap.TOOLTIP)).length()-1);
 					for (State state : model2.getNodes()) {
-						String stateName = (String) state.getAttributeMap().get(AttributeMap.TOOLTIP);
-//						String stateName = ((String) state.getAttributeMap().get(AttributeMap.TOOLTIP)).substring(1,
-//								((String) state.getAttributeMap().get(AttributeMap.TOOLTIP)).length()-1);
-						Pair<Object, Object> pair = new Pair<Object, Object>(transition, state);
-						if (results.support.containsKey(pair)) {
-							processNamesPerRowCondition.add(processName1);
-							processNamesPerRowConsequence.add(processName2);
-							conditionNamesPerRow.add(transitionName);
-							consequenceNamesPerRow.add(stateName);
-							graphElementsPerRowCondition.add(transition);
-							graphElementsPerRowConsequence.add(state);
-							tableModel.addRow(new Object[] { transitionName, stateName, results.support.get(pair),
-									results.confidence.get(pair), results.lift.get(pair), results.conviction.get(pair),
-									results.cosine.get(pair), results.jaccard.get(pair), results.phi.get(pair),
-									results.significance.get(pair)});
-							relationTypePerRow.add(2);
+						int relation = results.relations.getId(transition, state);
+						if (relation != StateDictionary.UNKNOWN) {
+							addRow(processName1, transition, processName2, state, RelationQuery.TRANSITION_RELATIONS, relation);
 						}
 						
-						pair = new Pair<Object, Object>(state, transition);
-						if (results.support.containsKey(pair)) {
-							processNamesPerRowCondition.add(processName2);
-							processNamesPerRowConsequence.add(processName1);
-							conditionNamesPerRow.add(stateName);
-							consequenceNamesPerRow.add(transitionName);
-							graphElementsPerRowCondition.add(state);
-							graphElementsPerRowConsequence.add(transition);
-							tableModel.addRow(new Object[] { stateName, transitionName, results.support.get(pair),
-									results.confidence.get(pair), results.lift.get(pair), results.conviction.get(pair),
-									results.cosine.get(pair), results.jaccard.get(pair), results.phi.get(pair),
-									results.significance.get(pair)});
-							relationTypePerRow.add(3);
+						relation = results.relations.getId(state, transition);
+						if (relation != StateDictionary.UNKNOWN) {
+							addRow(processName2, state, processName1, transition, RelationQuery.FORWARD_RELATIONS, relation);
 						}
 					}
 				}
@@ -288,6 +266,169 @@ public class MetricsPanel extends JSplitPane {
 		}
 	}
 	
+	/**
+	 * Adds only the top k relations by the selected metric that pass the relation type, name and minimum value filters,
+	 * and without the symmetric half if it is hidden. The relations are queried from the relation store so no rows are
+	 * created for the other relations.
+	 */
+	private void addTopRelations() {
+		final Map<DirectedGraphElement,String> processNames = new HashMap<>();
+		for (String processName : results.tsMinerOutputs.keySet()) {
+			if (processName.equals(CSMMiner.CSMLabel)) continue;
+			
+			TSMinerTransitionSystem model = results.tsMinerOutputs.get(processName).getTransitionSystem();
+			for (State state : model.getNodes()) {
+				processNames.put(state, processName);
+			}
+			for (Transition transition : model.getEdges()) {
+				processNames.put(transition, processName);
+			}
+		}
+		
+		final RelationQuery query = new RelationQuery().setTop(rankingBox.getSelectedIndex() - 1, getTopK());
+		for (Integer columnIndex : minValuesPerColumn.keySet()) {
+			query.setMinValue(columnIndex - 2, minValuesPerColumn.get(columnIndex));
+		}
+		switch (switchRelationTypeBox.getSelectedIndex()) {
+			case 0: case 1:
+				query.setType(RelationQuery.STATE_RELATIONS);
+				break;
+			case 2:
+				query.setType(RelationQuery.TRANSITION_RELATIONS);
+				break;
+			default:
+				query.setType(RelationQuery.FORWARD_RELATIONS);
+		}
+		
+		// The name filter and the symmetric half are part of the query, filtering the rows afterwards would leave
+		// fewer than k relations
+		final boolean filterNames = !nameFilter.getText().equals("Filter by name");
+		final String text = nameFilter.getText();
+		final boolean showProcessNames = toggleProcessNameBox.isSelected();
+		final boolean hideSymmetricHalf = switchRelationTypeBox.getSelectedIndex() == 1;
+		if (filterNames || hideSymmetricHalf) {
+			query.setFilter(new RelationQuery.Filter() {
+				public boolean include(RelationStore store, int id) {
+					DirectedGraphElement condition = (DirectedGraphElement) store.getCondition(id);
+					DirectedGraphElement consequence = (DirectedGraphElement) store.getConsequence(id);
+					if (filterNames && !getDisplayName(processNames.get(condition), condition, showProcessNames).contains(text) &&
+							!getDisplayName(processNames.get(consequence), consequence, showProcessNames).contains(text)) {
+						return false;
+					}
+					if (!hideSymmetricHalf) return true;
+					
+					// As in the table, only the first of a relation and its reverse is shown. The query checks the
+					// reverse with this filter as well, which accepts it as it comes first.
+					int reverse = store.getId(consequence, condition);
+					return reverse == StateDictionary.UNKNOWN || !query.ranksBefore(store, reverse, id) ||
+							!query.accepts(store, reverse);
+				}
+			});
+		}
+		
+		for (int relation : results.getRelations(query)) {
+			DirectedGraphElement condition = (DirectedGraphElement) results.relations.getCondition(relation);
+			DirectedGraphElement consequence = (DirectedGraphElement) results.relations.getConsequence(relation);
+			addRow(processNames.get(condition), condition, processNames.get(consequence), consequence,
+					RelationQuery.getType(results.relations, relation), relation);
+		}
+	}
+	
+	private int getTopK() {
+		try {
+			return Math.max(0, Integer.parseInt(topK.getText()));
+		}
+		catch (NumberFormatException e) {
+			return defaultTopK;
+		}
+	}
+	
+	private void addRow(String conditionProcessName, DirectedGraphElement condition, String consequenceProcessName,
+			DirectedGraphElement consequence, int type, int relation) {
+		String conditionName = getElementName(condition);
+		String consequenceName = getElementName(consequence);
+		
+		processNamesPerRowCondition.add(conditionProcessName);
+		processNamesPerRowConsequence.add(consequenceProcessName);
+		conditionNamesPerRow.add(conditionName);
+		consequenceNamesPerRow.add(consequenceName);
+		graphElementsPerRowCondition.add(condition);
+		graphElementsPerRowConsequence.add(consequence);
+		tableModel.addRow(createRow(conditionName, consequenceName, relation));
+		
+		if (type != RelationQuery.STATE_RELATIONS) {
+			relationTypePerRow.add(type + 1);
+		}
+		else if (!symmetricElements.contains(new Pair<>(consequenceName, conditionName))) {
+			symmetricElements.add(new Pair<String, String>(conditionName, consequenceName));
+			relationTypePerRow.add(1);
+		}
+		else {
+			relationTypePerRow.add(0);
+		}
+	}
+	
+	/**
+	 * Returns the name of the element as shown in the table.
+	 */
+	private String getDisplayName(String processName, DirectedGraphElement element, boolean showProcessName) {
+		return showProcessName ? processName + ": " + getElementName(element) : getElementName(element);
+	}
+	
+	// FIXME: use a special attribute for state names
+	private String getElementName(DirectedGraphElement element) {
+		if (element instanceof Transition) {
+			Transition transition = (Transition) element;
+			return ((String) transition.getSource().getAttributeMap().get(AttributeMap.TOOLTIP))
+					+ " ==> " + ((String) transition.getTarget().getAttributeMap().get(AttributeMap.TOOLTIP));
+		}
+		return (String) element.getAttributeMap().get(AttributeMap.TOOLTIP);
+	}
+	
+	/**
+	 * Recreates the rows, needed when the top k relations change.
+	 */
+	private void reloadRelations() {
+		reloadTimer.stop();
+		table.getTable().clearSelection();
+		tableModel.setRowCount(0);
+		conditionNamesPerRow.clear();
+		consequenceNamesPerRow.clear();
+		processNamesPerRowCondition.clear();
+		processNamesPerRowConsequence.clear();
+		graphElementsPerRowCondition.clear();
+		graphElementsPerRowConsequence.clear();
+		relationTypePerRow.clear();
+		symmetricElements.clear();
+		
+		addRelations();
+		updateProcessNames();
+		sorter.setRowFilter(createCombinedFilter());
+	}
+	
+	private void updateProcessNames() {
+		for (int i = 0; i < tableModel.getRowCount(); i++) {
+			if (toggleProcessNameBox.isSelected()) {
+				tableModel.setValueAt(processNamesPerRowCondition.get(i) + ": " + conditionNamesPerRow.get(i), i, 0);
+				tableModel.setValueAt(processNamesPerRowConsequence.get(i) + ": " + consequenceNamesPerRow.get(i), i, 1);
+			}
+			else {
+				tableModel.setValueAt(conditionNamesPerRow.get(i), i, 0);
+				tableModel.setValueAt(consequenceNamesPerRow.get(i), i, 1);
+			}
+		}
+	}
+	
+	private Object[] createRow(String conditionName, String consequenceName, int relation) {
+		Float[] metrics = results.relations.getMetrics(relation);
+		Object[] row = new Object[metrics.length + 2];
+		row[0] = conditionName;
+		row[1] = consequenceName;
+		System.arraycopy(metrics, 0, row, 2, metrics.length);
+		
+		return row;
+	}
+	
 	private RowFilter<Object, Object> createRelationTypeFilter() {
 		RowFilter<Object, Object> filter = new RowFilter<Object,Object>() {
 
@@ -349,7 +490,42 @@ public class MetricsPanel extends JSplitPane {
 	private class SwitchRelationTypeActionListener implements ActionListener {
 
 		public void actionPerformed(ActionEvent e) {
-			sorter.setRowFilter(createCombinedFilter());
+			if (rankingBox.getSelectedIndex() > 0) {
+				reloadRelations();
+			}
+			else {
+				sorter.setRowFilter(createCombinedFilter());
+			}
+		}
+		
+	}
+	
+	private class RankingActionListener implements ActionListener {
+
+		public void actionPerformed(ActionEvent e) {
+			reloadRelations();
+		}
+		
+	}
+	
+	private class TopKDocumentListener implements DocumentListener {
+
+		public void insertUpdate(DocumentEvent e) {
+			updateTopK();
+		}
+
+		public void removeUpdate(DocumentEvent e) {
+			updateTopK();
+		}
+
+		public void changedUpdate(DocumentEvent e) {
+			updateTopK();
+		}
+		
+		public void updateTopK() {
+			if (rankingBox.getSelectedIndex() > 0) {
+				reloadTimer.restart();
+			}
 		}
 		
 	}
@@ -357,18 +533,13 @@ public class MetricsPanel extends JSplitPane {
 	private class ToggleProcessNameActionListener implements ActionListener {
 
 		public void actionPerformed(ActionEvent e) {
-			for (int i = 0; i < tableModel.getRowCount(); i++) {
-				if (toggleProcessNameBox.isSelected()) {
-					tableModel.setValueAt(processNamesPerRowCondition.get(i) + ": " + conditionNamesPerRow.get(i), i, 0);
-					tableModel.setValueAt(processNamesPerRowConsequence.get(i) + ": " + consequenceNamesPerRow.get(i), i, 1);
-				}
-				else {
-					tableModel.setValueAt(conditionNamesPerRow.get(i), i, 0);
-					tableModel.setValueAt(consequenceNamesPerRow.get(i), i, 1);
-				}
+			if (rankingBox.getSelectedIndex() > 0) {
+				reloadRelations();
+			}
+			else {
+				updateProcessNames();
+				sorter.setRowFilter(createCombinedFilter());
 			}
-			
-			sorter.setRowFilter(createCombinedFilter());
 		}
 		
 	}
@@ -376,15 +547,24 @@ public class MetricsPanel extends JSplitPane {
 	private class NameFilterDocumentListener implements DocumentListener {
 
 		public void insertUpdate(DocumentEvent e) {
-			sorter.setRowFilter(createCombinedFilter());
+			updateFilter();
 		}
 
 		public void removeUpdate(DocumentEvent e) {
-			sorter.setRowFilter(createCombinedFilter());
+			updateFilter();
 		}
 
 		public void changedUpdate(DocumentEvent e) {
-			sorter.setRowFilter(createCombinedFilter());
+			updateFilter();
+		}
+		
+		public void updateFilter() {
+			if (rankingBox.getSelectedIndex() > 0) {
+				reloadTimer.restart();
+			}
+			else {
+				sorter.setRowFilter(createCombinedFilter());
+			}
 		}
 		
 	}
@@ -420,7 +600,12 @@ public class MetricsPanel extends JSplitPane {
 				minValuesPerColumn.remove(columnIndex);
 			}
 			
-			sorter.setRowFilter(createCombinedFilter());
+			if (rankingBox.getSelectedIndex() > 0) {
+				reloadTimer.restart();
+			}
+			else {
+				sorter.setRowFilter(createCombinedFilter());
+			}
 		}
 		
 	}
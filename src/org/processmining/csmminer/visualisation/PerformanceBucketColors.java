@@ -0,0 +1,62 @@
+package org.processmining.csmminer.visualisation;
+
+import java.awt.Color;
+
+/**
+ * Colours of the states and transitions for the performance bucket highlighting. Only the fastest and the slowest
+ * bucket are compared, the buckets in between only show in the labels.
+ */
+public class PerformanceBucketColors {
+	
+	/**
+	 * Returns the fill and stroke colour of a state from its confidences per performance bucket: yellow if the fastest
+	 * and the slowest bucket are equal, green if the state co-occurs more with the fastest bucket and red if it
+	 * co-occurs more with the slowest one.
+	 */
+	public static Color[] getStateColors(double[] confidences) {
+		double fastConfidence = confidences[0];
+		double slowConfidence = confidences[confidences.length - 1];
+		if (Double.isNaN(fastConfidence)) fastConfidence = 0;
+		if (Double.isNaN(slowConfidence)) slowConfidence = 0;
+		
+		double difference = fastConfidence - slowConfidence;
+		
+		if (Math.abs(difference) < 0.0005) {
+			Color stateColor = new Color((int) 
+					(192 + 63 * fastConfidence), (int) (192 + 63 * fastConfidence), (int) (192 - 192 * fastConfidence));
+			return new Color[] { stateColor, Color.YELLOW };
+		}
+		else if (fastConfidence > slowConfidence) {
+			Color stateColor = new Color((int) 
+					(192 - 192 * fastConfidence), (int) (192 + 63 * fastConfidence), (int) (192 - 192 * fastConfidence));
+			Color fillColor = new Color((int) (255 - 255 * difference), 255, 0);
+			return new Color[] { stateColor, fillColor };
+		}
+		else {
+			Color stateColor = new Color((int) 
+					(192 + 63 * slowConfidence), (int) (192 - 192 * slowConfidence), (int) (192 - 192 * slowConfidence));
+			Color fillColor = new Color(255, (int) (255 + 255 * difference), 0);
+			return new Color[] { stateColor, fillColor };
+		}
+	}
+	
+	/**
+	 * Returns the colour of a transition from its co-occurrence counts per performance bucket, out of the given total
+	 * count.
+	 */
+	public static Color getTransitionColor(int[] bucketCounts, int count) {
+		int fastCount = bucketCounts[0];
+		int slowCount = bucketCounts[bucketCounts.length - 1];
+		
+		double difference = (fastCount - slowCount) / (double) count;
+		if (Math.abs(difference) < 0.0005) {
+			return new Color(255, 255, 0, 255);
+		}
+		else if (fastCount > slowCount) {
+			return new Color((int) (255 - 255 * difference), 255, 0, 255);
+		}
+		else {
+			return new Color(255, (int) (255 + 255 * difference), 0, 255);
+		}
+	}
+}
@@ -12,11 +12,13 @@ import java.util.Set;
 import javax.swing.table.DefaultTableModel;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.processmining.csmminer.CSMMiner;
 import org.processmining.csmminer.CSMMinerResults;
+import org.processmining.csmminer.relations.PerformanceBuckets;
 import org.processmining.csmminer.relations.PerspectiveTransition;
 import org.processmining.csmminer.relations.StateCounts;
+import org.processmining.csmminer.statistics.ExactStatistics;
+import org.processmining.csmminer.statistics.StatisticsAccumulator;
 import org.processmining.framework.util.Pair;
 import org.processmining.framework.util.ui.scalableview.interaction.ViewInteractionPanel;
 import org.processmining.models.graphbased.AttributeMap;
@@ -181,49 +183,31 @@ public class StateModelVisualisationListener extends MouseAdapter {
 					transition.setLabel(count + " (" + df.format(confidence * 100) + "%)");
 					Color transitionColor = new Color(255, 140, 0, 10 + (int) (confidence * 245));
 					
-					Integer fastCount = 0, slowCount = 0;
-					if (results.connections.highlightSwitch.getSelectedItem() == stateEntryPerformanceHighlighting) {
-						fastCount = results.transitionsCooccurringStates.cooccurringTransitionCountPerEntryFast.get(
-								processName + "~" + state.getAttributeMap().get(AttributeMap.TOOLTIP),
-								new Pair<String, String>(name + "~" + transition.getSource().getAttributeMap().get(AttributeMap.TOOLTIP),
-										name + "~" + transition.getTarget().getAttributeMap().get(AttributeMap.TOOLTIP)));
-						slowCount = results.transitionsCooccurringStates.cooccurringTransitionCountPerEntrySlow.get(
-								processName + "~" + state.getAttributeMap().get(AttributeMap.TOOLTIP),
-								new Pair<String, String>(name + "~" + transition.getSource().getAttributeMap().get(AttributeMap.TOOLTIP),
-										name + "~" + transition.getTarget().getAttributeMap().get(AttributeMap.TOOLTIP)));
-					}
-					else if (results.connections.highlightSwitch.getSelectedItem() == tracePerformanceHighlighting) {
-						fastCount = results.transitionsCooccurringStates.cooccurringTransitionCountPerTraceFast.get(
-								processName + "~" + state.getAttributeMap().get(AttributeMap.TOOLTIP),
-								new Pair<String, String>(name + "~" + transition.getSource().getAttributeMap().get(AttributeMap.TOOLTIP),
-										name + "~" + transition.getTarget().getAttributeMap().get(AttributeMap.TOOLTIP)));
-						slowCount = results.transitionsCooccurringStates.cooccurringTransitionCountPerTraceSlow.get(
-								processName + "~" + state.getAttributeMap().get(AttributeMap.TOOLTIP),
-								new Pair<String, String>(name + "~" + transition.getSource().getAttributeMap().get(AttributeMap.TOOLTIP),
-										name + "~" + transition.getTarget().getAttributeMap().get(AttributeMap.TOOLTIP)));
-					}
+					PerformanceBuckets buckets = getPerformanceBuckets();
+					String stateName = processName + "~" + state.getAttributeMap().get(AttributeMap.TOOLTIP);
+					Pair<String, String> transitionNames = new Pair<String, String>(
+							name + "~" + transition.getSource().getAttributeMap().get(AttributeMap.TOOLTIP),
+							name + "~" + transition.getTarget().getAttributeMap().get(AttributeMap.TOOLTIP));
 					
-					if (fastCount == null) fastCount = 0;
-					if (slowCount == null) slowCount = 0;
-					
-					confidence = 1;
-					double difference = (fastCount - slowCount) / (double) count;
-					if (Math.abs(difference) < 0.0005) {
-						transitionColor = new Color(255, 255, 0, 10 + (int) (confidence * 245));
-					}
-					else if (fastCount > slowCount) {
-						transitionColor = new Color((int) (255 - 255 * difference), 255, 0, 10 + (int) (confidence * 245));
-					}
-					else {
-						transitionColor = new Color(255, (int) (255 + 255 * difference), 0, 10 + (int) (confidence * 245));
+					String countLabel = "";
+					int[] bucketCounts = new int[buckets.getBucketCount()];
+					for (int b = 0; b < bucketCounts.length; b++) {
+						Integer bucketCount = buckets.getCooccurringTransitionCount(b, stateName, transitionNames);
+						bucketCounts[b] = bucketCount == null ? 0 : bucketCount;
+						countLabel += (b == 0 ? "" : "/") + bucketCounts[b];
 					}
+					transitionColor = PerformanceBucketColors.getTransitionColor(bucketCounts, count);
 					
-					transition.setLabel(fastCount + "/" + slowCount);
+					transition.setLabel(countLabel);
 					transition.getAttributeMap().put(AttributeMap.EDGECOLOR, transitionColor);
 				}
 				else if (modifiedStates.containsKey(transition.getSource())) {
 					transition.getAttributeMap().put(StateModelVisualisation.oldLabelName, transition.getLabel());
-					transition.setLabel("0/0");
+					String countLabel = "0";
+					for (int b = 1; b < getPerformanceBuckets().getBucketCount(); b++) {
+						countLabel += "/0";
+					}
+					transition.setLabel(countLabel);
 					Color transitionColor = new Color(255, 255, 0, 10);
 					transition.getAttributeMap().put(AttributeMap.EDGECOLOR, transitionColor);
 				}
@@ -231,6 +215,16 @@ public class StateModelVisualisationListener extends MouseAdapter {
 		}
 	}
 
+	/**
+	 * Returns the performance buckets per state entry or per trace, depending on the selected highlighting.
+	 */
+	private PerformanceBuckets getPerformanceBuckets() {
+		if (results.connections.highlightSwitch.getSelectedItem() == tracePerformanceHighlighting) {
+			return results.transitionsCooccurringStates.getTracePerformance();
+		}
+		return results.transitionsCooccurringStates.getEntryPerformance();
+	}
+
 	private void updateNodeColoursStatePerformance(State clickedState) {
 		if (CSMMiner.CSMLabel.equals(processName)) {
 			Set<Pair<String, Object>> mappedStates = results.stateMap.getMappedStates(CSMMiner.CSMLabel, clickedState.getIdentifier());
@@ -306,56 +300,8 @@ public class StateModelVisualisationListener extends MouseAdapter {
 			updateState.getAttributeMap().put(AttributeMap.STROKECOLOR, Color.ORANGE);
 		}
 		else {
-			DescriptiveStatistics fastStatistics = results.transitionsCooccurringStates.cooccurringStatesTimePerEntryFast.get(
-					processName + "~" + clickedState.getAttributeMap().get(AttributeMap.TOOLTIP),
-					updateStateProcessName + "~" + updateState.getAttributeMap().get(AttributeMap.TOOLTIP));
-			DescriptiveStatistics slowStatistics = results.transitionsCooccurringStates.cooccurringStatesTimePerEntrySlow.get(
-					processName + "~" + clickedState.getAttributeMap().get(AttributeMap.TOOLTIP),
-					updateStateProcessName + "~" + updateState.getAttributeMap().get(AttributeMap.TOOLTIP));
-			DescriptiveStatistics totalFastStatistics = results.transitionsCooccurringStates.timePerEntryFast.get(
-					processName + "~" + clickedState.getAttributeMap().get(AttributeMap.TOOLTIP));
-			DescriptiveStatistics totalSlowStatistics = results.transitionsCooccurringStates.timePerEntrySlow.get(
-					processName + "~" + clickedState.getAttributeMap().get(AttributeMap.TOOLTIP));
-			
-			if (fastStatistics == null) fastStatistics = new DescriptiveStatistics();
-			if (slowStatistics == null) slowStatistics = new DescriptiveStatistics();
-			if (totalFastStatistics == null) totalFastStatistics = new DescriptiveStatistics();
-			if (totalSlowStatistics == null) totalSlowStatistics = new DescriptiveStatistics();
-			
-			double fastConfidence = fastStatistics.getSum() / totalFastStatistics.getSum();
-			double slowConfidence = slowStatistics.getSum() / totalSlowStatistics.getSum();
-			
-			DecimalFormat df = new DecimalFormat("#.###");
-			newLabel = newLabel + "<br/>Fast:" + df.format(fastConfidence);
-			newLabel = newLabel + "<br/>Slow:" + df.format(slowConfidence);
-			
-			updateState.setLabel(newLabel);
-			
-			if (Double.isNaN(fastConfidence)) fastConfidence = 0;
-			if (Double.isNaN(slowConfidence)) slowConfidence = 0;
-			
-			double difference = fastConfidence - slowConfidence;
-			
-			if (Math.abs(difference) < 0.0005) {
-				Color stateColor = new Color((int) 
-						(192 + 63 * fastConfidence), (int) (192 + 63 * fastConfidence), (int) (192 - 192 * fastConfidence));
-				updateState.getAttributeMap().put(AttributeMap.FILLCOLOR, stateColor);
-				updateState.getAttributeMap().put(AttributeMap.STROKECOLOR, Color.YELLOW);
-			}
-			else if (fastConfidence > slowConfidence) {
-				Color stateColor = new Color((int) 
-						(192 - 192 * fastConfidence), (int) (192 + 63 * fastConfidence), (int) (192 - 192 * fastConfidence));
-				updateState.getAttributeMap().put(AttributeMap.FILLCOLOR, stateColor);
-				Color fillColor = new Color((int) (255 - 255 * difference), 255, 0);
-				updateState.getAttributeMap().put(AttributeMap.STROKECOLOR, fillColor);
-			}
-			else {
-				Color stateColor = new Color((int) 
-						(192 + 63 * slowConfidence), (int) (192 - 192 * slowConfidence), (int) (192 - 192 * slowConfidence));
-				updateState.getAttributeMap().put(AttributeMap.FILLCOLOR, stateColor);
-				Color fillColor = new Color(255, (int) (255 + 255 * difference), 0);
-				updateState.getAttributeMap().put(AttributeMap.STROKECOLOR, fillColor);
-			}
+			updateNodeWithPerformanceBuckets(results.transitionsCooccurringStates.getEntryPerformance(), clickedState, updateState,
+					updateStateProcessName, newLabel);
 		}
 	}
 	
@@ -389,57 +335,38 @@ public class StateModelVisualisationListener extends MouseAdapter {
 			updateState.getAttributeMap().put(AttributeMap.STROKECOLOR, Color.ORANGE);
 		}
 		else {
-			DescriptiveStatistics fastStatistics = results.transitionsCooccurringStates.cooccurringStatesTimePerTraceFast.get(
-					processName + "~" + clickedState.getAttributeMap().get(AttributeMap.TOOLTIP),
-					updateStateProcessName + "~" + updateState.getAttributeMap().get(AttributeMap.TOOLTIP));
-			DescriptiveStatistics slowStatistics = results.transitionsCooccurringStates.cooccurringStatesTimePerTraceSlow.get(
-					processName + "~" + clickedState.getAttributeMap().get(AttributeMap.TOOLTIP),
-					updateStateProcessName + "~" + updateState.getAttributeMap().get(AttributeMap.TOOLTIP));
-			DescriptiveStatistics totalFastStatistics = results.transitionsCooccurringStates.timePerTraceFast.get(
-					processName + "~" + clickedState.getAttributeMap().get(AttributeMap.TOOLTIP));
-			DescriptiveStatistics totalSlowStatistics = results.transitionsCooccurringStates.timePerTraceSlow.get(
-					processName + "~" + clickedState.getAttributeMap().get(AttributeMap.TOOLTIP));
-			
-			if (fastStatistics == null) fastStatistics = new DescriptiveStatistics();
-			if (slowStatistics == null) slowStatistics = new DescriptiveStatistics();
-			if (totalFastStatistics == null) totalFastStatistics = new DescriptiveStatistics();
-			if (totalSlowStatistics == null) totalSlowStatistics = new DescriptiveStatistics();
-			
-			double fastConfidence = fastStatistics.getSum() / totalFastStatistics.getSum();
-			double slowConfidence = slowStatistics.getSum() / totalSlowStatistics.getSum();
-			
-			DecimalFormat df = new DecimalFormat("#.###");
-			newLabel = newLabel + "<br/>Fast:" + df.format(fastConfidence);
-			newLabel = newLabel + "<br/>Slow:" + df.format(slowConfidence);
-			
-			updateState.setLabel(newLabel);
+			updateNodeWithPerformanceBuckets(results.transitionsCooccurringStates.getTracePerformance(), clickedState, updateState,
+					updateStateProcessName, newLabel);
+		}
+	}
+	
+	/**
+	 * Labels a state with the share of the time spent in the clicked state that it co-occurs with, for every
+	 * performance bucket, and colours it by the difference between the fastest and the slowest bucket.
+	 */
+	private void updateNodeWithPerformanceBuckets(PerformanceBuckets buckets, State clickedState, State updateState,
+			String updateStateProcessName, String newLabel) {
+		String stateName = processName + "~" + clickedState.getAttributeMap().get(AttributeMap.TOOLTIP);
+		String otherStateName = updateStateProcessName + "~" + updateState.getAttributeMap().get(AttributeMap.TOOLTIP);
+		double[] confidences = new double[buckets.getBucketCount()];
+		
+		DecimalFormat df = new DecimalFormat("#.###");
+		for (int b = 0; b < confidences.length; b++) {
+			StatisticsAccumulator statistics = buckets.getCooccurringStatesTime(b, stateName, otherStateName);
+			StatisticsAccumulator totalStatistics = buckets.getTime(b, stateName);
 			
-			if (Double.isNaN(fastConfidence)) fastConfidence = 0;
-			if (Double.isNaN(slowConfidence)) slowConfidence = 0;
-					
-			double difference = fastConfidence - slowConfidence;
+			if (statistics == null) statistics = new ExactStatistics();
+			if (totalStatistics == null) totalStatistics = new ExactStatistics();
 			
-			if (Math.abs(difference) < 0.0005) {
-				Color stateColor = new Color((int) 
-						(192 + 63 * fastConfidence), (int) (192 + 63 * fastConfidence), (int) (192 - 192 * fastConfidence));
-				updateState.getAttributeMap().put(AttributeMap.FILLCOLOR, stateColor);
-				updateState.getAttributeMap().put(AttributeMap.STROKECOLOR, Color.YELLOW);
-			}
-			else if (fastConfidence > slowConfidence) {
-				Color stateColor = new Color((int) 
-						(192 - 192 * fastConfidence), (int) (192 + 63 * fastConfidence), (int) (192 - 192 * fastConfidence));
-				updateState.getAttributeMap().put(AttributeMap.FILLCOLOR, stateColor);
-				Color fillColor = new Color((int) (255 - 255 * difference), 255, 0);
-				updateState.getAttributeMap().put(AttributeMap.STROKECOLOR, fillColor);
-			}
-			else {
-				Color stateColor = new Color((int) 
-						(192 + 63 * slowConfidence), (int) (192 - 192 * slowConfidence), (int) (192 - 192 * slowConfidence));
-				updateState.getAttributeMap().put(AttributeMap.FILLCOLOR, stateColor);
-				Color fillColor = new Color(255, (int) (255 + 255 * difference), 0);
-				updateState.getAttributeMap().put(AttributeMap.STROKECOLOR, fillColor);
-			}
+			confidences[b] = statistics.getSum() / totalStatistics.getSum();
+			newLabel = newLabel + "<br/>" + buckets.getBucketLabel(b) + ":" + df.format(confidences[b]);
 		}
+		
+		updateState.setLabel(newLabel);
+		
+		Color[] stateColors = PerformanceBucketColors.getStateColors(confidences);
+		updateState.getAttributeMap().put(AttributeMap.FILLCOLOR, stateColors[0]);
+		updateState.getAttributeMap().put(AttributeMap.STROKECOLOR, stateColors[1]);
 	}
 
 	public void updateNodeColoursForTransition(Transition transition, StateCounts stateCounts) {
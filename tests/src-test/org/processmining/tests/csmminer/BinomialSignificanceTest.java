@@ -0,0 +1,83 @@
+package org.processmining.tests.csmminer;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.relations.RelationStore;
+import org.processmining.csmminer.statistics.BinomialSignificance;
+
+public class BinomialSignificanceTest extends TestCase {
+	
+	@Test
+	public void testExact() throws Throwable {
+		BinomialSignificance significance = new BinomialSignificance(100);
+		// P(X < 5) for X ~ Binomial(10, 0.5) is 386 / 1024
+		assertEquals(386.0 / 1024, significance.getSignificance(10, 0.5f, 5), 1e-12);
+		// 0.9^4 and 0.9^4 + 4 * 0.1 * 0.9^3
+		assertEquals(0.6561, significance.getSignificance(4, 0.1f, 1), 1e-7);
+		assertEquals(0.9477, significance.getSignificance(4, 0.1f, 2), 1e-7);
+		assertEquals(0, significance.getSignificance(10, 0.5f, 0), 0);
+		assertEquals(1, significance.getSignificance(10, 0.5f, 11), 0);
+	}
+	
+	@Test
+	public void testBoundaryProbabilities() throws Throwable {
+		BinomialSignificance significance = new BinomialSignificance(100);
+		assertEquals(1, significance.getSignificance(10, 0, 1), 0);
+		assertEquals(0, significance.getSignificance(10, 1, 10), 0);
+		assertEquals(1, significance.getSignificance(10, 1, 11), 0);
+		assertEquals(1, significance.getSignificance(1000, 0, 1), 0);
+	}
+	
+	@Test
+	public void testInvalid() throws Throwable {
+		BinomialSignificance significance = new BinomialSignificance(100);
+		assertTrue(Double.isNaN(significance.getSignificance(0, 0.5f, 0)));
+		assertTrue(Double.isNaN(significance.getSignificance(10, 1.5f, 3)));
+		assertTrue(Double.isNaN(significance.getSignificance(10, Float.NaN, 3)));
+	}
+	
+	@Test
+	public void testApproximations() throws Throwable {
+		BinomialSignificance significance = new BinomialSignificance(100);
+		// Normal approximation: P(X <= 4999) for Binomial(10000, 0.5) is about Phi(-0.01)
+		assertEquals(0.496011, significance.getSignificance(10000, 0.5f, 5000), 1e-4);
+		// Poisson approximation with mean 1: P(X <= 1) is about 2 / e
+		assertEquals(0.735758, significance.getSignificance(1000, 0.001f, 2), 1e-3);
+	}
+	
+	@Test
+	public void testComplement() throws Throwable {
+		BinomialSignificance significance = new BinomialSignificance(100);
+		// P(X <= 999) for Binomial(1000, 0.999) is 1 - 0.999^1000, trials - X has the Poisson approximation with mean 1
+		assertEquals(0.632305, significance.getSignificance(1000, 0.999f, 1000), 1e-3);
+		assertEquals(0.264241, significance.getSignificance(1000, 0.999f, 999), 1e-3);
+	}
+	
+	@Test
+	public void testBatch() throws Throwable {
+		int[] trials = { 10, 4, 10, 1000, 0, 10, 4 };
+		float[] probabilities = { 0.5f, 0.1f, 0.5f, 0.001f, 0.5f, 1.5f, 0.1f };
+		int[] counts = { 5, 2, 3, 2, 0, 3, 1 };
+		
+		BinomialSignificance significance = new BinomialSignificance(100);
+		RelationStore store = new RelationStore();
+		for (int i = 0; i < trials.length; i++) {
+			significance.add(store.add("c" + i, "q" + i), trials[i], probabilities[i], counts[i]);
+		}
+		significance.computeAll(store);
+		
+		// The same values as computing every relation on its own
+		BinomialSignificance single = new BinomialSignificance(100);
+		for (int i = 0; i < trials.length; i++) {
+			assertEquals("relation " + i, (float) single.getSignificance(trials[i], probabilities[i], counts[i]),
+					store.get(i, RelationStore.SIGNIFICANCE), 0);
+		}
+		assertTrue(Float.isNaN(store.get(4, RelationStore.SIGNIFICANCE)));
+		assertTrue(Float.isNaN(store.get(5, RelationStore.SIGNIFICANCE)));
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(BinomialSignificanceTest.class);
+	}
+}
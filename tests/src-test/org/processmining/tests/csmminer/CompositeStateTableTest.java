@@ -0,0 +1,79 @@
+package org.processmining.tests.csmminer;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.log.CompositeStateTable;
+import org.processmining.csmminer.log.StateDictionary;
+
+public class CompositeStateTableTest extends TestCase {
+	
+	@Test
+	public void testIntern() throws Throwable {
+		StateDictionary stateNames = new StateDictionary();
+		stateNames.intern("ANotStarted");
+		stateNames.intern("a1");
+		stateNames.intern("b1");
+		CompositeStateTable table = new CompositeStateTable(stateNames, 2);
+		
+		// The caller reuses its tuple array
+		int[] tuple = { 0, 0 };
+		assertEquals(StateDictionary.UNKNOWN, table.getId(tuple));
+		assertEquals(0, table.intern(tuple));
+		tuple[0] = 1;
+		assertEquals(1, table.intern(tuple));
+		tuple[1] = 2;
+		assertEquals(2, table.intern(tuple));
+		tuple[0] = 0;
+		tuple[1] = 0;
+		assertEquals(0, table.intern(tuple));
+		
+		assertEquals(3, table.size());
+		assertEquals(2, table.getWidth());
+		assertEquals(1, table.getState(2, 0));
+		assertEquals(2, table.getState(2, 1));
+		assertEquals("b1", table.getStateName(2, 1));
+		assertEquals("|ANotStarted|ANotStarted|", table.getName(0));
+		assertEquals("|a1|b1|", table.getName(2));
+		assertEquals(1, table.getId(new int[] { 1, 0 }));
+	}
+	
+	@Test
+	public void testLabels() throws Throwable {
+		StateDictionary stateNames = new StateDictionary();
+		stateNames.intern("s0");
+		stateNames.intern("s1");
+		CompositeStateTable table = new CompositeStateTable(stateNames, 3);
+		table.intern(new int[] { 0, 1, 0 });
+		assertEquals(0, table.getId("|s0|s1|s0|"));
+		
+		// Labels of tuples interned after a label lookup are found as well
+		table.intern(new int[] { 1, 1, 1 });
+		assertEquals(1, table.getId("|s1|s1|s1|"));
+		assertEquals(StateDictionary.UNKNOWN, table.getId("|s1|s1|"));
+		assertEquals(StateDictionary.UNKNOWN, table.getId("|s0|s0|s0|"));
+	}
+	
+	@Test
+	public void testGrowth() throws Throwable {
+		StateDictionary stateNames = new StateDictionary();
+		for (int s = 0; s < 10; s++) {
+			stateNames.intern("s" + s);
+		}
+		CompositeStateTable table = new CompositeStateTable(stateNames, 2);
+		
+		// 100 tuples grow the arrays and the hash table several times
+		for (int id = 0; id < 100; id++) {
+			assertEquals(id, table.intern(new int[] { id / 10, id % 10 }));
+		}
+		for (int id = 0; id < 100; id++) {
+			assertEquals(id, table.getId(new int[] { id / 10, id % 10 }));
+			assertEquals("|s" + id / 10 + "|s" + id % 10 + "|", table.getName(id));
+		}
+		assertEquals(100, table.size());
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(CompositeStateTableTest.class);
+	}
+}
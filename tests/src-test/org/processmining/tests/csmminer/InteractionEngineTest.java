@@ -0,0 +1,97 @@
+package org.processmining.tests.csmminer;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.deckfour.xes.model.impl.XAttributeMapImpl;
+import org.deckfour.xes.model.impl.XTraceImpl;
+import org.junit.Test;
+import org.processmining.csmminer.CSMMiner;
+import org.processmining.csmminer.InteractionEngine;
+import org.processmining.csmminer.log.EncodedStateLog;
+import org.processmining.csmminer.log.EncodedTrace;
+import org.processmining.csmminer.relations.StateCounts;
+import org.processmining.csmminer.relations.TransitionsCooccurringStates;
+import org.processmining.framework.util.Pair;
+
+/**
+ * Checks the states co-occurring with the transitions of a small two-perspective log against counts worked out by
+ * hand. Trace 1 is A: a1 at 0, B: b1 at 10, A: a2 at 30, trace 2 is B: b1 at 0, A: a1 at 5.
+ */
+public class InteractionEngineTest extends TestCase {
+	
+	@Test
+	public void testPerspectiveTransitions() throws Throwable {
+		TransitionsCooccurringStates transitions = run();
+		
+		// Taken before B started in trace 1 and after it in trace 2
+		StateCounts counts = transitions.get("A", "ANotStarted", "a1");
+		assertCounts(counts, "A", "ANotStarted", 2, "B", "BNotStarted", 1, "B", "b1", 1, CSMMiner.CSMLabel,
+				"|ANotStarted|BNotStarted|", 1, CSMMiner.CSMLabel, "|ANotStarted|b1|", 1);
+		
+		counts = transitions.get("B", "BNotStarted", "b1");
+		assertCounts(counts, "A", "a1", 1, "A", "ANotStarted", 1, "B", "BNotStarted", 2, CSMMiner.CSMLabel,
+				"|a1|BNotStarted|", 1, CSMMiner.CSMLabel, "|ANotStarted|BNotStarted|", 1);
+		
+		counts = transitions.get("A", "a1", "a2");
+		assertCounts(counts, "A", "a1", 1, "B", "b1", 1, CSMMiner.CSMLabel, "|a1|b1|", 1);
+		
+		assertNull(transitions.get("A", "a2", "a1"));
+		assertNull(transitions.get("B", "b1", "b1"));
+	}
+	
+	@Test
+	public void testCompositeTransitions() throws Throwable {
+		TransitionsCooccurringStates transitions = run();
+		
+		// Only the states of the perspectives that do not move co-occur with a composite transition
+		assertCounts(transitions.get(CSMMiner.CSMLabel, "|ANotStarted|BNotStarted|", "|a1|BNotStarted|"), "B", "BNotStarted",
+				1);
+		assertCounts(transitions.get(CSMMiner.CSMLabel, "|a1|BNotStarted|", "|a1|b1|"), "A", "a1", 1);
+		assertCounts(transitions.get(CSMMiner.CSMLabel, "|a1|b1|", "|a2|b1|"), "B", "b1", 1);
+		assertCounts(transitions.get(CSMMiner.CSMLabel, "|ANotStarted|BNotStarted|", "|ANotStarted|b1|"), "A", "ANotStarted",
+				1);
+		assertCounts(transitions.get(CSMMiner.CSMLabel, "|ANotStarted|b1|", "|a1|b1|"), "B", "b1", 1);
+	}
+	
+	private TransitionsCooccurringStates run() {
+		EncodedStateLog stateLog = new EncodedStateLog();
+		addTrace(stateLog, new String[] { "A", "B", "A" }, new String[] { "a1", "b1", "a2" }, new long[] { 0, 10, 30 });
+		addTrace(stateLog, new String[] { "B", "A" }, new String[] { "b1", "a1" }, new long[] { 0, 5 });
+		stateLog.finish(Arrays.asList("A", "B"));
+		
+		InteractionEngine engine = new InteractionEngine(stateLog);
+		engine.run();
+		return engine.getTransitionsCooccurringStates();
+	}
+	
+	private void addTrace(EncodedStateLog stateLog, String[] perspectives, String[] states, long[] timestamps) {
+		XTraceImpl trace = new XTraceImpl(new XAttributeMapImpl());
+		for (int j = 0; j < states.length; j++) {
+			trace.add(null);
+		}
+		
+		EncodedTrace encodedTrace = stateLog.addTrace(trace);
+		for (int j = 0; j < states.length; j++) {
+			stateLog.setEvent(encodedTrace, j, perspectives[j], states[j], new Date(timestamps[j]));
+		}
+	}
+	
+	/**
+	 * Asserts the counts of exactly the given (perspective, state, count) triples.
+	 */
+	private void assertCounts(StateCounts counts, Object... expected) {
+		assertNotNull(counts);
+		assertEquals(counts.toString(), expected.length / 3, counts.getStates().size());
+		for (int i = 0; i < expected.length; i += 3) {
+			assertEquals(counts.toString(), expected[i + 2],
+					counts.getCount(new Pair<String,String>((String) expected[i], (String) expected[i + 1])));
+		}
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(InteractionEngineTest.class);
+	}
+}
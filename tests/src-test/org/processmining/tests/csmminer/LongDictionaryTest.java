@@ -0,0 +1,56 @@
+package org.processmining.tests.csmminer;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.log.LongDictionary;
+import org.processmining.csmminer.log.StateDictionary;
+
+public class LongDictionaryTest extends TestCase {
+	
+	@Test
+	public void testIntern() throws Throwable {
+		LongDictionary dictionary = new LongDictionary();
+		assertEquals(StateDictionary.UNKNOWN, dictionary.getId(0));
+		assertEquals(0, dictionary.intern(0));
+		assertEquals(1, dictionary.intern(-1));
+		assertEquals(2, dictionary.intern(Long.MAX_VALUE));
+		assertEquals(1, dictionary.intern(-1));
+		assertEquals(0, dictionary.intern(0));
+		
+		assertEquals(3, dictionary.size());
+		assertEquals(Long.MAX_VALUE, dictionary.getKey(2));
+		assertEquals(1, dictionary.getId(-1));
+		assertEquals(StateDictionary.UNKNOWN, dictionary.getId(1));
+	}
+	
+	@Test
+	public void testGrowth() throws Throwable {
+		LongDictionary dictionary = new LongDictionary();
+		// Keys that only differ in their high half, which the hash has to spread over the slots
+		for (int id = 0; id < 1000; id++) {
+			assertEquals(id, dictionary.intern(LongDictionary.pack(id, 7)));
+		}
+		for (int id = 0; id < 1000; id++) {
+			assertEquals(id, dictionary.getId(LongDictionary.pack(id, 7)));
+			assertEquals(LongDictionary.pack(id, 7), dictionary.getKey(id));
+		}
+		assertEquals(1000, dictionary.size());
+	}
+	
+	@Test
+	public void testPack() throws Throwable {
+		long key = LongDictionary.pack(Integer.MAX_VALUE, 0);
+		assertEquals(Integer.MAX_VALUE, LongDictionary.getHigh(key));
+		assertEquals(0, LongDictionary.getLow(key));
+		
+		key = LongDictionary.pack(3, Integer.MAX_VALUE);
+		assertEquals(3, LongDictionary.getHigh(key));
+		assertEquals(Integer.MAX_VALUE, LongDictionary.getLow(key));
+		assertFalse(LongDictionary.pack(1, 2) == LongDictionary.pack(2, 1));
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(LongDictionaryTest.class);
+	}
+}
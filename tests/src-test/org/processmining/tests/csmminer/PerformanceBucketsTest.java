@@ -0,0 +1,144 @@
+package org.processmining.tests.csmminer;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.deckfour.xes.model.impl.XAttributeMapImpl;
+import org.deckfour.xes.model.impl.XTraceImpl;
+import org.junit.Test;
+import org.processmining.csmminer.InteractionEngine;
+import org.processmining.csmminer.log.EncodedStateLog;
+import org.processmining.csmminer.log.EncodedTrace;
+import org.processmining.csmminer.relations.PerformanceBuckets;
+import org.processmining.csmminer.relations.TransitionsCooccurringStates;
+import org.processmining.csmminer.statistics.StatisticsAccumulator;
+import org.processmining.csmminer.statistics.StatisticsBackend;
+import org.processmining.csmminer.visualisation.PerformanceBucketColors;
+import org.processmining.framework.util.Pair;
+
+/**
+ * Splits the trace entries of a small two-perspective log into performance buckets. Every trace is A: a1 at 0,
+ * B: b1 at x and A: a2 at x + y, except the last one which has no B, so that a1 is spent x + y in the trace, x of it
+ * together with BNotStarted and y together with b1:
+ *
+ * <pre>
+ * trace 0: x 1, y 4, trace 1: x 6, y 6, trace 2: x 2, y 1, trace 3: x 4, y 1, trace 4: a1 for 7 without B
+ * </pre>
+ *
+ * The entries of a1 ordered by duration, ties in the order in which they ended, are traces 2, 0, 3, 4 and 1.
+ */
+public class PerformanceBucketsTest extends TestCase {
+	
+	private static final String a1 = "A~a1";
+	private static final Pair<String,String> bTransition = new Pair<String,String>("B~BNotStarted", "B~b1");
+	
+	@Test
+	public void testMedianSplit() throws Throwable {
+		PerformanceBuckets buckets = run(new double[] { 0.5 });
+		assertEquals(2, buckets.getBucketCount());
+		assertEquals("Fast", buckets.getBucketLabel(0));
+		assertEquals("Slow", buckets.getBucketLabel(1));
+		
+		// As the old split, the first size / 2 = 2 entries are fast: traces 2 and 0
+		assertStatistics(buckets.getTime(0, a1), 2, 8);
+		assertStatistics(buckets.getCooccurringStatesTime(0, a1, "B~BNotStarted"), 2, 3);
+		assertStatistics(buckets.getCooccurringStatesTime(0, a1, "B~b1"), 2, 5);
+		assertEquals(2, (int) buckets.getCooccurringTransitionCount(0, a1, bTransition));
+		
+		// The slow entries are traces 3, 4 and 1, trace 4 only co-occurs with BNotStarted
+		assertStatistics(buckets.getTime(1, a1), 3, 24);
+		assertStatistics(buckets.getCooccurringStatesTime(1, a1, "B~BNotStarted"), 3, 17);
+		assertStatistics(buckets.getCooccurringStatesTime(1, a1, "B~b1"), 2, 7);
+		assertEquals(2, (int) buckets.getCooccurringTransitionCount(1, a1, bTransition));
+		
+		// b1 is entered in four traces, for 4, 6, 1 and 1, so traces 2 and 3 are fast
+		assertStatistics(buckets.getTime(0, "B~b1"), 2, 2);
+		assertStatistics(buckets.getTime(1, "B~b1"), 2, 10);
+		assertEquals(2, (int) buckets.getCooccurringTransitionCount(0, "B~b1", new Pair<String,String>(a1, "A~a2")));
+	}
+	
+	@Test
+	public void testQuartiles() throws Throwable {
+		PerformanceBuckets buckets = run(new double[] { 0.25, 0.5, 0.75 });
+		assertEquals(4, buckets.getBucketCount());
+		assertEquals("p0-25", buckets.getBucketLabel(0));
+		assertEquals("p25-50", buckets.getBucketLabel(1));
+		assertEquals("p75-100", buckets.getBucketLabel(3));
+		assertEquals("[1, 2, 3, 5]", Arrays.toString(buckets.getBucketLimits(5)));
+		
+		// Traces 2, 0 and 3 have a bucket each, traces 4 and 1 share the last one
+		assertStatistics(buckets.getTime(0, a1), 1, 3);
+		assertStatistics(buckets.getTime(1, a1), 1, 5);
+		assertStatistics(buckets.getTime(2, a1), 1, 5);
+		assertStatistics(buckets.getTime(3, a1), 2, 19);
+		assertStatistics(buckets.getCooccurringStatesTime(1, a1, "B~b1"), 1, 4);
+		assertStatistics(buckets.getCooccurringStatesTime(2, a1, "B~b1"), 1, 1);
+		assertStatistics(buckets.getCooccurringStatesTime(3, a1, "B~b1"), 1, 6);
+		
+		// With fewer entries than buckets, some buckets stay empty
+		assertEquals("[0, 1, 1, 2]", Arrays.toString(buckets.getBucketLimits(2)));
+		
+		assertEquals("p90-99", new PerformanceBuckets(new double[] { 0.9, 0.99 }).getBucketLabel(1));
+	}
+	
+	@Test
+	public void testColors() throws Throwable {
+		// Only the fastest and the slowest bucket are compared
+		assertEquals(Color.YELLOW, PerformanceBucketColors.getStateColors(new double[] { 0.5, 0.9, 0.5 })[1]);
+		assertEquals(new Color(255, 255, 0, 255),
+				PerformanceBucketColors.getTransitionColor(new int[] { 1, 5, 1 }, 7));
+		
+		// More co-occurrence with the fastest bucket is green, with the slowest bucket red
+		Color[] colors = PerformanceBucketColors.getStateColors(new double[] { 0.75, 0.1, 0.25 });
+		assertEquals(new Color(48, 239, 48), colors[0]);
+		assertEquals(new Color(127, 255, 0), colors[1]);
+		colors = PerformanceBucketColors.getStateColors(new double[] { Double.NaN, 0.4, 0.5 });
+		assertEquals(new Color(223, 96, 96), colors[0]);
+		assertEquals(new Color(255, 127, 0), colors[1]);
+		assertEquals(new Color(127, 255, 0, 255),
+				PerformanceBucketColors.getTransitionColor(new int[] { 3, 0, 1 }, 4));
+		assertEquals(new Color(255, 127, 0, 255),
+				PerformanceBucketColors.getTransitionColor(new int[] { 1, 0, 3 }, 4));
+	}
+	
+	private PerformanceBuckets run(double[] quantiles) {
+		EncodedStateLog stateLog = new EncodedStateLog();
+		addTrace(stateLog, new String[] { "A", "B", "A" }, new String[] { "a1", "b1", "a2" }, new long[] { 0, 1, 5 });
+		addTrace(stateLog, new String[] { "A", "B", "A" }, new String[] { "a1", "b1", "a2" }, new long[] { 0, 6, 12 });
+		addTrace(stateLog, new String[] { "A", "B", "A" }, new String[] { "a1", "b1", "a2" }, new long[] { 0, 2, 3 });
+		addTrace(stateLog, new String[] { "A", "B", "A" }, new String[] { "a1", "b1", "a2" }, new long[] { 0, 4, 5 });
+		addTrace(stateLog, new String[] { "A", "A" }, new String[] { "a1", "a2" }, new long[] { 0, 7 });
+		stateLog.finish(Arrays.asList("A", "B"));
+		
+		InteractionEngine engine = new InteractionEngine(stateLog);
+		engine.run();
+		TransitionsCooccurringStates transitions = engine.getTransitionsCooccurringStates();
+		engine.computePerformanceSplit(transitions, quantiles, new StatisticsBackend(true, 0.01));
+		return transitions.getTracePerformance();
+	}
+	
+	private void addTrace(EncodedStateLog stateLog, String[] perspectives, String[] states, long[] timestamps) {
+		XTraceImpl trace = new XTraceImpl(new XAttributeMapImpl());
+		for (int j = 0; j < states.length; j++) {
+			trace.add(null);
+		}
+		
+		EncodedTrace encodedTrace = stateLog.addTrace(trace);
+		for (int j = 0; j < states.length; j++) {
+			stateLog.setEvent(encodedTrace, j, perspectives[j], states[j], new Date(timestamps[j]));
+		}
+	}
+	
+	private void assertStatistics(StatisticsAccumulator statistics, long n, double sum) {
+		assertNotNull(statistics);
+		assertEquals(n, statistics.getN());
+		assertEquals(sum, statistics.getSum(), 0);
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(PerformanceBucketsTest.class);
+	}
+}
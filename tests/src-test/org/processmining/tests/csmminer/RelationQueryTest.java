@@ -0,0 +1,122 @@
+package org.processmining.tests.csmminer;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.log.StateDictionary;
+import org.processmining.csmminer.relations.RelationQuery;
+import org.processmining.csmminer.relations.RelationStore;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.plugins.transitionsystem.miner.TSMinerTransitionSystem;
+
+public class RelationQueryTest extends TestCase {
+	
+	private RelationStore store;
+	private Transition transition;
+	
+	protected void setUp() throws Exception {
+		TSMinerTransitionSystem ts = new TSMinerTransitionSystem("", null);
+		ts.addState("t0");
+		ts.addState("t1");
+		ts.addTransition("t0", "t1", "a");
+		transition = ts.findTransition("t0", "t1", "a");
+		
+		store = new RelationStore();
+		store.put("s0", "s1", 0.2f, 0.5f, 1.2f, 0.5f, 0.6f, 0.3f, 0.1f);
+		store.put("s1", "s2", 0.4f, 0.8f, 2f, 1f, 0.85f, 0.6f, 0.4f);
+		store.put("s2", "s3", 0.1f, 0.3f, 0.9f, 0.2f, 0.5f, 0.2f, Float.NaN);
+		store.put("s0", transition, 0.4f, 0.8f, 1.5f, 1f, 0.85f, 0.5f, 0.2f);
+		// Only the support is computed
+		store.set(store.add("s3", "s4"), RelationStore.SUPPORT, 0.3f);
+	}
+	
+	@Test
+	public void testMinValues() throws Throwable {
+		assertIds(new RelationQuery(), 0, 1, 2, 3, 4);
+		assertIds(new RelationQuery().setMinValue(RelationStore.SUPPORT, 0.2f), 0, 1, 3, 4);
+		// Relations without the metric or with a NaN value are not returned
+		assertIds(new RelationQuery().setMinValue(RelationStore.PHI, 0), 0, 1, 3);
+		assertIds(new RelationQuery().setMinValue(RelationStore.SUPPORT, 0.2f).setMinValue(RelationStore.LIFT, 1.4f), 1, 3);
+	}
+	
+	@Test
+	public void testType() throws Throwable {
+		assertIds(new RelationQuery().setType(RelationQuery.FORWARD_RELATIONS), 3);
+		assertIds(new RelationQuery().setType(RelationQuery.STATE_RELATIONS), 0, 1, 2, 4);
+		assertIds(new RelationQuery().setType(RelationQuery.TRANSITION_RELATIONS));
+		assertEquals(RelationQuery.FORWARD_RELATIONS, RelationQuery.getType(store, 3));
+	}
+	
+	@Test
+	public void testTop() throws Throwable {
+		// Ties on the cosine are broken by id
+		assertIds(new RelationQuery().setTop(RelationStore.COSINE, 2), 1, 3);
+		assertIds(new RelationQuery().setTop(RelationStore.COSINE, 3), 1, 3, 0);
+		assertIds(new RelationQuery().setTop(RelationStore.COSINE, 10), 1, 3, 0, 2);
+		assertIds(new RelationQuery().setTop(RelationStore.PHI, 10), 1, 3, 0);
+		assertIds(new RelationQuery().setTop(RelationStore.SUPPORT, 2).setType(RelationQuery.STATE_RELATIONS), 1, 4);
+		assertIds(new RelationQuery().setTop(RelationStore.SUPPORT, 0));
+	}
+	
+	@Test
+	public void testConfidenceBounds() throws Throwable {
+		// A confidence of 0.8 allows a cosine up to 0.89 and a jaccard up to 0.8
+		assertIds(new RelationQuery().setMinValue(RelationStore.COSINE, 0.7f), 1, 3);
+		assertIds(new RelationQuery().setMinValue(RelationStore.JACCARD, 0.55f), 1);
+		assertIds(new RelationQuery().setTop(RelationStore.JACCARD, 2), 1, 3);
+	}
+	
+	@Test
+	public void testTransitionRelations() throws Throwable {
+		// The support of a transition relation is a count and its jaccard is not bounded by its confidence
+		store.put(transition, "s1", 12, 0.1f, 1.1f, 0.3f, 0.5f, 0.9f, 0.2f);
+		assertIds(new RelationQuery().setMinValue(RelationStore.JACCARD, 0.55f), 1, 5);
+		assertIds(new RelationQuery().setTop(RelationStore.JACCARD, 1), 5);
+		assertIds(new RelationQuery().setType(RelationQuery.TRANSITION_RELATIONS), 5);
+	}
+	
+	@Test
+	public void testFilter() throws Throwable {
+		RelationQuery.Filter filter = new RelationQuery.Filter() {
+			public boolean include(RelationStore store, int id) {
+				return !store.getCondition(id).equals("s1");
+			}
+		};
+		assertIds(new RelationQuery().setFilter(filter), 0, 2, 3, 4);
+		// The top k is taken among the relations that pass the filter
+		assertIds(new RelationQuery().setFilter(filter).setTop(RelationStore.COSINE, 2), 3, 0);
+	}
+	
+	@Test
+	public void testSymmetricHalf() throws Throwable {
+		store.put("s1", "s0", 0.2f, 0.45f, 1.2f, 0.45f, 0.65f, 0.3f, 0.1f);
+		store.put("s2", "s1", 0.4f, 0.9f, 2f, 1.1f, 0.9f, 0.6f, 0.4f);
+		final RelationQuery query = new RelationQuery().setType(RelationQuery.STATE_RELATIONS);
+		query.setFilter(new RelationQuery.Filter() {
+			public boolean include(RelationStore store, int id) {
+				int reverse = store.getId(store.getConsequence(id), store.getCondition(id));
+				return reverse == StateDictionary.UNKNOWN || !query.ranksBefore(store, reverse, id) ||
+						!query.accepts(store, reverse);
+			}
+		});
+		
+		// Without a ranking the relation added first is kept
+		assertIds(query, 0, 1, 2, 4);
+		// Both reverses have a higher cosine, k relations are returned rather than only the first of each pair
+		assertIds(query.setTop(RelationStore.COSINE, 3), 6, 5, 2);
+		assertTrue(query.accepts(store, 5));
+		assertFalse(query.accepts(store, 0));
+		// The reverse of s0 to s1 does not pass the minimum confidence, so the relation itself is returned
+		assertIds(query.setMinValue(RelationStore.CONFIDENCE, 0.5f), 6, 0);
+	}
+	
+	private void assertIds(RelationQuery query, int... ids) {
+		assertEquals(Arrays.toString(ids), Arrays.toString(query.run(store)));
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(RelationQueryTest.class);
+	}
+}
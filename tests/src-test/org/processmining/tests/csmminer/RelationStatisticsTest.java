@@ -0,0 +1,232 @@
+package org.processmining.tests.csmminer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.CSMMiner;
+import org.processmining.csmminer.CSMMinerResults;
+import org.processmining.csmminer.relations.RelationStore;
+import org.processmining.csmminer.relations.StateCounts;
+import org.processmining.csmminer.relations.TransitionsCooccurringStates;
+import org.processmining.framework.util.Pair;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.plugins.transitionsystem.converter.TSConverterInput;
+import org.processmining.plugins.transitionsystem.converter.TSConverterOutput;
+import org.processmining.plugins.transitionsystem.miner.TSMinerOutput;
+import org.processmining.plugins.transitionsystem.miner.TSMinerTransitionSystem;
+import org.processmining.plugins.tsanalyzer.AnnotatedTransitionSystem;
+import org.processmining.plugins.tsanalyzer.StatisticsAnnotationProperty;
+
+/**
+ * Calculates the relation statistics of a small hand-built result with two perspectives and compares them with the
+ * nested loops over all pairs of states and all transition and state pairs that computed them before. The transitions
+ * of a1 leave it for a2 and for itself, so the forward metrics aggregate over several outgoing transitions.
+ */
+public class RelationStatisticsTest extends TestCase {
+	
+	private static final List<String> perspectiveNames = Arrays.asList("A", "B");
+	// Composite states with their observations and sojourns
+	private static final String[] compositeStates = { "a1|b1", "a1|b2", "a2|b1", "a2|b2" };
+	private static final float[] compositeObservations = { 4, 2, 1, 3 };
+	private static final float[] compositeSojourns = { 10, 5, 3, 2 };
+	
+	@Test
+	public void testRelations() throws Throwable {
+		CSMMinerResults results = createResults();
+		CSMMiner.calculateRelationStatistics(results);
+		CSMMinerResults expectedResults = createResults();
+		calculateRelationStatisticsWithLoops(expectedResults);
+		
+		Map<String,Float[]> relations = getRelations(results.relations);
+		Map<String,Float[]> expectedRelations = getRelations(expectedResults.relations);
+		assertEquals(expectedRelations.keySet(), relations.keySet());
+		for (String relation : expectedRelations.keySet()) {
+			Float[] expectedMetrics = expectedRelations.get(relation);
+			Float[] metrics = relations.get(relation);
+			for (int metric = 0; metric < RelationStore.METRIC_COUNT; metric++) {
+				String name = relation + " metric " + metric;
+				if (expectedMetrics[metric] == null) {
+					assertNull(name, metrics[metric]);
+				}
+				else {
+					assertNotNull(name, metrics[metric]);
+					assertEquals(name, expectedMetrics[metric], metrics[metric], 1e-5f * Math.abs(expectedMetrics[metric]));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testForwardMetrics() throws Throwable {
+		CSMMinerResults results = createResults();
+		CSMMiner.calculateRelationStatistics(results);
+		Map<String,Float[]> relations = getRelations(results.relations);
+		
+		// a1 is left 7 times, 5 of which while in b1, and a1 to a2 is taken twice while in b1
+		Float[] metrics = relations.get("B[b1] -> A[a1]->[a2]");
+		assertEquals(2f / 5, metrics[RelationStore.CONFIDENCE], 1e-6f);
+		assertEquals(2f / 7, metrics[RelationStore.SUPPORT], 1e-6f);
+		assertNotNull(metrics[RelationStore.SIGNIFICANCE]);
+		// Eight state, transition and forward relations each, b3 is not a state of B
+		assertEquals(24, relations.size());
+		assertNull(relations.get("A[a1]->[a2] -> B[b3]"));
+	}
+	
+	/**
+	 * Calculates the relation statistics as before, by looping over all states and transitions of every pair of
+	 * perspectives.
+	 */
+	private void calculateRelationStatisticsWithLoops(CSMMinerResults results) {
+		for (String modelName : results.tsMinerOutputs.keySet()) {
+			CSMMiner.calculateTotalStatistics(results, modelName);
+			
+			TSMinerTransitionSystem model = results.tsMinerOutputs.get(modelName).getTransitionSystem();
+			for (State state : model.getNodes()) {
+				if (!modelName.equals(CSMMiner.CSMLabel)) {
+					CSMMiner.calculateStateStatistics(results, modelName, state);
+				}
+				else if (!state.getIdentifier().toString().equals("[]")) {
+					results.stateCounts.put(state, (int) results.annotatedTSMinerOutputs.get(CSMMiner.CSMLabel).
+							getFrequency_StateAnnotation(state).getObservations().getSum());
+					results.stateSojourns.put(state, results.annotatedTSMinerOutputs.get(CSMMiner.CSMLabel).
+							getTime_StateAnnotation(state).getSoujourn().getSum());
+				}
+			}
+		}
+		
+		for (String modelName1 : perspectiveNames) {
+			for (String modelName2 : perspectiveNames) {
+				if (modelName2.equals(modelName1)) continue;
+				
+				TSMinerTransitionSystem model1 = results.tsMinerOutputs.get(modelName1).getTransitionSystem();
+				TSMinerTransitionSystem model2 = results.tsMinerOutputs.get(modelName2).getTransitionSystem();
+				
+				for (State state1 : model1.getNodes()) {
+					for (State state2 : model2.getNodes()) {
+						if (results.sharedStateSojourns.get(new Pair<>(state1, state2)) == null) continue;
+						if (results.stateSojourns.get(state1) == 0 || results.stateSojourns.get(state2) == 0) continue;
+						
+						CSMMiner.calculateStateInterestingnessMetrics(results, state1, state2);
+					}
+				}
+				
+				for (Transition transition : model1.getEdges()) {
+					for (State state : model2.getNodes()) {
+						if (!results.transitionsCooccurringStates.containsCount(modelName1, transition, modelName2, state)) continue;
+						if (results.stateSojourns.get(state) == 0) continue;
+						
+						CSMMiner.calculateTransitionInterestingnessMetrics(results, modelName1, transition, modelName2, state);
+						CSMMiner.calculateForwardInterestingnessMetrics(results, modelName1, transition, modelName2, state);
+					}
+				}
+			}
+		}
+	}
+	
+	private CSMMinerResults createResults() {
+		Map<String,TSMinerOutput> tsMinerOutputs = new HashMap<>();
+		HashMap<String,AnnotatedTransitionSystem> annotatedTSMinerOutputs = new HashMap<>();
+		TransitionsCooccurringStates transitionsCooccurringStates = new TransitionsCooccurringStates();
+		
+		TSMinerTransitionSystem a = createModel("A", annotatedTSMinerOutputs, tsMinerOutputs);
+		addTransition(a, annotatedTSMinerOutputs, "", "a1", 5);
+		addTransition(a, annotatedTSMinerOutputs, "a1", "a2", 3);
+		addTransition(a, annotatedTSMinerOutputs, "a2", "a1", 2);
+		addTransition(a, annotatedTSMinerOutputs, "a1", "a1", 4);
+		putCounts(transitionsCooccurringStates, "A", "a1", "a2", "B", "b1", 2, "B", "b2", 1, "B", "b3", 1);
+		putCounts(transitionsCooccurringStates, "A", "a2", "a1", "B", "b2", 2);
+		putCounts(transitionsCooccurringStates, "A", "a1", "a1", "B", "b1", 3, "B", "b2", 1);
+		
+		TSMinerTransitionSystem b = createModel("B", annotatedTSMinerOutputs, tsMinerOutputs);
+		addTransition(b, annotatedTSMinerOutputs, "", "b1", 5);
+		addTransition(b, annotatedTSMinerOutputs, "b1", "b2", 4);
+		addTransition(b, annotatedTSMinerOutputs, "b2", "b1", 2);
+		putCounts(transitionsCooccurringStates, "B", "b1", "b2", "A", "a1", 3, "A", "a2", 1);
+		putCounts(transitionsCooccurringStates, "B", "b2", "b1", "A", "a2", 2);
+		
+		TSMinerTransitionSystem composite = createModel(CSMMiner.CSMLabel, annotatedTSMinerOutputs, tsMinerOutputs);
+		AnnotatedTransitionSystem annotatedComposite = annotatedTSMinerOutputs.get(CSMMiner.CSMLabel);
+		for (int c = 0; c < compositeStates.length; c++) {
+			String identifier = "[|" + compositeStates[c] + "|]";
+			composite.addState(identifier);
+			State state = composite.getNode(identifier);
+			setSum(annotatedComposite.getFrequency_StateAnnotation(state).getObservations(), compositeObservations[c]);
+			setSum(annotatedComposite.getTime_StateAnnotation(state).getSoujourn(), compositeSojourns[c]);
+		}
+		
+		return new CSMMinerResults(tsMinerOutputs, annotatedTSMinerOutputs, transitionsCooccurringStates,
+				CSMMiner.createStateMapping(perspectiveNames, tsMinerOutputs), null, null, null, null, 0, perspectiveNames);
+	}
+	
+	private TSMinerTransitionSystem createModel(String modelName,
+			Map<String,AnnotatedTransitionSystem> annotatedTSMinerOutputs, Map<String,TSMinerOutput> tsMinerOutputs) {
+		TSMinerTransitionSystem ts = new TSMinerTransitionSystem(modelName, null);
+		ts.addState("[]");
+		
+		TSConverterInput input = new TSConverterInput();
+		input.setTransitionSystem(ts);
+		tsMinerOutputs.put(modelName, new TSConverterOutput(input));
+		annotatedTSMinerOutputs.put(modelName, new AnnotatedTransitionSystem(ts));
+		return ts;
+	}
+	
+	private void addTransition(TSMinerTransitionSystem ts, Map<String,AnnotatedTransitionSystem> annotatedTSMinerOutputs,
+			String source, String target, float observations) {
+		ts.addState("[" + source + "]");
+		ts.addState("[" + target + "]");
+		ts.addTransition("[" + source + "]", "[" + target + "]", target);
+		Transition transition = ts.findTransition("[" + source + "]", "[" + target + "]", target);
+		setSum(annotatedTSMinerOutputs.get(ts.getLabel()).getFrequency_TransitionAnnotation(transition).getObservations(),
+				observations);
+	}
+	
+	/**
+	 * Puts the counts of the given (perspective, state, count) triples co-occurring with a perspective transition.
+	 */
+	private void putCounts(TransitionsCooccurringStates transitionsCooccurringStates, String perspectiveName,
+			String fromState, String toState, Object... counts) {
+		StateCounts stateCounts = new StateCounts(transitionsCooccurringStates.getStateKeys());
+		for (int i = 0; i < counts.length; i += 3) {
+			stateCounts.add((String) counts[i], (String) counts[i + 1], (Integer) counts[i + 2]);
+		}
+		transitionsCooccurringStates.put(perspectiveName, fromState, toState, stateCounts);
+	}
+	
+	private void setSum(StatisticsAnnotationProperty property, float sum) {
+		property.setValue(sum);
+		property.setSum(sum);
+	}
+	
+	/**
+	 * Returns the metrics of the relations by condition and consequence, e.g. "A[a1] -> B[b1]" or
+	 * "B[b1] -> A[a1]->[a2]".
+	 */
+	private Map<String,Float[]> getRelations(RelationStore relations) {
+		Map<String,Float[]> metrics = new HashMap<>();
+		for (int id = 0; id < relations.size(); id++) {
+			String name = getName(relations.getCondition(id)) + " -> " + getName(relations.getConsequence(id));
+			assertNull(name, metrics.put(name, relations.getMetrics(id)));
+		}
+		return metrics;
+	}
+	
+	private String getName(Object element) {
+		if (element instanceof Transition) {
+			Transition transition = (Transition) element;
+			return getName(transition.getSource()) + "->" + transition.getTarget().getIdentifier();
+		}
+		
+		String identifier = ((State) element).getIdentifier().toString();
+		return (identifier.startsWith("[a") ? "A" : "B") + identifier;
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(RelationStatisticsTest.class);
+	}
+}
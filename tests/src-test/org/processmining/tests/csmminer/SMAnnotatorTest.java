@@ -0,0 +1,221 @@
+package org.processmining.tests.csmminer;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import junit.framework.TestCase;
+
+import org.deckfour.xes.classification.XEventClassifier;
+import org.deckfour.xes.classification.XEventNameClassifier;
+import org.deckfour.xes.extension.std.XConceptExtension;
+import org.deckfour.xes.extension.std.XTimeExtension;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.deckfour.xes.model.impl.XAttributeMapImpl;
+import org.deckfour.xes.model.impl.XEventImpl;
+import org.deckfour.xes.model.impl.XLogImpl;
+import org.deckfour.xes.model.impl.XTraceImpl;
+import org.junit.Test;
+import org.processmining.csmminer.CSMMiner;
+import org.processmining.csmminer.CSMMinerSettings;
+import org.processmining.csmminer.SMAnnotator;
+import org.processmining.csmminer.SMMiner;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.plugins.transitionsystem.miner.TSMinerInput;
+import org.processmining.plugins.transitionsystem.miner.TSMinerOutput;
+import org.processmining.plugins.transitionsystem.miner.TSMinerTransitionSystem;
+import org.processmining.plugins.tsanalyzer.AnnotatedTransitionSystem;
+import org.processmining.plugins.tsanalyzer.StatisticsAnnotationProperty;
+import org.processmining.plugins.tsanalyzer.annotation.frequency.FrequencyStateAnnotation;
+import org.processmining.plugins.tsanalyzer.annotation.frequency.FrequencyTransitionAnnotation;
+import org.processmining.plugins.tsanalyzer.annotation.time.TimeStateAnnotation;
+import org.processmining.plugins.tsanalyzer.annotation.time.TimeTransitionAnnotation;
+
+/**
+ * Annotates the state models of two small perspective logs with a single trace partition and with several of them,
+ * and checks that both give the annotations of the sequential annotator. Some traces miss the timestamp of an event
+ * or have no timestamps at all, these only count for the frequencies.
+ */
+public class SMAnnotatorTest extends TestCase {
+	
+	private static final long NONE = -1;
+	
+	private Map<String,XLog> perspectiveSubLogs;
+	private Map<String,TSMinerOutput> tsMinerOutputs;
+	
+	protected void setUp() throws Exception {
+		perspectiveSubLogs = new HashMap<>();
+		perspectiveSubLogs.put("A", createLog(
+				new String[] { "a", "b", "c" }, new long[] { 0, 10, 30 },
+				new String[] { "a", "b", "c" }, new long[] { 5, NONE, 20 },
+				new String[] { "a", "b" }, new long[] { NONE, NONE },
+				new String[] { "a", "c", "c" }, new long[] { 0, 4, 9 },
+				new String[] { "b", "a", "b" }, new long[] { 2, 3, 7 }));
+		perspectiveSubLogs.put("B", createLog(
+				new String[] { "x" }, new long[] { 1 },
+				new String[] { "x", "y" }, new long[] { NONE, 6 },
+				new String[] { "y", "x", "y" }, new long[] { 0, 2, 8 }));
+		
+		tsMinerOutputs = new HashMap<>();
+		for (Map.Entry<String,XLog> entry : perspectiveSubLogs.entrySet()) {
+			TSMinerInput settings = new TSMinerInput(null, entry.getValue(),
+					Arrays.asList(new XEventClassifier[] { new XEventNameClassifier() }), new XEventNameClassifier());
+			tsMinerOutputs.put(entry.getKey(), new SMMiner(null, false).mineWithoutRegistration(settings, null));
+		}
+	}
+	
+	@Test
+	public void testPartitions() throws Throwable {
+		Map<String,AnnotatedTransitionSystem> singlePartition = annotate(1);
+		Map<String,AnnotatedTransitionSystem> partitions = annotate(3);
+		
+		for (String perspectiveName : perspectiveSubLogs.keySet()) {
+			TSMinerTransitionSystem ts = tsMinerOutputs.get(perspectiveName).getTransitionSystem();
+			AnnotatedTransitionSystem expected = new SMAnnotator(null, ts, perspectiveSubLogs.get(perspectiveName),
+					false).annotate();
+			
+			assertAnnotations(ts, expected, singlePartition.get(perspectiveName));
+			assertAnnotations(ts, expected, partitions.get(perspectiveName));
+		}
+	}
+	
+	@Test
+	public void testMissingTimestamps() throws Throwable {
+		Map<String,AnnotatedTransitionSystem> partitions = annotate(3);
+		TSMinerTransitionSystem ts = tsMinerOutputs.get("A").getTransitionSystem();
+		AnnotatedTransitionSystem ats = partitions.get("A");
+		
+		// Durations of a to b in the first and last trace, the second trace misses the timestamp of b
+		StatisticsAnnotationProperty duration = ats.getTime_TransitionAnnotation(getTransition(ts, "[a]", "[b]"))
+				.getDuration();
+		assertEquals(2f, duration.getFrequency());
+		assertEquals(14f, duration.getSum());
+		
+		// Observed twice in the last trace, and once in three other traces including the one without timestamps
+		StatisticsAnnotationProperty observations = ats.getFrequency_StateAnnotation(getState(ts, "[b]"))
+				.getObservations();
+		assertEquals(5f, observations.getSum());
+		assertEquals(5f, observations.getFrequency());
+		assertEquals(4f, ats.getFrequency_StateAnnotation(getState(ts, "[b]")).getTraces().getSum());
+		assertEquals(2f, ats.getFrequency_StateAnnotation(getState(ts, "[c]")).getObservations().getMax());
+		assertEquals(1f, ats.getFrequency_TransitionAnnotation(getTransition(ts, "[c]", "[c]")).getTraces().getSum());
+	}
+	
+	private Map<String,AnnotatedTransitionSystem> annotate(int threads) {
+		CSMMinerSettings settings = new CSMMinerSettings();
+		settings.threads = threads;
+		settings.minTracesPerPartition = 1;
+		ExecutorService executor = settings.createExecutor();
+		try {
+			return CSMMiner.annotateStateModels(null, perspectiveSubLogs, null, null, null, tsMinerOutputs, settings,
+					executor);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Creates a log from pairs of event names and timestamps, NONE for an event without a timestamp.
+	 */
+	private XLog createLog(Object... traces) {
+		XLog log = new XLogImpl(new XAttributeMapImpl());
+		for (int t = 0; t < traces.length; t += 2) {
+			String[] names = (String[]) traces[t];
+			long[] timestamps = (long[]) traces[t + 1];
+			XTrace trace = new XTraceImpl(new XAttributeMapImpl());
+			for (int i = 0; i < names.length; i++) {
+				XEvent event = new XEventImpl();
+				XConceptExtension.instance().assignName(event, names[i]);
+				if (timestamps[i] != NONE) {
+					XTimeExtension.instance().assignTimestamp(event, new Date(timestamps[i]));
+				}
+				trace.add(event);
+			}
+			log.add(trace);
+		}
+		return log;
+	}
+	
+	private State getState(TSMinerTransitionSystem ts, String identifier) {
+		for (State state : ts.getNodes()) {
+			if (state.getIdentifier().toString().equals(identifier)) {
+				return state;
+			}
+		}
+		fail(identifier);
+		return null;
+	}
+	
+	private Transition getTransition(TSMinerTransitionSystem ts, String source, String target) {
+		for (Transition transition : ts.getEdges()) {
+			if (transition.getSource().getIdentifier().toString().equals(source)
+					&& transition.getTarget().getIdentifier().toString().equals(target)) {
+				return transition;
+			}
+		}
+		fail(source + " " + target);
+		return null;
+	}
+	
+	private void assertAnnotations(TSMinerTransitionSystem ts, AnnotatedTransitionSystem expected,
+			AnnotatedTransitionSystem actual) {
+		for (State state : ts.getNodes()) {
+			String name = state.getIdentifier().toString();
+			TimeStateAnnotation expectedTime = expected.getTime_StateAnnotation(state);
+			TimeStateAnnotation actualTime = actual.getTime_StateAnnotation(state);
+			if (expectedTime == null) {
+				assertNull(name, actualTime);
+			}
+			else {
+				assertProperty(name + " sojourn", expectedTime.getSoujourn(), actualTime.getSoujourn());
+				assertProperty(name + " remaining", expectedTime.getRemaining(), actualTime.getRemaining());
+				assertProperty(name + " elapsed", expectedTime.getElapsed(), actualTime.getElapsed());
+			}
+			
+			FrequencyStateAnnotation expectedFrequency = expected.getFrequency_StateAnnotation(state);
+			FrequencyStateAnnotation actualFrequency = actual.getFrequency_StateAnnotation(state);
+			assertProperty(name + " observations", expectedFrequency.getObservations(),
+					actualFrequency.getObservations());
+			assertProperty(name + " traces", expectedFrequency.getTraces(), actualFrequency.getTraces());
+		}
+		
+		for (Transition transition : ts.getEdges()) {
+			String name = transition.getSource().getIdentifier() + " " + transition.getTarget().getIdentifier();
+			TimeTransitionAnnotation expectedTime = expected.getTime_TransitionAnnotation(transition);
+			TimeTransitionAnnotation actualTime = actual.getTime_TransitionAnnotation(transition);
+			if (expectedTime == null) {
+				assertNull(name, actualTime);
+			}
+			else {
+				assertProperty(name + " duration", expectedTime.getDuration(), actualTime.getDuration());
+			}
+			
+			FrequencyTransitionAnnotation expectedFrequency = expected.getFrequency_TransitionAnnotation(transition);
+			FrequencyTransitionAnnotation actualFrequency = actual.getFrequency_TransitionAnnotation(transition);
+			assertProperty(name + " observations", expectedFrequency.getObservations(),
+					actualFrequency.getObservations());
+			assertProperty(name + " traces", expectedFrequency.getTraces(), actualFrequency.getTraces());
+		}
+	}
+	
+	private void assertProperty(String name, StatisticsAnnotationProperty expected, StatisticsAnnotationProperty actual) {
+		assertEquals(name, expected.getAverage(), actual.getAverage());
+		assertEquals(name, expected.getStandardDeviation(), actual.getStandardDeviation());
+		assertEquals(name, expected.getMin(), actual.getMin());
+		assertEquals(name, expected.getMax(), actual.getMax());
+		assertEquals(name, expected.getSum(), actual.getSum());
+		assertEquals(name, expected.getVariance(), actual.getVariance());
+		assertEquals(name, expected.getFrequency(), actual.getFrequency());
+		assertEquals(name, expected.getMedian(), actual.getMedian());
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(SMAnnotatorTest.class);
+	}
+}
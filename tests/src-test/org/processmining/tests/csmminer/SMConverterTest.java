@@ -0,0 +1,138 @@
+package org.processmining.tests.csmminer;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.SMConverter;
+import org.processmining.models.graphbased.directed.DirectedGraphElementWeights;
+import org.processmining.models.graphbased.directed.transitionsystem.AcceptStateSet;
+import org.processmining.models.graphbased.directed.transitionsystem.StartStateSet;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.plugins.transitionsystem.converter.TSConverterInput;
+import org.processmining.plugins.transitionsystem.converter.util.TSConversions;
+import org.processmining.plugins.transitionsystem.miner.TSMinerTransitionSystem;
+
+/**
+ * Applies the conversions of the state model converter to small transition systems. The edges are given as
+ * "source label target weight" and the states as "state weight".
+ */
+public class SMConverterTest extends TestCase {
+	
+	@Test
+	public void testKillSelfLoops() throws Throwable {
+		// s2 only has a self loop, so it is removed with its start and accept
+		TSConverterInput input = createInput(new String[] { "s0 5", "s1 3", "s2 1" }, new String[] { "s0 a s0 2",
+				"s0 b s1 3", "s2 a s2 1" }, new String[] { "s0", "s2" }, new String[] { "s1", "s2" });
+		convert(input, TSConversions.KILLSELFLOOPS);
+		assertResult(input, "[s0 5, s1 3]", "[s0 b s1 3]", "[s0]", "[s1]");
+	}
+	
+	@Test
+	public void testExtend() throws Throwable {
+		// s0 -a-> s1, s0 -b-> s2 and s2 -a-> s3 complete the diamond with s1 -b-> s3
+		TSConverterInput input = createInput(new String[] { "s0 2", "s1 1", "s2 2", "s3 1" }, new String[] { "s0 a s1 1",
+				"s0 b s2 1", "s2 a s3 1" }, new String[] { "s0" }, new String[] { "s1", "s3" });
+		convert(input, TSConversions.EXTEND);
+		assertResult(input, "[s0 2, s1 1, s2 2, s3 1]", "[s0 a s1 1, s0 b s2 1, s1 b s3 1, s2 a s3 1]", "[s0]",
+				"[s1, s3]");
+	}
+	
+	@Test
+	public void testMergeByOutput() throws Throwable {
+		// s1 and s2 both only have outgoing b edges, s2 is merged into s1
+		TSConverterInput input = createInput(new String[] { "s0 1", "s1 2", "s2 3", "s3 4" }, new String[] {
+				"s0 a s1 1", "s0 a s2 2", "s1 b s3 3", "s2 b s3 4" }, new String[] { "s0" }, new String[] { "s2", "s3" });
+		convert(input, TSConversions.MERGEBYOUTPUT);
+		assertResult(input, "[s0 1, s1 5, s3 4]", "[s0 a s1 3, s1 b s3 7]", "[s0]", "[s1, s3]");
+	}
+	
+	@Test
+	public void testMergeByInput() throws Throwable {
+		// s0 and s1 have no incoming edges and s2 and s3 only incoming a edges
+		TSConverterInput input = createInput(new String[] { "s0 1", "s1 2", "s2 3", "s3 4", "s4 5" }, new String[] {
+				"s0 a s2 1", "s1 a s3 2", "s2 b s4 3", "s3 b s4 4" }, new String[] { "s0", "s1" }, new String[] { "s4" });
+		convert(input, TSConversions.MERGEBYINPUT);
+		assertResult(input, "[s0 3, s2 7, s4 5]", "[s0 a s2 3, s2 b s4 7]", "[s0]", "[s4]");
+	}
+	
+	@Test
+	public void testUnchanged() throws Throwable {
+		TSConverterInput input = createInput(new String[] { "s0 1", "s1 1" }, new String[] { "s0 a s1 1" },
+				new String[] { "s0" }, new String[] { "s1" });
+		TSMinerTransitionSystem ts = input.getTransitionSystem();
+		convert(input, TSConversions.KILLSELFLOOPS, TSConversions.EXTEND, TSConversions.MERGEBYOUTPUT,
+				TSConversions.MERGEBYINPUT);
+		assertSame(ts, input.getTransitionSystem());
+		assertResult(input, "[s0 1, s1 1]", "[s0 a s1 1]", "[s0]", "[s1]");
+	}
+	
+	private TSConverterInput createInput(String[] states, String[] edges, String[] starts, String[] accepts) {
+		TSMinerTransitionSystem ts = new TSMinerTransitionSystem("", null);
+		DirectedGraphElementWeights weights = new DirectedGraphElementWeights();
+		for (String state : states) {
+			String[] fields = state.split(" ");
+			ts.addState(fields[0]);
+			weights.add(fields[0], Integer.parseInt(fields[1]));
+		}
+		for (String edge : edges) {
+			String[] fields = edge.split(" ");
+			ts.addTransition(fields[0], fields[2], fields[1]);
+			weights.add(fields[0], fields[2], fields[1], Integer.parseInt(fields[3]));
+		}
+		StartStateSet startStates = new StartStateSet();
+		for (String start : starts) {
+			startStates.add(start);
+		}
+		AcceptStateSet acceptStates = new AcceptStateSet();
+		for (String accept : accepts) {
+			acceptStates.add(accept);
+		}
+		
+		TSConverterInput input = new TSConverterInput();
+		input.setTransitionSystem(ts);
+		input.setWeights(weights);
+		input.setStarts(startStates);
+		input.setAccepts(acceptStates);
+		return input;
+	}
+	
+	private void convert(TSConverterInput input, int... conversions) {
+		for (int conversion : conversions) {
+			input.setUse(conversion, true);
+		}
+		new SMConverter(null).convert(input, false);
+	}
+	
+	/**
+	 * Asserts the sorted states, edges, starts and accepts of the converted transition system.
+	 */
+	private void assertResult(TSConverterInput input, String states, String edges, String starts, String accepts) {
+		TSMinerTransitionSystem ts = input.getTransitionSystem();
+		DirectedGraphElementWeights weights = input.getWeights();
+		Set<String> stateWeights = new TreeSet<>();
+		for (State state : ts.getNodes()) {
+			stateWeights.add(state.getIdentifier() + " " + weights.get(state.getIdentifier(), -1));
+		}
+		assertEquals(states, stateWeights.toString());
+		
+		Set<String> edgeWeights = new TreeSet<>();
+		for (Transition transition : ts.getEdges()) {
+			Object source = transition.getSource().getIdentifier();
+			Object target = transition.getTarget().getIdentifier();
+			edgeWeights.add(source + " " + transition.getIdentifier() + " " + target + " " +
+					weights.get(source, target, transition.getIdentifier(), -1));
+		}
+		assertEquals(edges, edgeWeights.toString());
+		
+		assertEquals(starts, new TreeSet<>(input.getStarts()).toString());
+		assertEquals(accepts, new TreeSet<>(input.getAccepts()).toString());
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(SMConverterTest.class);
+	}
+}
@@ -0,0 +1,91 @@
+package org.processmining.tests.csmminer;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.statistics.SparseFrequency;
+import org.processmining.csmminer.statistics.SparseStatistics;
+
+/**
+ * The expected values are those of DescriptiveStatistics over the counts of all traces, zeros included.
+ */
+public class SparseStatisticsTest extends TestCase {
+	
+	@Test
+	public void testObservations() throws Throwable {
+		// Counts 3, 1, 0, 0, 0
+		SparseFrequency frequency = new SparseFrequency();
+		frequency.add(3);
+		frequency.add(1);
+		
+		SparseStatistics observations = frequency.getObservations(5);
+		assertEquals(5, observations.getN());
+		assertEquals(4, observations.getSum(), 1e-12);
+		assertEquals(0.8, observations.getMean(), 1e-12);
+		assertEquals(1.7, observations.getVariance(), 1e-12);
+		assertEquals(Math.sqrt(1.7), observations.getStandardDeviation(), 1e-12);
+		assertEquals(0, observations.getMin(), 0);
+		assertEquals(3, observations.getMax(), 0);
+		assertEquals(0, observations.getPercentile(50), 0);
+		assertEquals(2, observations.getPercentile(75), 1e-12);
+		assertEquals(3, observations.getPercentile(90), 0);
+		assertEquals(0, observations.getPercentile(1), 0);
+	}
+	
+	@Test
+	public void testTraces() throws Throwable {
+		// Observed in 2 of 5 traces: 1, 1, 0, 0, 0
+		SparseFrequency frequency = new SparseFrequency();
+		frequency.add(3);
+		frequency.add(1);
+		
+		SparseStatistics traces = frequency.getTraces(5);
+		assertEquals(2, traces.getSum(), 1e-12);
+		assertEquals(0.4, traces.getMean(), 1e-12);
+		assertEquals(0.3, traces.getVariance(), 1e-12);
+		assertEquals(1, traces.getMax(), 0);
+		assertEquals(0.6, traces.getPercentile(60), 1e-12);
+	}
+	
+	@Test
+	public void testWithoutZeros() throws Throwable {
+		SparseFrequency frequency = new SparseFrequency();
+		frequency.add(2);
+		frequency.add(6);
+		
+		SparseStatistics observations = frequency.getObservations(2);
+		assertEquals(2, observations.getMin(), 0);
+		assertEquals(6, observations.getMax(), 0);
+		assertEquals(8, observations.getVariance(), 1e-12);
+		assertEquals(4, observations.getPercentile(50), 1e-12);
+	}
+	
+	@Test
+	public void testOnlyZeros() throws Throwable {
+		SparseStatistics observations = new SparseFrequency().getObservations(3);
+		assertEquals(0, observations.getSum(), 0);
+		assertEquals(0, observations.getMean(), 0);
+		assertEquals(0, observations.getVariance(), 0);
+		assertEquals(0, observations.getMax(), 0);
+		assertTrue(Double.isNaN(new SparseFrequency().getObservations(0).getMean()));
+	}
+	
+	@Test
+	public void testAddAll() throws Throwable {
+		// Partitions of 2 and 3 traces, in which the element is observed 3 times and once
+		SparseFrequency frequency = new SparseFrequency();
+		frequency.add(3);
+		SparseFrequency partitionFrequency = new SparseFrequency();
+		partitionFrequency.add(1);
+		frequency.addAll(partitionFrequency);
+		
+		SparseStatistics observations = frequency.getObservations(5);
+		assertEquals(2, frequency.size());
+		assertEquals(1.7, observations.getVariance(), 1e-12);
+		assertEquals(2, observations.getPercentile(75), 1e-12);
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(SparseStatisticsTest.class);
+	}
+}
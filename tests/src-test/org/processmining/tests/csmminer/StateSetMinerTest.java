@@ -0,0 +1,150 @@
+package org.processmining.tests.csmminer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.CSMMiner;
+import org.processmining.csmminer.CSMMinerResults;
+import org.processmining.csmminer.StateSetMiner;
+import org.processmining.csmminer.relations.StateMap;
+import org.processmining.csmminer.relations.StateSet;
+import org.processmining.plugins.transitionsystem.converter.TSConverterInput;
+import org.processmining.plugins.transitionsystem.converter.TSConverterOutput;
+import org.processmining.plugins.transitionsystem.miner.TSMinerOutput;
+import org.processmining.plugins.transitionsystem.miner.TSMinerTransitionSystem;
+
+/**
+ * Mines the state sets of three perspectives with four composite states:
+ *
+ * <pre>
+ * |a1|b1|c1| for 4, |a1|b1|c2| for 3, |a2|b1|c1| for 2 and |a1|b2|c1| for 1
+ * </pre>
+ *
+ * so that a1 has support 0.8, b1 0.9, c1 0.7, c2 0.3, a1 b1 0.7, a1 b1 c1 0.4 and so on.
+ */
+public class StateSetMinerTest extends TestCase {
+	
+	private static final String[][] compositeStates = { { "a1", "b1", "c1" }, { "a1", "b1", "c2" }, { "a2", "b1", "c1" },
+			{ "a1", "b2", "c1" } };
+	private static final float[] sojourns = { 4, 3, 2, 1 };
+	
+	@Test
+	public void testAllSizes() throws Throwable {
+		List<StateSet> stateSets = new StateSetMiner(createResults(), 0.25f, 0).mine(1);
+		
+		Map<String,StateSet> sets = getSets(stateSets);
+		assertEquals(sets.keySet().toString(), 11, sets.size());
+		assertSet(sets, "A[a1]", 0.8f, 1);
+		assertSet(sets, "C[c2]", 0.3f, 1);
+		assertSet(sets, "A[a1] B[b1]", 0.7f, 0.7f / (0.8f * 0.9f));
+		assertSet(sets, "A[a1] C[c1]", 0.5f, 0.5f / (0.8f * 0.7f));
+		assertSet(sets, "A[a1] C[c2]", 0.3f, 0.3f / (0.8f * 0.3f));
+		assertSet(sets, "B[b1] C[c1]", 0.6f, 0.6f / (0.9f * 0.7f));
+		assertSet(sets, "A[a1] B[b1] C[c1]", 0.4f, 0.4f / (0.8f * 0.9f * 0.7f));
+		assertSet(sets, "A[a1] B[b1] C[c2]", 0.3f, 0.3f / (0.8f * 0.9f * 0.3f));
+		// Below the minimum support of 0.25
+		assertFalse(sets.containsKey("A[a2]"));
+		assertFalse(sets.containsKey("B[b2]"));
+		
+		// Ordered by size
+		for (int i = 1; i < stateSets.size(); i++) {
+			assertTrue(stateSets.get(i - 1).size() <= stateSets.get(i).size());
+		}
+	}
+	
+	@Test
+	public void testSizeLimits() throws Throwable {
+		Map<String,StateSet> sets = getSets(new StateSetMiner(createResults(), 0.25f, 0).mine(3));
+		assertEquals(sets.keySet().toString(), 2, sets.size());
+		assertSet(sets, "A[a1] B[b1] C[c1]", 0.4f, 0.4f / (0.8f * 0.9f * 0.7f));
+		
+		sets = getSets(new StateSetMiner(createResults(), 0.25f, 2).mine(2));
+		assertEquals(sets.keySet().toString(), 5, sets.size());
+		assertFalse(sets.containsKey("A[a1] B[b1] C[c1]"));
+	}
+	
+	@Test
+	public void testMinSupport() throws Throwable {
+		// The support of a1 b1 c1 is exactly the minimum support
+		Map<String,StateSet> sets = getSets(new StateSetMiner(createResults(), 0.4f, 0).mine(2));
+		assertEquals(sets.keySet().toString(), 4, sets.size());
+		assertSet(sets, "A[a1] B[b1] C[c1]", 0.4f, 0.4f / (0.8f * 0.9f * 0.7f));
+		
+		assertTrue(new StateSetMiner(createResults(), 0.95f, 0).mine(1).isEmpty());
+	}
+	
+	/**
+	 * Returns the results with the composite states mapped to the perspective states, as the miner maps them.
+	 */
+	private CSMMinerResults createResults() {
+		List<String> perspectiveNames = Arrays.asList("A", "B", "C");
+		Map<String,TSMinerOutput> tsMinerOutputs = new HashMap<>();
+		StateMap stateMap = new StateMap();
+		CSMMinerResults results = new CSMMinerResults(tsMinerOutputs, null, null, stateMap, null, null, null, null, 0,
+				perspectiveNames);
+		
+		TSMinerTransitionSystem[] perspectiveTs = new TSMinerTransitionSystem[perspectiveNames.size()];
+		for (int p = 0; p < perspectiveNames.size(); p++) {
+			perspectiveTs[p] = new TSMinerTransitionSystem(perspectiveNames.get(p), null);
+			tsMinerOutputs.put(perspectiveNames.get(p), createOutput(perspectiveTs[p]));
+		}
+		TSMinerTransitionSystem compositeTs = new TSMinerTransitionSystem(CSMMiner.CSMLabel, null);
+		tsMinerOutputs.put(CSMMiner.CSMLabel, createOutput(compositeTs));
+		
+		for (int c = 0; c < compositeStates.length; c++) {
+			String compositeIdentifier = "[|" + compositeStates[c][0] + "|" + compositeStates[c][1] + "|" +
+					compositeStates[c][2] + "|]";
+			compositeTs.addState(compositeIdentifier);
+			results.stateSojourns.put(compositeTs.getNode(compositeIdentifier), sojourns[c]);
+			
+			int compositeStateId = stateMap.getOrAddStateId(CSMMiner.CSMLabel, compositeIdentifier);
+			for (int p = 0; p < perspectiveNames.size(); p++) {
+				String identifier = "[" + compositeStates[c][p] + "]";
+				perspectiveTs[p].addState(identifier);
+				int stateId = stateMap.getOrAddStateId(perspectiveNames.get(p), identifier);
+				stateMap.add(compositeStateId, stateId);
+				stateMap.add(stateId, compositeStateId);
+			}
+		}
+		results.totalStateSojourns.put(CSMMiner.CSMLabel, 10f);
+		
+		return results;
+	}
+	
+	private TSMinerOutput createOutput(TSMinerTransitionSystem ts) {
+		TSConverterInput input = new TSConverterInput();
+		input.setTransitionSystem(ts);
+		return new TSConverterOutput(input);
+	}
+	
+	/**
+	 * Returns the state sets by their perspective names and states, e.g. "A[a1] B[b1]".
+	 */
+	private Map<String,StateSet> getSets(List<StateSet> stateSets) {
+		Map<String,StateSet> sets = new HashMap<>();
+		for (StateSet stateSet : stateSets) {
+			String name = "";
+			for (int s = 0; s < stateSet.size(); s++) {
+				name += (s > 0 ? " " : "") + stateSet.perspectiveNames.get(s) + stateSet.states.get(s).getIdentifier();
+			}
+			assertNull(name, sets.put(name, stateSet));
+		}
+		return sets;
+	}
+	
+	private void assertSet(Map<String,StateSet> sets, String name, float support, float lift) {
+		StateSet stateSet = sets.get(name);
+		assertNotNull(name, stateSet);
+		assertEquals(name, support, stateSet.support, 1e-6f);
+		assertEquals(name, lift, stateSet.lift, 1e-5f * lift);
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(StateSetMinerTest.class);
+	}
+}
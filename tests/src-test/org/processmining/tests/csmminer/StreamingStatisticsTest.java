@@ -0,0 +1,107 @@
+package org.processmining.tests.csmminer;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.statistics.QuantileSketch;
+import org.processmining.csmminer.statistics.StreamingStatistics;
+
+public class StreamingStatisticsTest extends TestCase {
+	
+	private static final double accuracy = 0.01;
+	
+	@Test
+	public void testSketchRanks() throws Throwable {
+		QuantileSketch sketch = new QuantileSketch(accuracy);
+		double[] values = { 5000, -2, 0, 0.5, 1e6, -300, 0 };
+		for (double value : values) {
+			sketch.add(value);
+		}
+		
+		// Ascending: -300, -2, 0, 0, 0.5, 5000, 1e6
+		double[] sortedValues = { -300, -2, 0, 0, 0.5, 5000, 1e6 };
+		assertEquals(7, sketch.getCount());
+		for (int rank = 0; rank < sortedValues.length; rank++) {
+			assertEquals(sortedValues[rank], sketch.getValue(rank), accuracy * Math.abs(sortedValues[rank]));
+		}
+		
+		try {
+			sketch.getValue(7);
+			fail();
+		}
+		catch (IndexOutOfBoundsException e) {
+		}
+	}
+	
+	@Test
+	public void testSketchMerge() throws Throwable {
+		// Merging extends the bucket range of the first sketch on both sides
+		QuantileSketch sketch = new QuantileSketch(accuracy);
+		sketch.add(100);
+		QuantileSketch otherSketch = new QuantileSketch(accuracy);
+		otherSketch.add(0.001);
+		otherSketch.add(1e9);
+		otherSketch.add(-1);
+		sketch.addAll(otherSketch);
+		
+		assertEquals(4, sketch.getCount());
+		assertEquals(-1, sketch.getValue(0), accuracy);
+		assertEquals(0.001, sketch.getValue(1), accuracy * 0.001);
+		assertEquals(100, sketch.getValue(2), accuracy * 100);
+		assertEquals(1e9, sketch.getValue(3), accuracy * 1e9);
+		
+		try {
+			sketch.addAll(new QuantileSketch(0.05));
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+	
+	@Test
+	public void testStatistics() throws Throwable {
+		StreamingStatistics statistics = new StreamingStatistics(accuracy);
+		for (double value : new double[] { 10, 20, 30, 40 }) {
+			statistics.addValue(value);
+		}
+		
+		assertEquals(4, statistics.getN());
+		assertEquals(100, statistics.getSum(), 1e-9);
+		assertEquals(25, statistics.getMean(), 1e-9);
+		assertEquals(500.0 / 3, statistics.getVariance(), 1e-9);
+		assertEquals(10, statistics.getMin(), 0);
+		assertEquals(40, statistics.getMax(), 0);
+		// Legacy estimation: position 2.5 between 20 and 30
+		assertEquals(25, statistics.getPercentile(50), accuracy * 25);
+		assertEquals(40, statistics.getPercentile(100), accuracy * 40);
+	}
+	
+	@Test
+	public void testStatisticsMerge() throws Throwable {
+		StreamingStatistics statistics = new StreamingStatistics(accuracy);
+		statistics.addValue(10);
+		statistics.addValue(20);
+		StreamingStatistics otherStatistics = new StreamingStatistics(accuracy);
+		otherStatistics.addValue(30);
+		otherStatistics.addValue(40);
+		
+		statistics.addAll(new StreamingStatistics(accuracy));
+		statistics.addAll(otherStatistics);
+		assertEquals(4, statistics.getN());
+		assertEquals(25, statistics.getMean(), 1e-9);
+		assertEquals(500.0 / 3, statistics.getVariance(), 1e-9);
+		assertEquals(10, statistics.getMin(), 0);
+		assertEquals(40, statistics.getMax(), 0);
+		assertEquals(25, statistics.getPercentile(50), accuracy * 25);
+		
+		// Merged into empty statistics
+		StreamingStatistics emptyStatistics = new StreamingStatistics(accuracy);
+		emptyStatistics.addAll(statistics);
+		assertEquals(500.0 / 3, emptyStatistics.getVariance(), 1e-9);
+		assertEquals(10, emptyStatistics.getMin(), 0);
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(StreamingStatisticsTest.class);
+	}
+}
@@ -0,0 +1,105 @@
+package org.processmining.tests.csmminer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.csmminer.TransitionSystemBuilder;
+
+/**
+ * Mines the traces s0 -a-> s1 -b-> s2, s1 -b-> s2 -a-> s0 and s3 -a-> s1, in one builder and in the builders of two
+ * partitions that are merged.
+ */
+public class TransitionSystemBuilderTest extends TestCase {
+	
+	private static final String[][] traces = { { "s0", "a", "s1", "b", "s2" }, { "s1", "b", "s2", "a", "s0" },
+			{ "s3", "a", "s1" } };
+	
+	@Test
+	public void testSingleBuilder() throws Throwable {
+		TransitionSystemBuilder builder = new TransitionSystemBuilder();
+		assertEquals("[0, 1, 1, 2, 3]", Arrays.toString(addTraces(builder, 0, 3)));
+		assertBuilder(builder);
+	}
+	
+	@Test
+	public void testMergedPartitions() throws Throwable {
+		TransitionSystemBuilder builder = new TransitionSystemBuilder();
+		assertEquals("[0, 1]", Arrays.toString(addTraces(builder, 0, 1)));
+		
+		TransitionSystemBuilder partitionBuilder = new TransitionSystemBuilder();
+		// The partition has its own ids: s1 0, s2 1, s0 2, s3 3
+		assertEquals("[0, 1, 2]", Arrays.toString(addTraces(partitionBuilder, 1, 3)));
+		assertEquals("[1, 2, 3]", Arrays.toString(builder.addAll(partitionBuilder)));
+		assertBuilder(builder);
+		
+		// Merging into an empty builder keeps the ids
+		TransitionSystemBuilder emptyBuilder = new TransitionSystemBuilder();
+		assertEquals("[0, 1, 2, 3]", Arrays.toString(emptyBuilder.addAll(builder)));
+		assertBuilder(emptyBuilder);
+	}
+	
+	/**
+	 * Asserts the states, transitions, weights and start and accept states of all three traces.
+	 */
+	private void assertBuilder(TransitionSystemBuilder builder) {
+		assertEquals(4, builder.getStateCount());
+		String[] states = { "s0", "s1", "s2", "s3" };
+		int[] stateWeights = { 2, 4, 3, 1 };
+		for (int stateId = 0; stateId < states.length; stateId++) {
+			assertEquals(states[stateId], builder.getState(stateId));
+			assertEquals(stateId, builder.getStateId(states[stateId]));
+			assertEquals(states[stateId], stateWeights[stateId], builder.getStateWeight(stateId));
+		}
+		
+		assertEquals(4, builder.getTransitionCount());
+		int[][] transitions = { { 0, 1 }, { 1, 2 }, { 2, 0 }, { 3, 1 } };
+		String[] labels = { "a", "b", "a", "a" };
+		int[] transitionWeights = { 1, 2, 1, 1 };
+		for (int transitionId = 0; transitionId < transitions.length; transitionId++) {
+			assertEquals(transitions[transitionId][0], builder.getSource(transitionId));
+			assertEquals(transitions[transitionId][1], builder.getTarget(transitionId));
+			assertEquals(labels[transitionId], builder.getLabel(transitionId));
+			assertEquals(transitionWeights[transitionId], builder.getTransitionWeight(transitionId));
+		}
+		
+		assertEquals(createBitSet(0, 1, 3), builder.getStarts());
+		assertEquals(createBitSet(0, 1, 2), builder.getAccepts());
+	}
+	
+	/**
+	 * Adds the events of the traces from the given index up to the other index, as the miner does, and returns the ids
+	 * of the transitions of the events.
+	 */
+	private int[] addTraces(TransitionSystemBuilder builder, int from, int to) {
+		int[] transitionIds = new int[0];
+		for (int t = from; t < to; t++) {
+			String[] trace = traces[t];
+			for (int i = 0; i + 2 < trace.length; i += 2) {
+				int sourceStateId = builder.addState(trace[i]);
+				int targetStateId = builder.addState(trace[i + 2]);
+				transitionIds = Arrays.copyOf(transitionIds, transitionIds.length + 1);
+				transitionIds[transitionIds.length - 1] = builder.addEvent(sourceStateId, targetStateId,
+						builder.addLabel(trace[i + 1]));
+				
+				if (i == 0) builder.addStart(sourceStateId);
+				if (i + 3 == trace.length) builder.addAccept(targetStateId);
+			}
+		}
+		return transitionIds;
+	}
+	
+	private BitSet createBitSet(int... bits) {
+		BitSet bitSet = new BitSet();
+		for (int bit : bits) {
+			bitSet.set(bit);
+		}
+		return bitSet;
+	}
+	
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(TransitionSystemBuilderTest.class);
+	}
+}